@@ -34,9 +34,12 @@ package org.sagebionetworks.research.app.inject;
 
 import org.sagebionetworks.research.app.ResearchStackDemoApplication;
 
+import javax.inject.Singleton;
+
 import dagger.BindsInstance;
 import dagger.Component;
 
+@Singleton
 @Component(modules = {SageResearchDemoApplication.class})
 public abstract class ResearchStackDemoApplicationComponent {
     @Component.Builder
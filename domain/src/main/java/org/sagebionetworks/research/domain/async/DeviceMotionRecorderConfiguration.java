@@ -37,6 +37,25 @@ import androidx.annotation.Nullable;
 import java.util.Set;
 
 public interface DeviceMotionRecorderConfiguration extends RecorderConfiguration {
+    /**
+     * Returns how this recorder should compress its file. A value of null results in
+     * {@link RecorderOutputCompression#NONE} being used.
+     *
+     * @return the compression for this recorder's file.
+     */
+    @Nullable
+    @RecorderOutputCompression
+    String getCompression();
+
+    /**
+     * Returns the length in milliseconds of the windows a {@link MotionRecorderOutputFormat#FEATURES} recorder
+     * summarizes. A value of null results in a default window length being used.
+     *
+     * @return the feature window length in milliseconds for this recorder.
+     */
+    @Nullable
+    Long getFeatureWindowMillis();
+
     /**
      * Returns the frequency for this recorder. A value of null results in a default frequency being used.
      *
@@ -45,10 +64,102 @@ public interface DeviceMotionRecorderConfiguration extends RecorderConfiguration
     @Nullable
     Double getFrequency();
 
+    /**
+     * Returns the longest time in milliseconds samples may be held back so that they can be written in batches. A
+     * value of null means samples are not batched.
+     *
+     * @return the maximum batch latency in milliseconds for this recorder.
+     */
+    @Nullable
+    Long getMaxBatchLatencyMillis();
+
+    /**
+     * Returns the longest time in milliseconds samples may be held in the hardware FIFO of their sensor before being
+     * reported, which lets the device sleep while recording. A value of null means each sample is reported as it is
+     * taken.
+     *
+     * @return the maximum report latency in milliseconds for this recorder's sensors.
+     */
+    @Nullable
+    Long getMaxReportLatencyMillis();
+
+    /**
+     * Returns the most samples this recorder should write in a single batch. A value of null means samples are not
+     * batched.
+     *
+     * @return the maximum batch size for this recorder.
+     */
+    @Nullable
+    Integer getMaxBatchSize();
+
+    /**
+     * Returns the most bytes of uncompressed output this recorder should write to one file before continuing in a
+     * new segment file. A value of null means segments are not limited in size.
+     *
+     * @return the maximum segment size in bytes for this recorder.
+     */
+    @Nullable
+    Long getMaxSegmentBytes();
+
+    /**
+     * Returns the longest time in milliseconds this recorder should write to one file before continuing in a new
+     * segment file. A value of null means segments are not limited in duration.
+     *
+     * @return the maximum segment duration in milliseconds for this recorder.
+     */
+    @Nullable
+    Long getMaxSegmentDurationMillis();
+
+    /**
+     * Returns whether this recorder should write its JSON output through memory-mapped regions of the file rather
+     * than write calls. A value of null means the output is written with write calls.
+     *
+     * @return whether to write the output through memory-mapped regions.
+     */
+    @Nullable
+    Boolean getMemoryMapped();
+
+    /**
+     * Returns whether this recorder should write each sensor to its own file, in parallel, along with a manifest
+     * listing the files. A value of null means all sensors are written to one file.
+     *
+     * @return whether to write each sensor to its own file.
+     */
+    @Nullable
+    Boolean getShardBySensor();
+
+    /**
+     * Returns the file format this recorder should write. A value of null results in
+     * {@link MotionRecorderOutputFormat#JSON} being used.
+     *
+     * @return the file format for this recorder.
+     */
+    @Nullable
+    @MotionRecorderOutputFormat
+    String getOutputFormat();
+
     /**
      * Returns the set of recorder types this device motion recorder will record.
      *
      * @return the set of recorder types this device motion recorder will record.
      */
     Set<String> getRecorderTypes();
+
+    /**
+     * Returns the number of samples that may wait between the sensor thread and the writer before samples are
+     * dropped. A value of null means samples are handed to the writer through Rx instead of through a ring buffer.
+     *
+     * @return the ring buffer capacity for this recorder.
+     */
+    @Nullable
+    Integer getRingBufferCapacity();
+
+    /**
+     * Returns whether a restarted recorder should replace the file of its previous run, rather than append to it. A
+     * value of null results in the file being replaced.
+     *
+     * @return whether a restarted recorder should replace the file of its previous run.
+     */
+    @Nullable
+    Boolean getShouldDeletePrevious();
 }
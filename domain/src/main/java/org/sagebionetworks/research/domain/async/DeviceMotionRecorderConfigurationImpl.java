@@ -47,12 +47,36 @@ public abstract class DeviceMotionRecorderConfigurationImpl implements DeviceMot
     public abstract static class Builder {
         public abstract DeviceMotionRecorderConfigurationImpl build();
 
+        public abstract Builder setCompression(@Nullable @RecorderOutputCompression String compression);
+
+        public abstract Builder setFeatureWindowMillis(@Nullable Long featureWindowMillis);
+
         public abstract Builder setFrequency(@Nullable Double frequency);
 
         public abstract Builder setIdentifier(@NonNull String identifier);
 
+        public abstract Builder setMaxBatchLatencyMillis(@Nullable Long maxBatchLatencyMillis);
+
+        public abstract Builder setMaxBatchSize(@Nullable Integer maxBatchSize);
+
+        public abstract Builder setMaxReportLatencyMillis(@Nullable Long maxReportLatencyMillis);
+
+        public abstract Builder setMaxSegmentBytes(@Nullable Long maxSegmentBytes);
+
+        public abstract Builder setMaxSegmentDurationMillis(@Nullable Long maxSegmentDurationMillis);
+
+        public abstract Builder setMemoryMapped(@Nullable Boolean memoryMapped);
+
+        public abstract Builder setOutputFormat(@Nullable @MotionRecorderOutputFormat String outputFormat);
+
         public abstract Builder setRecorderTypes(@NonNull Set<String> recorderTypes);
 
+        public abstract Builder setRingBufferCapacity(@Nullable Integer ringBufferCapacity);
+
+        public abstract Builder setShardBySensor(@Nullable Boolean shardBySensor);
+
+        public abstract Builder setShouldDeletePrevious(@Nullable Boolean shouldDeletePrevious);
+
         public abstract Builder setStartStepIdentifier(@Nullable String startStepIdentifier);
 
         public abstract Builder setStopStepIdentifier(@Nullable String stopStepIdentifier);
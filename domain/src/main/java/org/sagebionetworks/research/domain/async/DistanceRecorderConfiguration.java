@@ -32,6 +32,61 @@
 
 package org.sagebionetworks.research.domain.async;
 
+import androidx.annotation.Nullable;
+
 public interface DistanceRecorderConfiguration extends RecorderConfiguration {
+    /**
+     * Returns how this recorder should compress its file. A value of null results in
+     * {@link RecorderOutputCompression#NONE} being used.
+     *
+     * @return the compression for this recorder's file.
+     */
+    @Nullable
+    @RecorderOutputCompression
+    String getCompression();
+
+    /**
+     * Returns the worst accuracy in meters a location can have to be recorded. A value of null results in
+     * locations less accurate than 50 meters being dropped, a value of 0 in locations of any accuracy being recorded.
+     *
+     * @return the maximum accuracy in meters for this recorder.
+     */
+    @Nullable
+    Float getMaxAccuracyMeters();
+
+    /**
+     * Returns the least distance in meters between the locations this recorder requests. A value of null means
+     * locations are requested regardless of the distance moved.
+     *
+     * @return the minimum distance in meters for this recorder.
+     */
+    @Nullable
+    Float getMinDistanceMeters();
+
+    /**
+     * Returns the least time in milliseconds between the locations this recorder requests. A value of null means
+     * locations are requested as often as they are available.
+     *
+     * @return the minimum time in milliseconds for this recorder.
+     */
+    @Nullable
+    Long getMinTimeMillis();
+
+    /**
+     * Returns how far in meters the recorded path can be from the locations it simplifies. A value of null results
+     * in a tolerance of 3 meters, a value of 0 in every location being recorded.
+     *
+     * @return the simplification tolerance in meters for this recorder.
+     */
+    @Nullable
+    Double getSimplificationToleranceMeters();
 
+    /**
+     * Returns whether this recorder should record coordinates relative to the first location, rather than the
+     * latitude and longitude. A value of null means the latitude and longitude are recorded.
+     *
+     * @return whether this recorder records relative coordinates.
+     */
+    @Nullable
+    Boolean getUsesRelativeCoordinates();
 }
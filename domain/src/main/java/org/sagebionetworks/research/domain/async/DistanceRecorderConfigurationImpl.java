@@ -47,11 +47,23 @@ public abstract class DistanceRecorderConfigurationImpl implements DistanceRecor
     public abstract static class Builder {
         public abstract DistanceRecorderConfigurationImpl build();
 
+        public abstract Builder setCompression(@Nullable @RecorderOutputCompression String compression);
+
         public abstract Builder setIdentifier(@NonNull String identifier);
 
+        public abstract Builder setMaxAccuracyMeters(@Nullable Float maxAccuracyMeters);
+
+        public abstract Builder setMinDistanceMeters(@Nullable Float minDistanceMeters);
+
+        public abstract Builder setMinTimeMillis(@Nullable Long minTimeMillis);
+
+        public abstract Builder setSimplificationToleranceMeters(@Nullable Double simplificationToleranceMeters);
+
         public abstract Builder setStartStepIdentifier(@Nullable String startStepIdentifier);
 
         public abstract Builder setStopStepIdentifier(@Nullable String stopStepIdentifier);
+
+        public abstract Builder setUsesRelativeCoordinates(@Nullable Boolean usesRelativeCoordinates);
     }
 
     public static Builder builder() {
@@ -0,0 +1,69 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.domain.async;
+
+import androidx.annotation.StringDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * The on-device file format a motion recorder writes its samples in.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@StringDef({MotionRecorderOutputFormat.JSON, MotionRecorderOutputFormat.COLUMNAR, MotionRecorderOutputFormat.FRAMES,
+        MotionRecorderOutputFormat.FEATURES})
+public @interface MotionRecorderOutputFormat {
+    /**
+     * A JSON array with one object per sensor event. This is the default.
+     */
+    String JSON = "json";
+
+    /**
+     * Fixed-width binary records grouped into per-sensor column blocks. Files in this format can be transcoded
+     * back into the JSON format before upload.
+     */
+    String COLUMNAR = "columnar";
+
+    /**
+     * A JSON array with one object per tick of the recorder's frequency, holding the values of every sensor at that
+     * tick, resampled from the sensors' own samples. Requires a frequency.
+     */
+    String FRAMES = "frames";
+
+    /**
+     * A JSON array with one summary per sensor and window of the recording, holding features such as the mean,
+     * variance, jerk, step count and tremor band power of the samples, rather than the samples themselves.
+     */
+    String FEATURES = "features";
+}
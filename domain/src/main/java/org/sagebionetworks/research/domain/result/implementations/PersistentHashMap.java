@@ -0,0 +1,306 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.domain.result.implementations;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * An immutable hash map which shares structure with the map it was derived from, a hash array mapped trie. A put or
+ * remove copies only the path to the key, at most 7 nodes of up to 32 entries, rather than the whole map.
+ *
+ * @param <K>
+ *         the type of key.
+ * @param <V>
+ *         the type of value.
+ */
+final class PersistentHashMap<K, V> {
+    private abstract static class Node {
+        @Nullable
+        abstract Object get(int shift, int hash, @NonNull Object key);
+
+        @NonNull
+        abstract Node put(int shift, int hash, @NonNull Object key, @NonNull Object value, boolean[] added);
+
+        // returns null if the node is left empty
+        @Nullable
+        abstract Node remove(int shift, int hash, @NonNull Object key);
+    }
+
+    /**
+     * Holds the entries whose hashes share the bits consumed above it. Entries are stored as key, value pairs in the
+     * order of their next 5 hash bits. A pair with a null key holds a child node in its value instead.
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final Object[] array;
+
+        final int bitmap;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Nullable
+        @Override
+        Object get(int shift, int hash, @NonNull Object key) {
+            int bit = bit(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int index = index(bit);
+            Object keyOrNull = array[2 * index];
+            Object valueOrNode = array[2 * index + 1];
+            if (keyOrNull == null) {
+                return ((Node) valueOrNode).get(shift + BITS, hash, key);
+            }
+            return key.equals(keyOrNull) ? valueOrNode : null;
+        }
+
+        @NonNull
+        @Override
+        Node put(int shift, int hash, @NonNull Object key, @NonNull Object value, boolean[] added) {
+            int bit = bit(shift, hash);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, 2 * index);
+                newArray[2 * index] = key;
+                newArray[2 * index + 1] = value;
+                System.arraycopy(array, 2 * index, newArray, 2 * index + 2, array.length - 2 * index);
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+
+            Object keyOrNull = array[2 * index];
+            Object valueOrNode = array[2 * index + 1];
+            if (keyOrNull == null) {
+                Node child = ((Node) valueOrNode).put(shift + BITS, hash, key, value, added);
+                return child == valueOrNode ? this : with(2 * index + 1, child);
+            }
+            if (key.equals(keyOrNull)) {
+                return value == valueOrNode ? this : with(2 * index + 1, value);
+            }
+            added[0] = true;
+            Node child = createNode(shift + BITS, keyOrNull, valueOrNode, hash, key, value);
+            Object[] newArray = array.clone();
+            newArray[2 * index] = null;
+            newArray[2 * index + 1] = child;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        @Nullable
+        @Override
+        Node remove(int shift, int hash, @NonNull Object key) {
+            int bit = bit(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object keyOrNull = array[2 * index];
+            Object valueOrNode = array[2 * index + 1];
+            if (keyOrNull == null) {
+                Node child = ((Node) valueOrNode).remove(shift + BITS, hash, key);
+                if (child == valueOrNode) {
+                    return this;
+                }
+                if (child != null) {
+                    return with(2 * index + 1, child);
+                }
+            } else if (!key.equals(keyOrNull)) {
+                return this;
+            }
+
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * index);
+            System.arraycopy(array, 2 * index + 2, newArray, 2 * index, newArray.length - 2 * index);
+            return new BitmapNode(bitmap & ~bit, newArray);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private BitmapNode with(int arrayIndex, Object value) {
+            Object[] newArray = array.clone();
+            newArray[arrayIndex] = value;
+            return new BitmapNode(bitmap, newArray);
+        }
+    }
+
+    /**
+     * Holds the entries whose keys have the same hash, as key, value pairs.
+     */
+    private static final class CollisionNode extends Node {
+        final Object[] array;
+
+        final int hash;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Nullable
+        @Override
+        Object get(int shift, int hash, @NonNull Object key) {
+            int index = indexOf(key);
+            return index < 0 ? null : array[index + 1];
+        }
+
+        @NonNull
+        @Override
+        Node put(int shift, int hash, @NonNull Object key, @NonNull Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // the keys differ in a later 5 bits of their hashes
+                return new BitmapNode(bit(shift, this.hash), new Object[]{null, this})
+                        .put(shift, hash, key, value, added);
+            }
+            int index = indexOf(key);
+            if (index >= 0) {
+                if (array[index + 1] == value) {
+                    return this;
+                }
+                Object[] newArray = array.clone();
+                newArray[index + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+            added[0] = true;
+            Object[] newArray = Arrays.copyOf(array, array.length + 2);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Nullable
+        @Override
+        Node remove(int shift, int hash, @NonNull Object key) {
+            int index = indexOf(key);
+            if (index < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 2, newArray, index, newArray.length - index);
+            return new CollisionNode(hash, newArray);
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final int BITS = 5;
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    @Nullable
+    private final Node root;
+
+    private final int size;
+
+    @SuppressWarnings("unchecked")
+    @NonNull
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    private static int bit(int shift, int hash) {
+        return 1 << ((hash >>> shift) & 0x1f);
+    }
+
+    @NonNull
+    private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+        int hash1 = hash(key1);
+        if (hash1 == hash2) {
+            return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+        }
+        boolean[] added = new boolean[1];
+        return BitmapNode.EMPTY.put(shift, hash1, key1, value1, added).put(shift, hash2, key2, value2, added);
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        // spreads the high bits into the low bits, which are consumed first
+        return hash ^ (hash >>> 16);
+    }
+
+    private PersistentHashMap(@Nullable Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    V get(@NonNull K key) {
+        return root == null ? null : (V) root.get(0, hash(key), key);
+    }
+
+    @NonNull
+    PersistentHashMap<K, V> put(@NonNull K key, @NonNull V value) {
+        boolean[] added = new boolean[1];
+        Node newRoot = (root != null ? root : BitmapNode.EMPTY).put(0, hash(key), key, value, added);
+        return newRoot == root ? this : new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    @NonNull
+    PersistentHashMap<K, V> remove(@NonNull K key) {
+        if (root == null) {
+            return this;
+        }
+        Node newRoot = root.remove(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? PersistentHashMap.empty() : new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    int size() {
+        return size;
+    }
+}
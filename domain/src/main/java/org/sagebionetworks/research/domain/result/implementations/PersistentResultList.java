@@ -0,0 +1,385 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.domain.result.implementations;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sagebionetworks.research.domain.result.interfaces.Result;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of results which is indexed by identifier and shares structure with the list it was derived
+ * from, so that a task result can be updated on every step without copying its whole history.
+ * <p>
+ * Results are stored in a 32-way trie by the order they were appended in, their slot. Removing a result leaves its
+ * slot empty, and each node counts the results below it so that results can still be found by their index in the
+ * list. A persistent hash map gives the slot of each identifier. Appending, replacing, removing a result, looking it
+ * up by identifier and finding its index take O(log n), truncating the list takes O(log n) per result removed. The
+ * slots are compacted once most of them are empty.
+ * <p>
+ * As a java.util.List, it is equal to any list of the same results, and is serialized by Gson like any other list.
+ */
+final class PersistentResultList extends AbstractList<Result> implements RandomAccess {
+    /**
+     * A node of the trie. Leaf nodes hold results, null for an empty slot, other nodes hold nodes. Nodes only hold
+     * the children up to the last one used.
+     */
+    private static final class Node {
+        final Object[] children;
+
+        // results below this node
+        final int count;
+
+        Node(Object[] children, int count) {
+            this.children = children;
+            this.count = count;
+        }
+    }
+
+    private static final int BITS = 5;
+
+    private static final int WIDTH = 1 << BITS;
+
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentResultList EMPTY = new PersistentResultList(null, 0, 0,
+            PersistentHashMap.<String, Integer>empty(), false);
+
+    // whether two results have the same identifier, which the index can't tell apart. Only lists which were not
+    // built by appending and replacing can have them, and they are updated by copying instead
+    private final boolean hasDuplicateIdentifiers;
+
+    // slots used, including empty ones
+    private final int nextSlot;
+
+    @Nullable
+    private final Node root;
+
+    // the shift of the root's level, leaves are at 0
+    private final int shift;
+
+    // the slot of the first result with each identifier
+    @NonNull
+    private final PersistentHashMap<String, Integer> slotsByIdentifier;
+
+    /**
+     * Returns the given results as a persistent list, the list itself if it is one.
+     */
+    @NonNull
+    static PersistentResultList copyOf(@NonNull List<Result> results) {
+        if (results instanceof PersistentResultList) {
+            return (PersistentResultList) results;
+        }
+        PersistentResultList list = EMPTY;
+        for (Result result : results) {
+            list = list.append(result);
+        }
+        return list;
+    }
+
+    private static int countResults(Object[] children) {
+        int count = 0;
+        for (Object child : children) {
+            if (child != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int countNodes(Object[] children) {
+        int count = 0;
+        for (Object child : children) {
+            count += ((Node) child).count;
+        }
+        return count;
+    }
+
+    @NonNull
+    private static Node newPath(int shift, @NonNull Result result) {
+        if (shift == 0) {
+            return new Node(new Object[]{result}, 1);
+        }
+        return new Node(new Object[]{newPath(shift - BITS, result)}, 1);
+    }
+
+    private PersistentResultList(@Nullable Node root, int shift, int nextSlot,
+            @NonNull PersistentHashMap<String, Integer> slotsByIdentifier, boolean hasDuplicateIdentifiers) {
+        this.root = root;
+        this.shift = shift;
+        this.nextSlot = nextSlot;
+        this.slotsByIdentifier = slotsByIdentifier;
+        this.hasDuplicateIdentifiers = hasDuplicateIdentifiers;
+    }
+
+    @Override
+    public Result get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            for (Object child : node.children) {
+                int count = ((Node) child).count;
+                if (index < count) {
+                    node = (Node) child;
+                    break;
+                }
+                index -= count;
+            }
+        }
+        for (Object child : node.children) {
+            if (child != null && index-- == 0) {
+                return (Result) child;
+            }
+        }
+        throw new IllegalStateException("Result counts are inconsistent");
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (o instanceof Result) {
+            // a result equal to the first one with its identifier can't be preceded by another equal result
+            Integer slot = slotsByIdentifier.get(((Result) o).getIdentifier());
+            if (slot != null && o.equals(getSlot(slot))) {
+                return rank(slot);
+            }
+        }
+        return super.indexOf(o);
+    }
+
+    @Override
+    public int size() {
+        return root == null ? 0 : root.count;
+    }
+
+    /**
+     * Returns the first result with the given identifier.
+     *
+     * @return the first result with the given identifier, or null if there is none.
+     */
+    @Nullable
+    Result getResult(@NonNull String identifier) {
+        Integer slot = slotsByIdentifier.get(identifier);
+        return slot == null ? null : getSlot(slot);
+    }
+
+    /**
+     * Returns a copy of this list with the first result with the given identifier and all the results after it
+     * removed.
+     */
+    @NonNull
+    PersistentResultList removeFrom(@NonNull String identifier) {
+        Integer slot = slotsByIdentifier.get(identifier);
+        if (slot == null) {
+            return this;
+        }
+        if (hasDuplicateIdentifiers) {
+            List<Result> results = new ArrayList<>(this);
+            results.subList(results.indexOf(getSlot(slot)), results.size()).clear();
+            return copyOf(results);
+        }
+        PersistentHashMap<String, Integer> newSlotsByIdentifier = slotsByIdentifier;
+        for (int i = slot; i < nextSlot; i++) {
+            Result removed = getSlot(i);
+            if (removed != null) {
+                newSlotsByIdentifier = newSlotsByIdentifier.remove(removed.getIdentifier());
+            }
+        }
+        if (slot == 0) {
+            return EMPTY;
+        }
+        return new PersistentResultList(truncate(root, shift, slot), shift, slot, newSlotsByIdentifier, false);
+    }
+
+    /**
+     * Returns a copy of this list with all the results with the same identifier as the given result removed, and the
+     * given result appended.
+     */
+    @NonNull
+    PersistentResultList replaceAndAppend(@NonNull Result result) {
+        if (hasDuplicateIdentifiers) {
+            List<Result> results = new ArrayList<>(size() + 1);
+            for (Result existing : this) {
+                if (!existing.getIdentifier().equals(result.getIdentifier())) {
+                    results.add(existing);
+                }
+            }
+            results.add(result);
+            return copyOf(results);
+        }
+        Integer slot = slotsByIdentifier.get(result.getIdentifier());
+        PersistentResultList list = this;
+        if (slot != null) {
+            list = new PersistentResultList(clear(root, shift, slot), shift, nextSlot,
+                    slotsByIdentifier.remove(result.getIdentifier()), false);
+        }
+        list = list.append(result);
+        // once most slots are empty the trie is rebuilt, which keeps appending amortized O(log n)
+        if (list.nextSlot > 2 * list.size() + WIDTH) {
+            list = EMPTY;
+            for (Result existing : this) {
+                if (!existing.getIdentifier().equals(result.getIdentifier())) {
+                    list = list.append(existing);
+                }
+            }
+            list = list.append(result);
+        }
+        return list;
+    }
+
+    @NonNull
+    private PersistentResultList append(@NonNull Result result) {
+        int slot = nextSlot;
+        boolean duplicate = slotsByIdentifier.get(result.getIdentifier()) != null;
+        // the index keeps the first of several results with the same identifier
+        PersistentHashMap<String, Integer> newSlotsByIdentifier = duplicate ? slotsByIdentifier
+                : slotsByIdentifier.put(result.getIdentifier(), slot);
+        Node newRoot;
+        int newShift = shift;
+        if (root == null) {
+            newRoot = newPath(0, result);
+        } else if (slot == 1 << (shift + BITS)) {
+            // the trie is full, it grows a level
+            newShift = shift + BITS;
+            newRoot = new Node(new Object[]{root, newPath(shift, result)}, root.count + 1);
+        } else {
+            newRoot = append(root, shift, slot, result);
+        }
+        return new PersistentResultList(newRoot, newShift, slot + 1, newSlotsByIdentifier,
+                hasDuplicateIdentifiers || duplicate);
+    }
+
+    @NonNull
+    private Node append(@NonNull Node node, int level, int slot, @NonNull Result result) {
+        int index = (slot >>> level) & MASK;
+        Object[] children = Arrays.copyOf(node.children, Math.max(node.children.length, index + 1));
+        if (level == 0) {
+            children[index] = result;
+        } else if (index < node.children.length) {
+            children[index] = append((Node) node.children[index], level - BITS, slot, result);
+        } else {
+            children[index] = newPath(level - BITS, result);
+        }
+        return new Node(children, node.count + 1);
+    }
+
+    @NonNull
+    private Node clear(@NonNull Node node, int level, int slot) {
+        int index = (slot >>> level) & MASK;
+        Object[] children = node.children.clone();
+        if (level == 0) {
+            children[index] = null;
+        } else {
+            children[index] = clear((Node) children[index], level - BITS, slot);
+        }
+        return new Node(children, node.count - 1);
+    }
+
+    @Nullable
+    private Result getSlot(int slot) {
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.children[(slot >>> level) & MASK];
+        }
+        return (Result) node.children[slot & MASK];
+    }
+
+    // the index in the list of the result in the given slot, the number of results in the slots before it
+    private int rank(int slot) {
+        int rank = 0;
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            int index = (slot >>> level) & MASK;
+            for (int i = 0; i < index; i++) {
+                rank += ((Node) node.children[i]).count;
+            }
+            node = (Node) node.children[index];
+        }
+        for (int i = 0; i < (slot & MASK); i++) {
+            if (node.children[i] != null) {
+                rank++;
+            }
+        }
+        return rank;
+    }
+
+    // keeps the slots before the given one, which must be positive
+    @NonNull
+    private Node truncate(@NonNull Node node, int level, int slot) {
+        int index = ((slot - 1) >>> level) & MASK;
+        Object[] children = Arrays.copyOf(node.children, index + 1);
+        if (level == 0) {
+            return new Node(children, countResults(children));
+        }
+        children[index] = truncate((Node) children[index], level - BITS, slot);
+        return new Node(children, countNodes(children));
+    }
+
+    @NonNull
+    @Override
+    public Iterator<Result> iterator() {
+        // walks the slots rather than looking up each index from the root
+        return new Iterator<Result>() {
+            private int remaining = size();
+
+            private int slot = 0;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public Result next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                Result result;
+                do {
+                    result = getSlot(slot++);
+                } while (result == null);
+                remaining--;
+                return result;
+            }
+        };
+    }
+}
@@ -49,7 +49,6 @@ import org.sagebionetworks.research.domain.step.interfaces.Step;
 import org.threeten.bp.Instant;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
@@ -66,6 +65,11 @@ public class TaskResultBase extends ResultBase implements TaskResult {
     // Subclasses shouldn't hide this field as doing so will result in a gson error.
     private final TaskResultData taskResultData;
 
+    // the step history indexed by identifier. Not serialized, a deserialized task result indexes its step history
+    // on first use
+    @Nullable
+    private transient PersistentResultList indexedStepHistory;
+
     public TaskResultBase(@NonNull String identifier, @NonNull UUID taskRunUUID) {
         this(identifier, Instant.now(), null, taskRunUUID, null, new ArrayList<>(), new ArrayList<>());
     }
@@ -74,7 +78,8 @@ public class TaskResultBase extends ResultBase implements TaskResult {
             @Nullable Instant endDate, @NonNull UUID taskUUID, @Nullable Schema schema,
             @NonNull List<Result> stepHistory, @NonNull List<Result> asyncResults) {
         super(identifier, startDate, endDate == null ? Instant.now() : endDate);
-        this.taskResultData = TaskResultData.create(taskUUID, schema, stepHistory, asyncResults);
+        this.taskResultData = TaskResultData.create(taskUUID, schema, PersistentResultList.copyOf(stepHistory),
+                PersistentResultList.copyOf(asyncResults));
     }
 
     protected TaskResultBase(@NonNull final Result result, @NonNull final TaskResultData data) {
@@ -100,7 +105,7 @@ public class TaskResultBase extends ResultBase implements TaskResult {
     @NonNull
     @Override
     public TaskResultBase addAsyncResult(final Result result) {
-        List<Result> asyncResults = replaceAndAppendResult(this.getAsyncResults(), result);
+        List<Result> asyncResults = PersistentResultList.copyOf(this.getAsyncResults()).replaceAndAppend(result);
         TaskResultData newData = TaskResultData
                 .create(this.getTaskUUID(), this.getSchemaInfo(), this.getStepHistory(),
                         asyncResults);
@@ -110,7 +115,7 @@ public class TaskResultBase extends ResultBase implements TaskResult {
     @NonNull
     @Override
     public TaskResultBase addStepHistory(final Result result) {
-        List<Result> stepHistory = replaceAndAppendResult(this.getStepHistory(), result);
+        List<Result> stepHistory = this.getIndexedStepHistory().replaceAndAppend(result);
         TaskResultData newData = TaskResultData.create(this.taskResultData, stepHistory);
         return new TaskResultBase(this, newData);
     }
@@ -146,13 +151,11 @@ public class TaskResultBase extends ResultBase implements TaskResult {
     @Nullable
     @Override
     public Result getResult(final String identifier) {
-        for (Result result : this.getStepHistory()) {
-            if (result.getIdentifier().equals(identifier)) {
-                return result;
-            }
+        if (identifier == null) {
+            return null;
         }
 
-        return null;
+        return this.getIndexedStepHistory().getResult(identifier);
     }
 
     @Override
@@ -173,20 +176,7 @@ public class TaskResultBase extends ResultBase implements TaskResult {
     @NonNull
     @Override
     public TaskResultBase removeStepHistory(final Result result) {
-        List<Result> stepHistory = new ArrayList<>(this.getStepHistory());
-        Iterator<Result> iterator = stepHistory.iterator();
-        boolean foundResult = false;
-        while (iterator.hasNext()) {
-            Result stepResult = iterator.next();
-            if (!foundResult && stepResult.getIdentifier().equals(result.getIdentifier())) {
-                foundResult = true;
-            }
-
-            if (foundResult) {
-                iterator.remove();
-            }
-        }
-
+        List<Result> stepHistory = this.getIndexedStepHistory().removeFrom(result.getIdentifier());
         TaskResultData newData = TaskResultData.create(this.taskResultData, stepHistory);
         return new TaskResultBase(this, newData);
     }
@@ -194,20 +184,8 @@ public class TaskResultBase extends ResultBase implements TaskResult {
     @Nullable
     @Override
     public TaskResult removeAsyncResult(final Result result) {
-        List<Result> asyncResults = new ArrayList<>(this.getAsyncResults());
-        Iterator<Result> iterator = asyncResults.iterator();
-        boolean foundResult = false;
-        while (iterator.hasNext()) {
-            Result stepResult = iterator.next();
-            if (!foundResult && stepResult.getIdentifier().equals(result.getIdentifier())) {
-                foundResult = true;
-            }
-
-            if (foundResult) {
-                iterator.remove();
-            }
-        }
-
+        List<Result> asyncResults = PersistentResultList.copyOf(this.getAsyncResults())
+                .removeFrom(result.getIdentifier());
         TaskResultData newData = TaskResultData.create(
                 getTaskUUID(), getSchemaInfo(), getStepHistory(), asyncResults);
         return new TaskResultBase(this, newData);
@@ -259,27 +237,14 @@ public class TaskResultBase extends ResultBase implements TaskResult {
     }
 
     /**
-     * Returns a copy of the given list with all occurrences of results with the same identifier as the given result
-     * removed, and then appends the given result to the end of the given list.
-     *
-     * @param list
-     *         The list of results to remove from and append to.
-     * @param result
-     *         The result to remove duplicates of and then append.
-     * @return A copy of the given list with all duplicates of the given result removed and then the result appended
-     *         to the end.
+     * Returns the step history as a persistent list, which is indexed by identifier.
      */
-    private static List<Result> replaceAndAppendResult(List<Result> list, final Result result) {
-        List<Result> returnValue = new ArrayList<>(list);
-        Iterator<Result> iterator = returnValue.iterator();
-        while (iterator.hasNext()) {
-            Result stepResult = iterator.next();
-            if (stepResult.getIdentifier().equals(result.getIdentifier())) {
-                iterator.remove();
-            }
+    @NonNull
+    private PersistentResultList getIndexedStepHistory() {
+        // racing threads index the same immutable list, and either index will do
+        if (this.indexedStepHistory == null) {
+            this.indexedStepHistory = PersistentResultList.copyOf(this.getStepHistory());
         }
-
-        returnValue.add(result);
-        return returnValue;
+        return this.indexedStepHistory;
     }
 }
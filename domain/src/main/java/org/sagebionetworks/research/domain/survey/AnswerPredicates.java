@@ -0,0 +1,146 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.domain.survey;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sagebionetworks.research.domain.survey.SurveyRule.Operator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+
+/**
+ * Compiles the operator and matching answer of a survey rule into a predicate over answers, so that the operator is
+ * resolved once when a task is loaded rather than every time the rule is evaluated.
+ */
+final class AnswerPredicates {
+    /**
+     * A compiled survey rule operator and matching answer.
+     */
+    interface AnswerPredicate {
+        /**
+         * @param answer
+         *         the answer to test, null if the question was skipped.
+         * @return true if the answer matches the rule, false otherwise.
+         */
+        boolean matches(@Nullable Object answer);
+    }
+
+    private static final AnswerPredicate NEVER = answer -> false;
+
+    private static final AnswerPredicate SKIPPED = answer -> answer == null;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnswerPredicates.class);
+
+    /**
+     * Returns the predicate for the given operator and matching answer. An answer which is a collection, e.g. the
+     * choices of a multiple choice question, equals the matching answer if any of its elements does.
+     *
+     * @param operator
+     *         the operator of the rule, equals if null.
+     * @param matchingAnswer
+     *         the answer to compare answers with, which only the skip operator doesn't need.
+     * @return the predicate for the given operator and matching answer.
+     */
+    @NonNull
+    static AnswerPredicate compile(@Nullable @Operator String operator, @Nullable Object matchingAnswer) {
+        if (operator == null) {
+            operator = Operator.EQUALS;
+        }
+        if (Operator.SKIPS.equals(operator)) {
+            return SKIPPED;
+        }
+        if (matchingAnswer == null) {
+            LOGGER.warn("Survey rule with operator {} has no matching answer, it never matches", operator);
+            return NEVER;
+        }
+
+        switch (operator) {
+            case Operator.EQUALS:
+                return answer -> answer != null && containsOrEquals(answer, matchingAnswer);
+            case Operator.NOT_EQUALS:
+                return answer -> answer != null && !containsOrEquals(answer, matchingAnswer);
+            case Operator.LESS_THAN:
+                return answer -> isComparable(answer, matchingAnswer) && compare(answer, matchingAnswer) < 0;
+            case Operator.GREATER_THAN:
+                return answer -> isComparable(answer, matchingAnswer) && compare(answer, matchingAnswer) > 0;
+            case Operator.LESS_THAN_EQUALS:
+                return answer -> isComparable(answer, matchingAnswer) && compare(answer, matchingAnswer) <= 0;
+            case Operator.GREATER_THAN_EQUALS:
+                return answer -> isComparable(answer, matchingAnswer) && compare(answer, matchingAnswer) >= 0;
+            default:
+                LOGGER.warn("Survey rule has unknown operator {}, it never matches", operator);
+                return NEVER;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(@NonNull Object answer, @NonNull Object matchingAnswer) {
+        if (answer instanceof Number && matchingAnswer instanceof Number) {
+            return Double.compare(((Number) answer).doubleValue(), ((Number) matchingAnswer).doubleValue());
+        }
+        return ((Comparable<Object>) answer).compareTo(matchingAnswer);
+    }
+
+    private static boolean containsOrEquals(@NonNull Object answer, @NonNull Object matchingAnswer) {
+        if (answer instanceof Collection) {
+            for (Object element : (Collection<?>) answer) {
+                if (element != null && isEqual(element, matchingAnswer)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return isEqual(answer, matchingAnswer);
+    }
+
+    private static boolean isComparable(@Nullable Object answer, @NonNull Object matchingAnswer) {
+        if (answer instanceof Number && matchingAnswer instanceof Number) {
+            return true;
+        }
+        return answer instanceof Comparable && answer.getClass() == matchingAnswer.getClass();
+    }
+
+    private static boolean isEqual(@NonNull Object answer, @NonNull Object matchingAnswer) {
+        if (answer instanceof Number && matchingAnswer instanceof Number) {
+            // an integer answer equals a decimal matching answer with the same value
+            return ((Number) answer).doubleValue() == ((Number) matchingAnswer).doubleValue();
+        }
+        return answer.equals(matchingAnswer);
+    }
+
+    private AnswerPredicates() {
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.domain.survey;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.sagebionetworks.research.domain.form.interfaces.InputField;
+import org.sagebionetworks.research.domain.result.interfaces.AnswerResult;
+import org.sagebionetworks.research.domain.result.interfaces.CollectionResult;
+import org.sagebionetworks.research.domain.result.interfaces.Result;
+import org.sagebionetworks.research.domain.result.interfaces.TaskResult;
+import org.sagebionetworks.research.domain.step.interfaces.FormUIStep;
+import org.sagebionetworks.research.domain.step.interfaces.SectionStep;
+import org.sagebionetworks.research.domain.step.interfaces.Step;
+import org.sagebionetworks.research.domain.survey.AnswerPredicates.AnswerPredicate;
+import org.sagebionetworks.research.domain.task.navigation.strategy.StepNavigationStrategy.NextStepStrategy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates the survey rules of the input fields of a task's form steps. The rules are compiled once, when the task
+ * is loaded, into a predicate over the answer each rule depends on, so evaluating them takes neither reflection nor
+ * resolving the rule's operator again. Step results are looked up by identifier and their answers indexed by input
+ * field. Results are immutable, so a rule is only evaluated again once the answer it depends on has been replaced.
+ * <p>
+ * The answer to an input field is the input result with the field's identifier in the step's collection result. A
+ * step whose result is an answer result rather than a collection result has only the one answer.
+ */
+public final class SurveyRuleEngine {
+    /**
+     * The outcome of a rule for one answer.
+     */
+    private static final class Evaluation {
+        @Nullable
+        final Result input;
+
+        @Nullable
+        final String skipToIdentifier;
+
+        Evaluation(@Nullable Result input, @Nullable String skipToIdentifier) {
+            this.input = input;
+            this.skipToIdentifier = skipToIdentifier;
+        }
+    }
+
+    /**
+     * A rule compiled for evaluation, which keeps its last evaluation for as long as its input is unchanged.
+     */
+    private abstract static class CompiledRule {
+        @Nullable
+        private volatile Evaluation lastEvaluation;
+
+        /**
+         * Returns the outcome of the rule for the given input result, from the last evaluation if the input is the
+         * same result as then.
+         */
+        @NonNull
+        final Evaluation getEvaluation(@Nullable Result input) {
+            Evaluation evaluation = this.lastEvaluation;
+            if (evaluation == null || evaluation.input != input) {
+                evaluation = this.evaluate(input);
+                this.lastEvaluation = evaluation;
+            }
+            return evaluation;
+        }
+
+        @NonNull
+        abstract Evaluation evaluate(@Nullable Result input);
+    }
+
+    /**
+     * A rule which is evaluated by the rule itself.
+     */
+    private static final class DelegatingRule extends CompiledRule {
+        @NonNull
+        private final SurveyRule rule;
+
+        DelegatingRule(@NonNull SurveyRule rule) {
+            this.rule = rule;
+        }
+
+        @NonNull
+        @Override
+        Evaluation evaluate(@Nullable Result input) {
+            if (input == null) {
+                return new Evaluation(null, null);
+            }
+            return new Evaluation(input, this.rule.evaluateRule(input));
+        }
+    }
+
+    /**
+     * A rule which matches answers against a compiled predicate.
+     */
+    private static final class MatchingRule extends CompiledRule {
+        @NonNull
+        private final AnswerPredicate predicate;
+
+        @Nullable
+        private final String skipToIdentifier;
+
+        MatchingRule(@NonNull MatchingAnswerSurveyRule rule) {
+            this.predicate = AnswerPredicates.compile(rule.getSurveyRuleOperator(), rule.getMatchingAnswer());
+            if (rule.getSkipToIdentifier() == null && rule.getCohort() == null) {
+                // A rule without a cohort or a step to skip to ends the task.
+                this.skipToIdentifier = NextStepStrategy.Identifiers.Exit.getKey();
+            } else {
+                this.skipToIdentifier = rule.getSkipToIdentifier();
+            }
+        }
+
+        @NonNull
+        @Override
+        Evaluation evaluate(@Nullable Result input) {
+            Object answer = input instanceof AnswerResult ? ((AnswerResult<?>) input).getAnswer() : null;
+            return new Evaluation(input, this.predicate.matches(answer) ? this.skipToIdentifier : null);
+        }
+    }
+
+    /**
+     * The rules of one form step, with the answers of the step result they were last evaluated with.
+     */
+    private static final class StepRules {
+        /**
+         * The answers to each input field of a step result.
+         */
+        private static final class Answers {
+            @NonNull
+            final Result[] inputs;
+
+            @NonNull
+            final Result stepResult;
+
+            Answers(@NonNull Result stepResult, @NonNull Result[] inputs) {
+                this.stepResult = stepResult;
+                this.inputs = inputs;
+            }
+        }
+
+        // the identifier of each input field with rules
+        @NonNull
+        private final String[] inputIdentifiers;
+
+        @Nullable
+        private volatile Answers lastAnswers;
+
+        // the rules of each input field, in the order of inputIdentifiers
+        @NonNull
+        private final CompiledRule[][] rules;
+
+        @NonNull
+        private final String stepIdentifier;
+
+        StepRules(@NonNull String stepIdentifier, @NonNull Map<String, List<CompiledRule>> rulesByInput) {
+            this.stepIdentifier = stepIdentifier;
+            this.inputIdentifiers = rulesByInput.keySet().toArray(new String[0]);
+            this.rules = new CompiledRule[this.inputIdentifiers.length][];
+            for (int i = 0; i < this.inputIdentifiers.length; i++) {
+                this.rules[i] = rulesByInput.get(this.inputIdentifiers[i]).toArray(new CompiledRule[0]);
+            }
+        }
+
+        /**
+         * Returns the answers to the input fields with rules, or null if the step has no result yet.
+         */
+        @Nullable
+        Answers getAnswers(@NonNull TaskResult taskResult) {
+            Result stepResult = taskResult.getResult(this.stepIdentifier);
+            if (stepResult == null) {
+                return null;
+            }
+            Answers answers = this.lastAnswers;
+            if (answers != null && answers.stepResult == stepResult) {
+                return answers;
+            }
+
+            Result[] inputs = new Result[this.inputIdentifiers.length];
+            if (stepResult instanceof CollectionResult) {
+                Map<String, Result> inputResults = new LinkedHashMap<>();
+                for (Result inputResult : ((CollectionResult) stepResult).getInputResults()) {
+                    if (!inputResults.containsKey(inputResult.getIdentifier())) {
+                        inputResults.put(inputResult.getIdentifier(), inputResult);
+                    }
+                }
+                for (int i = 0; i < inputs.length; i++) {
+                    inputs[i] = inputResults.get(this.inputIdentifiers[i]);
+                }
+            } else {
+                for (int i = 0; i < inputs.length; i++) {
+                    inputs[i] = stepResult;
+                }
+            }
+            answers = new Answers(stepResult, inputs);
+            this.lastAnswers = answers;
+            return answers;
+        }
+    }
+
+    private static final SurveyRuleEngine EMPTY = new SurveyRuleEngine(ImmutableMap.<String, StepRules>of());
+
+    // the rules of each form step with rules, by step identifier
+    @NonNull
+    private final ImmutableMap<String, StepRules> rulesByStepIdentifier;
+
+    /**
+     * Compiles the survey rules of the input fields of the given steps, and of the steps within their sections.
+     *
+     * @param steps
+     *         the steps of the task.
+     * @return the engine evaluating the rules of the given steps.
+     */
+    @NonNull
+    public static SurveyRuleEngine compile(@NonNull List<Step> steps) {
+        ImmutableMap.Builder<String, StepRules> rulesByStepIdentifier = ImmutableMap.builder();
+        addStepRules(steps, rulesByStepIdentifier);
+        ImmutableMap<String, StepRules> rules = rulesByStepIdentifier.build();
+        return rules.isEmpty() ? EMPTY : new SurveyRuleEngine(rules);
+    }
+
+    private static void addStepRules(@Nullable List<Step> steps,
+            @NonNull ImmutableMap.Builder<String, StepRules> rulesByStepIdentifier) {
+        if (steps == null) {
+            return;
+        }
+        for (Step step : steps) {
+            if (step instanceof SectionStep) {
+                addStepRules(((SectionStep) step).getSteps(), rulesByStepIdentifier);
+            } else if (step instanceof FormUIStep) {
+                Map<String, List<CompiledRule>> rulesByInput = new LinkedHashMap<>();
+                for (InputField<?> inputField : ((FormUIStep) step).getInputFields()) {
+                    List<? extends SurveyRule> surveyRules = inputField.getSurveyRules();
+                    if (surveyRules == null || surveyRules.isEmpty()) {
+                        continue;
+                    }
+                    // An input field without an identifier is the step's only question.
+                    String inputIdentifier = inputField.getIdentifier() != null ? inputField.getIdentifier()
+                            : step.getIdentifier();
+                    List<CompiledRule> rules = rulesByInput.get(inputIdentifier);
+                    if (rules == null) {
+                        rules = new ArrayList<>();
+                        rulesByInput.put(inputIdentifier, rules);
+                    }
+                    for (SurveyRule surveyRule : surveyRules) {
+                        rules.add(surveyRule instanceof MatchingAnswerSurveyRule ?
+                                new MatchingRule((MatchingAnswerSurveyRule) surveyRule)
+                                : new DelegatingRule(surveyRule));
+                    }
+                }
+                if (!rulesByInput.isEmpty()) {
+                    rulesByStepIdentifier.put(step.getIdentifier(), new StepRules(step.getIdentifier(),
+                            rulesByInput));
+                }
+            }
+        }
+    }
+
+    private SurveyRuleEngine(@NonNull ImmutableMap<String, StepRules> rulesByStepIdentifier) {
+        this.rulesByStepIdentifier = rulesByStepIdentifier;
+    }
+
+    /**
+     * Returns the identifier of the step to go to after the given step, from the first of its rules which matches
+     * its answers.
+     *
+     * @param step
+     *         the step whose rules to evaluate.
+     * @param taskResult
+     *         the task result with the step's result.
+     * @return the identifier of the step to go to, or null if no rule matches, the step has no rules or no result.
+     */
+    @Nullable
+    public String getNextStepIdentifier(@NonNull Step step, @NonNull TaskResult taskResult) {
+        StepRules stepRules = this.rulesByStepIdentifier.get(step.getIdentifier());
+        StepRules.Answers answers = stepRules == null ? null : stepRules.getAnswers(taskResult);
+        if (answers == null) {
+            return null;
+        }
+
+        for (int i = 0; i < stepRules.rules.length; i++) {
+            for (CompiledRule rule : stepRules.rules[i]) {
+                String skipToIdentifier = rule.getEvaluation(answers.inputs[i]).skipToIdentifier;
+                if (skipToIdentifier != null) {
+                    return skipToIdentifier;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -67,6 +67,9 @@ public class OrderedStepNavigator implements StepNavigator {
     private static final Logger LOGGER = LoggerFactory.getLogger(
             OrderedStepNavigator.class);
 
+    // the position of each step, which progress is given by
+    private final StepPositions stepPositions;
+
     private final ImmutableList<Step> steps;
 
     private final ImmutableMap<String, Step> stepsById;
@@ -79,6 +82,7 @@ public class OrderedStepNavigator implements StepNavigator {
             mapBuilder.put(step.getIdentifier(), step);
         }
         this.stepsById = mapBuilder.build();
+        this.stepPositions = new StepPositions(this.steps);
     }
 
     @Override
@@ -94,7 +98,7 @@ public class OrderedStepNavigator implements StepNavigator {
         int nextStepIndex = 0;
 
         if (step != null) {
-            int stepIndex = steps.indexOf(step);
+            int stepIndex = stepPositions.indexOf(step);
             if (stepIndex < 0) {
                 LOGGER.warn("Unable to locate step: " + step + ", returning null for next step");
                 return null;
@@ -116,7 +120,7 @@ public class OrderedStepNavigator implements StepNavigator {
         //TODO: ask Shannon how stepHistory works. does it pop off like backstack? does moving
         // backwards append to step history?
 
-        int stepIndex = steps.indexOf(step);
+        int stepIndex = stepPositions.indexOf(step);
 
         if (stepIndex < 0) {
             LOGGER.warn("Unable to locate step: " + step + ", returning null for previous step");
@@ -131,7 +135,7 @@ public class OrderedStepNavigator implements StepNavigator {
     @NonNull
     @Override
     public TaskProgress getProgress(@NonNull final Step step, @NonNull TaskResult taskResult) {
-        int stepNumber = steps.indexOf(step) + 1;
+        int stepNumber = stepPositions.indexOf(step) + 1;
         int totalSteps = steps.size();
         return new TaskProgress(stepNumber, totalSteps, false);
     }
@@ -0,0 +1,87 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.domain.task.navigation;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sagebionetworks.research.domain.step.interfaces.Step;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The position of each step in a list of steps, which finds a step in constant time where List.indexOf() compares it
+ * with every step before it. Like List.indexOf(), a step equal to several steps in the list is at the position of the
+ * first of them.
+ */
+final class StepPositions {
+    // the position of each step, equal steps share the position of the first of them
+    @NonNull
+    private final Map<Step, Integer> positionsByStep = new HashMap<>();
+
+    // the same positions by instance, which saves hashing the steps as navigators are usually given their own steps
+    @NonNull
+    private final Map<Step, Integer> positionsByInstance = new IdentityHashMap<>();
+
+    StepPositions(@NonNull List<? extends Step> steps) {
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            Integer position = this.positionsByStep.get(step);
+            if (position == null) {
+                position = i;
+                this.positionsByStep.put(step, position);
+            }
+            if (!this.positionsByInstance.containsKey(step)) {
+                this.positionsByInstance.put(step, position);
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the first step equal to the given step.
+     *
+     * @param step
+     *         The step to find.
+     * @return The position of the first step equal to the given step, or -1 if there is none.
+     */
+    int indexOf(@Nullable Step step) {
+        Integer position = this.positionsByInstance.get(step);
+        if (position == null) {
+            position = this.positionsByStep.get(step);
+        }
+        return position == null ? -1 : position;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.domain.task.navigation;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.sagebionetworks.research.domain.result.interfaces.Result;
+import org.sagebionetworks.research.domain.result.interfaces.TaskResult;
+import org.sagebionetworks.research.domain.step.interfaces.Step;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the progress of a task from its step history. Rather than going through the whole step history on every
+ * step, the tracker keeps running counts of the identifiers in the last step history it was given, and updates them
+ * with the results which were added or removed since. From step to step a result is appended, replaced by one with
+ * the same identifier at the end, or the results after a step are removed. These changes are told apart by
+ * comparing the results at the end of the two step histories, so progress is found in constant time for each result
+ * added or removed, and any other change counts the step history again. Like task results, step histories are
+ * immutable, so a step history the tracker has already seen is not gone through again.
+ * <p>
+ * With progress markers, the progress is the position of the last marker which has been reached, either in the step
+ * history or by the current step. Without them, it is estimated from the number of steps which have been finished
+ * out of the steps of the task and any other steps in the step history.
+ */
+final class TaskProgressTracker {
+    // the position of each progress marker, the last one for a marker which is listed more than once. Null when
+    // progress is estimated
+    @Nullable
+    private final ImmutableMap<String, Integer> markerPositions;
+
+    // the number of results in the step history for each progress marker position
+    @NonNull
+    private final int[] markerResultCounts;
+
+    // the number of results in the step history for each identifier
+    @NonNull
+    private final Map<String, Integer> resultCountsByIdentifier = new HashMap<>();
+
+    // the identifiers of the task's steps, including section steps
+    @NonNull
+    private final ImmutableSet<String> stepIdentifiers;
+
+    // the last position of a progress marker in the step history, -1 if there is none
+    private int lastMarkerPosition = -1;
+
+    // the number of identifiers in the step history which aren't the identifier of one of the task's steps
+    private int otherIdentifierCount;
+
+    // the step history the counts are of
+    @NonNull
+    private List<Result> trackedStepHistory = ImmutableList.of();
+
+    /**
+     * @param stepIdentifiers
+     *         The identifiers of the task's steps, including section steps.
+     * @param progressMarkers
+     *         The identifiers of the steps which mark the progress through the task, or null to estimate progress
+     *         from the steps of the task.
+     */
+    TaskProgressTracker(@NonNull ImmutableSet<String> stepIdentifiers, @Nullable List<String> progressMarkers) {
+        this.stepIdentifiers = stepIdentifiers;
+        if (progressMarkers == null) {
+            this.markerPositions = null;
+            this.markerResultCounts = new int[0];
+        } else {
+            Map<String, Integer> markerPositions = new HashMap<>();
+            for (int i = 0; i < progressMarkers.size(); i++) {
+                markerPositions.put(progressMarkers.get(i), i);
+            }
+            this.markerPositions = ImmutableMap.copyOf(markerPositions);
+            this.markerResultCounts = new int[progressMarkers.size()];
+        }
+    }
+
+    /**
+     * Returns the progress through the task at the given step.
+     *
+     * @param step
+     *         The current step, whose result may not have been added to the step history yet.
+     * @param taskResult
+     *         The task result to compute the progress from.
+     * @return The progress through the task, or null if no progress marker has been reached yet or the step is past
+     * the last progress marker.
+     */
+    @Nullable
+    synchronized TaskProgress getProgress(@NonNull Step step, @NonNull TaskResult taskResult) {
+        this.track(taskResult.getStepHistory());
+
+        if (this.markerPositions != null) {
+            Integer stepMarkerPosition = this.markerPositions.get(step.getIdentifier());
+            int idx = this.lastMarkerPosition;
+            if (stepMarkerPosition != null && stepMarkerPosition > idx) {
+                idx = stepMarkerPosition;
+            }
+            if (idx == -1) {
+                return null;
+            }
+
+            int current = idx + 1;
+            if (current == this.markerResultCounts.length && stepMarkerPosition == null) {
+                // If this is the last step in the progress markers and we are beyond the step we
+                // return null.
+                return null;
+            }
+
+            return new TaskProgress(current, this.markerResultCounts.length, false);
+        }
+
+        // The total is the number of steps in the task and of any other steps which have been finished.
+        int total = this.stepIdentifiers.size() + this.otherIdentifierCount;
+        // The current step hasn't been finished so it isn't counted, and progress is 1 indexed.
+        int finished = this.resultCountsByIdentifier.size();
+        if (this.resultCountsByIdentifier.containsKey(step.getIdentifier())) {
+            finished--;
+        }
+        return new TaskProgress(finished + 1, total, true);
+    }
+
+    /**
+     * Updates the counts from the last step history the tracker was given to the given step history.
+     */
+    private void track(@NonNull List<Result> stepHistory) {
+        List<Result> trackedStepHistory = this.trackedStepHistory;
+        if (stepHistory == trackedStepHistory) {
+            return;
+        }
+
+        int trackedSize = trackedStepHistory.size();
+        int size = stepHistory.size();
+        if (size == trackedSize + 1 && startsWith(stepHistory, trackedStepHistory)) {
+            // a result was appended
+            this.add(stepHistory.get(trackedSize).getIdentifier());
+        } else if (size < trackedSize && startsWith(trackedStepHistory, stepHistory)) {
+            // the results after a step were removed
+            for (int i = trackedSize - 1; i >= size; i--) {
+                this.remove(trackedStepHistory.get(i).getIdentifier());
+            }
+        } else if (size != trackedSize || !isReplacement(trackedStepHistory, stepHistory)) {
+            // any other change is counted again from the start
+            this.clear();
+            for (Result result : stepHistory) {
+                this.add(result.getIdentifier());
+            }
+        }
+        // else a result was replaced by one with the same identifier, which leaves the counts as they are
+        this.trackedStepHistory = stepHistory;
+    }
+
+    /**
+     * Returns whether the step history is the same as the given one, except for one result which was replaced by
+     * a result with the same identifier at the end, as TaskResult.addStepHistory() does. Only the results at the
+     * end are compared, which is enough to tell replacing a result apart from the other changes made from step to
+     * step.
+     */
+    private boolean isReplacement(@NonNull List<Result> trackedStepHistory, @NonNull List<Result> stepHistory) {
+        int size = stepHistory.size();
+        if (size == 0) {
+            return false;
+        }
+        Result last = stepHistory.get(size - 1);
+        Result trackedLast = trackedStepHistory.get(size - 1);
+        if (!this.resultCountsByIdentifier.containsKey(last.getIdentifier())) {
+            return false;
+        }
+        if (last.getIdentifier().equals(trackedLast.getIdentifier())) {
+            // the last result was replaced
+            return size == 1 || stepHistory.get(size - 2) == trackedStepHistory.get(size - 2);
+        }
+        // an earlier result was removed, so the results after it moved up one
+        return size > 1 && stepHistory.get(size - 2) == trackedLast;
+    }
+
+    /**
+     * Returns whether the step history starts with the results of the given one, as judged by its last result.
+     */
+    private static boolean startsWith(@NonNull List<Result> stepHistory, @NonNull List<Result> prefix) {
+        int prefixSize = prefix.size();
+        return prefixSize == 0 || stepHistory.get(prefixSize - 1) == prefix.get(prefixSize - 1);
+    }
+
+    private void add(@NonNull String identifier) {
+        Integer count = this.resultCountsByIdentifier.get(identifier);
+        if (count == null) {
+            count = 0;
+            if (!this.stepIdentifiers.contains(identifier)) {
+                this.otherIdentifierCount++;
+            }
+        }
+        this.resultCountsByIdentifier.put(identifier, count + 1);
+
+        Integer markerPosition = this.markerPositions == null ? null : this.markerPositions.get(identifier);
+        if (markerPosition != null) {
+            this.markerResultCounts[markerPosition]++;
+            this.lastMarkerPosition = Math.max(this.lastMarkerPosition, markerPosition);
+        }
+    }
+
+    private void clear() {
+        this.resultCountsByIdentifier.clear();
+        Arrays.fill(this.markerResultCounts, 0);
+        this.lastMarkerPosition = -1;
+        this.otherIdentifierCount = 0;
+    }
+
+    private void remove(@NonNull String identifier) {
+        int count = this.resultCountsByIdentifier.get(identifier);
+        if (count == 1) {
+            this.resultCountsByIdentifier.remove(identifier);
+            if (!this.stepIdentifiers.contains(identifier)) {
+                this.otherIdentifierCount--;
+            }
+        } else {
+            this.resultCountsByIdentifier.put(identifier, count - 1);
+        }
+
+        Integer markerPosition = this.markerPositions == null ? null : this.markerPositions.get(identifier);
+        if (markerPosition != null) {
+            this.markerResultCounts[markerPosition]--;
+            // the last marker reached goes back to the marker before it which has a result
+            while (this.lastMarkerPosition >= 0 && this.markerResultCounts[this.lastMarkerPosition] == 0) {
+                this.lastMarkerPosition--;
+            }
+        }
+    }
+}
@@ -5,21 +5,71 @@ import androidx.annotation.Nullable;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
 
-import org.sagebionetworks.research.domain.result.interfaces.Result;
 import org.sagebionetworks.research.domain.result.interfaces.TaskResult;
 import org.sagebionetworks.research.domain.step.interfaces.SectionStep;
 import org.sagebionetworks.research.domain.step.interfaces.Step;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
-
+import java.util.Map;
+
+/**
+ * Navigates the steps of a task in order, descending into SectionSteps. The tree of steps is compiled once when the
+ * navigator is constructed, into the order of its steps going forwards and going backwards with the leaf which
+ * follows each step, so that the next and previous step are found with a map lookup rather than by traversing the
+ * tree, however deep its sections are nested.
+ */
 public class TreeNavigator implements StepNavigator {
+    /**
+     * The steps of the tree in one traversal order, with the first leaf after each of them in that order.
+     */
+    private static final class LeafOrder {
+        // the first leaf in this order, null if there are none
+        @Nullable
+        private final Step firstLeaf;
+
+        // the first leaf after each position in this order, null if there are none
+        @NonNull
+        private final Step[] leavesAfter;
+
+        // the position of each step in this order
+        @NonNull
+        private final StepPositions positions;
+
+        private LeafOrder(@NonNull List<Node> nodes) {
+            this.leavesAfter = new Step[nodes.size()];
+            Step leafAfter = null;
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                this.leavesAfter[i] = leafAfter;
+                if (nodes.get(i).isLeaf()) {
+                    leafAfter = nodes.get(i).step;
+                }
+            }
+            this.firstLeaf = leafAfter;
+
+            List<Step> steps = new ArrayList<>(nodes.size());
+            for (Node node : nodes) {
+                steps.add(node.step);
+            }
+            this.positions = new StepPositions(steps);
+        }
+
+        /**
+         * Returns the first leaf after the first step equal to the given step in this order.
+         *
+         * @param step
+         *         The step to find the leaf after.
+         * @return The first leaf after the given step, or null if there is none or the step is not in the tree.
+         */
+        @Nullable
+        private Step getLeafAfter(@NonNull Step step) {
+            int position = this.positions.indexOf(step);
+            return position < 0 ? null : this.leavesAfter[position];
+        }
+    }
 
     /*
      * A class to represent a single node in the TreeNavigator
@@ -130,6 +180,26 @@ public class TreeNavigator implements StepNavigator {
                 }
             }
         }
+
+        /**
+         * @return all the nodes within the tree in reverse pre-order, each node before its children, and the
+         *         children from last to first
+         */
+        @NonNull
+        private List<Node> findAllNodesInReverse() {
+            List<Node> nodes = new ArrayList<>();
+            findAllNodesInReverseRecursively(nodes);
+            return nodes;
+        }
+
+        private void findAllNodesInReverseRecursively(List<Node> nodeListByRef) {
+            nodeListByRef.add(this);
+            if (children != null) {
+                for (Node child : children.reverse()) {
+                    child.findAllNodesInReverseRecursively(nodeListByRef);
+                }
+            }
+        }
     }
 
     /**
@@ -137,22 +207,27 @@ public class TreeNavigator implements StepNavigator {
      */
     public static final String SECTION_STEP_PREFIX_SEPARATOR = "_";
 
-    // Stores the list of progressMarkers which are the identifiers of the steps which count
-    // towards computing the progress. An empty list represents the absence of progress markers,
-    // while null represents that the navigator should attempt to estimate the progress without the
-    // use of any progress markers.
-    @Nullable
-    private final ImmutableList<String> progressMarkers;
+    // The steps in pre-order, which the next step is found in.
+    @NonNull
+    private final LeafOrder forwardOrder;
+
+    // A map from the last part of a nested step's identifier to the step, e.g. "a" to the step "1_a" within the
+    // section "1", see isValidNestedStep().
+    @NonNull
+    private final ImmutableMap<String, Step> nestedStepsById;
+
+    // Computes the progress through the task from the step history, from the progress markers if there are any.
+    @NonNull
+    private final TaskProgressTracker progressTracker;
 
-    // The root of the tree navigator.
+    // The steps in reverse pre-order, which the previous step is found in.
     @NonNull
-    private final TreeNavigator.Node root;
+    private final LeafOrder reverseOrder;
 
     // A map from step identifier to step.
     @NonNull
     private final ImmutableMap<String, Step> stepsById;
 
-
     /**
      * Constructs a TreeNavigator from the given list of steps, and the given progress markers
      *
@@ -162,9 +237,16 @@ public class TreeNavigator implements StepNavigator {
      *         The list of progressMarkers to construct this TreeNavigator from.
      */
     public TreeNavigator(@NonNull List<Step> steps, @Nullable List<String> progressMarkers) {
-        this.root = new Node(steps);
-        this.progressMarkers = progressMarkers == null ? null : ImmutableList.copyOf(progressMarkers);
+        Node root = new Node(steps);
         this.stepsById = buildStepsByID(steps);
+        // An empty list of progress markers represents the absence of progress markers, while null represents that
+        // the navigator should attempt to estimate the progress without the use of any progress markers.
+        this.progressTracker = new TaskProgressTracker(this.stepsById.keySet(), progressMarkers);
+
+        List<Node> nodes = withoutRoot(root.findAllNodes());
+        this.forwardOrder = new LeafOrder(nodes);
+        this.reverseOrder = new LeafOrder(withoutRoot(root.findAllNodesInReverse()));
+        this.nestedStepsById = buildNestedStepsById(nodes);
     }
 
     @Nullable
@@ -174,25 +256,34 @@ public class TreeNavigator implements StepNavigator {
         if (step == null) {
             // Due to the way that SectionStep's sub-step identifiers are created in ResourceTaskRepository.
             // There may be some step identifiers that are prefixed with their sub-step identifiers.
-            // However, we can detect for that scenario with isNestedWithinSectionSteps function.
-            step = findStepNestedWithinSectionSteps(identifier);
+            // However, we can detect for that scenario with isValidNestedStep function.
+            step = this.nestedStepsById.get(identifier);
         }
         return step;
     }
 
     /**
-     * @param identifier to find at the end of the stepIdentifierPath
-     * @return true if we found the sub-step identifier at the end of the path,
-     *         and each part of the path is a section step containing the next part of the path.
+     * Returns a map from the last part of the identifier of every valid nested step to the first such step in the
+     * given nodes.
+     *
+     * @param nodes
+     *         The nodes of the tree in pre-order.
+     * @return A map from the last part of the identifier of every valid nested step to the step.
      */
-    @Nullable
-    private Step findStepNestedWithinSectionSteps(@NonNull String identifier) {
-        for (Node node: root.findAllNodes()) {
-            if (isValidNestedStep(node, identifier)) {
-                return node.step;
+    @NonNull
+    private ImmutableMap<String, Step> buildNestedStepsById(@NonNull List<Node> nodes) {
+        Map<String, Step> nestedStepsById = new HashMap<>();
+        for (Node node : nodes) {
+            String[] stepIdentifierPath = node.step.getIdentifier().split(SECTION_STEP_PREFIX_SEPARATOR);
+            if (stepIdentifierPath.length == 0) {
+                continue;
+            }
+            String identifier = stepIdentifierPath[stepIdentifierPath.length - 1];
+            if (!nestedStepsById.containsKey(identifier) && isValidNestedStep(node, identifier)) {
+                nestedStepsById.put(identifier, node.step);
             }
         }
-        return null;
+        return ImmutableMap.copyOf(nestedStepsById);
     }
 
     /**
@@ -225,6 +316,11 @@ public class TreeNavigator implements StepNavigator {
         // match how we expect the ResourceTaskRepository to make them.
         Node parentNode = node;
         do {
+            // If the path runs out before the sections do, it is not valid.
+            if (pathIndex <= 0) {
+                return false;
+            }
+
             // Build the full identifier we expect for this node
             List<String> currentPathToNode = stepIdentifierPath.subList(0, pathIndex);
             String stepIdentifier = join(SECTION_STEP_PREFIX_SEPARATOR, currentPathToNode);
@@ -261,70 +357,22 @@ public class TreeNavigator implements StepNavigator {
     @NonNull
     @Override
     public StepAndNavDirection getNextStep(@Nullable Step step, @NonNull TaskResult taskResult) {
-        Step nextStep = nextStepHelper(step, this.root, new AtomicBoolean(false));
+        // The next step is the first leaf after the given step in a pre-order traversal of the tree.
+        Step nextStep = step == null ? this.forwardOrder.firstLeaf : this.forwardOrder.getLeafAfter(step);
         return new StepAndNavDirection(nextStep, NavDirection.SHIFT_LEFT);
     }
 
     @Nullable
     @Override
     public Step getPreviousStep(@NonNull Step step, @NonNull TaskResult taskResult) {
-        return previousStepHelper(step, this.root, new AtomicBoolean(false));
+        // The previous step is the first leaf after the given step in a reverse pre-order traversal of the tree.
+        return step == null ? null : this.reverseOrder.getLeafAfter(step);
     }
 
     @Nullable
     @Override
     public TaskProgress getProgress(@NonNull final Step step, @NonNull TaskResult taskResult) {
-        if (this.progressMarkers != null) {
-            // Get the list of steps that have executed, and add the current step in case it hasn't
-            // been added to the step history yet.
-            List<String> stepIdentifiers = new ArrayList<>();
-            for (Result result : taskResult.getStepHistory()) {
-                stepIdentifiers.add(result.getIdentifier());
-            }
-            stepIdentifiers.add(step.getIdentifier());
-
-            int idx = this.getLastIndexInMarkers(stepIdentifiers);
-            if (idx == -1) {
-                return null;
-            }
-
-            int current = idx + 1;
-            if (current == this.progressMarkers.size() &&
-                    !this.progressMarkers.contains(step.getIdentifier())) {
-                // If this is the last step in the progress markers and we are beyond the step we
-                // return null.
-                return null;
-            }
-
-            // The progress is the current step index, out of the total number of markers, and it
-            // isn't estimated.
-            return new TaskProgress(current, this.progressMarkers.size(), false);
-        }
-
-        // If there are no progress markers, default to using the total number of steps, and the
-        // result to figure out how many have gone.
-        ImmutableSet<String> stepIDs = this.stepsById.keySet();
-        Set<String> finishedStepIDs = new HashSet<>();
-        for (Result result : taskResult.getStepHistory()) {
-            finishedStepIDs.add(result.getIdentifier());
-        }
-
-        // The union total will store the number of elements in both sets.
-        int unionTotal = 0;
-        for (String stepID : finishedStepIDs) {
-            if (stepIDs.contains(stepID)) {
-                unionTotal++;
-            }
-        }
-
-        // The number of unique elements across both sets is the total.
-        int total = stepIDs.size() + finishedStepIDs.size() - unionTotal;
-        // The current step hasn't been finished so we remove it.
-        finishedStepIDs.remove(step.getIdentifier());
-        // We add one here because the progress should be 1 indexed.
-        int current = finishedStepIDs.size() + 1;
-        return new TaskProgress(current, total, true);
-
+        return this.progressTracker.getProgress(step, taskResult);
     }
 
     @NonNull
@@ -333,27 +381,6 @@ public class TreeNavigator implements StepNavigator {
         return new ArrayList<>(this.stepsById.values());
     }
 
-    /**
-     * Returns the last index in the progress markers such that the given list of identifiers contains the progress
-     * marker at this index.
-     *
-     * @param identifiers
-     *         The list of identifiers to check against the progress markers.
-     * @return The last index in the progress markers such that the given list of identifiers contains the progress
-     * marker at this index.
-     */
-    private int getLastIndexInMarkers(List<String> identifiers) {
-        if (this.progressMarkers != null) {
-            for (int i = this.progressMarkers.size() - 1; i >= 0; i--) {
-                if (identifiers.contains(progressMarkers.get(i))) {
-                    return i;
-                }
-            }
-        }
-
-        return -1;
-    }
-
     /**
      * Adds the given step and all of its substeps to the given builder.
      *
@@ -393,86 +420,20 @@ public class TreeNavigator implements StepNavigator {
     }
 
     /**
-     * Returns the first leaf step that appears after the given initialStep, in this TreeNavigator. After is defined
-     * as the next leaf in a pre-order traversal of the tree.
+     * Returns the given nodes without the root, or any other node without a step.
      *
-     * @param initialStep
-     *         The step to find the step after.
-     * @param current
-     *         The step that is being evaluated by this call to nextStepHelper().
-     * @param hasFoundInitial
-     *         True if the initialStep has already been encountered by a parent recursive call of this call to
-     *         nextStepHelper(), false otherwise.
-     * @return The first leaf step that appears after the given initialStep, or null if no such step exists.
+     * @param nodes
+     *         The nodes to remove the root from.
+     * @return The given nodes which have a step.
      */
-    @Nullable
-    private static Step nextStepHelper(@Nullable Step initialStep, @Nullable Node current,
-            AtomicBoolean hasFoundInitial) {
-        if (current == null) {
-            return null;
-        }
-
-        if (current.step != null) {
-            if ((initialStep == null || hasFoundInitial.get()) && current.isLeaf()) {
-                return current.step;
-            }
-
-            if (current.step.equals(initialStep)) {
-                hasFoundInitial.set(true);
-            }
-        }
-
-        if (current.children != null) {
-            for (Node child : current.children) {
-                Step found = nextStepHelper(initialStep, child, hasFoundInitial);
-                if (found != null) {
-                    return found;
-                }
-            }
-        }
-
-        return null;
-    }
-
-    /**
-     * Returns the first leaf step that appears before the given initialStep, in this TreeNavigator. Before is defined
-     * as the next leaf in a reverse pre-order traversal of the tree.
-     *
-     * @param initialStep
-     *         The step to find the step before.
-     * @param current
-     *         The step that is being evaluated by this call to previousStepHelper().
-     * @param hasFoundInitial
-     *         True if the initialStep has already been encountered by a parent recursive call of this call to
-     *         previousStepHelper(), false otherwise.
-     * @return The first leaf step that appears before the given initialStep, or null if no such step exists.
-     */
-    @Nullable
-    private static Step previousStepHelper(@Nullable Step initialStep, @Nullable Node current,
-            AtomicBoolean hasFoundInitial) {
-        if (current == null) {
-            return null;
-        }
-
-        if (current.step != null) {
-            if (hasFoundInitial.get() && current.isLeaf()) {
-                return current.step;
-            }
-
-            if (current.step.equals(initialStep)) {
-                hasFoundInitial.set(true);
-            }
-        }
-
-        if (current.children != null) {
-            for (Node child : current.children.reverse()) {
-                Step found = previousStepHelper(initialStep, child, hasFoundInitial);
-                if (found != null) {
-                    return found;
-                }
+    @NonNull
+    private static List<Node> withoutRoot(@NonNull List<Node> nodes) {
+        List<Node> nodesWithSteps = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (node.step != null) {
+                nodesWithSteps.add(node);
             }
         }
-
-        return null;
+        return nodesWithSteps;
     }
 }
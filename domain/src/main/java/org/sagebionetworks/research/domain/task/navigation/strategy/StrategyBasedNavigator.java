@@ -40,6 +40,7 @@ import org.sagebionetworks.research.domain.result.interfaces.Result;
 import org.sagebionetworks.research.domain.result.interfaces.TaskResult;
 import org.sagebionetworks.research.domain.step.interfaces.SectionStep;
 import org.sagebionetworks.research.domain.step.interfaces.Step;
+import org.sagebionetworks.research.domain.survey.SurveyRuleEngine;
 import org.sagebionetworks.research.domain.task.Task;
 import org.sagebionetworks.research.domain.task.navigation.NavDirection;
 import org.sagebionetworks.research.domain.task.navigation.StepAndNavDirection;
@@ -51,17 +52,35 @@ import org.sagebionetworks.research.domain.task.navigation.strategy.StepNavigati
 import org.sagebionetworks.research.domain.task.navigation.strategy.StepNavigationStrategy.NextStepStrategy;
 import org.sagebionetworks.research.domain.task.navigation.strategy.StepNavigationStrategy.SkipStepStrategy;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class StrategyBasedNavigator implements StepNavigator {
     public static class Factory implements StepNavigatorFactory {
+        private final boolean navigateBySurveyRules;
+
+        public Factory() {
+            this(false);
+        }
+
+        /**
+         * @param navigateBySurveyRules
+         *         Whether the navigators created follow the survey rules of the task's input fields.
+         */
+        public Factory(boolean navigateBySurveyRules) {
+            this.navigateBySurveyRules = navigateBySurveyRules;
+        }
+
         @Override
         public StepNavigator create(final Task task, final List<String> progressMarkers) {
-            return new StrategyBasedNavigator(task, progressMarkers);
+            return new StrategyBasedNavigator(task, progressMarkers, this.navigateBySurveyRules);
         }
     }
 
+    // The survey rules of the task's form steps, compiled when the navigator is created. Null unless the navigator
+    // follows survey rules.
+    @Nullable
+    private final SurveyRuleEngine surveyRuleEngine;
+
     // The tree navigator that backs up this StrategyBasedNavigator whenever the various navigation rules aren't
     // applicable.
     @NonNull
@@ -78,8 +97,26 @@ public class StrategyBasedNavigator implements StepNavigator {
      *         The list of progress markers to create this StepBasedNavigator from.
      */
     public StrategyBasedNavigator(@NonNull final Task task, @Nullable List<String> progressMarkers) {
+        this(task, progressMarkers, false);
+    }
+
+    /**
+     * Constructs a new StrategyBasedNavigator from the given list of steps, and the given list of progress markers,
+     * which optionally also follows the survey rules of the task's input fields. A matching rule skips to its step,
+     * and a matching rule without a step to skip to or a cohort ends the task.
+     *
+     * @param task
+     *         The task to create this StepBasedNavigator from.
+     * @param progressMarkers
+     *         The list of progress markers to create this StepBasedNavigator from.
+     * @param navigateBySurveyRules
+     *         Whether to follow the survey rules of the task's input fields.
+     */
+    public StrategyBasedNavigator(@NonNull final Task task, @Nullable List<String> progressMarkers,
+            boolean navigateBySurveyRules) {
         this.task = task;
         this.treeNavigator = new TreeNavigator(task.getSteps(), progressMarkers);
+        this.surveyRuleEngine = navigateBySurveyRules ? SurveyRuleEngine.compile(task.getSteps()) : null;
     }
 
     /**
@@ -129,6 +166,18 @@ public class StrategyBasedNavigator implements StepNavigator {
         }
 
         // If we don't get a valid step from casting the result to a NavigationResult,
+        // let's try the survey rules of the step's input fields against the step's answers, if we follow them.
+        if (nextStep == null && step != null && this.surveyRuleEngine != null) {
+            String surveyRuleStepId = this.surveyRuleEngine.getNextStepIdentifier(step, taskResult);
+            if (NextStepStrategy.Identifiers.Exit.getKey().equals(surveyRuleStepId)) {
+                return new StepAndNavDirection(null, NavDirection.SHIFT_LEFT);
+            }
+            if (surveyRuleStepId != null) {
+                nextStep = this.getStep(surveyRuleStepId);
+            }
+        }
+
+        // If the survey rules don't give us a valid step either,
         // let's try to get the next step from the step by casting it to a NextStepStrategy.
         if (nextStep == null && step instanceof NextStepStrategy) {
             String nextStepId = ((NextStepStrategy)step).getNextStepIdentifier(taskResult);
@@ -179,7 +228,8 @@ public class StrategyBasedNavigator implements StepNavigator {
             return null;
         }
 
-        // If backward navigation is allowed we check the result.
+        // If backward navigation is allowed we check the result. The step history is indexed by identifier, so
+        // this doesn't search the whole history.
         Step previousStep = null;
         List<Result> stepHistory = taskResult.getStepHistory();
         int idx = stepHistory.indexOf(taskResult.getResult(step.getIdentifier()));
@@ -217,36 +267,6 @@ public class StrategyBasedNavigator implements StepNavigator {
         return step;
     }
 
-    /**
-     * Performs a section resolved dive into indexing the steps to use for navigation direction
-     * @param step to find the index of
-     * @return the index of the step when the task steps are flattened
-     */
-    private int indexOfStep(Step step) {
-        List<Step> flattenedSteps = new ArrayList<>();
-        flattenTaskSteps(task.getSteps(), flattenedSteps);
-        return flattenedSteps.indexOf(step);
-    }
-
-    /**
-     * Builds a flattened list of steps from the task by resolving sections
-     * @param outStepList the pass by reference step list to keep adding steps to
-     */
-    private void flattenTaskSteps(@Nullable List<Step> inStepList, @NonNull List<Step> outStepList) {
-        if (inStepList == null || inStepList.isEmpty()) {
-            return;
-        }
-        for (Step step : inStepList) {
-            if (step instanceof SectionStep) {
-                SectionStep sectionStep = (SectionStep)step;
-                outStepList.add(sectionStep);
-                flattenTaskSteps(sectionStep.getSteps(), outStepList);
-            } else {
-                outStepList.add(step);
-            }
-        }
-    }
-
     /**
      * @param step current step that would contain the possible NavigationResult
      * @param taskResult current task result for the task
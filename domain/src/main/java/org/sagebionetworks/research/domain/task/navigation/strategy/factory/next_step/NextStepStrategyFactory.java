@@ -42,8 +42,6 @@ import org.sagebionetworks.research.domain.task.navigation.strategy.StepNavigati
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Proxy;
-
 /**
  * Created by liujoshua on 10/13/2017.
  */
@@ -56,14 +54,8 @@ public class NextStepStrategyFactory {
         checkNotNull(step);
         checkNotNull(nextStepStrategy);
 
-        NextStepStrategyInvocationHandler handler = new NextStepStrategyInvocationHandler(nextStepStrategy);
-
-        NextStepStrategy rule = (NextStepStrategy) Proxy
-                .newProxyInstance(NextStepStrategy.class.getClassLoader(), new Class[]{NextStepStrategy.class},
-                        handler);
-
-        LOGGER.debug("Creating next rule for step: " + step, ", created: " + rule);
-        return rule;
+        LOGGER.debug("Creating next rule for step: " + step, ", created: " + nextStepStrategy);
+        return nextStepStrategy;
     }
 
     @Nullable
@@ -0,0 +1,377 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.domain.navigation;
+
+import static org.junit.Assume.assumeTrue;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+import org.sagebionetworks.research.domain.result.implementations.ResultBase;
+import org.sagebionetworks.research.domain.result.implementations.TaskResultBase;
+import org.sagebionetworks.research.domain.result.interfaces.Result;
+import org.sagebionetworks.research.domain.result.interfaces.TaskResult;
+import org.sagebionetworks.research.domain.step.implementations.SectionStepBase;
+import org.sagebionetworks.research.domain.step.implementations.StepBase;
+import org.sagebionetworks.research.domain.step.interfaces.Step;
+import org.sagebionetworks.research.domain.task.Task;
+import org.sagebionetworks.research.domain.task.navigation.OrderedStepNavigator;
+import org.sagebionetworks.research.domain.task.navigation.StepNavigator;
+import org.sagebionetworks.research.domain.task.navigation.TreeNavigator;
+import org.sagebionetworks.research.domain.task.navigation.strategy.StepNavigationStrategy.SkipStepStrategy;
+import org.sagebionetworks.research.domain.task.navigation.strategy.StrategyBasedNavigator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the navigators and TaskResultBase on synthetic tasks of 10 to 10,000 steps, with the steps nested in 0 to
+ * 8 levels of section steps. For TreeNavigator and StrategyBasedNavigator it reports the time taken by getNextStep,
+ * getPreviousStep, getProgress and getStep for each of the steps the navigator goes through, and for TaskResultBase
+ * the time taken by addStepHistory and getResult. OrderedStepNavigator, which doesn't go into sections, is only
+ * measured on the tasks without sections. StrategyBasedNavigator is also measured with a share of the steps having a
+ * skip rule, which the other navigators ignore.
+ * <p>
+ * This is skipped during normal test runs. To run it:
+ * <pre>
+ * ./gradlew :domain:testDebugUnitTest --tests '*NavigationBenchmark' -DnavigationBenchmark=true
+ * </pre>
+ * Each measurement lasts navigationBenchmark.durationMillis (default 200) after as long a warm up, and the results are
+ * also written to build/reports/navigation-benchmark.json so that they can be compared between commits.
+ */
+public class NavigationBenchmark {
+    /**
+     * One call to the operation being measured.
+     */
+    interface Operation {
+        /**
+         * @return the operation's result, which is kept so that the call isn't optimized away.
+         */
+        Object run(int index);
+    }
+
+    static class Measurement {
+        String subject;
+
+        String operation;
+
+        int steps;
+
+        int depth;
+
+        double skipRuleDensity;
+
+        long operations;
+
+        double operationsPerSecond;
+
+        double nanosPerOperation;
+    }
+
+    /**
+     * A step with nothing but an identifier.
+     */
+    static class BenchmarkStep extends StepBase {
+        BenchmarkStep(@NonNull String identifier) {
+            super(identifier, ImmutableSet.of());
+        }
+
+        @NonNull
+        @Override
+        public BenchmarkStep copyWithIdentifier(@NonNull String identifier) {
+            return new BenchmarkStep(identifier);
+        }
+    }
+
+    /**
+     * A step which is skipped once the step it depends on has a result.
+     */
+    static class SkippableStep extends BenchmarkStep implements SkipStepStrategy {
+        @NonNull
+        private final String dependencyIdentifier;
+
+        SkippableStep(@NonNull String identifier, @NonNull String dependencyIdentifier) {
+            super(identifier);
+            this.dependencyIdentifier = dependencyIdentifier;
+        }
+
+        @NonNull
+        @Override
+        public SkippableStep copyWithIdentifier(@NonNull String identifier) {
+            return new SkippableStep(identifier, this.dependencyIdentifier);
+        }
+
+        @Override
+        public boolean shouldSkip(@NonNull TaskResult taskResult) {
+            return taskResult.getResult(this.dependencyIdentifier) != null;
+        }
+    }
+
+    private static final int[] STEP_COUNTS = {10, 100, 1000, 10000};
+
+    // 0 is a task without sections
+    private static final int[] DEPTHS = {0, 1, 2, 4, 8};
+
+    private static final double[] SKIP_RULE_DENSITIES = {0, 0.1, 0.5};
+
+    private static final Instant TIME = Instant.now();
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NavigationBenchmark.class);
+
+    private static final File REPORT_FILE = new File("build/reports/navigation-benchmark.json");
+
+    // the last result of an operation, so that the operations aren't optimized away
+    private volatile Object sink;
+
+    private long durationMillis;
+
+    @Test
+    public void benchmarkNavigation() throws Exception {
+        assumeTrue("Set -DnavigationBenchmark=true to run the navigation benchmark",
+                Boolean.getBoolean("navigationBenchmark"));
+        this.durationMillis = Long.getLong("navigationBenchmark.durationMillis", 200);
+
+        List<Measurement> measurements = new ArrayList<>();
+        for (int stepCount : STEP_COUNTS) {
+            measurements.addAll(this.benchmarkTaskResult(stepCount));
+            for (int depth : DEPTHS) {
+                for (double skipRuleDensity : SKIP_RULE_DENSITIES) {
+                    measurements.addAll(this.benchmarkNavigators(stepCount, depth, skipRuleDensity));
+                }
+            }
+        }
+
+        REPORT_FILE.getParentFile().mkdirs();
+        try (Writer writer = new FileWriter(REPORT_FILE)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(measurements, writer);
+        }
+    }
+
+    @NonNull
+    private List<Measurement> benchmarkNavigators(int stepCount, int depth, double skipRuleDensity) {
+        List<Step> steps = createSteps(stepCount, depth, skipRuleDensity);
+        Task task = StrategyBasedNavigatorTest.mockTask(steps, null);
+        Map<String, StepNavigator> navigators = new LinkedHashMap<>();
+        if (skipRuleDensity == 0) {
+            // the other navigators ignore skip rules, so they are the same at every density
+            if (depth == 0) {
+                // OrderedStepNavigator only goes through the task's top level steps, so it's only comparable with
+                // the other navigators on tasks without sections
+                navigators.put("OrderedStepNavigator", new OrderedStepNavigator.Factory().create(task, null));
+            }
+            navigators.put("TreeNavigator", new TreeNavigator(steps, null));
+        }
+        navigators.put("StrategyBasedNavigator", new StrategyBasedNavigator(task, null));
+
+        List<Measurement> measurements = new ArrayList<>();
+        for (Map.Entry<String, StepNavigator> entry : navigators.entrySet()) {
+            StepNavigator navigator = entry.getValue();
+            // the steps the navigator goes through from the start of the task, and the task result at its end
+            List<Step> path = new ArrayList<>();
+            TaskResult taskResult = new TaskResultBase("task", TIME, UUID.randomUUID());
+            Step step = navigator.getNextStep(null, taskResult).getStep();
+            while (step != null && path.size() <= stepCount) {
+                path.add(step);
+                taskResult = taskResult.addStepHistory(new ResultBase(step.getIdentifier(), TIME, TIME));
+                step = navigator.getNextStep(step, taskResult).getStep();
+            }
+            TaskResult finishedTaskResult = taskResult;
+
+            String name = entry.getKey();
+            measurements.add(this.run(name, "getNextStep", stepCount, depth, skipRuleDensity, path.size(),
+                    i -> navigator.getNextStep(path.get(i), finishedTaskResult)));
+            measurements.add(this.run(name, "getPreviousStep", stepCount, depth, skipRuleDensity, path.size(),
+                    i -> navigator.getPreviousStep(path.get(i), finishedTaskResult)));
+            measurements.add(this.run(name, "getProgress", stepCount, depth, skipRuleDensity, path.size(),
+                    i -> navigator.getProgress(path.get(i), finishedTaskResult)));
+            measurements.add(this.run(name, "getStep", stepCount, depth, skipRuleDensity, path.size(),
+                    i -> navigator.getStep(path.get(i).getIdentifier())));
+        }
+        return measurements;
+    }
+
+    @NonNull
+    private List<Measurement> benchmarkTaskResult(int stepCount) {
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < stepCount; i++) {
+            results.add(new ResultBase("step" + i, TIME, TIME));
+        }
+        TaskResult[] taskResult = {new TaskResultBase("task", TIME, UUID.randomUUID())};
+        for (Result result : results) {
+            taskResult[0] = taskResult[0].addStepHistory(result);
+        }
+        TaskResult finishedTaskResult = taskResult[0];
+
+        List<Measurement> measurements = new ArrayList<>();
+        measurements.add(this.run("TaskResultBase", "addStepHistory", stepCount, 0, 0, stepCount, i -> {
+            // goes through the task again once every step has been added
+            if (i == 0) {
+                taskResult[0] = new TaskResultBase("task", TIME, UUID.randomUUID());
+            }
+            taskResult[0] = taskResult[0].addStepHistory(results.get(i));
+            return taskResult[0];
+        }));
+        measurements.add(this.run("TaskResultBase", "getResult", stepCount, 0, 0, stepCount,
+                i -> finishedTaskResult.getResult(results.get(i).getIdentifier())));
+        return measurements;
+    }
+
+    @NonNull
+    private Measurement run(@NonNull String subject, @NonNull String operationName, int stepCount, int depth,
+            double skipRuleDensity, int operationCount, @NonNull Operation operation) {
+        // warm up for as long as the measurement so that the operation is compiled before it's measured
+        this.measure(operation, operationCount);
+        long[] operationsAndNanos = this.measure(operation, operationCount);
+
+        Measurement measurement = new Measurement();
+        measurement.subject = subject;
+        measurement.operation = operationName;
+        measurement.steps = stepCount;
+        measurement.depth = depth;
+        measurement.skipRuleDensity = skipRuleDensity;
+        measurement.operations = operationsAndNanos[0];
+        measurement.operationsPerSecond = operationsAndNanos[0] / (operationsAndNanos[1] / 1e9);
+        measurement.nanosPerOperation = (double) operationsAndNanos[1] / operationsAndNanos[0];
+        log(measurement);
+        return measurement;
+    }
+
+    /**
+     * Calls the operation for every index until the duration has passed.
+     *
+     * @return the number of operations and the nanoseconds they took.
+     */
+    @NonNull
+    private long[] measure(@NonNull Operation operation, int operationCount) {
+        long operations = 0;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(this.durationMillis);
+        long now;
+        Object result = null;
+        do {
+            // checking the time for every operation would be measured along with the operations
+            for (int i = 0; i < operationCount; i++) {
+                result = operation.run(i);
+            }
+            operations += operationCount;
+            now = System.nanoTime();
+        } while (now < end);
+        this.sink = result;
+        return new long[]{operations, now - start};
+    }
+
+    /**
+     * Creates the steps of a task with the given number of steps, each within the given number of levels of
+     * sections, of which the given share are skipped once the first step has been finished. The sections at each
+     * level have about as many steps as each other.
+     */
+    @NonNull
+    private static List<Step> createSteps(int stepCount, int depth, double skipRuleDensity) {
+        Random random = new Random(stepCount * 31 + depth);
+        int[] counter = {0};
+        if (depth == 0) {
+            return createLeafSteps(stepCount, skipRuleDensity, random, counter);
+        }
+        // the number of sections or steps in each section, so that the steps are spread evenly over the task's
+        // sections and the sections within them
+        int branching = (int) Math.ceil(Math.pow(stepCount, 1.0 / (depth + 1)));
+        List<Step> steps = new ArrayList<>();
+        for (int sectionSize : split(stepCount, branching)) {
+            steps.add(createSection(sectionSize, depth, skipRuleDensity, branching, random, counter));
+        }
+        return steps;
+    }
+
+    @NonNull
+    private static Step createSection(int stepCount, int depth, double skipRuleDensity, int branching,
+            @NonNull Random random, @NonNull int[] counter) {
+        if (depth == 1) {
+            List<Step> steps = createLeafSteps(stepCount, skipRuleDensity, random, counter);
+            return new SectionStepBase("section" + counter[0], ImmutableSet.of(), steps);
+        }
+
+        List<Step> sections = new ArrayList<>();
+        for (int sectionSize : split(stepCount, branching)) {
+            sections.add(createSection(sectionSize, depth - 1, skipRuleDensity, branching, random, counter));
+        }
+        return new SectionStepBase("section" + counter[0] + "_" + depth, ImmutableSet.of(), sections);
+    }
+
+    /**
+     * Creates the steps at the deepest level, the first of which is never skipped as it's the one steps depend on.
+     */
+    @NonNull
+    private static List<Step> createLeafSteps(int stepCount, double skipRuleDensity, @NonNull Random random,
+            @NonNull int[] counter) {
+        List<Step> steps = new ArrayList<>();
+        for (int i = 0; i < stepCount; i++) {
+            String identifier = "step" + counter[0]++;
+            steps.add(counter[0] > 1 && random.nextDouble() < skipRuleDensity ?
+                    new SkippableStep(identifier, "step0") : new BenchmarkStep(identifier));
+        }
+        return steps;
+    }
+
+    /**
+     * @return the sizes of at most the given number of parts, none of them empty, which add up to count.
+     */
+    @NonNull
+    private static int[] split(int count, int parts) {
+        parts = Math.max(1, Math.min(count, parts));
+        int[] sizes = new int[parts];
+        for (int i = 0; i < parts; i++) {
+            sizes[i] = count / parts + (i < count % parts ? 1 : 0);
+        }
+        return sizes;
+    }
+
+    private static void log(@NonNull Measurement measurement) {
+        LOGGER.info(String.format("%-22s %-15s %5d steps  depth %d  skip %.1f  %12.0f ops/s  %10.1f ns/op",
+                measurement.subject, measurement.operation, measurement.steps, measurement.depth,
+                measurement.skipRuleDensity, measurement.operationsPerSecond, measurement.nanosPerOperation));
+    }
+}
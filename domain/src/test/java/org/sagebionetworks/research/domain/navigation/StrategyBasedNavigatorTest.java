@@ -12,15 +12,28 @@ import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.withSettings;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import org.junit.Test;
 import org.mockito.ArgumentMatcher;
+import org.sagebionetworks.research.domain.form.data_types.BaseInputDataType;
+import org.sagebionetworks.research.domain.form.data_types.BaseInputDataType.BaseType;
+import org.sagebionetworks.research.domain.form.implementations.InputFieldBase;
+import org.sagebionetworks.research.domain.form.interfaces.InputField;
+import org.sagebionetworks.research.domain.result.AnswerResultType;
+import org.sagebionetworks.research.domain.result.implementations.AnswerResultBase;
+import org.sagebionetworks.research.domain.result.implementations.CollectionResultBase;
 import org.sagebionetworks.research.domain.result.implementations.NavigationResultBase;
 import org.sagebionetworks.research.domain.result.implementations.ResultBase;
+import org.sagebionetworks.research.domain.result.implementations.TaskResultBase;
 import org.sagebionetworks.research.domain.result.interfaces.Result;
 import org.sagebionetworks.research.domain.result.interfaces.TaskResult;
+import org.sagebionetworks.research.domain.step.implementations.FormUIStepBase;
 import org.sagebionetworks.research.domain.step.interfaces.SectionStep;
 import org.sagebionetworks.research.domain.step.interfaces.Step;
+import org.sagebionetworks.research.domain.survey.MatchingAnswerSurveyRule;
+import org.sagebionetworks.research.domain.survey.SurveyRule;
+import org.sagebionetworks.research.domain.survey.SurveyRule.Operator;
 import org.sagebionetworks.research.domain.task.Task;
 import org.sagebionetworks.research.domain.task.navigation.NavDirection;
 import org.sagebionetworks.research.domain.task.navigation.StepAndNavDirection;
@@ -34,6 +47,7 @@ import org.threeten.bp.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 
 public class StrategyBasedNavigatorTest extends IndividualNavigatorTest {
     private static final String SKIP_RESULT_IDENTIFIER = "skip";
@@ -42,6 +56,8 @@ public class StrategyBasedNavigatorTest extends IndividualNavigatorTest {
 
     private static final List<Step> STRATEGY_TEST_STEPS;
 
+    private static final List<Step> SURVEY_TEST_STEPS;
+
     private static final StrategyBasedNavigator STRATEGY_TEST_NAVIGATOR;
 
     private static final Task TEST_TASK = mockTask(TEST_STEPS, TEST_PROGRESS_MARKERS);
@@ -245,6 +261,41 @@ public class StrategyBasedNavigatorTest extends IndividualNavigatorTest {
         assertEquals("step5.X", nextStep.getIdentifier());
     }
 
+    // region Test With Survey Rules
+    @Test
+    public void testSurveyRules_IgnoredByDefault() {
+        StrategyBasedNavigator navigator = new StrategyBasedNavigator(mockTask(SURVEY_TEST_STEPS, null), null);
+        TaskResult taskResult = mockSurveyTaskResult(1);
+        StepAndNavDirection nextStepAndDirection = navigator.getNextStep(SURVEY_TEST_STEPS.get(0), taskResult);
+        assertEquals("afterQuestion", nextStepAndDirection.getStep().getIdentifier());
+    }
+
+    @Test
+    public void testSurveyRules_SkipTo() {
+        StrategyBasedNavigator navigator = new StrategyBasedNavigator(mockTask(SURVEY_TEST_STEPS, null), null, true);
+        TaskResult taskResult = mockSurveyTaskResult(1);
+        StepAndNavDirection nextStepAndDirection = navigator.getNextStep(SURVEY_TEST_STEPS.get(0), taskResult);
+        assertEquals("conclusion", nextStepAndDirection.getStep().getIdentifier());
+    }
+
+    @Test
+    public void testSurveyRules_NoMatch() {
+        StrategyBasedNavigator navigator = new StrategyBasedNavigator(mockTask(SURVEY_TEST_STEPS, null), null, true);
+        TaskResult taskResult = mockSurveyTaskResult(3);
+        StepAndNavDirection nextStepAndDirection = navigator.getNextStep(SURVEY_TEST_STEPS.get(0), taskResult);
+        assertEquals("afterQuestion", nextStepAndDirection.getStep().getIdentifier());
+    }
+
+    @Test
+    public void testSurveyRules_Exit() {
+        // The rule matching 2 has neither a step to skip to nor a cohort, so it ends the task.
+        StrategyBasedNavigator navigator = new StrategyBasedNavigator(mockTask(SURVEY_TEST_STEPS, null), null, true);
+        TaskResult taskResult = mockSurveyTaskResult(2);
+        StepAndNavDirection nextStepAndDirection = navigator.getNextStep(SURVEY_TEST_STEPS.get(0), taskResult);
+        assertNull(nextStepAndDirection.getStep());
+    }
+    // endregion
+
     // region Test With SkipStepStrategy
     @Test
     public void testSkip_resultPresent_From2() {
@@ -355,6 +406,21 @@ public class StrategyBasedNavigatorTest extends IndividualNavigatorTest {
         assertNull(nextStepAndDirection.getStep());
     }
 
+    private static SurveyRule mockSurveyRule(Integer matchingAnswer, String skipToIdentifier) {
+        MatchingAnswerSurveyRule rule = mock(MatchingAnswerSurveyRule.class);
+        when(rule.getSurveyRuleOperator()).thenReturn(Operator.EQUALS);
+        when(rule.getMatchingAnswer()).thenReturn(matchingAnswer);
+        when(rule.getSkipToIdentifier()).thenReturn(skipToIdentifier);
+        return rule;
+    }
+
+    private static TaskResult mockSurveyTaskResult(Integer answer) {
+        Result answerResult = new AnswerResultBase<>("answer", Instant.EPOCH, Instant.EPOCH, answer,
+                AnswerResultType.INTEGER);
+        return new TaskResultBase("task", UUID.randomUUID()).addStepHistory(
+                new CollectionResultBase("question", Instant.EPOCH, Instant.EPOCH, ImmutableList.of(answerResult)));
+    }
+
     static {
         STRATEGY_TEST_STEPS = new ArrayList<>();
         STRATEGY_TEST_STEPS.add(mockTestStep("introduction", true, "step2", false));
@@ -371,6 +437,15 @@ public class StrategyBasedNavigatorTest extends IndividualNavigatorTest {
         STRATEGY_TEST_STEPS.add(mockTestStep("step7", false, "step6.A", false));
         STRATEGY_TEST_STEPS.add(mockStep("conclusion"));
         STRATEGY_TEST_NAVIGATOR = new StrategyBasedNavigator(mockTask(STRATEGY_TEST_STEPS, TEST_PROGRESS_MARKERS), TEST_PROGRESS_MARKERS);
+
+        SURVEY_TEST_STEPS = new ArrayList<>();
+        InputField inputField = new InputFieldBase<Integer>("answer", null, null, null, false,
+                new BaseInputDataType(BaseType.INTEGER), null, null, null,
+                ImmutableList.of(mockSurveyRule(1, "conclusion"), mockSurveyRule(2, null)));
+        SURVEY_TEST_STEPS.add(new FormUIStepBase("question", ImmutableSet.of(), null, null, null, null, null, null,
+                null, null, ImmutableList.of(inputField)));
+        SURVEY_TEST_STEPS.add(mockStep("afterQuestion"));
+        SURVEY_TEST_STEPS.add(mockStep("conclusion"));
     }
     // endregion
 }
\ No newline at end of file
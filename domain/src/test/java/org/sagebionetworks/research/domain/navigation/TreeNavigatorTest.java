@@ -7,13 +7,22 @@ import static junit.framework.Assert.assertTrue;
 import static org.junit.Assert.assertNull;
 
 import org.junit.Test;
+import org.sagebionetworks.research.domain.result.implementations.ResultBase;
+import org.sagebionetworks.research.domain.result.implementations.TaskResultBase;
+import org.sagebionetworks.research.domain.result.interfaces.Result;
 import org.sagebionetworks.research.domain.result.interfaces.TaskResult;
 import org.sagebionetworks.research.domain.step.interfaces.Step;
 import org.sagebionetworks.research.domain.task.navigation.TaskProgress;
 import org.sagebionetworks.research.domain.task.navigation.TreeNavigator;
+import org.threeten.bp.Instant;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
 
 public class TreeNavigatorTest extends IndividualNavigatorTest {
 
@@ -34,7 +43,85 @@ public class TreeNavigatorTest extends IndividualNavigatorTest {
         assertEquals(4, progress.getTotal());
         assertTrue(progress.isEstimated());
     }
+
+    @Test
+    public void testProgress_MatchesRecountingStepHistory() {
+        List<Step> steps = createSteps(new String[]{"1", "2", "3", "4", "5", "6", "7", "8", "9", "10"});
+        List<String> progressMarkers = Arrays.asList("2", "4", "5", "8", "2");
+        for (List<String> markers : Arrays.asList(null, progressMarkers)) {
+            TreeNavigator navigator = new TreeNavigator(steps, markers);
+            TaskResult taskResult = new TaskResultBase("task", UUID.randomUUID());
+            Random random = new Random(5);
+            for (int i = 0; i < 500; i++) {
+                // Steps are finished, gone back to, and sometimes the results aren't of the task's steps.
+                String identifier = random.nextInt(10) == 0 ? "other" + random.nextInt(3)
+                        : steps.get(random.nextInt(steps.size())).getIdentifier();
+                Result result = new ResultBase(identifier, Instant.now(), Instant.now());
+                if (random.nextInt(4) == 0) {
+                    taskResult = taskResult.removeStepHistory(result);
+                } else {
+                    taskResult = taskResult.addStepHistory(result);
+                }
+
+                Step step = steps.get(random.nextInt(steps.size()));
+                assertEquals(recountProgress(step, taskResult, steps, markers),
+                        navigator.getProgress(step, taskResult));
+            }
+        }
+    }
     // endregion
+
+    // region Test getNextStep() and getPreviousStep()
+    @Test
+    public void testNavigation_DeeplyNestedSections() {
+        // Sections nested 8 deep, each with a leaf before and after the section it contains.
+        List<String> expectedIdentifiers = new ArrayList<>();
+        Step section = null;
+        for (int depth = 8; depth > 0; depth--) {
+            List<Step> substeps = new ArrayList<>();
+            substeps.add(mockStep("before" + depth));
+            if (section != null) {
+                substeps.add(section);
+            }
+            substeps.add(mockStep("after" + depth));
+            section = mockSectionStep("section" + depth, substeps);
+        }
+        for (int depth = 1; depth <= 8; depth++) {
+            expectedIdentifiers.add("before" + depth);
+        }
+        for (int depth = 8; depth > 0; depth--) {
+            expectedIdentifiers.add("after" + depth);
+        }
+        TreeNavigator navigator = new TreeNavigator(Arrays.asList(section, mockStep("last")), null);
+        expectedIdentifiers.add("last");
+        TaskResult taskResult = mockTaskResult("task", new ArrayList<Step>());
+
+        List<Step> forward = new ArrayList<>();
+        Step step = navigator.getNextStep(null, taskResult).getStep();
+        while (step != null) {
+            forward.add(step);
+            step = navigator.getNextStep(step, taskResult).getStep();
+        }
+        assertEquals(expectedIdentifiers.size(), forward.size());
+        for (int i = 0; i < forward.size(); i++) {
+            assertEquals(expectedIdentifiers.get(i), forward.get(i).getIdentifier());
+        }
+
+        for (int i = forward.size() - 1; i > 0; i--) {
+            assertEquals(forward.get(i - 1), navigator.getPreviousStep(forward.get(i), taskResult));
+        }
+        assertNull(navigator.getPreviousStep(forward.get(0), taskResult));
+
+        // The step after a section is its first leaf.
+        Step section5 = navigator.getStep("section5");
+        assertNotNull(section5);
+        assertEquals("before5", navigator.getNextStep(section5, taskResult).getStep().getIdentifier());
+        // Steps which aren't in the tree have no next or previous step.
+        assertNull(navigator.getNextStep(mockStep("missing"), taskResult).getStep());
+        assertNull(navigator.getPreviousStep(mockStep("missing"), taskResult));
+    }
+    // endregion
+
     @Test
     public void testGetStep_OneSectionDeep() {
         List<Step> steps1 = createSteps(new String[]{"1_a", "1_b"});
@@ -133,5 +220,43 @@ public class TreeNavigatorTest extends IndividualNavigatorTest {
         assertNotNull(step_2_3_e);
         assertEquals("2_3_e", step_2_3_e.getIdentifier());
     }
-}
 
+    /**
+     * Computes the progress by going through the whole step history, as the navigator did before it tracked it.
+     */
+    private static TaskProgress recountProgress(Step step, TaskResult taskResult, List<Step> steps,
+            List<String> progressMarkers) {
+        Set<String> finishedStepIDs = new HashSet<>();
+        for (Result result : taskResult.getStepHistory()) {
+            finishedStepIDs.add(result.getIdentifier());
+        }
+
+        if (progressMarkers != null) {
+            int idx = -1;
+            for (int i = progressMarkers.size() - 1; i >= 0 && idx == -1; i--) {
+                if (finishedStepIDs.contains(progressMarkers.get(i))
+                        || step.getIdentifier().equals(progressMarkers.get(i))) {
+                    idx = i;
+                }
+            }
+            if (idx == -1 || (idx + 1 == progressMarkers.size()
+                    && !progressMarkers.contains(step.getIdentifier()))) {
+                return null;
+            }
+            return new TaskProgress(idx + 1, progressMarkers.size(), false);
+        }
+
+        Set<String> stepIDs = new HashSet<>();
+        for (Step taskStep : steps) {
+            stepIDs.add(taskStep.getIdentifier());
+        }
+        int total = stepIDs.size();
+        for (String stepID : finishedStepIDs) {
+            if (!stepIDs.contains(stepID)) {
+                total++;
+            }
+        }
+        finishedStepIDs.remove(step.getIdentifier());
+        return new TaskProgress(finishedStepIDs.size() + 1, total, true);
+    }
+}
@@ -43,6 +43,8 @@ import org.junit.Test;
 import org.sagebionetworks.research.domain.JsonAssetUtil;
 import org.sagebionetworks.research.domain.async.AsyncActionConfiguration;
 import org.sagebionetworks.research.domain.async.DeviceMotionRecorderConfiguration;
+import org.sagebionetworks.research.domain.async.MotionRecorderOutputFormat;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
 
 public class MotionRecorderGsonTest {
     private static Gson GSON = DaggerRecorderTestComponent.builder().build().gson();
@@ -63,6 +65,16 @@ public class MotionRecorderGsonTest {
                 + "stopStepIdentifier", "stopStepIdentifier", dmrConfiguration.getStopStepIdentifier());
         assertEquals(ImmutableSet.of("gravity", "gyro"), dmrConfiguration.getRecorderTypes());
         assertNull("Frequency " + dmrConfiguration.getFrequency() + "is non null", dmrConfiguration.getFrequency());
+        assertNull("OutputFormat " + dmrConfiguration.getOutputFormat() + " is non null",
+                dmrConfiguration.getOutputFormat());
+        assertNull("MaxBatchSize " + dmrConfiguration.getMaxBatchSize() + " is non null",
+                dmrConfiguration.getMaxBatchSize());
+        assertNull("MaxBatchLatencyMillis " + dmrConfiguration.getMaxBatchLatencyMillis() + " is non null",
+                dmrConfiguration.getMaxBatchLatencyMillis());
+        assertNull("Compression " + dmrConfiguration.getCompression() + " is non null",
+                dmrConfiguration.getCompression());
+        assertNull("MaxReportLatencyMillis " + dmrConfiguration.getMaxReportLatencyMillis() + " is non null",
+                dmrConfiguration.getMaxReportLatencyMillis());
     }
 
     @Test
@@ -83,4 +95,63 @@ public class MotionRecorderGsonTest {
         assertEquals("Frequency " + dmrConfiguration.getFrequency() + "is not equal to expect frequency 3.0",
                 Double.valueOf(3.0), dmrConfiguration.getFrequency());
     }
+
+    @Test
+    public void testMotionRecorderConfiguration_3() {
+        AsyncActionConfiguration recorderConfiguration
+                = JsonAssetUtil.readJsonFile(GSON, "recorder/MotionRecorder_3.json", AsyncActionConfiguration.class);
+        assertTrue("Didn't deserialize as a DeviceMotionRecorderConfiguration",
+                recorderConfiguration instanceof DeviceMotionRecorderConfiguration);
+        DeviceMotionRecorderConfiguration dmrConfiguration
+                = (DeviceMotionRecorderConfiguration) recorderConfiguration;
+        assertEquals("Identifier " + dmrConfiguration.getIdentifier() + " doesn't equal expected motionRecorder3",
+                "motionRecorder3", dmrConfiguration.getIdentifier());
+        assertEquals(ImmutableSet.of("accelerometer", "gyro"), dmrConfiguration.getRecorderTypes());
+        assertEquals("OutputFormat " + dmrConfiguration.getOutputFormat() + " is not equal to expected columnar",
+                MotionRecorderOutputFormat.COLUMNAR, dmrConfiguration.getOutputFormat());
+    }
+
+    @Test
+    public void testMotionRecorderConfiguration_4() {
+        AsyncActionConfiguration recorderConfiguration
+                = JsonAssetUtil.readJsonFile(GSON, "recorder/MotionRecorder_4.json", AsyncActionConfiguration.class);
+        assertTrue("Didn't deserialize as a DeviceMotionRecorderConfiguration",
+                recorderConfiguration instanceof DeviceMotionRecorderConfiguration);
+        DeviceMotionRecorderConfiguration dmrConfiguration
+                = (DeviceMotionRecorderConfiguration) recorderConfiguration;
+        assertEquals("Identifier " + dmrConfiguration.getIdentifier() + " doesn't equal expected motionRecorder4",
+                "motionRecorder4", dmrConfiguration.getIdentifier());
+        assertEquals("MaxBatchSize " + dmrConfiguration.getMaxBatchSize() + " is not equal to expected 50",
+                Integer.valueOf(50), dmrConfiguration.getMaxBatchSize());
+        assertEquals("MaxBatchLatencyMillis " + dmrConfiguration.getMaxBatchLatencyMillis()
+                + " is not equal to expected 500", Long.valueOf(500), dmrConfiguration.getMaxBatchLatencyMillis());
+    }
+
+    @Test
+    public void testMotionRecorderConfiguration_5() {
+        AsyncActionConfiguration recorderConfiguration
+                = JsonAssetUtil.readJsonFile(GSON, "recorder/MotionRecorder_5.json", AsyncActionConfiguration.class);
+        assertTrue("Didn't deserialize as a DeviceMotionRecorderConfiguration",
+                recorderConfiguration instanceof DeviceMotionRecorderConfiguration);
+        DeviceMotionRecorderConfiguration dmrConfiguration
+                = (DeviceMotionRecorderConfiguration) recorderConfiguration;
+        assertEquals("Identifier " + dmrConfiguration.getIdentifier() + " doesn't equal expected motionRecorder5",
+                "motionRecorder5", dmrConfiguration.getIdentifier());
+        assertEquals("Compression " + dmrConfiguration.getCompression() + " is not equal to expected gzip",
+                RecorderOutputCompression.GZIP, dmrConfiguration.getCompression());
+    }
+
+    @Test
+    public void testMotionRecorderConfiguration_6() {
+        AsyncActionConfiguration recorderConfiguration
+                = JsonAssetUtil.readJsonFile(GSON, "recorder/MotionRecorder_6.json", AsyncActionConfiguration.class);
+        assertTrue("Didn't deserialize as a DeviceMotionRecorderConfiguration",
+                recorderConfiguration instanceof DeviceMotionRecorderConfiguration);
+        DeviceMotionRecorderConfiguration dmrConfiguration
+                = (DeviceMotionRecorderConfiguration) recorderConfiguration;
+        assertEquals("Identifier " + dmrConfiguration.getIdentifier() + " doesn't equal expected motionRecorder6",
+                "motionRecorder6", dmrConfiguration.getIdentifier());
+        assertEquals("MaxReportLatencyMillis " + dmrConfiguration.getMaxReportLatencyMillis()
+                + " is not equal to expected 10000", Long.valueOf(10000), dmrConfiguration.getMaxReportLatencyMillis());
+    }
 }
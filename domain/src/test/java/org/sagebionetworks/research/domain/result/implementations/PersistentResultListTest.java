@@ -0,0 +1,162 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.domain.result.implementations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.sagebionetworks.research.domain.result.interfaces.Result;
+import org.threeten.bp.Instant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+public class PersistentResultListTest {
+    @Test
+    public void testRandomOperations_matchCopyingList() {
+        Random random = new Random(7);
+        PersistentResultList list = PersistentResultList.copyOf(new ArrayList<>());
+        List<Result> expected = new ArrayList<>();
+        // enough appends for a trie of three levels, with few enough identifiers that most appends replace
+        for (int i = 0; i < 40_000; i++) {
+            int operation = random.nextInt(100);
+            String identifier = "step" + random.nextInt(operation < 90 ? 2000 : 50);
+            if (operation < 98) {
+                Result result = result(identifier, i);
+                list = list.replaceAndAppend(result);
+                replaceAndAppend(expected, result);
+            } else {
+                list = list.removeFrom(identifier);
+                removeFrom(expected, identifier);
+            }
+            if (i % 997 == 0) {
+                assertEquals(expected, list);
+                assertEquals(expected.hashCode(), list.hashCode());
+            }
+            assertEquals(expected.size(), list.size());
+            assertSame(find(expected, identifier), list.getResult(identifier));
+            assertEquals(expected.indexOf(list.getResult(identifier)), list.indexOf(list.getResult(identifier)));
+        }
+        assertEquals(expected, list);
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), list.get(i));
+        }
+    }
+
+    @Test
+    public void testDuplicateIdentifiers_updatedLikeCopyingList() {
+        List<Result> expected = new ArrayList<>(Arrays.asList(result("a", 0), result("b", 1), result("a", 2),
+                result("c", 3), result("b", 4)));
+        PersistentResultList list = PersistentResultList.copyOf(expected);
+        // the first of several results with the same identifier is found
+        assertSame(expected.get(0), list.getResult("a"));
+
+        Result b = result("b", 5);
+        list = list.replaceAndAppend(b);
+        replaceAndAppend(expected, b);
+        assertEquals(expected, list);
+
+        list = list.removeFrom("c");
+        removeFrom(expected, "c");
+        assertEquals(expected, list);
+        assertSame(expected.get(0), list.getResult("a"));
+        assertNull(list.getResult("c"));
+        assertEquals(1, list.indexOf(expected.get(1)));
+        assertEquals(-1, list.indexOf(result("c", 3)));
+    }
+
+    @Test
+    public void testReplace_leavesOriginalUnchanged() {
+        PersistentResultList original = PersistentResultList.copyOf(new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            original = original.replaceAndAppend(result("step" + i, i));
+        }
+        List<Result> snapshot = new ArrayList<>(original);
+
+        PersistentResultList updated = original.replaceAndAppend(result("step10", 100)).removeFrom("step50");
+
+        assertEquals(snapshot, original);
+        assertEquals(50 - 1, updated.size());
+        Iterator<Result> iterator = updated.iterator();
+        for (int i = 0; i < 10; i++) {
+            iterator.next();
+        }
+        assertEquals("step11", iterator.next().getIdentifier());
+    }
+
+    @Test
+    public void testHashMap_collisions() {
+        // "Aa" and "BB" have the same hash code
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty()
+                .put("Aa", 1).put("BB", 2).put("AaAa", 3).put("BBBB", 4).put("AaBB", 5);
+        assertEquals(5, map.size());
+        assertEquals(Integer.valueOf(2), map.get("BB"));
+        assertEquals(Integer.valueOf(5), map.get("AaBB"));
+
+        PersistentHashMap<String, Integer> removed = map.remove("Aa").remove("AaBB").remove("missing");
+        assertEquals(3, removed.size());
+        assertNull(removed.get("Aa"));
+        assertEquals(Integer.valueOf(2), removed.get("BB"));
+        assertEquals(Integer.valueOf(1), map.get("Aa"));
+    }
+
+    private static Result find(List<Result> results, String identifier) {
+        for (Result result : results) {
+            if (result.getIdentifier().equals(identifier)) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private static void removeFrom(List<Result> results, String identifier) {
+        Result first = find(results, identifier);
+        if (first != null) {
+            results.subList(results.indexOf(first), results.size()).clear();
+        }
+    }
+
+    private static void replaceAndAppend(List<Result> results, Result result) {
+        results.removeIf(existing -> existing.getIdentifier().equals(result.getIdentifier()));
+        results.add(result);
+    }
+
+    private static Result result(String identifier, int second) {
+        return new ResultBase(identifier, Instant.ofEpochSecond(second), null);
+    }
+}
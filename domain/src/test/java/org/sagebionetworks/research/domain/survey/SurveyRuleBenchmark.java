@@ -0,0 +1,303 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.domain.survey;
+
+import static org.junit.Assume.assumeTrue;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+import org.sagebionetworks.research.domain.form.data_types.BaseInputDataType;
+import org.sagebionetworks.research.domain.form.data_types.BaseInputDataType.BaseType;
+import org.sagebionetworks.research.domain.form.implementations.InputFieldBase;
+import org.sagebionetworks.research.domain.form.interfaces.InputField;
+import org.sagebionetworks.research.domain.result.AnswerResultType;
+import org.sagebionetworks.research.domain.result.implementations.AnswerResultBase;
+import org.sagebionetworks.research.domain.result.implementations.CollectionResultBase;
+import org.sagebionetworks.research.domain.result.implementations.TaskResultBase;
+import org.sagebionetworks.research.domain.result.interfaces.CollectionResult;
+import org.sagebionetworks.research.domain.result.interfaces.Result;
+import org.sagebionetworks.research.domain.result.interfaces.TaskResult;
+import org.sagebionetworks.research.domain.step.implementations.FormUIStepBase;
+import org.sagebionetworks.research.domain.step.interfaces.FormUIStep;
+import org.sagebionetworks.research.domain.survey.SurveyRule.Operator;
+import org.sagebionetworks.research.domain.task.navigation.strategy.StepNavigationStrategy.NextStepStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares evaluating the survey rules of a task's form steps through SurveyRuleEngine with evaluating them the way
+ * a NextStepStrategy would: interpreting each rule against answers found by going through the step's result, called
+ * either directly or through the reflective proxy NextStepStrategyFactory used to create. The compiled rules are
+ * measured both with answers which are unchanged between evaluations and with answers which change every time.
+ * <p>
+ * This is skipped during normal test runs. To run it:
+ * <pre>
+ * ./gradlew :domain:testDebugUnitTest --tests '*SurveyRuleBenchmark' -DsurveyRuleBenchmark=true
+ * </pre>
+ * Each case runs for surveyRuleBenchmark.durationSeconds (default 2) after as long a warm up, and the results are
+ * also written to build/reports/survey-rule-benchmark.json so that they can be compared between commits.
+ */
+public class SurveyRuleBenchmark {
+    /**
+     * Evaluates the rules of one of the steps.
+     */
+    interface Evaluator {
+        /**
+         * @return the identifier of the step to skip to, or null if no rule matches.
+         */
+        String evaluate(int stepIndex);
+    }
+
+    static class Measurement {
+        String evaluator;
+
+        int steps;
+
+        int rulesPerStep;
+
+        long evaluations;
+
+        double evaluationsPerSecond;
+
+        double nanosPerEvaluation;
+    }
+
+    // the answer to every question
+    private static final int ANSWER = 50;
+
+    private static final int STEP_COUNT = 100;
+
+    private static final int FIELDS_PER_STEP = 4;
+
+    private static final int RULES_PER_FIELD = 3;
+
+    private static final String[] OPERATORS = {Operator.EQUALS, Operator.NOT_EQUALS, Operator.LESS_THAN,
+            Operator.GREATER_THAN, Operator.LESS_THAN_EQUALS, Operator.GREATER_THAN_EQUALS, Operator.SKIPS};
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SurveyRuleBenchmark.class);
+
+    private static final File REPORT_FILE = new File("build/reports/survey-rule-benchmark.json");
+
+    private final List<FormUIStep> steps = new ArrayList<>();
+
+    @Test
+    public void benchmarkSurveyRules() throws Exception {
+        assumeTrue("Set -DsurveyRuleBenchmark=true to run the survey rule benchmark",
+                Boolean.getBoolean("surveyRuleBenchmark"));
+        long durationMillis = TimeUnit.SECONDS.toMillis(Long.getLong("surveyRuleBenchmark.durationSeconds", 2));
+
+        for (int i = 0; i < STEP_COUNT; i++) {
+            this.steps.add(createStep(i));
+        }
+        // Answers which match none of the rules, so that every rule of a step is evaluated.
+        TaskResult taskResult = createTaskResult();
+        // The same answers in other results, which the engine can't tell from changed answers.
+        TaskResult otherTaskResult = createTaskResult();
+
+        List<NextStepStrategy> directStrategies = new ArrayList<>();
+        List<NextStepStrategy> proxyStrategies = new ArrayList<>();
+        for (FormUIStep step : this.steps) {
+            NextStepStrategy strategy = result -> evaluateInterpreted(step, result);
+            directStrategies.add(strategy);
+            proxyStrategies.add(createProxy(strategy));
+        }
+        SurveyRuleEngine engine = SurveyRuleEngine.compile(ImmutableList.copyOf(this.steps));
+        TaskResult[] taskResults = {taskResult, otherTaskResult};
+        long[] evaluationCount = new long[1];
+
+        List<Measurement> measurements = new ArrayList<>();
+        measurements.add(run("proxy-strategy", durationMillis,
+                stepIndex -> proxyStrategies.get(stepIndex).getNextStepIdentifier(taskResult)));
+        measurements.add(run("direct-strategy", durationMillis,
+                stepIndex -> directStrategies.get(stepIndex).getNextStepIdentifier(taskResult)));
+        measurements.add(run("compiled-unchanged-answers", durationMillis,
+                stepIndex -> engine.getNextStepIdentifier(this.steps.get(stepIndex), taskResult)));
+        measurements.add(run("compiled-changed-answers", durationMillis, stepIndex -> {
+            // alternates between the task results, so each step's answers have changed since it was last evaluated
+            TaskResult result = taskResults[(int) (evaluationCount[0]++ / STEP_COUNT & 1)];
+            return engine.getNextStepIdentifier(this.steps.get(stepIndex), result);
+        }));
+        for (Measurement measurement : measurements) {
+            log(measurement);
+        }
+
+        REPORT_FILE.getParentFile().mkdirs();
+        try (Writer writer = new FileWriter(REPORT_FILE)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(measurements, writer);
+        }
+    }
+
+    @NonNull
+    private static Measurement run(@NonNull String name, long durationMillis, @NonNull Evaluator evaluator) {
+        // warm up for as long as the measurement so that the evaluator is compiled before it's measured
+        measure(evaluator, durationMillis);
+        long[] evaluationsAndNanos = measure(evaluator, durationMillis);
+
+        Measurement measurement = new Measurement();
+        measurement.evaluator = name;
+        measurement.steps = STEP_COUNT;
+        measurement.rulesPerStep = FIELDS_PER_STEP * RULES_PER_FIELD;
+        measurement.evaluations = evaluationsAndNanos[0];
+        measurement.evaluationsPerSecond = evaluationsAndNanos[0] / (evaluationsAndNanos[1] / 1e9);
+        measurement.nanosPerEvaluation = (double) evaluationsAndNanos[1] / evaluationsAndNanos[0];
+        return measurement;
+    }
+
+    /**
+     * @return the number of evaluations and the nanoseconds they took.
+     */
+    @NonNull
+    private static long[] measure(@NonNull Evaluator evaluator, long durationMillis) {
+        long evaluations = 0;
+        long matches = 0;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long now;
+        do {
+            // checking the time for every step would be measured along with the evaluations
+            for (int i = 0; i < STEP_COUNT; i++) {
+                if (evaluator.evaluate(i) != null) {
+                    matches++;
+                }
+            }
+            evaluations += STEP_COUNT;
+            now = System.nanoTime();
+        } while (now < end);
+        if (matches != 0) {
+            throw new IllegalStateException("The benchmark's answers shouldn't match any rule");
+        }
+        return new long[]{evaluations, now - start};
+    }
+
+    @NonNull
+    private static FormUIStep createStep(int index) {
+        ImmutableList.Builder<InputField> inputFields = ImmutableList.builder();
+        for (int i = 0; i < FIELDS_PER_STEP; i++) {
+            ImmutableList.Builder<SurveyRule> rules = ImmutableList.builder();
+            for (int j = 0; j < RULES_PER_FIELD; j++) {
+                String operator = OPERATORS[(index + i * RULES_PER_FIELD + j) % OPERATORS.length];
+                rules.add(new TestMatchingAnswerSurveyRule(operator, getMatchingAnswer(operator), "skip" + j, null));
+            }
+            inputFields.add(new InputFieldBase<Integer>("question" + i, null, null, null, false,
+                    new BaseInputDataType(BaseType.INTEGER), null, null, null, rules.build()));
+        }
+        return new FormUIStepBase("step" + index, ImmutableSet.of(), null, null, null, null, null, null, null,
+                null, inputFields.build());
+    }
+
+    @NonNull
+    private TaskResult createTaskResult() {
+        List<Result> stepHistory = new ArrayList<>();
+        for (FormUIStep step : this.steps) {
+            List<Result> answers = new ArrayList<>();
+            for (InputField<?> inputField : step.getInputFields()) {
+                answers.add(new AnswerResultBase<>(inputField.getIdentifier(), Instant.now(), Instant.now(),
+                        ANSWER, AnswerResultType.INTEGER));
+            }
+            stepHistory.add(new CollectionResultBase(step.getIdentifier(), Instant.now(), Instant.now(), answers));
+        }
+        return new TaskResultBase("task", Instant.now(), null, UUID.randomUUID(), null, stepHistory,
+                Collections.emptyList());
+    }
+
+    @NonNull
+    private static NextStepStrategy createProxy(@NonNull NextStepStrategy strategy) {
+        InvocationHandler handler = (proxy, method, args) -> method.invoke(strategy, args);
+        return (NextStepStrategy) Proxy.newProxyInstance(NextStepStrategy.class.getClassLoader(),
+                new Class[]{NextStepStrategy.class}, handler);
+    }
+
+    /**
+     * Evaluates the rules of the given step by finding the answer to each of its fields and evaluating each rule.
+     */
+    private static String evaluateInterpreted(@NonNull FormUIStep step, @NonNull TaskResult taskResult) {
+        Result stepResult = taskResult.getResult(step);
+        if (!(stepResult instanceof CollectionResult)) {
+            return null;
+        }
+        for (InputField<?> inputField : step.getInputFields()) {
+            Result answer = null;
+            for (Result inputResult : ((CollectionResult) stepResult).getInputResults()) {
+                if (inputResult.getIdentifier().equals(inputField.getIdentifier())) {
+                    answer = inputResult;
+                    break;
+                }
+            }
+            for (SurveyRule rule : inputField.getSurveyRules()) {
+                String skipToIdentifier = rule.evaluateRule(answer);
+                if (skipToIdentifier != null) {
+                    return skipToIdentifier;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a matching answer for the given operator which ANSWER doesn't match.
+     */
+    @NonNull
+    private static Object getMatchingAnswer(@NonNull String operator) {
+        switch (operator) {
+            case Operator.NOT_EQUALS:
+                return ANSWER;
+            case Operator.LESS_THAN:
+            case Operator.LESS_THAN_EQUALS:
+                return ANSWER - 10;
+            default:
+                return ANSWER + 10;
+        }
+    }
+
+    private static void log(@NonNull Measurement measurement) {
+        LOGGER.info(String.format("%-28s %12.0f evaluations/s  %8.1f ns/evaluation", measurement.evaluator,
+                measurement.evaluationsPerSecond, measurement.nanosPerEvaluation));
+    }
+}
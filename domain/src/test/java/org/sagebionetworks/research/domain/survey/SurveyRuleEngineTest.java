@@ -0,0 +1,204 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.domain.survey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+import org.sagebionetworks.research.domain.form.data_types.BaseInputDataType;
+import org.sagebionetworks.research.domain.form.data_types.BaseInputDataType.BaseType;
+import org.sagebionetworks.research.domain.form.implementations.InputFieldBase;
+import org.sagebionetworks.research.domain.form.interfaces.InputField;
+import org.sagebionetworks.research.domain.result.AnswerResultType;
+import org.sagebionetworks.research.domain.result.implementations.AnswerResultBase;
+import org.sagebionetworks.research.domain.result.implementations.CollectionResultBase;
+import org.sagebionetworks.research.domain.result.implementations.ResultBase;
+import org.sagebionetworks.research.domain.result.implementations.TaskResultBase;
+import org.sagebionetworks.research.domain.result.interfaces.Result;
+import org.sagebionetworks.research.domain.result.interfaces.TaskResult;
+import org.sagebionetworks.research.domain.step.implementations.FormUIStepBase;
+import org.sagebionetworks.research.domain.step.implementations.SectionStepBase;
+import org.sagebionetworks.research.domain.step.interfaces.Step;
+import org.sagebionetworks.research.domain.survey.SurveyRule.Operator;
+import org.threeten.bp.Instant;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public class SurveyRuleEngineTest {
+    private static final List<String> OPERATORS = Arrays.asList(null, Operator.SKIPS, Operator.EQUALS,
+            Operator.NOT_EQUALS, Operator.LESS_THAN, Operator.GREATER_THAN, Operator.LESS_THAN_EQUALS,
+            Operator.GREATER_THAN_EQUALS);
+
+    @Test
+    public void testOperators_MatchReferenceRule() {
+        List<Object> answers = Arrays.asList(null, 1, 3, 5, 3.0, 2.5, "3", Arrays.asList(1, 3), Arrays.asList(2, 4));
+        for (String operator : OPERATORS) {
+            TestMatchingAnswerSurveyRule rule = new TestMatchingAnswerSurveyRule(operator, 3, "skip", null);
+            Step step = createFormStep("step", inputField("question", rule));
+            SurveyRuleEngine engine = SurveyRuleEngine.compile(ImmutableList.of(step));
+            for (Object answer : answers) {
+                Result answerResult = answerResult("question", answer);
+                TaskResult taskResult = taskResult(collectionResult("step", answerResult));
+                assertEquals(operator + " " + answer, rule.evaluateRule(answerResult),
+                        engine.getNextStepIdentifier(step, taskResult));
+            }
+        }
+    }
+
+    @Test
+    public void testOperators_Strings() {
+        Step step = createFormStep("step",
+                inputField("question", new TestMatchingAnswerSurveyRule(Operator.LESS_THAN, "m", "early", null),
+                        new TestMatchingAnswerSurveyRule(Operator.EQUALS, "z", "last", null)));
+        SurveyRuleEngine engine = SurveyRuleEngine.compile(ImmutableList.of(step));
+
+        assertEquals("early", engine.getNextStepIdentifier(step,
+                taskResult(collectionResult("step", answerResult("question", "a")))));
+        assertEquals("last", engine.getNextStepIdentifier(step,
+                taskResult(collectionResult("step", answerResult("question", "z")))));
+        assertNull(engine.getNextStepIdentifier(step,
+                taskResult(collectionResult("step", answerResult("question", "q")))));
+    }
+
+    @Test
+    public void testRuleWithoutSkipToOrCohort_Exits() {
+        Step step = createFormStep("step",
+                inputField("question", new TestMatchingAnswerSurveyRule(Operator.EQUALS, 1, null, null)));
+        SurveyRuleEngine engine = SurveyRuleEngine.compile(ImmutableList.of(step));
+
+        assertEquals("exit", engine.getNextStepIdentifier(step,
+                taskResult(collectionResult("step", answerResult("question", 1)))));
+    }
+
+    @Test
+    public void testStepResultWithoutInputResults() {
+        // A field without an identifier is answered by the step's own answer result.
+        Step step = createFormStep("step",
+                inputField(null, new TestMatchingAnswerSurveyRule(Operator.GREATER_THAN, 10, "skip", null)));
+        SurveyRuleEngine engine = SurveyRuleEngine.compile(ImmutableList.of(step));
+
+        assertEquals("skip", engine.getNextStepIdentifier(step, taskResult(answerResult("step", 11))));
+        assertNull(engine.getNextStepIdentifier(step, taskResult(answerResult("step", 9))));
+        assertNull(engine.getNextStepIdentifier(step, taskResult()));
+    }
+
+    @Test
+    public void testStepsWithinSections() {
+        Step step = createFormStep("step",
+                inputField("question", new TestMatchingAnswerSurveyRule(Operator.EQUALS, 1, "skip", null)));
+        Step section = new SectionStepBase("section", Collections.emptySet(),
+                ImmutableList.of(new SectionStepBase("inner", Collections.emptySet(), ImmutableList.of(step))));
+        SurveyRuleEngine engine = SurveyRuleEngine.compile(ImmutableList.of(section));
+
+        assertEquals("skip", engine.getNextStepIdentifier(step,
+                taskResult(collectionResult("step", answerResult("question", 1)))));
+    }
+
+    @Test
+    public void testRulesWithCohorts_DoNotSkip() {
+        Step step = createFormStep("step",
+                inputField("first", new TestMatchingAnswerSurveyRule(Operator.EQUALS, 1, null, "a")),
+                inputField("second", new TestMatchingAnswerSurveyRule(Operator.EQUALS, 2, "skip", "b")));
+        SurveyRuleEngine engine = SurveyRuleEngine.compile(ImmutableList.of(step));
+
+        // The first field's rule matches but only assigns a cohort, the second field's rule skips.
+        assertEquals("skip", engine.getNextStepIdentifier(step,
+                taskResult(collectionResult("step", answerResult("first", 1), answerResult("second", 2)))));
+        assertNull(engine.getNextStepIdentifier(step,
+                taskResult(collectionResult("step", answerResult("first", 1), answerResult("second", 3)))));
+    }
+
+    @Test
+    public void testRulesEvaluatedOnlyWhenAnswersChange() {
+        SurveyRule rule = mock(SurveyRule.class);
+        when(rule.evaluateRule(any(Result.class))).thenReturn("skip");
+        Step step = createFormStep("step", inputField("question", rule));
+        SurveyRuleEngine engine = SurveyRuleEngine.compile(ImmutableList.of(step));
+
+        TaskResult taskResult = taskResult(collectionResult("step", answerResult("question", 1)));
+        assertEquals("skip", engine.getNextStepIdentifier(step, taskResult));
+        assertEquals("skip", engine.getNextStepIdentifier(step, taskResult));
+        // Other steps being finished doesn't change the step's answers.
+        taskResult = taskResult.addStepHistory(new ResultBase("other", Instant.now(), Instant.now()));
+        assertEquals("skip", engine.getNextStepIdentifier(step, taskResult));
+        verify(rule, times(1)).evaluateRule(any(Result.class));
+
+        taskResult = taskResult.addStepHistory(collectionResult("step", answerResult("question", 2)));
+        assertEquals("skip", engine.getNextStepIdentifier(step, taskResult));
+        verify(rule, times(2)).evaluateRule(any(Result.class));
+    }
+
+    @Test
+    public void testStepWithoutRules() {
+        Step step = createFormStep("step", inputField("question"));
+        SurveyRuleEngine engine = SurveyRuleEngine.compile(ImmutableList.of(step));
+
+        TaskResult taskResult = taskResult(collectionResult("step", answerResult("question", 1)));
+        assertNull(engine.getNextStepIdentifier(step, taskResult));
+    }
+
+    private static Result answerResult(String identifier, Object answer) {
+        return new AnswerResultBase<>(identifier, Instant.now(), Instant.now(), answer, AnswerResultType.INTEGER);
+    }
+
+    private static Result collectionResult(String identifier, Result... inputResults) {
+        return new CollectionResultBase(identifier, Instant.now(), Instant.now(), Arrays.asList(inputResults));
+    }
+
+    private static Step createFormStep(String identifier, InputField... inputFields) {
+        return new FormUIStepBase(identifier, ImmutableSet.of(), null, null, null, null, null, null, null, null,
+                ImmutableList.copyOf(inputFields));
+    }
+
+    private static InputField inputField(String identifier, SurveyRule... surveyRules) {
+        return new InputFieldBase<Integer>(identifier, null, null, null, false,
+                new BaseInputDataType(BaseType.INTEGER), null, null, null, ImmutableList.copyOf(surveyRules));
+    }
+
+    private static TaskResult taskResult(Result... stepHistory) {
+        return new TaskResultBase("task", Instant.now(), null, UUID.randomUUID(), null, Arrays.asList(stepHistory),
+                Collections.emptyList());
+    }
+}
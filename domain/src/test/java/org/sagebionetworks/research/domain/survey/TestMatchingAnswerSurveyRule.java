@@ -0,0 +1,167 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.domain.survey;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.sagebionetworks.research.domain.result.interfaces.AnswerResult;
+import org.sagebionetworks.research.domain.result.interfaces.Result;
+import org.sagebionetworks.research.domain.task.navigation.strategy.StepNavigationStrategy.NextStepStrategy;
+
+import java.util.Collection;
+
+/**
+ * A matching answer survey rule which evaluates itself the straightforward way, by going through its operator every
+ * time it is evaluated. SurveyRuleEngine compiles these rules rather than calling them, so they are also the
+ * reference its results are checked against.
+ */
+class TestMatchingAnswerSurveyRule implements MatchingAnswerSurveyRule {
+    @Nullable
+    private final String cohort;
+
+    @Nullable
+    private final Object matchingAnswer;
+
+    @Nullable
+    private final String operator;
+
+    @Nullable
+    private final String skipToIdentifier;
+
+    TestMatchingAnswerSurveyRule(@Nullable @Operator String operator, @Nullable Object matchingAnswer,
+            @Nullable String skipToIdentifier, @Nullable String cohort) {
+        this.operator = operator;
+        this.matchingAnswer = matchingAnswer;
+        this.skipToIdentifier = skipToIdentifier;
+        this.cohort = cohort;
+    }
+
+    @Nullable
+    @Override
+    public CohortResult evaluateCohorts(Result result) {
+        if (this.cohort == null) {
+            return null;
+        }
+        ImmutableSet<String> cohorts = ImmutableSet.of(this.cohort);
+        return this.matches(result) ? new CohortResult(cohorts, ImmutableSet.of())
+                : new CohortResult(ImmutableSet.of(), cohorts);
+    }
+
+    @Nullable
+    @Override
+    public String evaluateRule(Result result) {
+        if (!this.matches(result)) {
+            return null;
+        }
+        if (this.skipToIdentifier == null && this.cohort == null) {
+            return NextStepStrategy.Identifiers.Exit.getKey();
+        }
+        return this.skipToIdentifier;
+    }
+
+    @Nullable
+    @Override
+    public String getCohort() {
+        return this.cohort;
+    }
+
+    @Nullable
+    @Override
+    public Object getMatchingAnswer() {
+        return this.matchingAnswer;
+    }
+
+    @Nullable
+    @Override
+    public String getSkipToIdentifier() {
+        return this.skipToIdentifier;
+    }
+
+    @Nullable
+    @Override
+    public String getSurveyRuleOperator() {
+        return this.operator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean matches(@Nullable Result result) {
+        Object answer = result instanceof AnswerResult ? ((AnswerResult<?>) result).getAnswer() : null;
+        String operator = this.operator == null ? Operator.EQUALS : this.operator;
+        if (operator.equals(Operator.SKIPS)) {
+            return answer == null;
+        }
+        if (answer == null || this.matchingAnswer == null) {
+            return false;
+        }
+        if (operator.equals(Operator.EQUALS) || operator.equals(Operator.NOT_EQUALS)) {
+            boolean equals = false;
+            Collection<?> answers = answer instanceof Collection ? (Collection<?>) answer
+                    : ImmutableSet.of(answer);
+            for (Object element : answers) {
+                equals |= element != null && this.isEqual(element);
+            }
+            return operator.equals(Operator.EQUALS) == equals;
+        }
+
+        int comparison;
+        if (answer instanceof Number && this.matchingAnswer instanceof Number) {
+            comparison = Double.compare(((Number) answer).doubleValue(),
+                    ((Number) this.matchingAnswer).doubleValue());
+        } else if (answer instanceof Comparable && answer.getClass() == this.matchingAnswer.getClass()) {
+            comparison = ((Comparable<Object>) answer).compareTo(this.matchingAnswer);
+        } else {
+            return false;
+        }
+        switch (operator) {
+            case Operator.LESS_THAN:
+                return comparison < 0;
+            case Operator.GREATER_THAN:
+                return comparison > 0;
+            case Operator.LESS_THAN_EQUALS:
+                return comparison <= 0;
+            case Operator.GREATER_THAN_EQUALS:
+                return comparison >= 0;
+            default:
+                return false;
+        }
+    }
+
+    private boolean isEqual(Object answer) {
+        if (answer instanceof Number && this.matchingAnswer instanceof Number) {
+            return ((Number) answer).doubleValue() == ((Number) this.matchingAnswer).doubleValue();
+        }
+        return answer.equals(this.matchingAnswer);
+    }
+}
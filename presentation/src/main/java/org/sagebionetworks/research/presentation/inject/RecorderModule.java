@@ -32,35 +32,60 @@
 
 package org.sagebionetworks.research.presentation.inject;
 
-import static org.sagebionetworks.research.presentation.recorder.reactive.ReactiveFileResultRecorder.createJsonArrayLogger;
+import static com.google.common.base.Preconditions.checkArgument;
 
 import android.content.Context;
 import android.hardware.SensorEvent;
+import android.hardware.SensorManager;
 
 import com.github.pwittchen.reactivesensors.library.ReactiveSensors;
 import com.google.gson.Gson;
 
+import org.sagebionetworks.research.domain.async.MotionRecorderOutputFormat;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
 import org.sagebionetworks.research.domain.async.RecorderType;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
 import org.sagebionetworks.research.domain.result.interfaces.Result;
 import org.sagebionetworks.research.presentation.recorder.Recorder;
+import org.sagebionetworks.research.presentation.recorder.RecorderBase;
 import org.sagebionetworks.research.presentation.recorder.RecorderConfigPresentation;
 import org.sagebionetworks.research.presentation.recorder.location.DistanceRecorderConfigPresentation;
-import org.sagebionetworks.research.presentation.recorder.location.Path;
-import org.sagebionetworks.research.presentation.recorder.location.PathAccumulator;
-import org.sagebionetworks.research.presentation.recorder.reactive.ReactiveFileResultRecorder;
+import org.sagebionetworks.research.presentation.recorder.location.LocationPathSimplifier;
+import org.sagebionetworks.research.presentation.recorder.location.json.Coordinates;
+import org.sagebionetworks.research.presentation.recorder.location.json.DistanceEvent;
+import org.sagebionetworks.research.presentation.recorder.reactive.FlushPolicy;
+import org.sagebionetworks.research.presentation.recorder.reactive.ReactiveJsonStreamRecorder;
+import org.sagebionetworks.research.presentation.recorder.reactive.ReactiveRecorder;
+import org.sagebionetworks.research.presentation.recorder.reactive.ReactiveSensorColumnarRecorder;
+import org.sagebionetworks.research.presentation.recorder.reactive.ReactiveSensorJsonRecorder;
+import org.sagebionetworks.research.presentation.recorder.reactive.ReactiveSensorRingBufferRecorder;
+import org.sagebionetworks.research.presentation.recorder.reactive.SegmentPolicy;
+import org.sagebionetworks.research.presentation.recorder.reactive.ShardedSensorRecorder;
+import org.sagebionetworks.research.presentation.recorder.reactive.source.PreRollSource;
 import org.sagebionetworks.research.presentation.recorder.reactive.source.ReactiveLocationFactory;
+import org.sagebionetworks.research.presentation.recorder.reactive.source.SensorHub;
 import org.sagebionetworks.research.presentation.recorder.reactive.source.SensorSourceFactory;
 import org.sagebionetworks.research.presentation.recorder.reactive.source.SensorSourceFactory.SensorConfig;
-import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil;
 import org.sagebionetworks.research.presentation.recorder.sensor.SensorRecorderConfigPresentation;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorRingBuffer;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+import org.sagebionetworks.research.presentation.recorder.sensor.columnar.SensorColumnarFormat;
+import org.sagebionetworks.research.presentation.recorder.sensor.feature.MotionFeatureExtractor;
+import org.sagebionetworks.research.presentation.recorder.sensor.frame.MotionFrame;
+import org.sagebionetworks.research.presentation.recorder.sensor.frame.MotionFrameAligner;
+import org.sagebionetworks.research.presentation.recorder.sensor.frame.MotionFrameTypeAdapter;
+import org.sagebionetworks.research.presentation.recorder.util.RecorderOutputStreams;
 import org.sagebionetworks.research.presentation.recorder.util.TaskOutputFileUtil;
 
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
@@ -81,14 +106,34 @@ public abstract class RecorderModule {
                         + " is not a DistanceRecorderConfigPresentation.");
             }
 
-            return createJsonArrayLogger(
+            DistanceRecorderConfigPresentation distanceRecorderConfig
+                    = (DistanceRecorderConfigPresentation) recorderConfiguration;
+            String compression = distanceRecorderConfig.getCompression();
+            // the distance event's adapter looks up the coordinates' adapter from the Gson it is created with
+            Gson coordinatesGson = gson.newBuilder()
+                    .registerTypeHierarchyAdapter(Coordinates.class, Coordinates.typeAdapter(gson))
+                    .create();
+            Gson distanceEventGson = coordinatesGson.newBuilder()
+                    .registerTypeHierarchyAdapter(DistanceEvent.class, DistanceEvent.typeAdapter(coordinatesGson))
+                    .create();
+            // only the few locations describing the path are written, as compact distance events
+            return new ReactiveJsonStreamRecorder<>(
                     recorderConfiguration.getIdentifier(),
-                    reactiveLocationFactory.getLocation().scan(Path.ZERO, new PathAccumulator()),
-                    gson,
+                    LocationPathSimplifier.simplify(
+                            reactiveLocationFactory.getLocation(distanceRecorderConfig.getMinTimeMillis(),
+                                    distanceRecorderConfig.getMinDistanceMeters()),
+                            distanceRecorderConfig.getMinTimeMillis(),
+                            distanceRecorderConfig.getMaxAccuracyMeters(),
+                            distanceRecorderConfig.getSimplificationToleranceMeters(),
+                            distanceRecorderConfig.getUsesRelativeCoordinates()),
+                    distanceEventGson,
                     TaskOutputFileUtil.getTaskOutputFile(
                             taskUUID,
-                            recorderConfiguration.getIdentifier() + ".json",
-                            context));
+                            recorderConfiguration.getIdentifier() + ".json"
+                                    + RecorderOutputStreams.getFileExtension(compression),
+                            context),
+                    FlushPolicy.DEFAULT,
+                    compression);
         };
     }
 
@@ -97,6 +142,21 @@ public abstract class RecorderModule {
         return new ReactiveSensors(context);
     }
 
+    @Provides
+    static SensorManager provideSensorManager(Context context) {
+        return (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+    }
+
+    /**
+     * SensorHub keeps one registration per sensor type, which only holds if every recorder in the process uses the
+     * same hub.
+     */
+    @Provides
+    @Singleton
+    static SensorHub provideSensorHub(SensorManager sensorManager) {
+        return new SensorHub(sensorManager);
+    }
+
     @Provides
     @IntoMap
     @StringKey(RecorderType.MOTION)
@@ -110,43 +170,177 @@ public abstract class RecorderModule {
 
             SensorRecorderConfigPresentation sensorRecorderConfig
                     = (SensorRecorderConfigPresentation) recorderConfiguration;
+            String compressionExtension = RecorderOutputStreams.getFileExtension(
+                    sensorRecorderConfig.getCompression());
+            // a restarted recorder appends to the file of its previous run
+            boolean resume = !sensorRecorderConfig.getShouldDeletePrevious();
+            checkArgument(!resume || (MotionRecorderOutputFormat.JSON.equals(sensorRecorderConfig.getOutputFormat())
+                            && sensorRecorderConfig.getRingBufferCapacity() == 0
+                            && RecorderOutputCompression.NONE.equals(sensorRecorderConfig.getCompression())),
+                    "Only uncompressed JSON output without a ring buffer can be appended to, recorder: %s",
+                    recorderConfiguration.getIdentifier());
+            SegmentPolicy segmentPolicy = sensorRecorderConfig.getSegmentPolicy();
+            checkArgument(!segmentPolicy.isEnabled() || (!resume
+                            && !MotionRecorderOutputFormat.COLUMNAR.equals(sensorRecorderConfig.getOutputFormat())
+                            && sensorRecorderConfig.getRingBufferCapacity() == 0),
+                    "Only JSON output without a ring buffer or appending can be segmented, recorder: %s",
+                    recorderConfiguration.getIdentifier());
+            checkArgument(!sensorRecorderConfig.getShardBySensor()
+                            || (MotionRecorderOutputFormat.JSON.equals(sensorRecorderConfig.getOutputFormat())
+                            && sensorRecorderConfig.getRingBufferCapacity() == 0 && !resume
+                            && !segmentPolicy.isEnabled()),
+                    "Only JSON output without a ring buffer, appending or segments can be sharded, recorder: %s",
+                    recorderConfiguration.getIdentifier());
+            checkArgument(!sensorRecorderConfig.getMemoryMapped()
+                            || (MotionRecorderOutputFormat.JSON.equals(sensorRecorderConfig.getOutputFormat())
+                            && sensorRecorderConfig.getRingBufferCapacity() == 0 && !resume),
+                    "Only JSON output without a ring buffer or appending can be memory-mapped, recorder: %s",
+                    recorderConfiguration.getIdentifier());
 
+            // SensorHub copies events into immutable samples on the sensor thread, before they can wait in any buffer.
+            // Only the ring buffer takes the events themselves and copies them as merge delivers them. That is on the
+            // sensor thread, except when sensors delivering on different threads contend and merge queues an event,
+            // which SensorManager may then reuse before it is copied
+            Collection<Flowable<SensorSample>> sensorSampleFlowables = new HashSet<>();
             Collection<Flowable<SensorEvent>> sensorEventFlowables = new HashSet<>();
+            long maxReportLatencyNanos = 0;
             for (SensorConfig sensorConfig : sensorRecorderConfig.getSensorConfigs()) {
+                sensorSampleFlowables.add(sensorSourceFactory.getSensorSamples(sensorConfig));
                 sensorEventFlowables.add(sensorSourceFactory.getSensorEvents(sensorConfig));
+                maxReportLatencyNanos = Math.max(maxReportLatencyNanos,
+                        TimeUnit.MICROSECONDS.toNanos(sensorConfig.maxReportLatencyUs));
             }
+            // the samples are subscribed to ahead of the start step when the recorder is pre-warmed. The pre-roll
+            // holds on to samples for as long as a batching sensor can deliver them late
+            PreRollSource<SensorSample> preRollSource = new PreRollSource<>(
+                    Flowable.merge(sensorSampleFlowables),
+                    sample -> sample.timestampNanos,
+                    Math.max(PreRollSource.DEFAULT_WINDOW_NANOS, 2 * maxReportLatencyNanos),
+                    PreRollSource.DEFAULT_MAX_SIZE);
+            Flowable<SensorSample> sampleFlowable = preRollSource.getFlowable();
 
-            AtomicReference<Double> firstEventUptimeReference = new AtomicReference<>();
-
-            // cache so first sensor event gets repeated with concat below
-            Flowable<SensorEvent> allSensorsFlowable = Flowable.merge(sensorEventFlowables).cache();
-
-            Flowable<DeviceMotionUtil.SensorEventPOJO> sensorEventPOJOFlowable =
-                    Flowable.concat(allSensorsFlowable.take(1), allSensorsFlowable)
-                            .map(e -> {
-                                if (firstEventUptimeReference.get() == null) {
-                                    // determine uptime reference and log full info about sensor
-                                    DeviceMotionUtil.SensorEventPOJO first = new DeviceMotionUtil.SensorEventPOJO(e);
-                                    firstEventUptimeReference.set(first.uptime);
-                                    return first;
-                                } else {
-                                    // normal log of event based on uptime reference
-                                    return DeviceMotionUtil.SENSOR_TYPE_TO_FACTORY
-                                            .get(e.sensor.getType())
-                                            .apply(e, firstEventUptimeReference.get());
-                                }
-                            });
-
-
-            return ReactiveFileResultRecorder.createJsonArrayLogger(
-                    recorderConfiguration.getIdentifier(),
-                    sensorEventPOJOFlowable,
-                    gson,
-                    TaskOutputFileUtil.getTaskOutputFile(
-                            taskUUID,
-                            recorderConfiguration.getIdentifier() + ".json",
-                            context)
-            );
+            RecorderBase<FileResult> recorder;
+            if (MotionRecorderOutputFormat.FRAMES.equals(sensorRecorderConfig.getOutputFormat())) {
+                checkArgument(sensorRecorderConfig.getFramePeriodNanos() > 0,
+                        "Frames require a frequency, recorder: %s", recorderConfiguration.getIdentifier());
+                int[] sensorTypes = new int[sensorRecorderConfig.getSensorConfigs().size()];
+                int i = 0;
+                for (SensorConfig sensorConfig : sensorRecorderConfig.getSensorConfigs()) {
+                    sensorTypes[i++] = sensorConfig.sensorType;
+                }
+                // a batching sensor's samples arrive up to its report latency after the other sensors'
+                long maxSkewNanos = Math.max(MotionFrameAligner.DEFAULT_MAX_SKEW_NANOS, 2 * maxReportLatencyNanos);
+                recorder = new ReactiveJsonStreamRecorder<>(
+                        recorderConfiguration.getIdentifier(),
+                        MotionFrameAligner.align(sampleFlowable,
+                                sensorTypes, sensorRecorderConfig.getFramePeriodNanos(), maxSkewNanos),
+                        gson.newBuilder().registerTypeAdapter(MotionFrame.class, new MotionFrameTypeAdapter())
+                                .create(),
+                        TaskOutputFileUtil.getTaskOutputFile(
+                                taskUUID,
+                                recorderConfiguration.getIdentifier() + ".json" + compressionExtension,
+                                context),
+                        FlushPolicy.DEFAULT,
+                        sensorRecorderConfig.getCompression(),
+                        segmentPolicy);
+            } else if (MotionRecorderOutputFormat.FEATURES.equals(sensorRecorderConfig.getOutputFormat())) {
+                recorder = new ReactiveJsonStreamRecorder<>(
+                        recorderConfiguration.getIdentifier(),
+                        MotionFeatureExtractor.extract(sampleFlowable,
+                                sensorRecorderConfig.getFeatureWindowNanos()),
+                        gson,
+                        TaskOutputFileUtil.getTaskOutputFile(
+                                taskUUID,
+                                recorderConfiguration.getIdentifier() + ".json" + compressionExtension,
+                                context),
+                        FlushPolicy.DEFAULT,
+                        sensorRecorderConfig.getCompression(),
+                        segmentPolicy);
+            } else if (MotionRecorderOutputFormat.COLUMNAR.equals(sensorRecorderConfig.getOutputFormat())) {
+                recorder = new ReactiveSensorColumnarRecorder(
+                        recorderConfiguration.getIdentifier(),
+                        sampleFlowable,
+                        TaskOutputFileUtil.getTaskOutputFile(
+                                taskUUID,
+                                recorderConfiguration.getIdentifier() + SensorColumnarFormat.FILE_EXTENSION
+                                        + compressionExtension,
+                                context),
+                        sensorRecorderConfig.getBatchPolicy(),
+                        sensorRecorderConfig.getCompression());
+            } else if (sensorRecorderConfig.getShardBySensor()) {
+                // each sensor is written by its own recorder, which pre-warms its own sensor
+                Map<Integer, ReactiveSensorJsonRecorder> shards = new LinkedHashMap<>();
+                for (SensorConfig sensorConfig : sensorRecorderConfig.getSensorConfigs()) {
+                    String shardIdentifier = ShardedSensorRecorder.getShardIdentifier(
+                            recorderConfiguration.getIdentifier(), sensorConfig.sensorType);
+                    PreRollSource<SensorSample> shardPreRollSource = new PreRollSource<>(
+                            sensorSourceFactory.getSensorSamples(sensorConfig),
+                            sample -> sample.timestampNanos,
+                            Math.max(PreRollSource.DEFAULT_WINDOW_NANOS,
+                                    2 * TimeUnit.MICROSECONDS.toNanos(sensorConfig.maxReportLatencyUs)),
+                            PreRollSource.DEFAULT_MAX_SIZE);
+                    ReactiveSensorJsonRecorder shard = ReactiveSensorJsonRecorder.create(
+                            shardIdentifier,
+                            shardPreRollSource.getFlowable(),
+                            gson,
+                            TaskOutputFileUtil.getTaskOutputFile(
+                                    taskUUID,
+                                    shardIdentifier + ".json" + compressionExtension,
+                                    context),
+                            sensorRecorderConfig.getBatchPolicy(),
+                            sensorRecorderConfig.getCompression(),
+                            false,
+                            SegmentPolicy.NONE);
+                    shard.setPreRollSource(shardPreRollSource);
+                    shard.setMemoryMapped(sensorRecorderConfig.getMemoryMapped());
+                    shards.put(sensorConfig.sensorType, shard);
+                }
+                recorder = new ShardedSensorRecorder(
+                        recorderConfiguration.getIdentifier(),
+                        shards,
+                        gson,
+                        TaskOutputFileUtil.getTaskOutputFile(
+                                taskUUID,
+                                recorderConfiguration.getIdentifier() + ".json",
+                                context));
+            } else if (sensorRecorderConfig.getRingBufferCapacity() > 0) {
+                // merge delivers events serially, as the ring buffer's single producer requires
+                recorder = new ReactiveSensorRingBufferRecorder(
+                        recorderConfiguration.getIdentifier(),
+                        Flowable.merge(sensorEventFlowables),
+                        gson,
+                        TaskOutputFileUtil.getTaskOutputFile(
+                                taskUUID,
+                                recorderConfiguration.getIdentifier() + ".json" + compressionExtension,
+                                context),
+                        new SensorRingBuffer(sensorRecorderConfig.getRingBufferCapacity()),
+                        FlushPolicy.DEFAULT,
+                        sensorRecorderConfig.getCompression());
+            } else {
+                ReactiveSensorJsonRecorder jsonRecorder = ReactiveSensorJsonRecorder.create(
+                        recorderConfiguration.getIdentifier(),
+                        sampleFlowable,
+                        gson,
+                        TaskOutputFileUtil.getTaskOutputFile(
+                                taskUUID,
+                                recorderConfiguration.getIdentifier() + ".json" + compressionExtension,
+                                context),
+                        sensorRecorderConfig.getBatchPolicy(),
+                        sensorRecorderConfig.getCompression(),
+                        resume,
+                        segmentPolicy
+                );
+                jsonRecorder.setMemoryMapped(sensorRecorderConfig.getMemoryMapped());
+                recorder = jsonRecorder;
+            }
+
+            // the ring buffer subscribes to the events itself and is not pre-warmed, shards pre-warm their own sensor
+            if (recorder instanceof ReactiveRecorder) {
+                ((ReactiveRecorder<?, FileResult>) recorder).setPreRollSource(preRollSource);
+            }
+            // samples batched in the sensors' hardware FIFOs were taken before the stop and belong in the file
+            recorder.setStopBarrier(sensorSourceFactory.flush(sensorRecorderConfig.getSensorConfigs()));
+            return recorder;
         };
     }
 
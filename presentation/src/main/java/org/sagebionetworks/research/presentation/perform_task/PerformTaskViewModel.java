@@ -421,12 +421,12 @@ public class PerformTaskViewModel extends AndroidViewModel {
         // step the user was at @liujoshua 2018/08/07
 
         this.task = task;
+        stepNavigator = stepNavigatorFactory.create(task, task.getProgressMarkers());
+
         recorderManager = new RecorderManager(task, taskView.getIdentifier(), taskRunUuid, getApplication(),
-                taskResultManager, recorderConfigPresentationFactory);
+                taskResultManager, recorderConfigPresentationFactory, stepNavigator);
         // Subscribe to the recorder results and put them in the async results.
 
-        stepNavigator = stepNavigatorFactory.create(task, task.getProgressMarkers());
-
         // eagerly cache step views
         cacheStepViews(task.getSteps());
 
@@ -80,4 +80,15 @@ public interface Recorder<R extends Result> extends AsyncActionController<R> {
      * @return `true` if this recorder is currently recording, and `false` otherwise.
      */
     boolean isRecording();
+
+    /**
+     * Prepares this recorder to start soon, e.g. by registering its sensors so that they are delivering by the time
+     * it starts. A recorder that is never started after this must have {@link #discardPrewarm()} called on it.
+     */
+    void prewarm();
+
+    /**
+     * Releases whatever {@link #prewarm()} acquired, if this recorder has not started since.
+     */
+    void discardPrewarm();
 }
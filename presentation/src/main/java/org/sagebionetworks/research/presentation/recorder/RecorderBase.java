@@ -32,6 +32,8 @@
 
 package org.sagebionetworks.research.presentation.recorder;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import androidx.annotation.NonNull;
 
 import org.sagebionetworks.research.domain.result.interfaces.Result;
@@ -41,6 +43,10 @@ import org.threeten.bp.Instant;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import io.reactivex.Completable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+
 /**
  * RecorderBase contains some of the common code amongst recorder implementations.
  */
@@ -56,6 +62,14 @@ public abstract class RecorderBase<R extends Result> implements Recorder<R> {
 
     private final AtomicBoolean isRecording;
 
+    // true between stop being called and the stop barrier letting the recorder stop
+    private final AtomicBoolean isStopPending = new AtomicBoolean(false);
+
+    private Completable stopBarrier = Completable.complete();
+
+    @NonNull
+    private Disposable stopBarrierDisposable = Disposables.disposed();
+
     public RecorderBase(@NonNull String identifier) {
         this.identifier = identifier;
 
@@ -84,13 +98,31 @@ public abstract class RecorderBase<R extends Result> implements Recorder<R> {
         }
     }
 
+    /**
+     * Sets work that must finish between this recorder being told to stop and it actually stopping, such as
+     * retrieving samples that were taken before the stop but are still buffered by their source. The recorder stops
+     * regardless of whether the barrier completes or fails. {@link #stopRecorder()} is called on the thread the
+     * barrier completes on, which is not necessarily the thread stop was called on. Cancelling the recorder does not
+     * wait for the barrier.
+     *
+     * @param stopBarrier
+     *         the Completable subscribed to when the recorder is stopped.
+     */
+    public void setStopBarrier(@NonNull Completable stopBarrier) {
+        this.stopBarrier = checkNotNull(stopBarrier);
+    }
+
     @Override
     public final void stop() {
         LOGGER.debug("Stop called on recorder with id: {}", identifier);
 
         if (isRecording.compareAndSet(true, false)) {
             stopTime = Instant.now();
-            stopRecorder();
+            isStopPending.set(true);
+            stopBarrierDisposable = stopBarrier
+                    .doOnError(t -> LOGGER.warn("Stop barrier failed for recorder with id: {}", identifier, t))
+                    .onErrorComplete()
+                    .subscribe(this::finishStop);
         } else {
             LOGGER.info("Recorder with id: {} already stopped.", identifier);
         }
@@ -101,7 +133,16 @@ public abstract class RecorderBase<R extends Result> implements Recorder<R> {
         LOGGER.debug("Cancel called on recorder with id: {}", identifier);
 
         cancelRecorder();
-        stop();
+        // the samples the stop barrier waits for are of no use to a cancelled recorder
+        if (isRecording.compareAndSet(true, false)) {
+            stopTime = Instant.now();
+            stopRecorder();
+        } else if (isStopPending.get()) {
+            stopBarrierDisposable.dispose();
+            finishStop();
+        } else {
+            LOGGER.info("Recorder with id: {} already stopped.", identifier);
+        }
     }
 
     @Override
@@ -126,7 +167,31 @@ public abstract class RecorderBase<R extends Result> implements Recorder<R> {
         return false;
     }
 
+    @Override
+    public void prewarm() {
+        LOGGER.debug("Prewarm called on recorder with id: {}", identifier);
+        // no-op
+    }
+
+    @Override
+    public void discardPrewarm() {
+        LOGGER.debug("Discard prewarm called on recorder with id: {}", identifier);
+        // no-op
+    }
+
     public abstract void startRecorder();
 
+    /**
+     * Stops the recorder once its stop barrier has completed. This is called on the thread the barrier completes on,
+     * such as the thread the sensor delivers its flushed samples on, or on the thread the recorder was stopped or
+     * cancelled on when there is no barrier to wait for.
+     */
     public abstract void stopRecorder();
+
+    private void finishStop() {
+        // the barrier completing and the recorder being cancelled may both try to finish stopping
+        if (isStopPending.compareAndSet(true, false)) {
+            stopRecorder();
+        }
+    }
 }
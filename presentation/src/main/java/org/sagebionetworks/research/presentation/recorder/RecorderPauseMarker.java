@@ -0,0 +1,98 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder;
+
+import androidx.annotation.NonNull;
+
+import org.sagebionetworks.research.presentation.recorder.util.RecorderClock;
+import org.threeten.bp.Instant;
+
+/**
+ * Marks the point in a recording where the recorder was paused or resumed. Recorders write these into their output
+ * in order with the recorded data, so that the gap a pause leaves in the data can be told apart from lost samples.
+ * This class is serialized as is, its field names are part of the recorders' file formats.
+ */
+public final class RecorderPauseMarker {
+    public static final String PAUSE = "pause";
+
+    public static final String RESUME = "resume";
+
+    private static final double SECONDS_TO_NANOS = 1_000_000_000d;
+
+    // PAUSE or RESUME
+    @NonNull
+    public final String marker;
+
+    // the wall clock time of the pause or resume
+    @NonNull
+    public final Instant timestampDate;
+
+    // seconds since boot, on the same clock as the uptime of sensor events and locations
+    public final double uptime;
+
+    private final transient long uptimeNanos;
+
+    @NonNull
+    public static RecorderPauseMarker pause() {
+        return new RecorderPauseMarker(PAUSE, Instant.now(), RecorderClock.elapsedRealtimeNanos());
+    }
+
+    @NonNull
+    public static RecorderPauseMarker resume() {
+        return new RecorderPauseMarker(RESUME, Instant.now(), RecorderClock.elapsedRealtimeNanos());
+    }
+
+    public RecorderPauseMarker(@NonNull String marker, @NonNull Instant timestampDate, long uptimeNanos) {
+        this.marker = marker;
+        this.timestampDate = timestampDate;
+        this.uptime = uptimeNanos / SECONDS_TO_NANOS;
+        this.uptimeNanos = uptimeNanos;
+    }
+
+    public long getUptimeNanos() {
+        return uptimeNanos;
+    }
+
+    public boolean isPause() {
+        return PAUSE.equals(marker);
+    }
+
+    @Override
+    public String toString() {
+        return "RecorderPauseMarker{" +
+                "marker='" + marker + '\'' +
+                ", timestampDate=" + timestampDate +
+                ", uptime=" + uptime +
+                '}';
+    }
+}
@@ -37,7 +37,8 @@ package org.sagebionetworks.research.presentation.recorder;
  */
 public interface RestartableRecorderConfiguration extends RecorderConfigPresentation {
     /**
-     * @return if the file used in a previous run of a recording be deleted?
+     * @return if the file used in a previous run of a recording be deleted? If not, the restarted recorder appends
+     *         to it.
      */
     boolean getShouldDeletePrevious();
 }
@@ -30,28 +30,26 @@
  * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
-package org.sagebionetworks.research.domain.task.navigation.strategy.factory.next_step;
-
-import static com.google.common.base.Preconditions.checkNotNull;
+package org.sagebionetworks.research.presentation.recorder;
 
 import androidx.annotation.NonNull;
 
-import org.sagebionetworks.research.domain.task.navigation.strategy.StepNavigationStrategy.NextStepStrategy;
-
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
 
-public final class NextStepStrategyInvocationHandler implements InvocationHandler {
-    private final NextStepStrategy nextStepStrategy;
+import java.util.List;
 
-    NextStepStrategyInvocationHandler(@NonNull NextStepStrategy nextStepStrategy) {
-        checkNotNull(nextStepStrategy);
+import io.reactivex.Maybe;
 
-        this.nextStepStrategy = nextStepStrategy;
-    }
-
-    @Override
-    public Object invoke(final Object o, final Method method, final Object[] args) throws Throwable {
-        return method.invoke(nextStepStrategy, args);
-    }
+/**
+ * A recorder that writes its output as several files, shards, recorded in parallel. The recorder's own result ties
+ * the shards together, the shards' results are the files themselves.
+ */
+public interface ShardedRecorder {
+    /**
+     * Returns the result of each shard, which succeeds when the shard's file is written.
+     *
+     * @return the results of the shards.
+     */
+    @NonNull
+    List<Maybe<FileResult>> getShardResults();
 }
@@ -32,8 +32,48 @@
 
 package org.sagebionetworks.research.presentation.recorder.location;
 
+import androidx.annotation.NonNull;
+
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
 import org.sagebionetworks.research.presentation.recorder.RecorderConfigPresentation;
 
 public interface DistanceRecorderConfigPresentation extends RecorderConfigPresentation {
+    /**
+     * Returns how the recorder should compress its file.
+     *
+     * @return how the recorder should compress its file, {@link RecorderOutputCompression#NONE} to write it as is.
+     */
+    @NonNull
+    @RecorderOutputCompression
+    String getCompression();
+
+    /**
+     * Returns the worst accuracy a location can have to be recorded.
+     *
+     * @return the maximum accuracy in meters, or 0 to record locations of any accuracy.
+     */
+    float getMaxAccuracyMeters();
+
+    /**
+     * Returns the least distance between the locations the recorder requests.
+     *
+     * @return the minimum distance in meters.
+     */
+    float getMinDistanceMeters();
+
+    /**
+     * Returns the least time between the locations the recorder requests and records.
+     *
+     * @return the minimum time in milliseconds.
+     */
+    long getMinTimeMillis();
+
+    /**
+     * Returns how far the recorded path can be from the locations it simplifies.
+     *
+     * @return the simplification tolerance in meters, or 0 to record every location.
+     */
+    double getSimplificationToleranceMeters();
+
     boolean getUsesRelativeCoordinates();
 }
@@ -39,8 +39,10 @@ import com.google.auto.value.AutoValue;
 
 import org.sagebionetworks.research.domain.async.DistanceRecorderConfiguration;
 import org.sagebionetworks.research.domain.async.RecorderConfiguration;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
 import org.sagebionetworks.research.presentation.inject.RecorderConfigPresentationFactory;
 import org.sagebionetworks.research.presentation.recorder.RecorderConfigPresentation;
+import org.sagebionetworks.research.presentation.recorder.reactive.source.ReactiveLocationFactory;
 
 @AutoValue
 public abstract class DistanceRecorderConfigPresentationImpl implements DistanceRecorderConfigPresentation {
@@ -49,8 +51,18 @@ public abstract class DistanceRecorderConfigPresentationImpl implements Distance
     public abstract static class Builder {
         public abstract DistanceRecorderConfigPresentationImpl build();
 
+        public abstract Builder setCompression(@NonNull @RecorderOutputCompression String compression);
+
         public abstract Builder setIdentifier(@NonNull String identifier);
 
+        public abstract Builder setMaxAccuracyMeters(float maxAccuracyMeters);
+
+        public abstract Builder setMinDistanceMeters(float minDistanceMeters);
+
+        public abstract Builder setMinTimeMillis(long minTimeMillis);
+
+        public abstract Builder setSimplificationToleranceMeters(double simplificationToleranceMeters);
+
         public abstract Builder setStartStepIdentifier(@Nullable String startStepIdentifier);
 
         public abstract Builder setStopStepIdentifier(@Nullable String stopStepIdentifier);
@@ -70,18 +82,39 @@ public abstract class DistanceRecorderConfigPresentationImpl implements Distance
                                 + " is not a DistanceRecorderConfiguration");
             }
 
+            DistanceRecorderConfiguration distanceConfiguration = (DistanceRecorderConfiguration) configuration;
             return DistanceRecorderConfigPresentationImpl.builder()
                     .setIdentifier(configuration.getIdentifier())
+                    .setCompression(distanceConfiguration.getCompression() != null
+                            ? distanceConfiguration.getCompression() : RecorderOutputCompression.NONE)
                     .setType(configuration.getType())
                     .setStartStepIdentifier(
                             configuration.getStartStepIdentifier())
                     .setStopStepIdentifier(
                             configuration.getStopStepIdentifier())
+                    .setMaxAccuracyMeters(distanceConfiguration.getMaxAccuracyMeters() != null
+                            ? distanceConfiguration.getMaxAccuracyMeters()
+                            : LocationPathSimplifier.DEFAULT_MAX_ACCURACY_METERS)
+                    .setMinDistanceMeters(distanceConfiguration.getMinDistanceMeters() != null
+                            ? distanceConfiguration.getMinDistanceMeters() : ReactiveLocationFactory.MIN_DISTANCE)
+                    .setMinTimeMillis(distanceConfiguration.getMinTimeMillis() != null
+                            ? distanceConfiguration.getMinTimeMillis() : ReactiveLocationFactory.MIN_TIME)
+                    .setSimplificationToleranceMeters(distanceConfiguration.getSimplificationToleranceMeters() != null
+                            ? distanceConfiguration.getSimplificationToleranceMeters()
+                            : LocationPathSimplifier.DEFAULT_TOLERANCE_METERS)
+                    .setUsesRelativeCoordinates(distanceConfiguration.getUsesRelativeCoordinates() != null
+                            && distanceConfiguration.getUsesRelativeCoordinates())
                     .build();
         }
     }
 
     public static Builder builder() {
-        return new AutoValue_DistanceRecorderConfigPresentationImpl.Builder();
+        return new AutoValue_DistanceRecorderConfigPresentationImpl.Builder()
+                .setCompression(RecorderOutputCompression.NONE)
+                .setMaxAccuracyMeters(LocationPathSimplifier.DEFAULT_MAX_ACCURACY_METERS)
+                .setMinDistanceMeters(ReactiveLocationFactory.MIN_DISTANCE)
+                .setMinTimeMillis(ReactiveLocationFactory.MIN_TIME)
+                .setSimplificationToleranceMeters(LocationPathSimplifier.DEFAULT_TOLERANCE_METERS)
+                .setUsesRelativeCoordinates(false);
     }
 }
@@ -0,0 +1,326 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.location;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import android.location.Location;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sagebionetworks.research.presentation.recorder.location.json.DistanceEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.Flowable;
+
+/**
+ * Reduces a stream of location fixes to the few that describe the path walked, so that an hour long recording stays
+ * small. Fixes are, in order:
+ * <ul>
+ * <li>rate limited to one per minimum time,</li>
+ * <li>rejected if their accuracy is worse than the maximum accuracy, or if they jump further from the path than the
+ * user could have moved,</li>
+ * <li>smoothed with a Kalman filter weighting each fix by its accuracy,</li>
+ * <li>simplified with a streaming Douglas-Peucker, which keeps a fix only where the path turns by more than the
+ * tolerance.</li>
+ * </ul>
+ * The simplification holds back at most {@link #MAX_WINDOW_SIZE} fixes, the last of which is kept when the window is
+ * full, so memory does not grow with the length of the recording.
+ * <p>
+ * A simplifier is not thread safe, fixes must be added serially.
+ */
+public class LocationPathSimplifier {
+    /**
+     * A location fix, its coordinates smoothed once it is returned by the simplifier.
+     */
+    public static final class Fix {
+        public final double latitude;
+
+        public final double longitude;
+
+        // in meters, 0 if unknown
+        public final float accuracy;
+
+        public final long elapsedRealtimeNanos;
+
+        // the fix as delivered, for its altitude, speed and bearing
+        @Nullable
+        public final Location location;
+
+        public Fix(double latitude, double longitude, float accuracy, long elapsedRealtimeNanos,
+                @Nullable Location location) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracy = accuracy;
+            this.elapsedRealtimeNanos = elapsedRealtimeNanos;
+            this.location = location;
+        }
+
+        Fix withCoordinates(double latitude, double longitude) {
+            return new Fix(latitude, longitude, accuracy, elapsedRealtimeNanos, location);
+        }
+    }
+
+    public static final float DEFAULT_MAX_ACCURACY_METERS = 50;
+
+    public static final double DEFAULT_TOLERANCE_METERS = 3;
+
+    public static final int MAX_WINDOW_SIZE = 128;
+
+    // fixes further from the path than this speed allows, beyond their accuracy, are outliers. Covers a run or a
+    // bicycle, not a car
+    static final double MAX_SPEED_METERS_PER_SECOND = 15;
+
+    // after this many outliers in a row the user has moved, e.g. out of a tunnel, and the path restarts at the fix
+    static final int MAX_CONSECUTIVE_OUTLIERS = 3;
+
+    // how fast the smoothed position is expected to drift from the user, a brisk walk
+    private static final double PROCESS_NOISE_METERS_PER_SECOND = 2;
+
+    private static final double EARTH_RADIUS_METERS = 6_371_009;
+
+    private static final double NANOS_TO_SECONDS = 1e-9;
+
+    private final float maxAccuracyMeters;
+
+    private final long minTimeNanos;
+
+    private final double toleranceMeters;
+
+    // fixes since the last kept fix that the simplified segment has to pass within the tolerance of
+    private final List<Fix> window = new ArrayList<>();
+
+    // the last fix that passed the outlier check, not necessarily kept
+    @Nullable
+    private Fix accepted;
+
+    @Nullable
+    private Fix anchor;
+
+    private int consecutiveOutliers;
+
+    // the smoothed position and its variance in square meters, Double.NaN before the first fix
+    private double estimateLatitude;
+
+    private double estimateLongitude;
+
+    private double estimateVariance = Double.NaN;
+
+    // meters per degree of longitude at the first fix, the path is simplified on a local plane
+    private double metersPerDegreeLongitude;
+
+    /**
+     * Returns a Flowable of the distance events of the fixes kept from the given locations. The last fix is always
+     * kept, and is emitted when the locations complete.
+     *
+     * @param usesRelativeCoordinates
+     *         true to write coordinates relative to the first kept fix.
+     */
+    @NonNull
+    public static Flowable<DistanceEvent> simplify(@NonNull Flowable<Location> locations, long minTimeMillis,
+            float maxAccuracyMeters, double toleranceMeters, boolean usesRelativeCoordinates) {
+        checkNotNull(locations);
+        return Flowable.defer(() -> {
+            LocationPathSimplifier simplifier = new LocationPathSimplifier(minTimeMillis, maxAccuracyMeters,
+                    toleranceMeters);
+            Location[] first = new Location[1];
+            return locations
+                    .concatMapIterable(location -> simplifier.add(new Fix(location.getLatitude(),
+                            location.getLongitude(), location.getAccuracy(),
+                            location.getElapsedRealtimeNanos(), location)))
+                    .concatWith(Flowable.defer(() -> Flowable.fromIterable(simplifier.finish())))
+                    .map(fix -> {
+                        Location smoothed = new Location(checkNotNull(fix.location));
+                        smoothed.setLatitude(fix.latitude);
+                        smoothed.setLongitude(fix.longitude);
+                        if (first[0] == null) {
+                            first[0] = smoothed;
+                        }
+                        return DistanceEvent.create(first[0], smoothed, usesRelativeCoordinates);
+                    });
+        });
+    }
+
+    /**
+     * @param minTimeMillis
+     *         the least time between fixes, a fix sooner after the previous one is dropped.
+     * @param maxAccuracyMeters
+     *         the worst accuracy a fix can have, or 0 to accept fixes of any accuracy.
+     * @param toleranceMeters
+     *         how far the simplified path can be from a fix, or 0 to keep every fix.
+     */
+    public LocationPathSimplifier(long minTimeMillis, float maxAccuracyMeters, double toleranceMeters) {
+        checkArgument(minTimeMillis >= 0, "minTimeMillis cannot be negative");
+        checkArgument(maxAccuracyMeters >= 0, "maxAccuracyMeters cannot be negative");
+        checkArgument(toleranceMeters >= 0, "toleranceMeters cannot be negative");
+        this.minTimeNanos = minTimeMillis * 1_000_000L;
+        this.maxAccuracyMeters = maxAccuracyMeters;
+        this.toleranceMeters = toleranceMeters;
+    }
+
+    /**
+     * Adds a fix and returns the fixes it lets the simplifier keep, if any.
+     *
+     * @return the kept fixes, smoothed.
+     */
+    @NonNull
+    public List<Fix> add(@NonNull Fix fix) {
+        if (maxAccuracyMeters > 0 && fix.accuracy > maxAccuracyMeters) {
+            return Collections.emptyList();
+        }
+        if (accepted != null && fix.elapsedRealtimeNanos - accepted.elapsedRealtimeNanos < Math.max(1, minTimeNanos)) {
+            return Collections.emptyList();
+        }
+        if (accepted != null && isOutlier(fix)) {
+            if (++consecutiveOutliers < MAX_CONSECUTIVE_OUTLIERS) {
+                return Collections.emptyList();
+            }
+            // the path is continued from the new position rather than drawn through the gap
+            List<Fix> kept = finish();
+            estimateVariance = Double.NaN;
+            accepted = null;
+            anchor = null;
+            consecutiveOutliers = 0;
+            kept = new ArrayList<>(kept);
+            kept.addAll(add(fix));
+            return kept;
+        }
+        consecutiveOutliers = 0;
+        Fix smoothed = smooth(fix);
+        accepted = fix;
+        return simplify(smoothed);
+    }
+
+    /**
+     * Returns the last fix held back by the simplification, as the end of the path.
+     *
+     * @return the remaining kept fix, if any.
+     */
+    @NonNull
+    public List<Fix> finish() {
+        if (window.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Fix last = window.get(window.size() - 1);
+        window.clear();
+        anchor = last;
+        return Collections.singletonList(last);
+    }
+
+    private static double distanceToSegment(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared));
+        return Math.hypot(x - x1 - t * dx, y - y1 - t * dy);
+    }
+
+    private double distanceToEstimate(@NonNull Fix fix) {
+        return Math.hypot(toX(fix.longitude) - toX(estimateLongitude), toY(fix.latitude) - toY(estimateLatitude));
+    }
+
+    private boolean isOutlier(@NonNull Fix fix) {
+        double seconds = (fix.elapsedRealtimeNanos - accepted.elapsedRealtimeNanos) * NANOS_TO_SECONDS;
+        double reach = MAX_SPEED_METERS_PER_SECOND * seconds + getAccuracy(fix) + Math.sqrt(estimateVariance);
+        return distanceToEstimate(fix) > reach;
+    }
+
+    private float getAccuracy(@NonNull Fix fix) {
+        // a fix without an accuracy is trusted as little as the worst one accepted
+        if (fix.accuracy > 0) {
+            return fix.accuracy;
+        }
+        return maxAccuracyMeters > 0 ? maxAccuracyMeters : DEFAULT_MAX_ACCURACY_METERS;
+    }
+
+    @NonNull
+    private List<Fix> simplify(@NonNull Fix fix) {
+        if (anchor == null || toleranceMeters == 0) {
+            anchor = fix;
+            return Collections.singletonList(fix);
+        }
+        double x1 = toX(anchor.longitude);
+        double y1 = toY(anchor.latitude);
+        double x2 = toX(fix.longitude);
+        double y2 = toY(fix.latitude);
+        for (Fix held : window) {
+            if (distanceToSegment(toX(held.longitude), toY(held.latitude), x1, y1, x2, y2) > toleranceMeters) {
+                // the path turned at the previous fix, which starts the next segment
+                Fix corner = window.get(window.size() - 1);
+                window.clear();
+                window.add(fix);
+                anchor = corner;
+                return Collections.singletonList(corner);
+            }
+        }
+        window.add(fix);
+        if (window.size() >= MAX_WINDOW_SIZE) {
+            return finish();
+        }
+        return Collections.emptyList();
+    }
+
+    @NonNull
+    private Fix smooth(@NonNull Fix fix) {
+        double measurementVariance = (double) getAccuracy(fix) * getAccuracy(fix);
+        if (Double.isNaN(estimateVariance)) {
+            estimateLatitude = fix.latitude;
+            estimateLongitude = fix.longitude;
+            estimateVariance = measurementVariance;
+            if (metersPerDegreeLongitude == 0) {
+                metersPerDegreeLongitude = Math.toRadians(EARTH_RADIUS_METERS)
+                        * Math.cos(Math.toRadians(fix.latitude));
+            }
+            return fix;
+        }
+        double seconds = (fix.elapsedRealtimeNanos - accepted.elapsedRealtimeNanos) * NANOS_TO_SECONDS;
+        estimateVariance += seconds * PROCESS_NOISE_METERS_PER_SECOND * PROCESS_NOISE_METERS_PER_SECOND;
+        double gain = estimateVariance / (estimateVariance + measurementVariance);
+        estimateLatitude += gain * (fix.latitude - estimateLatitude);
+        estimateLongitude += gain * (fix.longitude - estimateLongitude);
+        estimateVariance *= 1 - gain;
+        return fix.withCoordinates(estimateLatitude, estimateLongitude);
+    }
+
+    private double toX(double longitude) {
+        return longitude * metersPerDegreeLongitude;
+    }
+
+    private static double toY(double latitude) {
+        return Math.toRadians(EARTH_RADIUS_METERS) * latitude;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * Determines how a ReactiveRecorder groups events before handing them off between threads. A batch is emitted once
+ * it holds the maximum number of events, or once the maximum latency has passed since the previous batch, whichever
+ * comes first. Batching trades a bounded delay for one thread hand-off per batch rather than one per event.
+ */
+@AutoValue
+public abstract class BatchPolicy {
+    @AutoValue.Builder
+    public abstract static class Builder {
+        public abstract BatchPolicy build();
+
+        public abstract Builder setMaxBatchLatencyMillis(long maxBatchLatencyMillis);
+
+        public abstract Builder setMaxBatchSize(int maxBatchSize);
+    }
+
+    /**
+     * Events are handed off one at a time.
+     */
+    public static final BatchPolicy NONE = create(1, 0);
+
+    public static Builder builder() {
+        return new AutoValue_BatchPolicy.Builder();
+    }
+
+    public static BatchPolicy create(int maxBatchSize, long maxBatchLatencyMillis) {
+        return builder()
+                .setMaxBatchSize(maxBatchSize)
+                .setMaxBatchLatencyMillis(maxBatchLatencyMillis)
+                .build();
+    }
+
+    /**
+     * @return the longest time an event may wait for its batch to be emitted.
+     */
+    public abstract long getMaxBatchLatencyMillis();
+
+    /**
+     * @return the most events in a single batch.
+     */
+    public abstract int getMaxBatchSize();
+
+    /**
+     * @return true if events should be grouped into batches, false if they should be handed off one at a time.
+     */
+    public boolean isEnabled() {
+        return getMaxBatchSize() > 1 && getMaxBatchLatencyMillis() > 0;
+    }
+
+    public abstract Builder toBuilder();
+}
@@ -0,0 +1,95 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * Determines how much output a file recorder may hold in memory before it is flushed to disk. Output is flushed when
+ * the buffer fills up, after a number of records, or after an interval has passed since the last flush, whichever
+ * comes first. Flushing less often is cheaper, flushing more often loses less data if the app is killed.
+ */
+@AutoValue
+public abstract class FlushPolicy {
+    @AutoValue.Builder
+    public abstract static class Builder {
+        public abstract FlushPolicy build();
+
+        public abstract Builder setBufferSize(int bufferSize);
+
+        public abstract Builder setMaxFlushIntervalMillis(long maxFlushIntervalMillis);
+
+        public abstract Builder setMaxUnflushedRecords(int maxUnflushedRecords);
+    }
+
+    public static final FlushPolicy DEFAULT = builder()
+            .setBufferSize(64 * 1024)
+            .setMaxUnflushedRecords(Integer.MAX_VALUE)
+            .setMaxFlushIntervalMillis(1000)
+            .build();
+
+    public static Builder builder() {
+        return new AutoValue_FlushPolicy.Builder();
+    }
+
+    /**
+     * @return the size in characters of the buffer output is written to, which is flushed whenever it fills up.
+     */
+    public abstract int getBufferSize();
+
+    /**
+     * @return the longest time output may stay in the buffer, checked whenever a record is written.
+     */
+    public abstract long getMaxFlushIntervalMillis();
+
+    /**
+     * @return the most records that may be written without flushing the buffer.
+     */
+    public abstract int getMaxUnflushedRecords();
+
+    /**
+     * @param unflushedRecords
+     *         the number of records written since the last flush.
+     * @param lastFlushNanos
+     *         the System.nanoTime of the last flush.
+     * @param nowNanos
+     *         the current System.nanoTime.
+     * @return true if the buffer should be flushed now, false otherwise.
+     */
+    public boolean shouldFlush(int unflushedRecords, long lastFlushNanos, long nowNanos) {
+        return unflushedRecords >= getMaxUnflushedRecords()
+                || nowNanos - lastFlushNanos >= getMaxFlushIntervalMillis() * 1_000_000L;
+    }
+
+    public abstract Builder toBuilder();
+}
@@ -0,0 +1,169 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sagebionetworks.research.domain.result.implementations.FileResultBase;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
+import org.sagebionetworks.research.presentation.recorder.util.RecorderOutputStreams;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.util.Locale;
+
+import io.reactivex.Observable;
+import io.reactivex.subjects.ReplaySubject;
+
+/**
+ * Keeps track of the segment a file recorder is writing to, according to its {@link SegmentPolicy}, and publishes the
+ * segments it closes while recording. Without segmenting, the output file is the only segment and its result is
+ * named after the recorder. The segments are only rolled over on the recorder's writer thread.
+ */
+final class OutputSegments {
+    @NonNull
+    private final ReplaySubject<FileResult> closedSegments = ReplaySubject.create();
+
+    @NonNull
+    private final String identifier;
+
+    @NonNull
+    private final String mimeContentType;
+
+    @NonNull
+    private final File outputFile;
+
+    @NonNull
+    private final SegmentPolicy segmentPolicy;
+
+    private File currentFile;
+
+    private int currentNumber;
+
+    private long currentStartNanos;
+
+    // null for the first segment, which starts with the recorder
+    @Nullable
+    private Instant currentStartTime;
+
+    private boolean hasRecords;
+
+    OutputSegments(@NonNull String identifier, @NonNull File outputFile, @NonNull SegmentPolicy segmentPolicy,
+            @NonNull String mimeContentType) {
+        this.identifier = checkNotNull(identifier);
+        this.outputFile = checkNotNull(outputFile);
+        this.segmentPolicy = checkNotNull(segmentPolicy);
+        this.mimeContentType = checkNotNull(mimeContentType);
+    }
+
+    /**
+     * Publishes a segment that was closed while recording.
+     */
+    void close(@NonNull FileResult segmentResult) {
+        closedSegments.onNext(segmentResult);
+    }
+
+    /**
+     * Completes the closed segments, once the recording has ended or failed.
+     */
+    void finish() {
+        closedSegments.onComplete();
+    }
+
+    @NonNull
+    Observable<FileResult> getClosedSegments() {
+        return closedSegments.hide();
+    }
+
+    /**
+     * @return the file of the segment being written.
+     */
+    @NonNull
+    File getCurrentFile() {
+        return currentFile;
+    }
+
+    /**
+     * @param recordingStartTime
+     *         the time the recorder started.
+     * @param endTime
+     *         the time the segment ends.
+     * @return the result for the segment being written.
+     */
+    @NonNull
+    FileResult getCurrentResult(@Nullable Instant recordingStartTime, @NonNull Instant endTime) {
+        String segmentIdentifier = segmentPolicy.isEnabled()
+                ? String.format(Locale.US, "%s_%03d", identifier, currentNumber) : identifier;
+        return new FileResultBase(segmentIdentifier,
+                currentStartTime != null ? currentStartTime : recordingStartTime, endTime, mimeContentType,
+                currentFile.getPath());
+    }
+
+    /**
+     * Moves on to the next segment.
+     *
+     * @return the file to write the segment to.
+     */
+    @NonNull
+    File next() {
+        currentNumber++;
+        currentFile = segmentPolicy.isEnabled()
+                ? RecorderOutputStreams.getSegmentFile(outputFile, currentNumber) : outputFile;
+        currentStartTime = currentNumber == 1 ? null : Instant.now();
+        hasRecords = false;
+        return currentFile;
+    }
+
+    /**
+     * Called after each record written to the current segment.
+     *
+     * @param segmentBytes
+     *         the bytes written to the segment so far.
+     * @return true if the segment is full and should be closed.
+     */
+    boolean shouldRoll(long segmentBytes) {
+        if (!segmentPolicy.isEnabled()) {
+            return false;
+        }
+        long nowNanos = System.nanoTime();
+        if (!hasRecords) {
+            // the first segment is opened before the recorder starts, so a duration counts from the first record
+            hasRecords = true;
+            currentStartNanos = nowNanos;
+        }
+        return segmentPolicy.shouldRoll(segmentBytes, currentStartNanos, nowNanos);
+    }
+}
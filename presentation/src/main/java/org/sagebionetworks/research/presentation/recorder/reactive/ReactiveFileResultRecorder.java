@@ -13,6 +13,7 @@ import com.google.gson.Gson;
 import org.reactivestreams.Subscription;
 import org.sagebionetworks.research.domain.result.implementations.FileResultBase;
 import org.sagebionetworks.research.domain.result.interfaces.FileResult;
+import org.sagebionetworks.research.presentation.recorder.RecorderPauseMarker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -88,8 +89,7 @@ public class ReactiveFileResultRecorder<E> extends ReactiveRecorder<E, FileResul
         this.compositeDisposable = new CompositeDisposable();
 
         compositeDisposable.add(
-                getEventFlowable()
-                        .observeOn(Schedulers.io())
+                observeEvents(Schedulers.io())
                         .doOnSubscribe(this::onReactiveDataSubscribe)
                         .doOnCancel(this::onReactiveDataCancel)
                         .doFinally(this::doReactiveDataFinally)
@@ -168,16 +168,25 @@ public class ReactiveFileResultRecorder<E> extends ReactiveRecorder<E, FileResul
     void onReactiveDataNext(E data) {
         LOGGER.trace("reactive data received: {}", data);
         if (data != null) {
-            try {
-                String outputString = "";
-                if (!isFirstJsonObject.compareAndSet(true, false)) {
-                    outputString += this.deliminator;
-                }
-                outputString += gson.toJson(data);
-                this.outputStream.print(outputString);
-            } catch (Throwable t) {
-                onReactiveDataError(t);
+            writeObject(data);
+        }
+    }
+
+    @Override
+    protected void onPauseMarker(@NonNull RecorderPauseMarker marker) {
+        writeObject(marker);
+    }
+
+    private void writeObject(@NonNull Object object) {
+        try {
+            String outputString = "";
+            if (!isFirstJsonObject.compareAndSet(true, false)) {
+                outputString += this.deliminator;
             }
+            outputString += gson.toJson(object);
+            this.outputStream.print(outputString);
+        } catch (Throwable t) {
+            onReactiveDataError(t);
         }
     }
 }
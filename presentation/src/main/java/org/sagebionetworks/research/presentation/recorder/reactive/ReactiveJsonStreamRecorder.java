@@ -0,0 +1,321 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import androidx.annotation.CallSuper;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.common.io.CountingOutputStream;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import org.reactivestreams.Subscription;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
+import org.sagebionetworks.research.presentation.recorder.RecorderPauseMarker;
+import org.sagebionetworks.research.presentation.recorder.SegmentedRecorder;
+import org.sagebionetworks.research.presentation.recorder.util.RecorderOutputStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Instant;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.MaybeSubject;
+
+/**
+ * Records elements to a JSON array file through a single JsonWriter that stays open for the whole recording, rather
+ * than building a String per element as a ReactiveFileResultRecorder does. The output is the same JSON array, written
+ * compactly regardless of whether the Gson is set up for pretty printing. It is buffered and flushed to disk according
+ * to a {@link FlushPolicy}.
+ * <p>
+ * With a {@link SegmentPolicy}, the recording is split into numbered segment files, each holding a complete JSON
+ * array.
+ */
+public class ReactiveJsonStreamRecorder<E> extends ReactiveRecorder<E, FileResult> implements SegmentedRecorder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveJsonStreamRecorder.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    protected final FlushPolicy flushPolicy;
+
+    protected final File outputFile;
+
+    protected Writer outputWriter;
+
+    protected JsonWriter jsonWriter;
+
+    private final CompositeDisposable compositeDisposable;
+
+    // counts the bytes written to the current segment, before compression
+    private CountingOutputStream countingOutputStream;
+
+    @RecorderOutputCompression
+    private final String compression;
+
+    private final MaybeSubject<FileResult> fileResultMaybeSubject;
+
+    private final Gson gson;
+
+    private long lastFlushNanos;
+
+    private final OutputSegments outputSegments;
+
+    // allows us to cancel our subscription
+    private Subscription reactiveDataSubscription;
+
+    private final AtomicBoolean success = new AtomicBoolean(false);
+
+    private final Map<Class<?>, TypeAdapter<?>> typeAdapters = new HashMap<>();
+
+    private int unflushedRecords;
+
+    public ReactiveJsonStreamRecorder(@NonNull String identifier, @NonNull Flowable<E> eventFlowable,
+            @NonNull Gson gson, @NonNull File outputFile) {
+        this(identifier, eventFlowable, gson, outputFile, FlushPolicy.DEFAULT);
+    }
+
+    public ReactiveJsonStreamRecorder(@NonNull String identifier, @NonNull Flowable<E> eventFlowable,
+            @NonNull Gson gson, @NonNull File outputFile, @NonNull FlushPolicy flushPolicy) {
+        this(identifier, eventFlowable, gson, outputFile, flushPolicy, RecorderOutputCompression.NONE);
+    }
+
+    public ReactiveJsonStreamRecorder(@NonNull String identifier, @NonNull Flowable<E> eventFlowable,
+            @NonNull Gson gson, @NonNull File outputFile, @NonNull FlushPolicy flushPolicy,
+            @NonNull @RecorderOutputCompression String compression) {
+        this(identifier, eventFlowable, gson, outputFile, flushPolicy, compression, SegmentPolicy.NONE);
+    }
+
+    public ReactiveJsonStreamRecorder(@NonNull String identifier, @NonNull Flowable<E> eventFlowable,
+            @NonNull Gson gson, @NonNull File outputFile, @NonNull FlushPolicy flushPolicy,
+            @NonNull @RecorderOutputCompression String compression, @NonNull SegmentPolicy segmentPolicy) {
+        super(identifier, eventFlowable);
+
+        this.gson = checkNotNull(gson);
+        this.outputFile = checkNotNull(outputFile);
+        this.flushPolicy = checkNotNull(flushPolicy);
+        this.compression = checkNotNull(compression);
+        this.outputSegments = new OutputSegments(identifier, outputFile, segmentPolicy,
+                RecorderOutputStreams.getMimeContentType(ReactiveFileResultRecorder.JSON_MIME_CONTENT_TYPE,
+                        compression));
+
+        this.fileResultMaybeSubject = MaybeSubject.create();
+
+        this.compositeDisposable = new CompositeDisposable();
+
+        compositeDisposable.add(
+                observeEvents(Schedulers.io())
+                        .doOnSubscribe(this::onReactiveDataSubscribe)
+                        .doOnCancel(this::onReactiveDataCancel)
+                        .doFinally(this::doReactiveDataFinally)
+                        .subscribe(this::onReactiveDataNext, this::onReactiveDataError,
+                                this::onReactiveDataComplete));
+    }
+
+    @Override
+    @CallSuper
+    public void cancelRecorder() {
+        super.cancelRecorder();
+        fileResultMaybeSubject.onComplete();
+        // the recorder may be cancelled before it has subscribed to its data
+        if (reactiveDataSubscription != null) {
+            reactiveDataSubscription.cancel();
+        }
+    }
+
+    @Override
+    public Maybe<FileResult> getResult() {
+        return fileResultMaybeSubject;
+    }
+
+    @NonNull
+    @Override
+    public Observable<FileResult> getSegmentResults() {
+        return outputSegments.getClosedSegments();
+    }
+
+    @VisibleForTesting
+    void doReactiveDataFinally() {
+        closeOutputWriter();
+        if (!success.get()) {
+            // segments that were closed already are kept, they have been published
+            LOGGER.debug("Deleting output file");
+            outputSegments.getCurrentFile().delete();
+        }
+        outputSegments.finish();
+
+        compositeDisposable.dispose();
+    }
+
+    @VisibleForTesting
+    void onReactiveDataCancel() {
+        LOGGER.debug("reactive data canceled for {}", identifier);
+
+        fileResultMaybeSubject.onComplete();
+    }
+
+    @VisibleForTesting
+    void onReactiveDataComplete() {
+        LOGGER.debug("reactive data completed for {}", identifier);
+        try {
+            jsonWriter.endArray();
+            jsonWriter.flush();
+            success.set(true);
+            fileResultMaybeSubject.onSuccess(outputSegments.getCurrentResult(startTime, stopTime));
+        } catch (Throwable t) {
+            onReactiveDataError(t);
+        }
+    }
+
+    @VisibleForTesting
+    void onReactiveDataError(Throwable t) {
+        LOGGER.debug("reactive data errored for {}", identifier, t);
+
+        fileResultMaybeSubject.onError(t);
+    }
+
+    @VisibleForTesting
+    void onReactiveDataNext(E data) {
+        LOGGER.trace("reactive data received: {}", data);
+        if (data != null) {
+            writeObject(data);
+        }
+    }
+
+    @VisibleForTesting
+    void onReactiveDataSubscribe(Subscription subscription) {
+        LOGGER.debug("reactive data subscribed for {}", identifier);
+
+        try {
+            reactiveDataSubscription = subscription;
+            openSegment();
+        } catch (Throwable t) {
+            onReactiveDataError(t);
+        }
+    }
+
+    @Override
+    protected void onPauseMarker(@NonNull RecorderPauseMarker marker) {
+        writeObject(marker);
+    }
+
+    private void closeOutputWriter() {
+        if (outputWriter == null) {
+            return;
+        }
+        // JsonWriter.close throws if the array was never ended, so close the underlying writer instead
+        try {
+            outputWriter.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error closing output file for {}", identifier, e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        // this overwrites any file that already exists at this location
+        countingOutputStream = new CountingOutputStream(
+                RecorderOutputStreams.open(outputSegments.next(), compression));
+        outputWriter = new BufferedWriter(new OutputStreamWriter(countingOutputStream, UTF_8),
+                flushPolicy.getBufferSize());
+        // matches the settings Gson.toJson uses, except that the output is never indented
+        jsonWriter = new JsonWriter(outputWriter);
+        jsonWriter.setLenient(true);
+        jsonWriter.setHtmlSafe(gson.htmlSafe());
+        jsonWriter.setSerializeNulls(gson.serializeNulls());
+        jsonWriter.beginArray();
+        unflushedRecords = 0;
+        lastFlushNanos = System.nanoTime();
+    }
+
+    /**
+     * Closes the current segment as a complete file, publishes it, and continues in the next one.
+     */
+    private void rollSegment() throws IOException {
+        jsonWriter.endArray();
+        jsonWriter.close();
+        FileResult segmentResult = outputSegments.getCurrentResult(startTime, Instant.now());
+        LOGGER.debug("Closed segment {} of {}", segmentResult.getIdentifier(), identifier);
+        outputSegments.close(segmentResult);
+        openSegment();
+    }
+
+    /**
+     * Looks up the adapter for the runtime type of the element, as Gson.toJson does, caching it so that the lookup
+     * only happens once per type.
+     */
+    @SuppressWarnings("unchecked")
+    private TypeAdapter<Object> getTypeAdapter(@NonNull Object data) {
+        Class<?> type = data.getClass();
+        TypeAdapter<?> typeAdapter = typeAdapters.get(type);
+        if (typeAdapter == null) {
+            typeAdapter = gson.getAdapter(type);
+            typeAdapters.put(type, typeAdapter);
+        }
+        return (TypeAdapter<Object>) typeAdapter;
+    }
+
+    private void writeObject(@NonNull Object data) {
+        try {
+            getTypeAdapter(data).write(jsonWriter, data);
+            unflushedRecords++;
+            long nowNanos = System.nanoTime();
+            if (flushPolicy.shouldFlush(unflushedRecords, lastFlushNanos, nowNanos)) {
+                jsonWriter.flush();
+                unflushedRecords = 0;
+                lastFlushNanos = nowNanos;
+            }
+            if (outputSegments.shouldRoll(countingOutputStream.getCount())) {
+                rollSegment();
+            }
+        } catch (Throwable t) {
+            onReactiveDataError(t);
+        }
+    }
+}
@@ -32,21 +32,33 @@
 
 package org.sagebionetworks.research.presentation.recorder.reactive;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import androidx.annotation.CallSuper;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import org.sagebionetworks.research.domain.result.interfaces.Result;
 import org.sagebionetworks.research.presentation.recorder.RecorderBase;
+import org.sagebionetworks.research.presentation.recorder.RecorderPauseMarker;
+import org.sagebionetworks.research.presentation.recorder.reactive.source.PreRollSource;
+import org.sagebionetworks.research.presentation.recorder.util.RecorderClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.flowables.ConnectableFlowable;
+import io.reactivex.processors.BehaviorProcessor;
 import io.reactivex.schedulers.Schedulers;
 import io.reactivex.subjects.SingleSubject;
 
@@ -56,6 +68,11 @@ import io.reactivex.subjects.SingleSubject;
  * <p>
  * This class is intended to make making recorders from anything that can be turned into a stream of events easier,
  * and more convenient.
+ * <p>
+ * Pausing the recorder unsubscribes from the events and resuming it subscribes again, so a paused recorder's
+ * sources, e.g. sensors, are released. A {@link RecorderPauseMarker} is recorded in order with the events for each
+ * pause and resume, for subclasses which subscribe through {@link #observeEvents(Scheduler)} or
+ * {@link #observeBatches(Scheduler)} to write into their output.
  *
  * @param <E>
  *         The type of event from the stream this recorder records based on.
@@ -63,55 +80,229 @@ import io.reactivex.subjects.SingleSubject;
 public abstract class ReactiveRecorder<E, R extends Result> extends RecorderBase<R> {
     private final Logger LOGGER = LoggerFactory.getLogger(ReactiveRecorder.class);
 
+    private final BatchPolicy batchPolicy;
+
     private CompositeDisposable compositeDisposable;
 
     // this allows us to stop connectableFlowableData
     private Disposable connectableFlowableConnectionDisposable;
 
-    private ConnectableFlowable<E> eventConnectableFlowable;
+    private ConnectableFlowable<?> connectableFlowable;
+
+    // the recorded events, interleaved with RecorderPauseMarkers
+    private Flowable<List<Object>> recordBatchFlowable;
+
+    private Flowable<Object> recordFlowable;
 
     private final AtomicBoolean paused;
 
+    private final BehaviorProcessor<Boolean> pausedProcessor;
+
+    @Nullable
+    private PreRollSource<?> preRollSource;
+
+    // whether the recorder has been paused since it started, only accessed within the pause/resume switching
+    private boolean wasPaused;
+
     private final SingleSubject<Object> stopSignal;
 
     public ReactiveRecorder(@NonNull final String identifier, Flowable<E> eventFlowable) {
+        this(identifier, eventFlowable, BatchPolicy.NONE);
+    }
+
+    public ReactiveRecorder(@NonNull final String identifier, Flowable<E> eventFlowable,
+            @NonNull BatchPolicy batchPolicy) {
         super(identifier);
         this.stopSignal = SingleSubject.create();
+        this.batchPolicy = checkNotNull(batchPolicy);
         paused = new AtomicBoolean();
+        pausedProcessor = BehaviorProcessor.createDefault(false);
 
-        this.eventConnectableFlowable = eventFlowable
-                .observeOn(Schedulers.computation())
-                .takeUntil(stopSignal.toFlowable())
-                .filter((e) -> !paused.get())
-                .doFinally(this::doFinally)
-                .publish();
+        // concatMap hands the events through without queueing them, so none are lost when a pause cancels them
+        Flowable<Object> pausableFlowable = pausedProcessor
+                .onBackpressureBuffer()
+                .distinctUntilChanged()
+                .concatMap(isPaused -> {
+                    if (isPaused) {
+                        wasPaused = true;
+                        return Flowable.fromCallable(RecorderPauseMarker::pause);
+                    }
+                    Flowable<Object> events = eventFlowable
+                            .takeUntil(pausedProcessor.filter(isPausing -> isPausing))
+                            .cast(Object.class);
+                    return wasPaused ? Flowable.<Object>fromCallable(RecorderPauseMarker::resume).concatWith(events)
+                            : events;
+                });
+
+        if (batchPolicy.isEnabled()) {
+            // events are grouped on the thread they are delivered on, so only whole batches change threads
+            ConnectableFlowable<List<Object>> batchConnectableFlowable = pausableFlowable
+                    .takeUntil(stopSignal.toFlowable())
+                    .buffer(batchPolicy.getMaxBatchLatencyMillis(), TimeUnit.MILLISECONDS,
+                            Schedulers.computation(), batchPolicy.getMaxBatchSize())
+                    .filter(batch -> !batch.isEmpty())
+                    .observeOn(Schedulers.computation())
+                    .doFinally(this::doFinally)
+                    .publish();
+            this.connectableFlowable = batchConnectableFlowable;
+            this.recordBatchFlowable = batchConnectableFlowable;
+            this.recordFlowable = batchConnectableFlowable.concatMapIterable(batch -> batch);
+        } else {
+            // stopping before changing threads still delivers the events already handed over, such as the tail
+            // of a flushed sensor FIFO
+            ConnectableFlowable<Object> eventConnectableFlowable = pausableFlowable
+                    .takeUntil(stopSignal.toFlowable())
+                    .observeOn(Schedulers.computation())
+                    .doFinally(this::doFinally)
+                    .publish();
+            this.connectableFlowable = eventConnectableFlowable;
+            this.recordBatchFlowable = eventConnectableFlowable.map(Collections::singletonList);
+            this.recordFlowable = eventConnectableFlowable;
+        }
         this.compositeDisposable = new CompositeDisposable();
     }
 
+    /**
+     * Returns the events this recorder records, in batches as determined by the recorder's {@link BatchPolicy}.
+     * Subscribers which write batches at once should use this rather than {@link #getEventFlowable()} when batching
+     * is enabled, so that they also only change threads once per batch.
+     *
+     * @return the flowable of batches of events.
+     */
     @NonNull
+    @SuppressWarnings("unchecked")
+    public Flowable<List<E>> getBatchFlowable() {
+        return recordBatchFlowable
+                .map(ReactiveRecorder::withoutPauseMarkers)
+                .filter(batch -> !batch.isEmpty())
+                .map(batch -> (List<E>) batch);
+    }
+
+    @NonNull
+    public BatchPolicy getBatchPolicy() {
+        return this.batchPolicy;
+    }
+
+    /**
+     * @return the flowable of events, without the pause and resume markers.
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
     public Flowable<E> getEventFlowable() {
-        return this.eventConnectableFlowable;
+        return recordFlowable
+                .filter(record -> !(record instanceof RecorderPauseMarker))
+                .map(record -> (E) record);
+    }
+
+    @Override
+    public boolean isPaused() {
+        return paused.get();
+    }
+
+    /**
+     * Sets the source this recorder's events are derived from, to subscribe to when the recorder is pre-warmed. The
+     * recorder's event flowable must subscribe to it through {@link PreRollSource#getFlowable()}.
+     *
+     * @param preRollSource
+     *         the source that is warmed ahead of the start.
+     */
+    public void setPreRollSource(@NonNull PreRollSource<?> preRollSource) {
+        this.preRollSource = checkNotNull(preRollSource);
+    }
+
+    /**
+     * Returns the batches of events observed on the given scheduler, like {@link #getBatchFlowable()}. Batches are
+     * split at pause and resume markers, and {@link #onPauseMarker(RecorderPauseMarker)} is called for each marker
+     * on the scheduler, after the batches before it were delivered and before the ones after it.
+     *
+     * @param scheduler
+     *         the scheduler the batches are written on.
+     * @return the flowable of batches of events.
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public Flowable<List<E>> observeBatches(@NonNull Scheduler scheduler) {
+        return recordBatchFlowable
+                .observeOn(scheduler)
+                .concatMapIterable(ReactiveRecorder::splitAtPauseMarkers)
+                .filter(this::isEventBatch)
+                .map(batch -> (List<E>) batch);
     }
 
+    /**
+     * Returns the events observed on the given scheduler, like {@link #getEventFlowable()}, with
+     * {@link #onPauseMarker(RecorderPauseMarker)} called in order with them on the scheduler.
+     *
+     * @param scheduler
+     *         the scheduler the events are written on.
+     * @return the flowable of events.
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public Flowable<E> observeEvents(@NonNull Scheduler scheduler) {
+        return recordFlowable
+                .observeOn(scheduler)
+                .filter(this::isEvent)
+                .map(record -> (E) record);
+    }
+
+    /**
+     * Unsubscribes from the events until the recorder is resumed, which releases their sources.
+     */
     @Override
     @CallSuper
     public void pause() {
         LOGGER.debug("Pause called on recorder with id: {}", identifier);
         paused.set(true);
+        pausedProcessor.onNext(true);
     }
 
+    /**
+     * Subscribes to the events again after a pause.
+     */
     @Override
     @CallSuper
     public void resume() {
         LOGGER.debug("Resume called on recorder with id: {}", identifier);
         paused.set(false);
+        pausedProcessor.onNext(false);
+    }
+
+    @Override
+    @CallSuper
+    public void cancelRecorder() {
+        super.cancelRecorder();
+        discardPrewarm();
+    }
+
+    /**
+     * Subscribes to the pre-roll source, if there is one, so that the recording can begin from the start instant.
+     */
+    @Override
+    public void prewarm() {
+        super.prewarm();
+        if (preRollSource != null && !isRecording()) {
+            preRollSource.warm();
+        }
+    }
+
+    @Override
+    public void discardPrewarm() {
+        super.discardPrewarm();
+        if (preRollSource != null) {
+            preRollSource.discard();
+        }
     }
 
     @Override
     @CallSuper
     public void startRecorder() {
         LOGGER.debug("Starting recorder {}" + identifier);
-        eventConnectableFlowable.connect(d -> {
+        if (preRollSource != null) {
+            // the events are subscribed to as the flowable is connected, which takes over a warm pre-roll
+            preRollSource.start(RecorderClock.elapsedRealtimeNanos());
+        }
+        connectableFlowable.connect(d -> {
             compositeDisposable.add(d);
             connectableFlowableConnectionDisposable = d;
         });
@@ -124,6 +315,65 @@ public abstract class ReactiveRecorder<E, R extends Result> extends RecorderBase
         stopSignal.onSuccess(new Object());
     }
 
+    /**
+     * Called on the scheduler given to {@link #observeEvents(Scheduler)} or {@link #observeBatches(Scheduler)} when
+     * the recorder was paused or resumed, in order with the events. Subclasses write the marker into their output.
+     *
+     * @param marker
+     *         the pause or resume.
+     */
+    protected void onPauseMarker(@NonNull RecorderPauseMarker marker) {
+        // no-op
+    }
+
+    @NonNull
+    private static List<Object> withoutPauseMarkers(@NonNull List<Object> batch) {
+        List<Object> events = new ArrayList<>(batch.size());
+        for (Object record : batch) {
+            if (!(record instanceof RecorderPauseMarker)) {
+                events.add(record);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return the runs of events in the batch, with each marker in a list of its own between them.
+     */
+    @NonNull
+    private static List<List<Object>> splitAtPauseMarkers(@NonNull List<Object> batch) {
+        List<List<Object>> runs = new ArrayList<>();
+        int runStart = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.get(i) instanceof RecorderPauseMarker) {
+                if (i > runStart) {
+                    runs.add(batch.subList(runStart, i));
+                }
+                runs.add(Collections.singletonList(batch.get(i)));
+                runStart = i + 1;
+            }
+        }
+        if (runStart == 0) {
+            // the common case, a batch without markers
+            runs.add(batch);
+        } else if (runStart < batch.size()) {
+            runs.add(batch.subList(runStart, batch.size()));
+        }
+        return runs;
+    }
+
+    private boolean isEvent(@NonNull Object record) {
+        if (record instanceof RecorderPauseMarker) {
+            onPauseMarker((RecorderPauseMarker) record);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isEventBatch(@NonNull List<Object> batch) {
+        return batch.size() != 1 || isEvent(batch.get(0));
+    }
+
     @VisibleForTesting
     void doFinally() {
         LOGGER.debug("Do finally recorder {}" + identifier);
@@ -0,0 +1,260 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import androidx.annotation.CallSuper;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import org.reactivestreams.Subscription;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
+import org.sagebionetworks.research.domain.result.implementations.FileResultBase;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
+import org.sagebionetworks.research.presentation.recorder.RecorderPauseMarker;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.SensorEventPOJO;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+import org.sagebionetworks.research.presentation.recorder.sensor.columnar.SensorColumnarFormat;
+import org.sagebionetworks.research.presentation.recorder.sensor.columnar.SensorColumnarWriter;
+import org.sagebionetworks.research.presentation.recorder.sensor.columnar.SensorDescription;
+import org.sagebionetworks.research.presentation.recorder.util.RecorderOutputStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.MaybeSubject;
+
+/**
+ * Records sensor samples to a file in the columnar format described by {@link SensorColumnarFormat}. The resulting
+ * FileResult has a content type of {@link SensorColumnarFormat#MIME_CONTENT_TYPE}.
+ */
+public class ReactiveSensorColumnarRecorder extends ReactiveRecorder<SensorSample, FileResult> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveSensorColumnarRecorder.class);
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    protected final File outputFile;
+
+    protected SensorColumnarWriter columnarWriter;
+
+    private final CompositeDisposable compositeDisposable;
+
+    @RecorderOutputCompression
+    private final String compression;
+
+    private final MaybeSubject<FileResult> fileResultMaybeSubject;
+
+    // allows us to cancel our subscription
+    private Subscription reactiveDataSubscription;
+
+    private final AtomicBoolean success = new AtomicBoolean(false);
+
+    public ReactiveSensorColumnarRecorder(@NonNull String identifier, @NonNull Flowable<SensorSample> sampleFlowable,
+            @NonNull File outputFile) {
+        this(identifier, sampleFlowable, outputFile, BatchPolicy.NONE);
+    }
+
+    public ReactiveSensorColumnarRecorder(@NonNull String identifier, @NonNull Flowable<SensorSample> sampleFlowable,
+            @NonNull File outputFile, @NonNull BatchPolicy batchPolicy) {
+        this(identifier, sampleFlowable, outputFile, batchPolicy, RecorderOutputCompression.NONE);
+    }
+
+    public ReactiveSensorColumnarRecorder(@NonNull String identifier, @NonNull Flowable<SensorSample> sampleFlowable,
+            @NonNull File outputFile, @NonNull BatchPolicy batchPolicy,
+            @NonNull @RecorderOutputCompression String compression) {
+        super(identifier, sampleFlowable, batchPolicy);
+
+        this.outputFile = checkNotNull(outputFile);
+        this.compression = checkNotNull(compression);
+
+        this.fileResultMaybeSubject = MaybeSubject.create();
+
+        this.compositeDisposable = new CompositeDisposable();
+
+        if (batchPolicy.isEnabled()) {
+            compositeDisposable.add(
+                    observeBatches(Schedulers.io())
+                            .doOnSubscribe(this::onReactiveDataSubscribe)
+                            .doOnCancel(this::onReactiveDataCancel)
+                            .doFinally(this::doReactiveDataFinally)
+                            .subscribe(this::onReactiveDataBatch, this::onReactiveDataError,
+                                    this::onReactiveDataComplete));
+        } else {
+            compositeDisposable.add(
+                    observeEvents(Schedulers.io())
+                            .doOnSubscribe(this::onReactiveDataSubscribe)
+                            .doOnCancel(this::onReactiveDataCancel)
+                            .doFinally(this::doReactiveDataFinally)
+                            .subscribe(this::onReactiveDataNext, this::onReactiveDataError,
+                                    this::onReactiveDataComplete));
+        }
+    }
+
+    @Override
+    @CallSuper
+    public void cancelRecorder() {
+        super.cancelRecorder();
+        fileResultMaybeSubject.onComplete();
+        // the recorder may be cancelled before it has subscribed to its data
+        if (reactiveDataSubscription != null) {
+            reactiveDataSubscription.cancel();
+        }
+    }
+
+    @Override
+    public Maybe<FileResult> getResult() {
+        return fileResultMaybeSubject;
+    }
+
+    @VisibleForTesting
+    void doReactiveDataFinally() {
+        closeWriter();
+        if (!success.get()) {
+            LOGGER.debug("Deleting output file");
+            outputFile.delete();
+        }
+
+        compositeDisposable.dispose();
+    }
+
+    @VisibleForTesting
+    void onReactiveDataCancel() {
+        LOGGER.debug("reactive data canceled for {}", identifier);
+
+        fileResultMaybeSubject.onComplete();
+    }
+
+    @VisibleForTesting
+    void onReactiveDataComplete() {
+        LOGGER.debug("reactive data completed for {}", identifier);
+        try {
+            columnarWriter.flush();
+            success.set(true);
+            fileResultMaybeSubject.onSuccess(new FileResultBase(identifier, startTime, stopTime,
+                    RecorderOutputStreams.getMimeContentType(SensorColumnarFormat.MIME_CONTENT_TYPE, compression),
+                    outputFile.getPath()));
+        } catch (Throwable t) {
+            onReactiveDataError(t);
+        }
+    }
+
+    @VisibleForTesting
+    void onReactiveDataError(Throwable t) {
+        LOGGER.debug("reactive data errored for {}", identifier, t);
+
+        fileResultMaybeSubject.onError(t);
+    }
+
+    /**
+     * Appends a batch of samples. Column blocks are still only written once they fill up, so a batch does not cause
+     * a write by itself.
+     */
+    @VisibleForTesting
+    void onReactiveDataBatch(List<SensorSample> batch) {
+        try {
+            for (SensorSample sample : batch) {
+                writeSample(sample);
+            }
+        } catch (Throwable t) {
+            onReactiveDataError(t);
+        }
+    }
+
+    @VisibleForTesting
+    void onReactiveDataNext(SensorSample sample) {
+        LOGGER.trace("reactive data received: {}", sample);
+        if (sample != null) {
+            try {
+                writeSample(sample);
+            } catch (Throwable t) {
+                onReactiveDataError(t);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void onReactiveDataSubscribe(Subscription subscription) {
+        LOGGER.debug("reactive data subscribed for {}", identifier);
+
+        try {
+            reactiveDataSubscription = subscription;
+
+            // this overwrites any file that already exists at this location
+            columnarWriter = new SensorColumnarWriter(
+                    new BufferedOutputStream(RecorderOutputStreams.open(outputFile, compression), OUTPUT_BUFFER_SIZE));
+        } catch (Throwable t) {
+            onReactiveDataError(t);
+        }
+    }
+
+    @Override
+    protected void onPauseMarker(@NonNull RecorderPauseMarker marker) {
+        try {
+            columnarWriter.writePauseMarker(marker);
+        } catch (Throwable t) {
+            onReactiveDataError(t);
+        }
+    }
+
+    private void closeWriter() {
+        if (columnarWriter == null) {
+            return;
+        }
+        try {
+            columnarWriter.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error closing output file for {}", identifier, e);
+        }
+    }
+
+    private void writeSample(@NonNull SensorSample sample) throws IOException {
+        if (!columnarWriter.hasSensorDescription(sample.sensorType)) {
+            columnarWriter.writeSensorDescription(SensorDescription.fromSensor(sample.sensor, sample.values.length));
+        }
+        if (!columnarWriter.hasReference()) {
+            // the first sample determines the uptime reference for the whole recording
+            columnarWriter.writeReference(sample.sensorType, sample.timestampNanos, SensorEventPOJO.uptimeZero());
+        }
+        columnarWriter.append(sample.sensorType, sample.timestampNanos, sample.values);
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import androidx.annotation.CallSuper;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.common.io.CountingOutputStream;
+import com.google.gson.Gson;
+
+import org.reactivestreams.Subscription;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
+import org.sagebionetworks.research.domain.result.implementations.FileResultBase;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
+import org.sagebionetworks.research.presentation.recorder.RecorderPauseMarker;
+import org.sagebionetworks.research.presentation.recorder.SegmentedRecorder;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.SensorEventPOJO;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+import org.sagebionetworks.research.presentation.recorder.sensor.json.SensorRecordJsonEncoder;
+import org.sagebionetworks.research.presentation.recorder.util.MappedFileOutputStream;
+import org.sagebionetworks.research.presentation.recorder.util.RecorderOutputStreams;
+import org.sagebionetworks.research.presentation.recorder.util.ResumableJsonArrayFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.MaybeSubject;
+
+/**
+ * Records sensor events to a JSON array file with the same schema as a ReactiveFileResultRecorder of DeviceMotionUtil
+ * POJOs. Events arrive as the {@link SensorSample}s their sensor thread copied them into, and are encoded by a
+ * {@link SensorRecordJsonEncoder} into a reusable buffer, which is written to the file when it fills up. Only the
+ * first event of the recording, which logs a full description of its sensor, goes through Gson.
+ * <p>
+ * Encoding a sample allocates nothing, but each event is still copied into a new SensorSample and values array on the
+ * sensor thread. A sample is shared between all of its sensor's subscribers and held by their backpressure buffers and
+ * pre-roll for as long as each of them needs, so there is no point at which it could safely go back to a pool.
+ * <p>
+ * With a {@link SegmentPolicy}, the recording is split into numbered segment files, each holding a complete JSON
+ * array that can be read on its own. Each segment starts with the full description of its first event, and its
+ * timestamps are relative to that event.
+ * <p>
+ * A resumed recorder continues the file of its earlier runs relative to the reference event at the start of the file,
+ * which is kept in the file's index.
+ * <p>
+ * A memory-mapped recorder writes its output through {@link MappedFileOutputStream}, which copies each chunk the
+ * encoder fills into the page cache instead of making a write call for it.
+ */
+public class ReactiveSensorJsonRecorder extends ReactiveRecorder<SensorSample, FileResult>
+        implements SegmentedRecorder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveSensorJsonRecorder.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] JSON_FILE_START = "[".getBytes(UTF_8);
+
+    private static final byte[] JSON_FILE_END = "]".getBytes(UTF_8);
+
+    private static final byte[] JSON_OBJECT_DELIMINATOR = ",".getBytes(UTF_8);
+
+    protected final File outputFile;
+
+    protected OutputStream outputStream;
+
+    protected SensorRecordJsonEncoder encoder;
+
+    private final CompositeDisposable compositeDisposable;
+
+    // counts the bytes written to the current segment, before compression. Null when resuming
+    private CountingOutputStream countingOutputStream;
+
+    @RecorderOutputCompression
+    private final String compression;
+
+    private final MaybeSubject<FileResult> fileResultMaybeSubject;
+
+    private boolean memoryMapped;
+
+    private final boolean resume;
+
+    // only used when resuming
+    private ResumableJsonArrayFile resumableFile;
+
+    private final Gson gson;
+
+    private boolean isFirstJsonObject = true;
+
+    private final OutputSegments outputSegments;
+
+    private boolean hasReference;
+
+    private long referenceTimestampNanos;
+
+    // allows us to cancel our subscription
+    private Subscription reactiveDataSubscription;
+
+    private final AtomicBoolean success = new AtomicBoolean(false);
+
+    /**
+     * Records samples that were already copied on the sensor thread, e.g. by SensorSourceFactory.getSensorSamples.
+     * Samples may wait in any number of buffers before being recorded, so this is safe with every backpressure
+     * strategy.
+     *
+     * @param batchPolicy
+     *         how the samples are batched before being written, BatchPolicy.NONE to write each as it arrives.
+     * @param compression
+     *         the compression of the output file.
+     * @param resume
+     *         true to continue the JSON array left in the output file by an earlier run of the recorder, see
+     *         {@link ResumableJsonArrayFile}. Only uncompressed output can be resumed.
+     * @param segmentPolicy
+     *         when to continue the recording in a new segment file, SegmentPolicy.NONE to record to a single file.
+     *         Resumed output cannot be segmented.
+     */
+    @NonNull
+    public static ReactiveSensorJsonRecorder create(@NonNull String identifier,
+            @NonNull Flowable<SensorSample> sensorSampleFlowable, @NonNull Gson gson, @NonNull File outputFile,
+            @NonNull BatchPolicy batchPolicy, @NonNull @RecorderOutputCompression String compression,
+            boolean resume, @NonNull SegmentPolicy segmentPolicy) {
+        return new ReactiveSensorJsonRecorder(identifier, sensorSampleFlowable, gson, outputFile, batchPolicy,
+                compression, resume, segmentPolicy);
+    }
+
+    private ReactiveSensorJsonRecorder(@NonNull String identifier,
+            @NonNull Flowable<SensorSample> sensorSampleFlowable, @NonNull Gson gson, @NonNull File outputFile,
+            @NonNull BatchPolicy batchPolicy, @NonNull @RecorderOutputCompression String compression,
+            boolean resume, @NonNull SegmentPolicy segmentPolicy) {
+        super(identifier, sensorSampleFlowable, batchPolicy);
+        checkArgument(!resume || RecorderOutputCompression.NONE.equals(compression),
+                "Compressed output cannot be resumed");
+        checkArgument(!resume || !segmentPolicy.isEnabled(), "Segmented output cannot be resumed");
+
+        this.gson = checkNotNull(gson);
+        this.outputFile = checkNotNull(outputFile);
+        this.compression = checkNotNull(compression);
+        this.resume = resume;
+        this.outputSegments = new OutputSegments(identifier, outputFile, segmentPolicy,
+                RecorderOutputStreams.getMimeContentType(ReactiveFileResultRecorder.JSON_MIME_CONTENT_TYPE,
+                        compression));
+
+        this.fileResultMaybeSubject = MaybeSubject.create();
+
+        this.compositeDisposable = new CompositeDisposable();
+
+        if (batchPolicy.isEnabled()) {
+            compositeDisposable.add(
+                    observeBatches(Schedulers.io())
+                            .doOnSubscribe(this::onReactiveDataSubscribe)
+                            .doOnCancel(this::onReactiveDataCancel)
+                            .doFinally(this::doReactiveDataFinally)
+                            .subscribe(this::onReactiveDataBatch, this::onReactiveDataError,
+                                    this::onReactiveDataComplete));
+        } else {
+            compositeDisposable.add(
+                    observeEvents(Schedulers.io())
+                            .doOnSubscribe(this::onReactiveDataSubscribe)
+                            .doOnCancel(this::onReactiveDataCancel)
+                            .doFinally(this::doReactiveDataFinally)
+                            .subscribe(this::onReactiveDataNext, this::onReactiveDataError,
+                                    this::onReactiveDataComplete));
+        }
+    }
+
+    @Override
+    @CallSuper
+    public void cancelRecorder() {
+        super.cancelRecorder();
+        fileResultMaybeSubject.onComplete();
+        // the recorder may be cancelled before it has subscribed to its data
+        if (reactiveDataSubscription != null) {
+            reactiveDataSubscription.cancel();
+        }
+    }
+
+    @Override
+    public Maybe<FileResult> getResult() {
+        return fileResultMaybeSubject;
+    }
+
+    /**
+     * Sets whether the output is written through memory-mapped regions of the file rather than write calls. Must be
+     * called before the recorder is started. Resumed output cannot be memory-mapped.
+     *
+     * @param memoryMapped
+     *         true to write the output through memory-mapped regions.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        checkArgument(!memoryMapped || !resume, "Resumed output cannot be memory-mapped");
+        this.memoryMapped = memoryMapped;
+    }
+
+    @NonNull
+    @Override
+    public Observable<FileResult> getSegmentResults() {
+        return outputSegments.getClosedSegments();
+    }
+
+    @VisibleForTesting
+    void doReactiveDataFinally() {
+        if (resumableFile != null) {
+            closeResumableFile();
+        } else {
+            closeOutputStream();
+            if (!success.get()) {
+                // segments that were closed already are kept, they have been published
+                LOGGER.debug("Deleting output file");
+                outputSegments.getCurrentFile().delete();
+            }
+        }
+        outputSegments.finish();
+
+        compositeDisposable.dispose();
+    }
+
+    @VisibleForTesting
+    void onReactiveDataCancel() {
+        LOGGER.debug("reactive data canceled for {}", identifier);
+
+        fileResultMaybeSubject.onComplete();
+    }
+
+    @VisibleForTesting
+    void onReactiveDataComplete() {
+        LOGGER.debug("reactive data completed for {}", identifier);
+        try {
+            FileResult fileResult;
+            if (resumableFile != null) {
+                encoder.flush();
+                resumableFile.finish(startTime, stopTime);
+                Instant fileStartTime = startTime;
+                if (resumableFile.getFirstStartTime() != null) {
+                    // the file holds the earlier runs of the recorder as well
+                    fileStartTime = resumableFile.getFirstStartTime();
+                }
+                fileResult = new FileResultBase(identifier, fileStartTime, stopTime,
+                        RecorderOutputStreams.getMimeContentType(ReactiveFileResultRecorder.JSON_MIME_CONTENT_TYPE,
+                                compression), outputFile.getPath());
+            } else {
+                encoder.write(JSON_FILE_END);
+                encoder.flush();
+                fileResult = outputSegments.getCurrentResult(startTime, stopTime);
+            }
+            success.set(true);
+            fileResultMaybeSubject.onSuccess(fileResult);
+        } catch (Throwable t) {
+            onReactiveDataError(t);
+        }
+    }
+
+    @VisibleForTesting
+    void onReactiveDataError(Throwable t) {
+        LOGGER.debug("reactive data errored for {}", identifier, t);
+
+        fileResultMaybeSubject.onError(t);
+    }
+
+    /**
+     * Writes a batch of samples and flushes them to the file, so that each batch takes a single write.
+     */
+    @VisibleForTesting
+    void onReactiveDataBatch(List<SensorSample> batch) {
+        try {
+            for (SensorSample sample : batch) {
+                writeSample(sample);
+            }
+            encoder.flush();
+        } catch (Throwable t) {
+            onReactiveDataError(t);
+        }
+    }
+
+    @VisibleForTesting
+    void onReactiveDataNext(SensorSample sample) {
+        if (sample == null) {
+            return;
+        }
+        try {
+            writeSample(sample);
+        } catch (Throwable t) {
+            onReactiveDataError(t);
+        }
+    }
+
+    @VisibleForTesting
+    void onReactiveDataSubscribe(Subscription subscription) {
+        LOGGER.debug("reactive data subscribed for {}", identifier);
+
+        try {
+            reactiveDataSubscription = subscription;
+
+            if (resume) {
+                resumableFile = ResumableJsonArrayFile.open(outputFile, true);
+                outputStream = resumableFile.getOutputStream();
+                encoder = new SensorRecordJsonEncoder(outputStream);
+                isFirstJsonObject = !resumableFile.hasElements();
+                Long reference = resumableFile.getReference();
+                if (reference != null) {
+                    // the samples continue relative to the reference event at the start of the file
+                    referenceTimestampNanos = reference;
+                    hasReference = true;
+                }
+                LOGGER.debug("Resuming {} after {} segments", identifier,
+                        resumableFile.getPreviousSegments().size());
+            } else {
+                openSegment();
+            }
+        } catch (Throwable t) {
+            onReactiveDataError(t);
+        }
+    }
+
+    @Override
+    protected void onPauseMarker(@NonNull RecorderPauseMarker marker) {
+        try {
+            writeDelimiter();
+            encoder.write(gson.toJson(marker).getBytes(UTF_8));
+        } catch (Throwable t) {
+            onReactiveDataError(t);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        // this overwrites any file that already exists at this location
+        countingOutputStream = new CountingOutputStream(
+                RecorderOutputStreams.open(outputSegments.next(), compression, memoryMapped));
+        outputStream = countingOutputStream;
+        encoder = new SensorRecordJsonEncoder(outputStream);
+        encoder.write(JSON_FILE_START);
+        isFirstJsonObject = true;
+        // each segment is a recording of its own, with its own reference
+        hasReference = false;
+    }
+
+    /**
+     * Closes the current segment as a complete file, publishes it, and continues in the next one.
+     */
+    private void rollSegment() throws IOException {
+        encoder.write(JSON_FILE_END);
+        encoder.flush();
+        outputStream.close();
+        FileResult segmentResult = outputSegments.getCurrentResult(startTime, Instant.now());
+        LOGGER.debug("Closed segment {} of {}", segmentResult.getIdentifier(), identifier);
+        outputSegments.close(segmentResult);
+        openSegment();
+    }
+
+    private void closeOutputStream() {
+        if (outputStream == null) {
+            return;
+        }
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error closing output file for {}", identifier, e);
+        }
+    }
+
+    /**
+     * Closes the resumable file, keeping the earlier runs of the recorder if this run did not finish.
+     */
+    private void closeResumableFile() {
+        try {
+            if (success.get()) {
+                resumableFile.close();
+            } else {
+                LOGGER.debug("Removing this run from output file");
+                resumableFile.abandon();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error closing output file for {}", identifier, e);
+        }
+    }
+
+    private void writeSample(@NonNull SensorSample sample) throws IOException {
+        if (!encoder.canEncode(sample.sensorType)) {
+            LOGGER.warn("Unable to record sensor type: {}", sample.sensorType);
+            return;
+        }
+        if (!hasReference) {
+            // slow path, the first event determines the uptime reference for the whole recording, or segment, and
+            // logs full info about the sensor
+            referenceTimestampNanos = sample.timestampNanos;
+            hasReference = true;
+            if (resumableFile != null && !resumableFile.hasElements()) {
+                // later runs append to the file relative to the same reference
+                resumableFile.setReference(referenceTimestampNanos);
+            }
+            writeDelimiter();
+            encoder.write(gson.toJson(new SensorEventPOJO(sample)).getBytes(UTF_8));
+        }
+        writeDelimiter();
+        encoder.encode(sample, referenceTimestampNanos);
+        if (countingOutputStream != null && outputSegments.shouldRoll(countingOutputStream.getCount())) {
+            rollSegment();
+        }
+    }
+
+    private void writeDelimiter() throws IOException {
+        if (isFirstJsonObject) {
+            isFirstJsonObject = false;
+        } else {
+            encoder.write(JSON_OBJECT_DELIMINATOR);
+        }
+    }
+}
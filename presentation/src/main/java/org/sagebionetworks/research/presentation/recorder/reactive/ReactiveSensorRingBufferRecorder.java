@@ -0,0 +1,408 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import android.hardware.SensorEvent;
+import androidx.annotation.CallSuper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.gson.Gson;
+
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
+import org.sagebionetworks.research.domain.result.implementations.FileResultBase;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
+import org.sagebionetworks.research.presentation.recorder.RecorderBase;
+import org.sagebionetworks.research.presentation.recorder.RecorderPauseMarker;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.SensorEventPOJO;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorRecord;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorRingBuffer;
+import org.sagebionetworks.research.presentation.recorder.sensor.json.SensorRecordJsonEncoder;
+import org.sagebionetworks.research.presentation.recorder.util.RecorderOutputStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.subjects.MaybeSubject;
+
+/**
+ * Records sensor events to a JSON array file with the same schema as a {@link ReactiveSensorJsonRecorder}, but hands
+ * events from the sensor thread to the writer through a {@link SensorRingBuffer} instead of through Rx queues.
+ * Events are copied into the ring on the thread they are delivered on, and a dedicated writer thread drains the ring
+ * into the file. The sensor flowable is consumed without backpressure, so samples are only ever lost when the ring is
+ * full, and every such loss is counted by the ring.
+ * <p>
+ * The sensor flowable must deliver events serially, e.g. a Flowable.merge of the sensors' flowables, as the ring only
+ * supports a single producer.
+ * <p>
+ * Pausing the recorder unsubscribes from the sensor flowable until it is resumed. The pause and resume markers are
+ * handed to the writer through the ring by the first event after the resume, so that the ring keeps a single
+ * producer, or written at the end of the file if the recorder is stopped while paused.
+ */
+public class ReactiveSensorRingBufferRecorder extends RecorderBase<FileResult> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveSensorRingBufferRecorder.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] JSON_FILE_START = "[".getBytes(UTF_8);
+
+    private static final byte[] JSON_FILE_END = "]".getBytes(UTF_8);
+
+    private static final byte[] JSON_OBJECT_DELIMINATOR = ",".getBytes(UTF_8);
+
+    // sensor type of the ring slots that stand for the next marker in offeredMarkers
+    private static final int PAUSE_MARKER_SENSOR_TYPE = -1;
+
+    private static final float[] NO_VALUES = new float[0];
+
+    // how long the writer sleeps once it has emptied the ring
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    protected final File outputFile;
+
+    protected final SensorRingBuffer ringBuffer;
+
+    protected OutputStream outputStream;
+
+    protected SensorRecordJsonEncoder encoder;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    @RecorderOutputCompression
+    private final String compression;
+
+    private final FlushPolicy flushPolicy;
+
+    private final MaybeSubject<FileResult> fileResultMaybeSubject;
+
+    @Nullable
+    private volatile SensorEventPOJO firstEventPojo;
+
+    private final Gson gson;
+
+    private boolean hasReference;
+
+    private boolean isFirstJsonObject = true;
+
+    private long lastFlushNanos;
+
+    // markers offered to the ring, in ring order, waiting for the writer
+    private final Queue<RecorderPauseMarker> offeredMarkers = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean paused = new AtomicBoolean(false);
+
+    // markers of pauses and resumes that have not been offered to the ring yet
+    private final Queue<RecorderPauseMarker> pendingMarkers = new ConcurrentLinkedQueue<>();
+
+    private long referenceTimestampNanos;
+
+    private final Flowable<SensorEvent> sensorEventFlowable;
+
+    private volatile Disposable sensorEventDisposable;
+
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+    private int unflushedRecords;
+
+    private Thread writerThread;
+
+    public ReactiveSensorRingBufferRecorder(@NonNull String identifier,
+            @NonNull Flowable<SensorEvent> sensorEventFlowable, @NonNull Gson gson, @NonNull File outputFile,
+            @NonNull SensorRingBuffer ringBuffer) {
+        this(identifier, sensorEventFlowable, gson, outputFile, ringBuffer, FlushPolicy.DEFAULT);
+    }
+
+    public ReactiveSensorRingBufferRecorder(@NonNull String identifier,
+            @NonNull Flowable<SensorEvent> sensorEventFlowable, @NonNull Gson gson, @NonNull File outputFile,
+            @NonNull SensorRingBuffer ringBuffer, @NonNull FlushPolicy flushPolicy) {
+        this(identifier, sensorEventFlowable, gson, outputFile, ringBuffer, flushPolicy,
+                RecorderOutputCompression.NONE);
+    }
+
+    public ReactiveSensorRingBufferRecorder(@NonNull String identifier,
+            @NonNull Flowable<SensorEvent> sensorEventFlowable, @NonNull Gson gson, @NonNull File outputFile,
+            @NonNull SensorRingBuffer ringBuffer, @NonNull FlushPolicy flushPolicy,
+            @NonNull @RecorderOutputCompression String compression) {
+        super(identifier);
+
+        this.sensorEventFlowable = checkNotNull(sensorEventFlowable);
+        this.gson = checkNotNull(gson);
+        this.outputFile = checkNotNull(outputFile);
+        this.compression = checkNotNull(compression);
+        this.ringBuffer = checkNotNull(ringBuffer);
+        this.flushPolicy = checkNotNull(flushPolicy);
+
+        this.fileResultMaybeSubject = MaybeSubject.create();
+    }
+
+    @Override
+    @CallSuper
+    public void cancelRecorder() {
+        super.cancelRecorder();
+        cancelled.set(true);
+        fileResultMaybeSubject.onComplete();
+    }
+
+    @Override
+    public Maybe<FileResult> getResult() {
+        return fileResultMaybeSubject;
+    }
+
+    /**
+     * @return the ring between the sensor thread and the writer, whose counters describe whether any samples were
+     *         lost.
+     */
+    @NonNull
+    public SensorRingBuffer getRingBuffer() {
+        return ringBuffer;
+    }
+
+    @Override
+    public boolean isPaused() {
+        return paused.get();
+    }
+
+    /**
+     * Unsubscribes from the sensor flowable until the recorder is resumed.
+     */
+    @Override
+    @CallSuper
+    public synchronized void pause() {
+        super.pause();
+        if (!paused.compareAndSet(false, true)) {
+            return;
+        }
+        pendingMarkers.add(RecorderPauseMarker.pause());
+        if (sensorEventDisposable != null) {
+            sensorEventDisposable.dispose();
+        }
+    }
+
+    @Override
+    @CallSuper
+    public synchronized void resume() {
+        super.resume();
+        if (!paused.compareAndSet(true, false)) {
+            return;
+        }
+        pendingMarkers.add(RecorderPauseMarker.resume());
+        if (sensorEventDisposable != null && !stopped.get()) {
+            sensorEventDisposable = sensorEventFlowable.subscribe(this::onSensorEvent, this::onSensorError);
+        }
+    }
+
+    @Override
+    public synchronized void startRecorder() {
+        writerThread = new Thread(this::runWriter, "SensorWriter-" + identifier);
+        writerThread.start();
+        if (paused.get()) {
+            // paused before it started, subscribe on resume
+            sensorEventDisposable = Disposables.disposed();
+        } else {
+            sensorEventDisposable = sensorEventFlowable.subscribe(this::onSensorEvent, this::onSensorError);
+        }
+    }
+
+    @Override
+    public synchronized void stopRecorder() {
+        if (sensorEventDisposable != null) {
+            sensorEventDisposable.dispose();
+        }
+        stopped.set(true);
+    }
+
+    @VisibleForTesting
+    void onSensorError(Throwable t) {
+        LOGGER.warn("sensor events errored for {}", identifier, t);
+        stop();
+    }
+
+    @VisibleForTesting
+    void onSensorEvent(SensorEvent event) {
+        if (paused.get()) {
+            return;
+        }
+        if (firstEventPojo == null) {
+            // slow path, determines uptime reference and logs full info about the sensor
+            firstEventPojo = new SensorEventPOJO(event);
+        }
+        RecorderPauseMarker marker;
+        while ((marker = pendingMarkers.peek()) != null) {
+            // the writer may poll the marker's slot as soon as it is offered, so the marker must be queued first
+            offeredMarkers.add(marker);
+            if (!ringBuffer.offer(null, PAUSE_MARKER_SENSOR_TYPE, marker.getUptimeNanos(), NO_VALUES, 0)) {
+                // try again with the next event
+                offeredMarkers.remove(marker);
+                break;
+            }
+            pendingMarkers.poll();
+        }
+        ringBuffer.offer(event);
+    }
+
+    /**
+     * Drains the ring into the file until the recorder is stopped or canceled.
+     */
+    @VisibleForTesting
+    void runWriter() {
+        try {
+            // this overwrites any file that already exists at this location
+            outputStream = RecorderOutputStreams.open(outputFile, compression);
+            encoder = new SensorRecordJsonEncoder(outputStream);
+            encoder.write(JSON_FILE_START);
+            lastFlushNanos = System.nanoTime();
+
+            while (!cancelled.get()) {
+                // read before draining, so that events offered before the stop are still written
+                boolean isStopped = stopped.get();
+                if (drainRingBuffer() > 0) {
+                    continue;
+                }
+                if (isStopped) {
+                    break;
+                }
+                long nowNanos = System.nanoTime();
+                if (unflushedRecords > 0 && flushPolicy.shouldFlush(unflushedRecords, lastFlushNanos, nowNanos)) {
+                    encoder.flush();
+                    unflushedRecords = 0;
+                    lastFlushNanos = nowNanos;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+
+            if (cancelled.get()) {
+                finishWriter(false);
+                return;
+            }
+            // a recorder stopped while paused has nothing after its pause
+            RecorderPauseMarker marker;
+            while ((marker = pendingMarkers.poll()) != null) {
+                writePauseMarker(marker);
+            }
+            encoder.write(JSON_FILE_END);
+            encoder.flush();
+            finishWriter(true);
+            fileResultMaybeSubject.onSuccess(new FileResultBase(identifier, startTime, stopTime,
+                    RecorderOutputStreams.getMimeContentType(ReactiveFileResultRecorder.JSON_MIME_CONTENT_TYPE,
+                            compression), outputFile.getPath()));
+        } catch (Throwable t) {
+            LOGGER.debug("writer errored for {}", identifier, t);
+            finishWriter(false);
+            fileResultMaybeSubject.onError(t);
+        }
+    }
+
+    private int drainRingBuffer() throws IOException {
+        int drained = 0;
+        SensorRecord record;
+        while ((record = ringBuffer.poll()) != null) {
+            writeRecord(record);
+            drained++;
+        }
+        unflushedRecords += drained;
+        return drained;
+    }
+
+    private void finishWriter(boolean success) {
+        if (sensorEventDisposable != null) {
+            sensorEventDisposable.dispose();
+        }
+        if (outputStream != null) {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                LOGGER.warn("Error closing output file for {}", identifier, e);
+            }
+        }
+        if (!success) {
+            LOGGER.debug("Deleting output file");
+            outputFile.delete();
+        }
+        if (ringBuffer.getOverrunCount() > 0) {
+            LOGGER.warn("Dropped samples for {}: {}", identifier, ringBuffer);
+        } else {
+            LOGGER.debug("Recorded samples for {}: {}", identifier, ringBuffer);
+        }
+    }
+
+    private void writeDelimiter() throws IOException {
+        if (isFirstJsonObject) {
+            isFirstJsonObject = false;
+        } else {
+            encoder.write(JSON_OBJECT_DELIMINATOR);
+        }
+    }
+
+    private void writePauseMarker(@NonNull RecorderPauseMarker marker) throws IOException {
+        writeDelimiter();
+        encoder.write(gson.toJson(marker).getBytes(UTF_8));
+    }
+
+    private void writeRecord(@NonNull SensorRecord record) throws IOException {
+        if (record.sensorType == PAUSE_MARKER_SENSOR_TYPE) {
+            writePauseMarker(offeredMarkers.remove());
+            return;
+        }
+        if (!encoder.canEncode(record.sensorType)) {
+            LOGGER.warn("Unable to record sensor type: {}", record.sensorType);
+            return;
+        }
+        if (!hasReference) {
+            // the first event determines the uptime reference for the whole recording
+            referenceTimestampNanos = record.timestampNanos;
+            hasReference = true;
+            if (firstEventPojo != null) {
+                writeDelimiter();
+                encoder.write(gson.toJson(firstEventPojo).getBytes(UTF_8));
+            }
+        }
+        writeDelimiter();
+        encoder.encode(record, referenceTimestampNanos);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * Determines when a file recorder closes its output file and continues in a new one. A segment is closed once it
+ * holds the maximum number of bytes, or once the maximum duration has passed since its first record, whichever comes
+ * first. Each segment is a complete file, which can be processed or uploaded while the recording continues. A limit
+ * of 0 means segments are not limited by it.
+ */
+@AutoValue
+public abstract class SegmentPolicy {
+    @AutoValue.Builder
+    public abstract static class Builder {
+        public abstract SegmentPolicy build();
+
+        public abstract Builder setMaxSegmentBytes(long maxSegmentBytes);
+
+        public abstract Builder setMaxSegmentDurationMillis(long maxSegmentDurationMillis);
+    }
+
+    /**
+     * The whole recording is written to a single file.
+     */
+    public static final SegmentPolicy NONE = create(0, 0);
+
+    public static Builder builder() {
+        return new AutoValue_SegmentPolicy.Builder();
+    }
+
+    public static SegmentPolicy create(long maxSegmentBytes, long maxSegmentDurationMillis) {
+        return builder()
+                .setMaxSegmentBytes(maxSegmentBytes)
+                .setMaxSegmentDurationMillis(maxSegmentDurationMillis)
+                .build();
+    }
+
+    /**
+     * @return the most bytes of uncompressed output in a segment, checked as output is flushed to the file, so a
+     *         segment can exceed it by up to its writer's buffer size.
+     */
+    public abstract long getMaxSegmentBytes();
+
+    /**
+     * @return the longest time in milliseconds a segment is written to, checked whenever a record is written.
+     */
+    public abstract long getMaxSegmentDurationMillis();
+
+    /**
+     * @return true if the recording is split into segments, false if it is written to a single file.
+     */
+    public boolean isEnabled() {
+        return getMaxSegmentBytes() > 0 || getMaxSegmentDurationMillis() > 0;
+    }
+
+    /**
+     * @param segmentBytes
+     *         the bytes written to the segment so far.
+     * @param segmentStartNanos
+     *         the System.nanoTime the segment's first record was written at.
+     * @param nowNanos
+     *         the current System.nanoTime.
+     * @return true if the segment should be closed now, false otherwise.
+     */
+    public boolean shouldRoll(long segmentBytes, long segmentStartNanos, long nowNanos) {
+        return (getMaxSegmentBytes() > 0 && segmentBytes >= getMaxSegmentBytes())
+                || (getMaxSegmentDurationMillis() > 0
+                && nowNanos - segmentStartNanos >= getMaxSegmentDurationMillis() * 1_000_000L);
+    }
+
+    public abstract Builder toBuilder();
+}
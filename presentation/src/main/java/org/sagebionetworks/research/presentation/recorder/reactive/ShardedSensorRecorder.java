@@ -0,0 +1,267 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import androidx.annotation.CallSuper;
+import androidx.annotation.NonNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+
+import org.sagebionetworks.research.domain.result.implementations.FileResultBase;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
+import org.sagebionetworks.research.presentation.recorder.RecorderBase;
+import org.sagebionetworks.research.presentation.recorder.ShardedRecorder;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import io.reactivex.Maybe;
+
+/**
+ * Records each sensor type with its own recorder, a shard, so that the sensors are encoded and written in parallel
+ * rather than all on one thread. Every shard subscribes to its writer through its own Schedulers.io() worker, which
+ * holds on to a thread of its own for the whole recording, so a slow sensor stream does not hold up the others.
+ * <p>
+ * The recorder's result is a JSON manifest which lists the shards' files, written once every shard has finished. The
+ * shards' own results are available through {@link #getShardResults()}, as each file has to be uploaded as well.
+ */
+public class ShardedSensorRecorder extends RecorderBase<FileResult> implements ShardedRecorder {
+    /**
+     * The manifest's format. Its field names are part of the manifest file format.
+     */
+    static final class Manifest {
+        static final class Shard {
+            final String identifier;
+
+            // name of the shard's file, which is in the same directory as the manifest
+            final String file;
+
+            final String contentType;
+
+            final String sensorType;
+
+            final int sensorAndroidType;
+
+            Shard(String identifier, String file, String contentType, String sensorType, int sensorAndroidType) {
+                this.identifier = identifier;
+                this.file = file;
+                this.contentType = contentType;
+                this.sensorType = sensorType;
+                this.sensorAndroidType = sensorAndroidType;
+            }
+        }
+
+        final String identifier;
+
+        final Instant startDate;
+
+        final Instant endDate;
+
+        final List<Shard> shards;
+
+        Manifest(String identifier, Instant startDate, Instant endDate, List<Shard> shards) {
+            this.identifier = identifier;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.shards = shards;
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedSensorRecorder.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Gson gson;
+
+    private final File manifestFile;
+
+    private final Maybe<FileResult> manifestResult;
+
+    // android sensor type to the shard recording it
+    private final ImmutableMap<Integer, ReactiveRecorder<?, FileResult>> shards;
+
+    /**
+     * @param identifier
+     *         the recorder's identifier.
+     * @param shards
+     *         the recorder of each android sensor type. Each must write its own file.
+     * @param gson
+     *         the Gson to write the manifest with.
+     * @param manifestFile
+     *         the file to write the manifest to, in the same directory as the shards' files.
+     */
+    public ShardedSensorRecorder(@NonNull String identifier,
+            @NonNull Map<Integer, ? extends ReactiveRecorder<?, FileResult>> shards, @NonNull Gson gson,
+            @NonNull File manifestFile) {
+        super(identifier);
+        checkArgument(!shards.isEmpty(), "A sharded recorder needs at least one shard");
+        this.shards = ImmutableMap.copyOf(shards);
+        this.gson = checkNotNull(gson);
+        this.manifestFile = checkNotNull(manifestFile);
+
+        List<Maybe<FileResult>> shardResults = new ArrayList<>(this.shards.size());
+        for (ReactiveRecorder<?, FileResult> shard : this.shards.values()) {
+            shardResults.add(shard.getResult());
+        }
+        // a shard that was cancelled has no result, and neither does the manifest then. The manifest is written on
+        // the thread of the last shard to finish
+        this.manifestResult = Maybe.zip(shardResults, results -> writeManifest(results)).cache();
+    }
+
+    /**
+     * @return the identifier of the shard recording the given sensor type, e.g. motion_acceleration for the
+     *         accelerometer shard of motion. Shards are written to files named after their identifier.
+     */
+    @NonNull
+    public static String getShardIdentifier(@NonNull String identifier, int sensorType) {
+        return identifier + "_" + getSensorName(sensorType);
+    }
+
+    @NonNull
+    private static String getSensorName(int sensorType) {
+        String name = DeviceMotionUtil.SENSOR_TYPE_TO_DATA_TYPE.get(sensorType);
+        return name != null ? name : "sensor" + sensorType;
+    }
+
+    @Override
+    @CallSuper
+    public void cancelRecorder() {
+        super.cancelRecorder();
+        for (ReactiveRecorder<?, FileResult> shard : shards.values()) {
+            shard.cancel();
+        }
+    }
+
+    @Override
+    public void discardPrewarm() {
+        super.discardPrewarm();
+        for (ReactiveRecorder<?, FileResult> shard : shards.values()) {
+            shard.discardPrewarm();
+        }
+    }
+
+    @NonNull
+    @Override
+    public Maybe<FileResult> getResult() {
+        return manifestResult;
+    }
+
+    @NonNull
+    @Override
+    public List<Maybe<FileResult>> getShardResults() {
+        ImmutableList.Builder<Maybe<FileResult>> shardResults = ImmutableList.builder();
+        for (ReactiveRecorder<?, FileResult> shard : shards.values()) {
+            shardResults.add(shard.getResult());
+        }
+        return shardResults.build();
+    }
+
+    @Override
+    public boolean isPaused() {
+        return shards.values().iterator().next().isPaused();
+    }
+
+    @Override
+    public void pause() {
+        super.pause();
+        for (ReactiveRecorder<?, FileResult> shard : shards.values()) {
+            shard.pause();
+        }
+    }
+
+    @Override
+    public void prewarm() {
+        super.prewarm();
+        for (ReactiveRecorder<?, FileResult> shard : shards.values()) {
+            shard.prewarm();
+        }
+    }
+
+    @Override
+    public void resume() {
+        super.resume();
+        for (ReactiveRecorder<?, FileResult> shard : shards.values()) {
+            shard.resume();
+        }
+    }
+
+    @Override
+    public void startRecorder() {
+        for (ReactiveRecorder<?, FileResult> shard : shards.values()) {
+            shard.start();
+        }
+    }
+
+    @Override
+    public void stopRecorder() {
+        for (ReactiveRecorder<?, FileResult> shard : shards.values()) {
+            shard.stop();
+        }
+    }
+
+    @NonNull
+    private FileResult writeManifest(@NonNull Object[] results) throws IOException {
+        List<Manifest.Shard> manifestShards = new ArrayList<>(results.length);
+        int i = 0;
+        // zip hands the results over in the order of the shards
+        for (Entry<Integer, ReactiveRecorder<?, FileResult>> shard : shards.entrySet()) {
+            FileResult result = (FileResult) results[i++];
+            manifestShards.add(new Manifest.Shard(result.getIdentifier(), new File(result.getRelativePath()).getName(),
+                    result.getFileType(), getSensorName(shard.getKey()), shard.getKey()));
+        }
+        Manifest manifest = new Manifest(identifier, startTime, stopTime, manifestShards);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(manifestFile), UTF_8)) {
+            gson.toJson(manifest, writer);
+        }
+        LOGGER.debug("Wrote manifest of {} shards for {}", manifestShards.size(), identifier);
+        return new FileResultBase(identifier, startTime, stopTime,
+                ReactiveFileResultRecorder.JSON_MIME_CONTENT_TYPE, manifestFile.getPath());
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive.source;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableSubscriber;
+
+/**
+ * Lets a recorder subscribe to its source ahead of its start, so that sensors are registered and delivering by the
+ * time the recording begins. While warm, items are kept in a short pre-roll ring buffer bounded by age and count. When
+ * the recorder starts, the next subscriber to {@link #getFlowable()} takes over the warm subscription: it receives the
+ * buffered items taken at or after the start instant, followed by the live items, without a gap between them. Items
+ * taken before the start instant which arrive late from a hardware FIFO are also dropped, up to the first item taken
+ * a window after the start. Sensors aren't guaranteed to timestamp their events in the time base of the start
+ * instant, so if the newest buffered item is older than a window before the start, the pre-roll is dropped and the
+ * live items are passed on as they are.
+ * <p>
+ * The warm subscription requests no more items than the ring holds. Once taken over, it requests the live items as
+ * the subscriber does, so the source's own backpressure strategy applies as it would to a direct subscription, and
+ * at most the pre-roll and one ring of items wait in between.
+ * <p>
+ * Without a warm subscription, or after the first one was taken over, {@link #getFlowable()} subscribes to the source
+ * directly.
+ *
+ * @param <T>
+ *         the type of item.
+ */
+public class PreRollSource<T> {
+    /**
+     * Gives the time an item was taken, in nanoseconds and ideally in the time base of
+     * SystemClock.elapsedRealtimeNanos().
+     */
+    public interface Timestamp<T> {
+        long getTimestampNanos(@NonNull T item);
+    }
+
+    public static final long DEFAULT_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    // e.g. 6 sensors at 10kHz for 1 second, a few MB of samples
+    public static final int DEFAULT_MAX_SIZE = 1 << 16;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PreRollSource.class);
+
+    private final int maxSize;
+
+    // the pre-roll, then after the takeover the items waiting for the subscriber to request them
+    private final ArrayDeque<T> ring = new ArrayDeque<>();
+
+    @NonNull
+    private final Flowable<T> source;
+
+    @NonNull
+    private final Timestamp<? super T> timestamp;
+
+    private final long windowNanos;
+
+    // true while items taken before the start may still arrive late, after the warm subscription was taken over
+    private boolean isTrimmingLate;
+
+    private boolean isTakenOver;
+
+    private long newestNanos = Long.MIN_VALUE;
+
+    private boolean started;
+
+    private long startNanos;
+
+    @Nullable
+    private WarmSubscriber warmSubscriber;
+
+    public PreRollSource(@NonNull Flowable<T> source, @NonNull Timestamp<? super T> timestamp) {
+        this(source, timestamp, DEFAULT_WINDOW_NANOS, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param source
+     *         the items.
+     * @param timestamp
+     *         the time each item was taken.
+     * @param windowNanos
+     *         how far behind the newest item items are buffered, this should cover the latest an item can arrive
+     *         after it was taken.
+     * @param maxSize
+     *         the most items buffered, regardless of their age.
+     */
+    public PreRollSource(@NonNull Flowable<T> source, @NonNull Timestamp<? super T> timestamp, long windowNanos,
+            int maxSize) {
+        checkArgument(windowNanos >= 0, "windowNanos cannot be negative");
+        checkArgument(maxSize > 0, "maxSize must be positive");
+        this.source = checkNotNull(source);
+        this.timestamp = checkNotNull(timestamp);
+        this.windowNanos = windowNanos;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Unsubscribes from the source and drops the buffered items, if the warm subscription has not been taken over.
+     */
+    public synchronized void discard() {
+        if (!isTakenOver) {
+            release();
+        }
+    }
+
+    /**
+     * @return the items, starting from the pre-roll the first time it is subscribed to after {@link #start(long)}.
+     */
+    @NonNull
+    public Flowable<T> getFlowable() {
+        return Flowable.defer(this::takeOver);
+    }
+
+    /**
+     * @return true if the source is subscribed to ahead of the start.
+     */
+    public synchronized boolean isWarm() {
+        return warmSubscriber != null && !isTakenOver;
+    }
+
+    /**
+     * Marks the start of the recording. Does nothing if the source is not warm.
+     *
+     * @param startNanos
+     *         the start instant, in nanoseconds of SystemClock.elapsedRealtimeNanos().
+     */
+    public synchronized void start(long startNanos) {
+        if (isWarm()) {
+            started = true;
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * Subscribes to the source and starts buffering its items, if it is not subscribed to already.
+     */
+    public synchronized void warm() {
+        if (warmSubscriber != null) {
+            return;
+        }
+        LOGGER.debug("Warming pre-roll source");
+        // a source that terminates while it is subscribed to releases the subscriber again
+        warmSubscriber = new WarmSubscriber();
+        source.subscribe(warmSubscriber);
+    }
+
+    private synchronized void release() {
+        if (warmSubscriber != null) {
+            warmSubscriber.cancelUpstream();
+            warmSubscriber = null;
+        }
+        ring.clear();
+        isTakenOver = false;
+        started = false;
+        isTrimmingLate = false;
+        newestNanos = Long.MIN_VALUE;
+    }
+
+    @NonNull
+    private synchronized Flowable<T> takeOver() {
+        if (!started || isTakenOver) {
+            return source;
+        }
+        LOGGER.debug("Taking over pre-roll of {} items", ring.size());
+        // a source whose newest item is this old is timestamped in another time base than the start instant
+        isTrimmingLate = !ring.isEmpty() && newestNanos - startNanos >= -windowNanos;
+        if (isTrimmingLate) {
+            // the ring is ordered by arrival, so items taken before the start may follow later ones
+            Iterator<T> items = ring.iterator();
+            while (items.hasNext()) {
+                if (timestamp.getTimestampNanos(items.next()) < startNanos) {
+                    items.remove();
+                }
+            }
+        } else if (!ring.isEmpty()) {
+            LOGGER.debug("Dropping pre-roll, its items are timestamped in another time base than the start");
+            ring.clear();
+        }
+        isTakenOver = true;
+        WarmSubscriber subscriber = warmSubscriber;
+        return Flowable.fromPublisher(subscriber::subscribeDownstream);
+    }
+
+    /**
+     * The warm subscription to the source. Before the takeover it fills the ring, after it hands the ring and the
+     * live items to the subscriber that took it over, as that subscriber requests them. Items are delivered outside
+     * of the lock, so the source's thread is never held up by the subscriber.
+     */
+    private final class WarmSubscriber implements FlowableSubscriber<T>, Subscription {
+        private final AtomicLong requested = new AtomicLong();
+
+        // serializes the delivery to the subscriber between the source's and the subscriber's threads
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile boolean cancelled;
+
+        // guarded by PreRollSource.this
+        private boolean done;
+
+        // the subscriber that took over the warm subscription, null until it subscribes
+        @Nullable
+        private volatile Subscriber<? super T> downstream;
+
+        // guarded by PreRollSource.this
+        @Nullable
+        private Throwable error;
+
+        @Nullable
+        private volatile Subscription upstream;
+
+        @Override
+        public void cancel() {
+            // cancelling, e.g. when the recorder is paused or stopped, releases the source
+            cancelled = true;
+            synchronized (PreRollSource.this) {
+                if (warmSubscriber == this) {
+                    release();
+                }
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            terminate(null);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            terminate(t);
+        }
+
+        @Override
+        public void onNext(T item) {
+            long timestampNanos = timestamp.getTimestampNanos(item);
+            boolean isQueued;
+            synchronized (PreRollSource.this) {
+                if (warmSubscriber != this) {
+                    return;
+                }
+                if (!isTakenOver) {
+                    // sensors batched in a FIFO deliver out of order with the others, so the window follows the
+                    // newest item
+                    newestNanos = Math.max(newestNanos, timestampNanos);
+                    ring.addLast(item);
+                    while (ring.size() > maxSize || (!ring.isEmpty()
+                            && timestamp.getTimestampNanos(ring.peekFirst()) < newestNanos - windowNanos)) {
+                        ring.pollFirst();
+                    }
+                    isQueued = false;
+                } else {
+                    if (isTrimmingLate) {
+                        // an item taken a window after the start means the items taken before it have all arrived
+                        isTrimmingLate = timestampNanos - startNanos < windowNanos;
+                    }
+                    isQueued = !isTrimmingLate || timestampNanos >= startNanos;
+                    if (isQueued) {
+                        ring.addLast(item);
+                    }
+                }
+            }
+            if (isQueued) {
+                drain();
+            } else {
+                // the ring is bounded by itself, and a trimmed item would leave the subscriber's demand unmet
+                upstream.request(1);
+            }
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            upstream = s;
+            s.request(maxSize);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                return;
+            }
+            long current;
+            do {
+                current = requested.get();
+            } while (current != Long.MAX_VALUE
+                    && !requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            upstream.request(n);
+            drain();
+        }
+
+        void cancelUpstream() {
+            Subscription s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+
+        void subscribeDownstream(@NonNull Subscriber<? super T> subscriber) {
+            downstream = subscriber;
+            subscriber.onSubscribe(this);
+            drain();
+        }
+
+        private void drain() {
+            Subscriber<? super T> subscriber = downstream;
+            if (subscriber == null || wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                long r = requested.get();
+                long e = 0;
+                for (; ; ) {
+                    if (cancelled) {
+                        return;
+                    }
+                    T item;
+                    boolean isTerminated;
+                    Throwable t;
+                    synchronized (PreRollSource.this) {
+                        item = e != r ? ring.pollFirst() : null;
+                        isTerminated = done && ring.isEmpty();
+                        t = error;
+                    }
+                    if (item != null) {
+                        subscriber.onNext(item);
+                        e++;
+                    } else if (isTerminated) {
+                        cancel();
+                        if (t != null) {
+                            subscriber.onError(t);
+                        } else {
+                            subscriber.onComplete();
+                        }
+                        return;
+                    } else {
+                        break;
+                    }
+                }
+                if (e != 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-e);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void terminate(@Nullable Throwable t) {
+            synchronized (PreRollSource.this) {
+                if (warmSubscriber != this) {
+                    return;
+                }
+                if (!isTakenOver) {
+                    if (t != null) {
+                        // the recorder subscribes to the source again when it starts
+                        LOGGER.warn("Pre-roll source failed before the start", t);
+                    }
+                    release();
+                    return;
+                }
+                done = true;
+                error = t;
+            }
+            drain();
+        }
+    }
+}
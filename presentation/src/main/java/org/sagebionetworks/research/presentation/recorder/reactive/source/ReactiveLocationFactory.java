@@ -50,6 +50,7 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Inject;
 
+import io.reactivex.BackpressureOverflowStrategy;
 import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
 
@@ -63,6 +64,9 @@ public class ReactiveLocationFactory {
 
     public static final float MIN_DISTANCE = 0f;
 
+    // fixes waiting for a slow subscriber, several minutes of fixes. The oldest are dropped beyond this
+    public static final int MAX_BUFFERED_LOCATIONS = 1024;
+
     private final Context context;
 
     @Inject
@@ -75,10 +79,26 @@ public class ReactiveLocationFactory {
      *
      * @return a Flowable that represents the user's location as a stream of Location objects.
      */
+    @NonNull
+    public Flowable<Location> getLocation() {
+        return getLocation(MIN_TIME, MIN_DISTANCE);
+    }
+
+    /**
+     * Returns a Flowable that represents the user's location as a stream of Location objects, updated no more often
+     * than the given thresholds allow. The thresholds are passed on to the location provider, which saves power by
+     * not determining locations that would be dropped.
+     *
+     * @param minTimeMillis
+     *         the least time between locations.
+     * @param minDistanceMeters
+     *         the least distance between locations.
+     * @return a Flowable that represents the user's location as a stream of Location objects.
+     */
     // TODO rkolmos 08/15/2018 remove this missing permission suppression and fix the permissions.
     @SuppressLint("MissingPermission")
     @NonNull
-    public Flowable<Location> getLocation() {
+    public Flowable<Location> getLocation(long minTimeMillis, float minDistanceMeters) {
         if (PermissionChecker.checkSelfPermission(context, permission.ACCESS_FINE_LOCATION)
                 != PermissionChecker.PERMISSION_GRANTED ||
                 PermissionChecker.checkSelfPermission(context, permission.ACCESS_COARSE_LOCATION)
@@ -115,17 +135,21 @@ public class ReactiveLocationFactory {
 
                     try {
                         if (manager != null) {
-                            manager.requestLocationUpdates(LocationManager.GPS_PROVIDER, MIN_TIME, MIN_DISTANCE,
-                                    listenerHolder.get());
+                            manager.requestLocationUpdates(LocationManager.GPS_PROVIDER, minTimeMillis,
+                                    minDistanceMeters, listenerHolder.get());
                         }
                     } catch (SecurityException e) {
                         emitter.onError(e);
                     }
 
-                }, BackpressureStrategy.BUFFER)
+                }, BackpressureStrategy.MISSING)
                 .doOnCancel(() -> {
                     manager.removeUpdates(listenerHolder.get());
                     listenerHolder.set(null);
-                });
+                })
+                // an unbounded buffer would grow for the rest of an outdoor walk if the writer stalled
+                .onBackpressureBuffer(MAX_BUFFERED_LOCATIONS,
+                        () -> LOGGER.warn("Location buffer full, dropping the oldest location"),
+                        BackpressureOverflowStrategy.DROP_OLDEST);
     }
 }
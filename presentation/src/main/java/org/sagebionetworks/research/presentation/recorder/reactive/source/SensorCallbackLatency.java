@@ -0,0 +1,84 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive.source;
+
+/**
+ * Statistics of the delay between a sensor sampling an event, its {@code SensorEvent.timestamp}, and the event being
+ * delivered to the app. A high or erratic latency means the thread events are delivered on is busy with other work.
+ * <p>
+ * Latencies are recorded by the single thread that receives the sensor's events and may be read from any thread.
+ */
+public class SensorCallbackLatency {
+    private volatile long count;
+
+    private volatile long maxNanos;
+
+    private volatile long totalNanos;
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getMeanNanos() {
+        long count = this.count;
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * Records the latency of one event. Must only be called from the thread events are delivered on.
+     */
+    public void record(long latencyNanos) {
+        if (latencyNanos < 0) {
+            // the sensor's clock is not elapsedRealtimeNanos on this device
+            return;
+        }
+        totalNanos += latencyNanos;
+        if (latencyNanos > maxNanos) {
+            maxNanos = latencyNanos;
+        }
+        count++;
+    }
+
+    @Override
+    public String toString() {
+        return "SensorCallbackLatency{" +
+                "count=" + count +
+                ", meanNanos=" + getMeanNanos() +
+                ", maxNanos=" + maxNanos +
+                '}';
+    }
+}
@@ -0,0 +1,603 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive.source;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.github.pwittchen.reactivesensors.library.ReactiveSensorEvent;
+
+import org.sagebionetworks.research.presentation.recorder.reactive.source.SensorSourceFactory.SensorConfig;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+import org.sagebionetworks.research.presentation.recorder.util.RecorderClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+
+/**
+ * Multicasts sensor events to any number of subscribers with a single SensorManager registration per sensor type.
+ * There is one hub per process, so that recorders created by different factories share the registrations too.
+ * The sensor is registered at the fastest sampling period any of its subscribers requested, and is re-registered
+ * whenever that changes, once the samples already in its FIFO have been delivered. Subscribers that asked for a
+ * slower rate receive a decimated feed, and the sensor is unregistered when its last subscriber cancels.
+ * <p>
+ * Each subscriber applies the backpressure strategy of its own SensorConfig, so a slow subscriber cannot hold back
+ * the others.
+ * <p>
+ * Events are delivered on HandlerThreads owned by the hub, rather than on the main thread, so that layout,
+ * animations and other main thread work cannot delay or drop samples. Each SensorConfig names the thread its sensor
+ * is delivered on, sensors that should not share a thread can be given different names. A sensor that is already
+ * registered keeps delivering on the thread named by its first subscriber. A thread is started when the first sensor
+ * is registered on it and quit when the last one is unregistered. The delay between each event being sampled and
+ * delivered is tracked per registration, see {@link #getCallbackLatency(int)}.
+ * <p>
+ * A SensorConfig with a max report latency lets the sensor batch samples in its hardware FIFO, so the application
+ * processor is only woken when the FIFO is reported. The registration uses the shortest latency any of its
+ * subscribers requested. Samples still in the FIFO when recording stops are retrieved with
+ * {@link #flush(SensorConfig)}.
+ * <p>
+ * SensorManager reuses its SensorEvent instances, so a subscriber that falls behind would otherwise be handed an
+ * event its backpressure strategy held on to after SensorManager had overwritten it.
+ * {@link #observeSamples(SensorConfig)} copies each event into a single {@link SensorSample} on the sensor thread,
+ * before any backpressure buffer, and shares it between all of the sensor's sample subscribers.
+ */
+public class SensorHub {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SensorHub.class);
+
+    /**
+     * How long {@link #flush(SensorConfig)} waits for the sensor to report its FIFO.
+     */
+    public static final long FLUSH_TIMEOUT_MILLIS = 1_000L;
+
+    private static final long MICROSECONDS_TO_NANOSECONDS = 1_000L;
+
+    // the sampling periods SensorManager uses for its SENSOR_DELAY constants
+    private static final int SENSOR_DELAY_GAME_US = 20_000;
+
+    private static final int SENSOR_DELAY_UI_US = 66_667;
+
+    private static final int SENSOR_DELAY_NORMAL_US = 200_000;
+
+    private final SensorManager sensorManager;
+
+    // guarded by this
+    private final CallbackThreads callbackThreads;
+
+    // guarded by this, keyed by sensor type
+    private final Map<Integer, SharedSensor> sharedSensors = new HashMap<>();
+
+    public SensorHub(@NonNull SensorManager sensorManager) {
+        this(sensorManager, new HandlerCallbackThreads());
+    }
+
+    @VisibleForTesting
+    SensorHub(@NonNull SensorManager sensorManager, @NonNull CallbackThreads callbackThreads) {
+        this.sensorManager = checkNotNull(sensorManager);
+        this.callbackThreads = checkNotNull(callbackThreads);
+    }
+
+    /**
+     * Requests the given sensor to report the samples in its hardware FIFO. The returned Completable completes once
+     * those samples have been delivered to subscribers, or after {@link #FLUSH_TIMEOUT_MILLIS}. It completes
+     * immediately if the sensor is not registered or does not batch.
+     *
+     * @return a Completable which flushes the sensor when subscribed to.
+     */
+    @NonNull
+    public Completable flush(@NonNull SensorConfig config) {
+        checkNotNull(config);
+        return Completable.create(emitter -> {
+            synchronized (SensorHub.this) {
+                SharedSensor sharedSensor = sharedSensors.get(config.sensorType);
+                if (sharedSensor == null || sharedSensor.registeredMaxReportLatencyUs <= 0) {
+                    emitter.onComplete();
+                    return;
+                }
+                sharedSensor.flush(emitter);
+            }
+        }).timeout(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, Completable.complete());
+    }
+
+    /**
+     * @return the latency statistics of the given sensor type's registration, or null if the sensor type is not
+     *         registered.
+     */
+    @Nullable
+    public synchronized SensorCallbackLatency getCallbackLatency(int sensorType) {
+        SharedSensor sharedSensor = sharedSensors.get(sensorType);
+        return sharedSensor == null ? null : sharedSensor.callbackLatency;
+    }
+
+    /**
+     * @return the most events the given sensor type's hardware FIFO can hold, shared with other sensors, or 0 if the
+     *         sensor does not batch.
+     */
+    public int getFifoMaxEventCount(int sensorType) {
+        Sensor sensor = sensorManager.getDefaultSensor(sensorType);
+        return sensor == null ? 0 : sensor.getFifoMaxEventCount();
+    }
+
+    /**
+     * @return the number of events reserved for the given sensor type in the hardware FIFO, or 0 if the sensor does
+     *         not batch.
+     */
+    public int getFifoReservedEventCount(int sensorType) {
+        Sensor sensor = sensorManager.getDefaultSensor(sensorType);
+        return sensor == null ? 0 : sensor.getFifoReservedEventCount();
+    }
+
+    /**
+     * @return the number of sensors currently registered with SensorManager.
+     */
+    public synchronized int getRegistrationCount() {
+        return sharedSensors.size();
+    }
+
+    /**
+     * @return the shortest max report latency in microseconds the given sensor type is registered with, or -1 if it
+     *         is not registered.
+     */
+    public synchronized int getRegisteredMaxReportLatencyUs(int sensorType) {
+        SharedSensor sharedSensor = sharedSensors.get(sensorType);
+        return sharedSensor == null ? -1 : sharedSensor.registeredMaxReportLatencyUs;
+    }
+
+    /**
+     * @return the fastest sampling period in microseconds the given sensor type is registered at, or -1 if it is not
+     *         registered.
+     */
+    public synchronized int getRegisteredSamplingPeriodUs(int sensorType) {
+        SharedSensor sharedSensor = sharedSensors.get(sensorType);
+        return sharedSensor == null ? -1 : sharedSensor.registeredSamplingPeriodUs;
+    }
+
+    /**
+     * @return the events of the configured sensor, at the configured rate. The sensor is registered on subscribe.
+     */
+    @NonNull
+    public Flowable<ReactiveSensorEvent> observe(@NonNull SensorConfig config) {
+        checkNotNull(config);
+        return Flowable.create(emitter -> {
+            SensorSubscriber subscriber = new SensorSubscriber(emitter, null,
+                    toSamplingPeriodUs(config.samplingPeriodInUs), config.maxReportLatencyUs);
+            addSubscriber(config.sensorType, config.callbackThreadName, subscriber);
+            emitter.setCancellable(() -> removeSubscriber(config.sensorType, subscriber));
+        }, config.backpressureStrategy);
+    }
+
+    /**
+     * Like {@link #observe(SensorConfig)}, but delivers immutable copies of the sensor's events, which remain valid
+     * however long they wait in the subscriber's buffers. Accuracy changes are not delivered.
+     *
+     * @return the samples of the configured sensor, at the configured rate. The sensor is registered on subscribe.
+     */
+    @NonNull
+    public Flowable<SensorSample> observeSamples(@NonNull SensorConfig config) {
+        checkNotNull(config);
+        return Flowable.create(emitter -> {
+            SensorSubscriber subscriber = new SensorSubscriber(null, emitter,
+                    toSamplingPeriodUs(config.samplingPeriodInUs), config.maxReportLatencyUs);
+            addSubscriber(config.sensorType, config.callbackThreadName, subscriber);
+            emitter.setCancellable(() -> removeSubscriber(config.sensorType, subscriber));
+        }, config.backpressureStrategy);
+    }
+
+    /**
+     * Converts the SENSOR_DELAY constants SensorManager accepts in place of a sampling period into microseconds.
+     */
+    @VisibleForTesting
+    static int toSamplingPeriodUs(int samplingPeriodOrDelay) {
+        switch (samplingPeriodOrDelay) {
+            case SensorManager.SENSOR_DELAY_FASTEST:
+                return 0;
+            case SensorManager.SENSOR_DELAY_GAME:
+                return SENSOR_DELAY_GAME_US;
+            case SensorManager.SENSOR_DELAY_UI:
+                return SENSOR_DELAY_UI_US;
+            case SensorManager.SENSOR_DELAY_NORMAL:
+                return SENSOR_DELAY_NORMAL_US;
+            default:
+                return samplingPeriodOrDelay;
+        }
+    }
+
+    private synchronized void addSubscriber(int sensorType, @NonNull String callbackThreadName,
+            @NonNull SensorSubscriber subscriber) {
+        SharedSensor sharedSensor = sharedSensors.get(sensorType);
+        if (sharedSensor == null) {
+            Sensor sensor = sensorManager.getDefaultSensor(sensorType);
+            if (sensor == null) {
+                subscriber.tryOnError(new IllegalStateException("No sensor of type " + sensorType));
+                return;
+            }
+            sharedSensor = new SharedSensor(sensor, callbackThreadName, callbackThreads.start(callbackThreadName));
+            sharedSensors.put(sensorType, sharedSensor);
+        } else if (!sharedSensor.callbackThreadName.equals(callbackThreadName)) {
+            LOGGER.debug("Sensor type {} is already delivered on {}, not {}", sensorType,
+                    sharedSensor.callbackThreadName, callbackThreadName);
+        }
+        sharedSensor.subscribers.add(subscriber);
+        sharedSensor.updateRegistration();
+    }
+
+    private synchronized void removeSubscriber(int sensorType, @NonNull SensorSubscriber subscriber) {
+        SharedSensor sharedSensor = sharedSensors.get(sensorType);
+        if (sharedSensor == null || !sharedSensor.subscribers.remove(subscriber)) {
+            return;
+        }
+        if (sharedSensor.subscribers.isEmpty()) {
+            sharedSensor.unregister();
+            sharedSensors.remove(sensorType);
+            LOGGER.debug("Unregistered sensor type {} from {}, callback latency: {}", sensorType,
+                    sharedSensor.callbackThreadName, sharedSensor.callbackLatency);
+            quitUnusedCallbackThread(sharedSensor.callbackThreadName);
+        } else {
+            sharedSensor.updateRegistration();
+        }
+    }
+
+    private void quitUnusedCallbackThread(@NonNull String callbackThreadName) {
+        for (SharedSensor sharedSensor : sharedSensors.values()) {
+            if (sharedSensor.callbackThreadName.equals(callbackThreadName)) {
+                return;
+            }
+        }
+        callbackThreads.quit(callbackThreadName);
+    }
+
+    /**
+     * Starts and quits the threads sensor events are delivered on.
+     */
+    @VisibleForTesting
+    interface CallbackThreads {
+        /**
+         * @return a Handler for the thread with the given name, which is started if it is not running.
+         */
+        @NonNull
+        Handler start(@NonNull String callbackThreadName);
+
+        void quit(@NonNull String callbackThreadName);
+    }
+
+    private static final class HandlerCallbackThreads implements CallbackThreads {
+        private final Map<String, HandlerThread> handlerThreads = new HashMap<>();
+
+        @NonNull
+        @Override
+        public Handler start(@NonNull String callbackThreadName) {
+            HandlerThread handlerThread = handlerThreads.get(callbackThreadName);
+            if (handlerThread == null) {
+                // sensor callbacks only copy their event, so they can run ahead of everything but the display
+                handlerThread = new HandlerThread(callbackThreadName, Process.THREAD_PRIORITY_URGENT_DISPLAY);
+                handlerThread.start();
+                handlerThreads.put(callbackThreadName, handlerThread);
+            }
+            return new Handler(handlerThread.getLooper());
+        }
+
+        @Override
+        public void quit(@NonNull String callbackThreadName) {
+            HandlerThread handlerThread = handlerThreads.remove(callbackThreadName);
+            if (handlerThread != null) {
+                handlerThread.quitSafely();
+            }
+        }
+    }
+
+    /**
+     * The single registration of a sensor type and the subscribers it feeds.
+     */
+    private final class SharedSensor implements SensorEventListener2 {
+        private final Sensor sensor;
+
+        private final int sensorType;
+
+        private final String callbackThreadName;
+
+        private final Handler callbackHandler;
+
+        private final SensorCallbackLatency callbackLatency = new SensorCallbackLatency();
+
+        // flushes are completed by the sensor in the order they were requested, each entry completes one of them
+        private final Queue<Runnable> pendingFlushes = new ConcurrentLinkedQueue<>();
+
+        // registers the sensor with its subscribers' parameters once its FIFO has been delivered
+        private final Runnable reregistration = this::completeReregistration;
+
+        // iterated on the sensor thread while subscribers come and go
+        private final List<SensorSubscriber> subscribers = new CopyOnWriteArrayList<>();
+
+        private boolean isRegistered;
+
+        private boolean isReregistering;
+
+        private int registeredMaxReportLatencyUs = -1;
+
+        // read on the sensor thread
+        private volatile int registeredSamplingPeriodUs = -1;
+
+        SharedSensor(@NonNull Sensor sensor, @NonNull String callbackThreadName, @NonNull Handler callbackHandler) {
+            this.sensor = sensor;
+            this.sensorType = sensor.getType();
+            this.callbackThreadName = callbackThreadName;
+            this.callbackHandler = callbackHandler;
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+            // accuracy changes are rare and every subscriber should know about them
+            ReactiveSensorEvent event = new ReactiveSensorEvent(sensor, accuracy);
+            for (SensorSubscriber subscriber : subscribers) {
+                if (subscriber.eventEmitter != null) {
+                    subscriber.eventEmitter.onNext(event);
+                }
+            }
+        }
+
+        @Override
+        public void onFlushCompleted(Sensor sensor) {
+            Runnable flush = pendingFlushes.poll();
+            if (flush != null) {
+                flush.run();
+            }
+        }
+
+        @Override
+        public void onSensorChanged(SensorEvent sensorEvent) {
+            callbackLatency.record(RecorderClock.elapsedRealtimeNanos() - sensorEvent.timestamp);
+            // wrapped and copied at most once, and only if a subscriber wants the event
+            ReactiveSensorEvent event = null;
+            SensorSample sample = null;
+            long toleranceNanos = registeredSamplingPeriodUs * MICROSECONDS_TO_NANOSECONDS / 2;
+            for (SensorSubscriber subscriber : subscribers) {
+                if (!subscriber.shouldDeliver(sensorEvent.timestamp, toleranceNanos)) {
+                    continue;
+                }
+                if (subscriber.eventEmitter != null) {
+                    if (event == null) {
+                        event = new ReactiveSensorEvent(sensorEvent);
+                    }
+                    subscriber.eventEmitter.onNext(event);
+                } else {
+                    if (sample == null) {
+                        sample = SensorSample.copyOf(sensorEvent);
+                    }
+                    subscriber.sampleEmitter.onNext(sample);
+                }
+            }
+        }
+
+        void flush(@NonNull CompletableEmitter emitter) {
+            Runnable flush = emitter::onComplete;
+            pendingFlushes.add(flush);
+            emitter.setCancellable(() -> pendingFlushes.remove(flush));
+            if (!sensorManager.flush(this)) {
+                LOGGER.warn("Sensor type {} could not be flushed", sensorType);
+                pendingFlushes.remove(flush);
+                emitter.onComplete();
+            }
+        }
+
+        void unregister() {
+            if (isRegistered) {
+                sensorManager.unregisterListener(this);
+                isRegistered = false;
+            }
+            isReregistering = false;
+            callbackHandler.removeCallbacks(reregistration);
+            registeredSamplingPeriodUs = -1;
+            registeredMaxReportLatencyUs = -1;
+            // no more samples will arrive for the pending flushes to wait for
+            Runnable flush;
+            while ((flush = pendingFlushes.poll()) != null) {
+                flush.run();
+            }
+        }
+
+        /**
+         * Registers the sensor with the fastest sampling period and shortest max report latency of its subscribers.
+         * A sensor that is already registered is flushed first, as unregistering it would drop the samples in its
+         * FIFO, and it keeps its current registration until the flush completes.
+         */
+        void updateRegistration() {
+            if (isReregistering) {
+                // picks up the subscribers as they are when the flush completes
+                return;
+            }
+            if (!isRegistered) {
+                register();
+                return;
+            }
+            if (getFastestSamplingPeriodUs() == registeredSamplingPeriodUs
+                    && getShortestMaxReportLatencyUs() == registeredMaxReportLatencyUs) {
+                return;
+            }
+            isReregistering = true;
+            pendingFlushes.add(reregistration);
+            if (sensorManager.flush(this)) {
+                // in case the sensor never reports the flush
+                callbackHandler.postDelayed(reregistration, FLUSH_TIMEOUT_MILLIS);
+            } else {
+                pendingFlushes.remove(reregistration);
+                completeReregistration();
+            }
+        }
+
+        private void completeReregistration() {
+            synchronized (SensorHub.this) {
+                if (!isReregistering) {
+                    return;
+                }
+                isReregistering = false;
+                pendingFlushes.remove(reregistration);
+                callbackHandler.removeCallbacks(reregistration);
+                register();
+            }
+        }
+
+        private int getFastestSamplingPeriodUs() {
+            int fastestSamplingPeriodUs = Integer.MAX_VALUE;
+            for (SensorSubscriber subscriber : subscribers) {
+                fastestSamplingPeriodUs = Math.min(fastestSamplingPeriodUs, subscriber.samplingPeriodUs);
+            }
+            return fastestSamplingPeriodUs;
+        }
+
+        private int getShortestMaxReportLatencyUs() {
+            int shortestMaxReportLatencyUs = Integer.MAX_VALUE;
+            for (SensorSubscriber subscriber : subscribers) {
+                shortestMaxReportLatencyUs = Math.min(shortestMaxReportLatencyUs, subscriber.maxReportLatencyUs);
+            }
+            return shortestMaxReportLatencyUs;
+        }
+
+        private void register() {
+            int fastestSamplingPeriodUs = getFastestSamplingPeriodUs();
+            int shortestMaxReportLatencyUs = getShortestMaxReportLatencyUs();
+            LOGGER.debug("Registering sensor type {} at {}us with max report latency {}us on {} for {} subscribers, "
+                            + "FIFO reserved {} max {} events", sensorType, fastestSamplingPeriodUs,
+                    shortestMaxReportLatencyUs, callbackThreadName, subscribers.size(),
+                    sensor.getFifoReservedEventCount(), sensor.getFifoMaxEventCount());
+            if (shortestMaxReportLatencyUs > 0) {
+                // the reserved part of the FIFO is guaranteed, the rest is shared with other sensors
+                int fifoEventCount = sensor.getFifoReservedEventCount() > 0
+                        ? sensor.getFifoReservedEventCount() : sensor.getFifoMaxEventCount();
+                if (fifoEventCount == 0) {
+                    LOGGER.info("Sensor type {} has no hardware FIFO, its samples are reported as they are taken",
+                            sensorType);
+                } else if ((long) shortestMaxReportLatencyUs > (long) fifoEventCount * fastestSamplingPeriodUs) {
+                    // a non-wakeup sensor keeps only the newest samples while the application processor sleeps
+                    LOGGER.warn("Sensor type {} may fill its FIFO of {} events before reporting it", sensorType,
+                            fifoEventCount);
+                }
+            }
+            if (isRegistered) {
+                sensorManager.unregisterListener(this);
+            }
+            registeredSamplingPeriodUs = fastestSamplingPeriodUs;
+            registeredMaxReportLatencyUs = shortestMaxReportLatencyUs;
+            isRegistered = sensorManager.registerListener(this, sensor, fastestSamplingPeriodUs,
+                    shortestMaxReportLatencyUs, callbackHandler);
+            if (!isRegistered) {
+                Throwable t = new IllegalStateException("Sensor type " + sensorType + " could not be registered");
+                LOGGER.warn("Sensor type {} failed", sensorType, t);
+                for (SensorSubscriber subscriber : subscribers) {
+                    subscriber.tryOnError(t);
+                }
+            }
+            // flushes requested while the previous registration delivered its FIFO are requested again from this one
+            int requestedFlushCount = pendingFlushes.size();
+            for (int i = 0; i < requestedFlushCount; i++) {
+                if (!isRegistered || !sensorManager.flush(this)) {
+                    Runnable flush;
+                    while ((flush = pendingFlushes.poll()) != null) {
+                        flush.run();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A subscriber to a shared sensor, which drops the events that arrive faster than it asked for. It receives
+     * either the events themselves or copies of them, depending on which of its emitters is set.
+     */
+    private static final class SensorSubscriber {
+        @Nullable
+        private final FlowableEmitter<ReactiveSensorEvent> eventEmitter;
+
+        @Nullable
+        private final FlowableEmitter<SensorSample> sampleEmitter;
+
+        private final int maxReportLatencyUs;
+
+        private final int samplingPeriodUs;
+
+        private boolean hasDelivered;
+
+        private long lastDeliveredTimestampNanos;
+
+        SensorSubscriber(@Nullable FlowableEmitter<ReactiveSensorEvent> eventEmitter,
+                @Nullable FlowableEmitter<SensorSample> sampleEmitter, int samplingPeriodUs, int maxReportLatencyUs) {
+            this.eventEmitter = eventEmitter;
+            this.sampleEmitter = sampleEmitter;
+            this.samplingPeriodUs = samplingPeriodUs;
+            this.maxReportLatencyUs = maxReportLatencyUs;
+        }
+
+        /**
+         * @return true if the event with the given timestamp should be delivered to this subscriber, in which case
+         *         it must be.
+         */
+        boolean shouldDeliver(long timestampNanos, long toleranceNanos) {
+            long periodNanos = samplingPeriodUs * MICROSECONDS_TO_NANOSECONDS;
+            if (hasDelivered && timestampNanos - lastDeliveredTimestampNanos < periodNanos - toleranceNanos) {
+                return false;
+            }
+            hasDelivered = true;
+            lastDeliveredTimestampNanos = timestampNanos;
+            return true;
+        }
+
+        void tryOnError(@NonNull Throwable t) {
+            if (eventEmitter != null) {
+                eventEmitter.tryOnError(t);
+            } else {
+                sampleEmitter.tryOnError(t);
+            }
+        }
+    }
+}
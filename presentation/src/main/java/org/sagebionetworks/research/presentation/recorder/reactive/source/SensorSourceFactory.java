@@ -34,6 +34,7 @@ package org.sagebionetworks.research.presentation.recorder.reactive.source;
 
 import static android.hardware.SensorManager.SENSOR_DELAY_NORMAL;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import android.hardware.Sensor;
@@ -45,17 +46,23 @@ import com.github.pwittchen.reactivesensors.library.ReactiveSensorEvent;
 import com.github.pwittchen.reactivesensors.library.ReactiveSensorFilter;
 import com.github.pwittchen.reactivesensors.library.ReactiveSensors;
 
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import javax.inject.Inject;
 
 import io.reactivex.BackpressureStrategy;
+import io.reactivex.Completable;
 import io.reactivex.Flowable;
 import io.reactivex.FlowableEmitter;
-import io.reactivex.schedulers.Schedulers;
 
 /**
  * This class is a Wrapper around ReactiveSensors that allows subscribing to a set of sensors with a single call.
+ * Subscriptions share their sensor registrations through the process' {@link SensorHub}.
  */
 public class SensorSourceFactory {
     @NonNull
@@ -67,23 +74,46 @@ public class SensorSourceFactory {
     @NonNull
     protected Set<Integer> sensorTypes;
 
+    @NonNull
+    protected SensorHub sensorHub;
+
     public static class SensorConfig {
+        /**
+         * The thread sensor events are delivered on unless a SensorConfig names another one.
+         */
+        public static final String DEFAULT_CALLBACK_THREAD_NAME = "SensorCallbacks";
+
         public final int sensorType;
 
         public final int samplingPeriodInUs;
 
         public final BackpressureStrategy backpressureStrategy;
 
+        public final String callbackThreadName;
+
+        /**
+         * The longest time in microseconds samples may wait in the sensor's hardware FIFO before being reported,
+         * 0 to report each sample as it is taken.
+         */
+        public final int maxReportLatencyUs;
+
         private SensorConfig(final int sensorType, final int samplingPeriodInUs,
-                final BackpressureStrategy backpressureStrategy) {
+                final BackpressureStrategy backpressureStrategy, final String callbackThreadName,
+                final int maxReportLatencyUs) {
             this.sensorType = sensorType;
             this.samplingPeriodInUs = samplingPeriodInUs;
             this.backpressureStrategy = backpressureStrategy;
+            this.callbackThreadName = callbackThreadName;
+            this.maxReportLatencyUs = maxReportLatencyUs;
         }
 
         public static class SensorConfigBuilder {
             private BackpressureStrategy backpressureStrategy = BackpressureStrategy.LATEST;
 
+            private String callbackThreadName = DEFAULT_CALLBACK_THREAD_NAME;
+
+            private int maxReportLatencyUs;
+
             private int samplingPeriodInUs;
 
             private final int sensorType;
@@ -94,7 +124,8 @@ public class SensorSourceFactory {
             }
 
             public SensorConfig build() {
-                return new SensorConfig(sensorType, samplingPeriodInUs, backpressureStrategy);
+                return new SensorConfig(sensorType, samplingPeriodInUs, backpressureStrategy, callbackThreadName,
+                        maxReportLatencyUs);
             }
 
             public SensorConfigBuilder setBackpressureStrategy(
@@ -103,6 +134,25 @@ public class SensorSourceFactory {
                 return this;
             }
 
+            /**
+             * Sets the name of the thread the sensor's events are delivered on. Sensors with the same thread name
+             * share a thread.
+             */
+            public SensorConfigBuilder setCallbackThreadName(@NonNull final String callbackThreadName) {
+                this.callbackThreadName = checkNotNull(callbackThreadName);
+                return this;
+            }
+
+            /**
+             * Sets how long samples may be batched in the sensor's hardware FIFO before being reported, which lets
+             * the application processor sleep in between. Sensors without a FIFO report each sample as it is taken.
+             */
+            public SensorConfigBuilder setMaxReportLatencyUs(final int maxReportLatencyUs) {
+                checkArgument(maxReportLatencyUs >= 0, "maxReportLatencyUs must not be negative");
+                this.maxReportLatencyUs = maxReportLatencyUs;
+                return this;
+            }
+
             public SensorConfigBuilder setSamplingPeriodInUs(final int samplingPeriodInUs) {
                 this.samplingPeriodInUs = samplingPeriodInUs;
                 return this;
@@ -129,8 +179,24 @@ public class SensorSourceFactory {
     }
 
     @Inject
-    public SensorSourceFactory(@NonNull ReactiveSensors reactiveSensors) {
+    public SensorSourceFactory(@NonNull ReactiveSensors reactiveSensors, @NonNull SensorHub sensorHub) {
         this.reactiveSensors = checkNotNull(reactiveSensors);
+        this.sensorHub = checkNotNull(sensorHub);
+    }
+
+    /**
+     * Reports the samples batched in the hardware FIFOs of the given sensors, see
+     * {@link SensorHub#flush(SensorConfig)}.
+     *
+     * @return a Completable which completes once the samples have been delivered.
+     */
+    @NonNull
+    public Completable flush(@NonNull Collection<SensorConfig> configs) {
+        List<Completable> flushes = new ArrayList<>();
+        for (SensorConfig config : configs) {
+            flushes.add(sensorHub.flush(config));
+        }
+        return Completable.merge(flushes);
     }
 
     @NonNull
@@ -140,9 +206,12 @@ public class SensorSourceFactory {
             // TODO: handle missing sensors
             return Flowable.empty();
         }
-        return reactiveSensors
-                .observeSensor(config.sensorType, config.samplingPeriodInUs, null, config.backpressureStrategy)
-                .subscribeOn(Schedulers.computation());
+        return sensorHub.observe(config);
+    }
+
+    @NonNull
+    public SensorHub getSensorHub() {
+        return sensorHub;
     }
 
     @NonNull
@@ -151,6 +220,18 @@ public class SensorSourceFactory {
                 .map(ReactiveSensorEvent::getSensorEvent);
     }
 
+    /**
+     * @return immutable copies of the configured sensor's events, made on the sensor thread. Unlike the events of
+     *         {@link #getSensorEvents(SensorConfig)}, these may be held on to and handed between threads.
+     */
+    @NonNull
+    public Flowable<SensorSample> getSensorSamples(SensorConfig config) {
+        if (!reactiveSensors.hasSensor(config.sensorType)) {
+            return Flowable.empty();
+        }
+        return sensorHub.observeSamples(config);
+    }
+
     @NonNull
     public Flowable<SensorAccuracyChangeEvent> getSensorAccuracyChangeEvents(SensorConfig config) {
         return getReactiveSensorEvents(config).filter(ReactiveSensorFilter.filterAccuracyChanged())
@@ -4,7 +4,6 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorManager;
 import android.os.Build;
-import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
@@ -14,6 +13,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.gson.JsonObject;
 
+import org.sagebionetworks.research.presentation.recorder.util.RecorderClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.threeten.bp.Instant;
@@ -394,6 +394,15 @@ public final class DeviceMotionUtil {
             sensor = event.sensor;
         }
 
+        // used to log initial sample, the equivalent of SensorEventPOJO(SensorEvent) for a copied event
+        public SensorEventPOJO(SensorSample sample) {
+            uptime = (double) sample.timestampNanos / SECONDS_TO_NANOS;
+            timestampDate = uptimeZero();
+            timestamp = 0;
+            sensorType = SENSOR_TYPE_TO_DATA_TYPE.get(sample.sensorType);
+            sensor = sample.sensor;
+        }
+
         public static long toNanos(@NonNull Instant timestamp) {
             return timestamp.getEpochSecond() * SECONDS_TO_NANOS + timestamp.getNano();
         }
@@ -403,7 +412,7 @@ public final class DeviceMotionUtil {
          */
         @NonNull
         public static Instant uptimeZero() {
-            return Instant.now().minus(SystemClock.elapsedRealtimeNanos(), ChronoUnit.NANOS);
+            return Instant.now().minus(RecorderClock.elapsedRealtimeNanos(), ChronoUnit.NANOS);
         }
 
         public static Instant timestampToInstant(long timestamp) {
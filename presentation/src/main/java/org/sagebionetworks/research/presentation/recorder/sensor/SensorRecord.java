@@ -0,0 +1,85 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor;
+
+import android.hardware.Sensor;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A reusable primitive copy of a SensorEvent, e.g. the record a {@link SensorRingBuffer} polls samples into. Its
+ * contents are overwritten whenever it is set again.
+ */
+public final class SensorRecord {
+    /**
+     * The most values any supported sensor reports, e.g. uncalibrated sensors report 6. Extra values are dropped.
+     */
+    public static final int MAX_VALUE_COUNT = 16;
+
+    @Nullable
+    public Sensor sensor;
+
+    public int sensorType;
+
+    // nanoseconds of uptime, as reported by SensorEvent.timestamp
+    public long timestampNanos;
+
+    public int valueCount;
+
+    public final float[] values = new float[MAX_VALUE_COUNT];
+
+    public void set(@Nullable Sensor sensor, int sensorType, long timestampNanos, @NonNull float[] values,
+            int valueCount) {
+        set(sensor, sensorType, timestampNanos, values, valueCount, 0);
+    }
+
+    public void set(@Nullable Sensor sensor, int sensorType, long timestampNanos, @NonNull float[] values,
+            int valueCount, int valuesOffset) {
+        this.sensor = sensor;
+        this.sensorType = sensorType;
+        this.timestampNanos = timestampNanos;
+        this.valueCount = Math.min(valueCount, MAX_VALUE_COUNT);
+        System.arraycopy(values, valuesOffset, this.values, 0, this.valueCount);
+    }
+
+    @Override
+    public String toString() {
+        return "SensorRecord{" +
+                "sensorType=" + sensorType +
+                ", timestampNanos=" + timestampNanos +
+                ", values=" + Arrays.toString(Arrays.copyOf(values, valueCount)) +
+                '}';
+    }
+}
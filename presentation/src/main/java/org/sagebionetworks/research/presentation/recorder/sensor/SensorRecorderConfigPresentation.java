@@ -34,7 +34,11 @@ package org.sagebionetworks.research.presentation.recorder.sensor;
 
 import androidx.annotation.NonNull;
 
+import org.sagebionetworks.research.domain.async.MotionRecorderOutputFormat;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
 import org.sagebionetworks.research.presentation.recorder.RestartableRecorderConfiguration;
+import org.sagebionetworks.research.presentation.recorder.reactive.BatchPolicy;
+import org.sagebionetworks.research.presentation.recorder.reactive.SegmentPolicy;
 import org.sagebionetworks.research.presentation.recorder.reactive.source.SensorSourceFactory.SensorConfig;
 
 import java.util.Set;
@@ -43,6 +47,71 @@ import java.util.Set;
  * Recorder configuration for sensors available through android.hardware.SensorManager.
  */
 public interface SensorRecorderConfigPresentation extends RestartableRecorderConfiguration {
+    /**
+     * Returns how the recorder should batch samples before handing them to its writer.
+     *
+     * @return how the recorder should batch samples, {@link BatchPolicy#NONE} to write them one at a time.
+     */
+    @NonNull
+    BatchPolicy getBatchPolicy();
+
+    /**
+     * Returns how the recorder should compress its file.
+     *
+     * @return how the recorder should compress its file, {@link RecorderOutputCompression#NONE} to write it as is.
+     */
+    @NonNull
+    @RecorderOutputCompression
+    String getCompression();
+
+    /**
+     * Returns the length of the windows a {@link MotionRecorderOutputFormat#FEATURES} recording summarizes.
+     *
+     * @return the feature window length in nanoseconds.
+     */
+    long getFeatureWindowNanos();
+
+    /**
+     * Returns the time between the frames of a {@link MotionRecorderOutputFormat#FRAMES} recording, derived from
+     * the configured frequency.
+     *
+     * @return the frame period in nanoseconds, or 0 if no frequency was configured.
+     */
+    long getFramePeriodNanos();
+
+    /**
+     * Returns whether the recorder's JSON output should be written through memory-mapped regions of the file, see
+     * {@link org.sagebionetworks.research.presentation.recorder.util.MappedFileOutputStream}.
+     *
+     * @return true to write the output through memory-mapped regions, false to write it with write calls.
+     */
+    boolean getMemoryMapped();
+
+    /**
+     * Returns the number of samples that may wait between the sensor thread and the writer before samples are
+     * dropped, if samples should be handed to the writer through a {@link SensorRingBuffer}.
+     *
+     * @return the ring buffer capacity, or 0 if samples should be handed to the writer through Rx.
+     */
+    int getRingBufferCapacity();
+
+    /**
+     * Returns when the recorder should continue in a new segment file.
+     *
+     * @return when the recorder should continue in a new segment file, {@link SegmentPolicy#NONE} to write a single
+     *         file.
+     */
+    @NonNull
+    SegmentPolicy getSegmentPolicy();
+
+    /**
+     * Returns whether each sensor should be recorded to its own file, on its own thread, along with a manifest listing
+     * the files.
+     *
+     * @return true if each sensor should be recorded to its own file, false to record all sensors to one file.
+     */
+    boolean getShardBySensor();
+
     /**
      * Returns the set of recorder types that the motion recorder should measure.
      *
@@ -50,4 +119,13 @@ public interface SensorRecorderConfigPresentation extends RestartableRecorderCon
      */
     @NonNull
     Set<SensorConfig> getSensorConfigs();
+
+    /**
+     * Returns the file format the motion recorder should write.
+     *
+     * @return the file format the motion recorder should write.
+     */
+    @NonNull
+    @MotionRecorderOutputFormat
+    String getOutputFormat();
 }
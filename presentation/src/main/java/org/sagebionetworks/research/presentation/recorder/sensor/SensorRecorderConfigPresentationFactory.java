@@ -1,3 +1,35 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
 package org.sagebionetworks.research.presentation.recorder.sensor;
 
 import android.content.Context;
@@ -6,23 +38,33 @@ import android.hardware.SensorManager;
 import androidx.annotation.NonNull;
 
 import org.sagebionetworks.research.domain.async.DeviceMotionRecorderConfiguration;
+import org.sagebionetworks.research.domain.async.MotionRecorderOutputFormat;
 import org.sagebionetworks.research.domain.async.RecorderConfiguration;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
 import org.sagebionetworks.research.presentation.inject.RecorderConfigPresentationFactory;
 import org.sagebionetworks.research.presentation.inject.SensorModule.Sensors;
 import org.sagebionetworks.research.presentation.recorder.RecorderConfigPresentation;
+import org.sagebionetworks.research.presentation.recorder.reactive.BatchPolicy;
+import org.sagebionetworks.research.presentation.recorder.reactive.SegmentPolicy;
 import org.sagebionetworks.research.presentation.recorder.reactive.source.SensorSourceFactory.SensorConfig;
 import org.sagebionetworks.research.presentation.recorder.reactive.source.SensorSourceFactory.SensorConfig.SensorConfigBuilder;
+import org.sagebionetworks.research.presentation.recorder.sensor.feature.MotionFeatureExtractor;
 
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 public class SensorRecorderConfigPresentationFactory implements RecorderConfigPresentationFactory {
+    private static final int MILLISECONDS_TO_MICROSECONDS = 1_000;
+
     private static final int SECONDS_TO_MICROSECONDS = 1_000_000;
 
+    private static final long SECONDS_TO_NANOSECONDS = 1_000_000_000L;
+
     private final Map<String, Integer> sensorsMap;
     private final Context context;
 
@@ -57,17 +99,61 @@ public class SensorRecorderConfigPresentationFactory implements RecorderConfigPr
                                     * SECONDS_TO_MICROSECONDS);
                     sensorConfigBuilder.setSamplingPeriodInUs(samplingPeriodInUs);
                 }
+                if (dmrConfiguration.getMaxReportLatencyMillis() != null) {
+                    long maxReportLatencyUs = dmrConfiguration.getMaxReportLatencyMillis()
+                            * MILLISECONDS_TO_MICROSECONDS;
+                    sensorConfigBuilder.setMaxReportLatencyUs((int) Math.min(maxReportLatencyUs, Integer.MAX_VALUE));
+                }
                 // TODO: currently using system default sampling rate. does SR have a default? @liujoshua 2018/08/29
                 sensorConfigs.add(sensorConfigBuilder.build());
             }
         }
 
+        String outputFormat = dmrConfiguration.getOutputFormat() != null
+                ? dmrConfiguration.getOutputFormat() : MotionRecorderOutputFormat.JSON;
+
+        long framePeriodNanos = 0;
+        if (dmrConfiguration.getFrequency() != null) {
+            framePeriodNanos = Math.round(1 / dmrConfiguration.getFrequency() * SECONDS_TO_NANOSECONDS);
+        }
+
+        long featureWindowNanos = MotionFeatureExtractor.DEFAULT_WINDOW_NANOS;
+        if (dmrConfiguration.getFeatureWindowMillis() != null) {
+            featureWindowNanos = TimeUnit.MILLISECONDS.toNanos(dmrConfiguration.getFeatureWindowMillis());
+        }
+
+        BatchPolicy batchPolicy = BatchPolicy.NONE;
+        if (dmrConfiguration.getMaxBatchSize() != null && dmrConfiguration.getMaxBatchLatencyMillis() != null) {
+            batchPolicy = BatchPolicy.create(dmrConfiguration.getMaxBatchSize(),
+                    dmrConfiguration.getMaxBatchLatencyMillis());
+        }
+
+        SegmentPolicy segmentPolicy = SegmentPolicy.create(
+                dmrConfiguration.getMaxSegmentBytes() != null ? dmrConfiguration.getMaxSegmentBytes() : 0,
+                dmrConfiguration.getMaxSegmentDurationMillis() != null
+                        ? dmrConfiguration.getMaxSegmentDurationMillis() : 0);
+
         return SensorRecorderConfigPresentationImpl.builder()
                 .setIdentifier(config.getIdentifier())
                 .setType(config.getType())
                 .setStartStepIdentifier(config.getStartStepIdentifier())
                 .setStopStepIdentifier(config.getStopStepIdentifier())
                 .setSensorConfigs(sensorConfigs)
+                .setOutputFormat(outputFormat)
+                .setFramePeriodNanos(framePeriodNanos)
+                .setFeatureWindowNanos(featureWindowNanos)
+                .setBatchPolicy(batchPolicy)
+                .setSegmentPolicy(segmentPolicy)
+                .setShardBySensor(dmrConfiguration.getShardBySensor() != null
+                        && dmrConfiguration.getShardBySensor())
+                .setMemoryMapped(dmrConfiguration.getMemoryMapped() != null
+                        && dmrConfiguration.getMemoryMapped())
+                .setCompression(dmrConfiguration.getCompression() != null
+                        ? dmrConfiguration.getCompression() : RecorderOutputCompression.NONE)
+                .setRingBufferCapacity(dmrConfiguration.getRingBufferCapacity() != null
+                        ? dmrConfiguration.getRingBufferCapacity() : 0)
+                .setShouldDeletePrevious(dmrConfiguration.getShouldDeletePrevious() == null
+                        || dmrConfiguration.getShouldDeletePrevious())
                 .build();
     }
 }
@@ -37,7 +37,12 @@ import androidx.annotation.Nullable;
 
 import com.google.auto.value.AutoValue;
 
+import org.sagebionetworks.research.domain.async.MotionRecorderOutputFormat;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
+import org.sagebionetworks.research.presentation.recorder.reactive.BatchPolicy;
+import org.sagebionetworks.research.presentation.recorder.reactive.SegmentPolicy;
 import org.sagebionetworks.research.presentation.recorder.reactive.source.SensorSourceFactory.SensorConfig;
+import org.sagebionetworks.research.presentation.recorder.sensor.feature.MotionFeatureExtractor;
 
 import java.util.Set;
 
@@ -47,10 +52,28 @@ public abstract class SensorRecorderConfigPresentationImpl implements SensorReco
     public abstract static class Builder {
         public abstract SensorRecorderConfigPresentationImpl build();
 
+        public abstract Builder setBatchPolicy(@NonNull BatchPolicy batchPolicy);
+
+        public abstract Builder setCompression(@NonNull @RecorderOutputCompression String compression);
+
+        public abstract Builder setFeatureWindowNanos(long featureWindowNanos);
+
+        public abstract Builder setFramePeriodNanos(long framePeriodNanos);
+
         public abstract Builder setIdentifier(@NonNull String identifier);
 
+        public abstract Builder setMemoryMapped(boolean memoryMapped);
+
+        public abstract Builder setOutputFormat(@NonNull @MotionRecorderOutputFormat String outputFormat);
+
+        public abstract Builder setRingBufferCapacity(int ringBufferCapacity);
+
+        public abstract Builder setSegmentPolicy(@NonNull SegmentPolicy segmentPolicy);
+
         public abstract Builder setSensorConfigs(@NonNull Set<SensorConfig> sensorConfigs);
 
+        public abstract Builder setShardBySensor(boolean shardBySensor);
+
         public abstract Builder setStartStepIdentifier(@Nullable String startStepIdentifier);
 
         public abstract Builder setStopStepIdentifier(@Nullable String stopStepIdentifier);
@@ -62,13 +85,55 @@ public abstract class SensorRecorderConfigPresentationImpl implements SensorReco
 
     public static Builder builder() {
         return new AutoValue_SensorRecorderConfigPresentationImpl.Builder()
-                .setShouldDeletePrevious(true);
+                .setShouldDeletePrevious(true)
+                .setBatchPolicy(BatchPolicy.NONE)
+                .setCompression(RecorderOutputCompression.NONE)
+                .setFeatureWindowNanos(MotionFeatureExtractor.DEFAULT_WINDOW_NANOS)
+                .setFramePeriodNanos(0)
+                .setMemoryMapped(false)
+                .setRingBufferCapacity(0)
+                .setSegmentPolicy(SegmentPolicy.NONE)
+                .setShardBySensor(false)
+                .setOutputFormat(MotionRecorderOutputFormat.JSON);
     }
 
+    @Override
+    @NonNull
+    public abstract BatchPolicy getBatchPolicy();
+
+    @Override
+    @NonNull
+    @RecorderOutputCompression
+    public abstract String getCompression();
+
+    @Override
+    public abstract long getFeatureWindowNanos();
+
+    @Override
+    public abstract long getFramePeriodNanos();
+
+    @Override
+    public abstract boolean getMemoryMapped();
+
+    @Override
+    public abstract int getRingBufferCapacity();
+
+    @Override
+    @NonNull
+    public abstract SegmentPolicy getSegmentPolicy();
+
+    @Override
+    public abstract boolean getShardBySensor();
+
     @Override
     public abstract boolean getShouldDeletePrevious();
 
     @Override
     @NonNull
     public abstract Set<SensorConfig> getSensorConfigs();
+
+    @Override
+    @NonNull
+    @MotionRecorderOutputFormat
+    public abstract String getOutputFormat();
 }
@@ -0,0 +1,251 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A preallocated, lock-free ring of sensor samples between exactly one producer thread, which receives sensor
+ * events, and exactly one consumer thread, which writes them. Samples are stored in primitive slots, so neither side
+ * allocates. When the ring is full the new sample is dropped and counted as an overrun, rather than blocking the
+ * sensor thread.
+ * <p>
+ * Besides overruns the ring keeps track of its high-water mark, the most samples it held at once, and of drain
+ * latency, the time between a sample being offered and being polled. Together these show whether and by how much the
+ * ring should be resized for a device.
+ */
+public class SensorRingBuffer {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final Sensor[] sensors;
+
+    private final int[] sensorTypes;
+
+    private final long[] timestamps;
+
+    private final long[] offerTimes;
+
+    private final int[] valueCounts;
+
+    private final float[] values;
+
+    // index of the next slot to write, only written by the producer
+    private final AtomicLong producerIndex = new AtomicLong();
+
+    // index of the next slot to read, only written by the consumer
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    // producer side statistics, only written by the producer
+    private final AtomicLong overrunCount = new AtomicLong();
+
+    private final AtomicLong highWaterMark = new AtomicLong();
+
+    // consumer side statistics, only written by the consumer
+    private final AtomicLong maxDrainLatencyNanos = new AtomicLong();
+
+    private final AtomicLong totalDrainLatencyNanos = new AtomicLong();
+
+    // returned by poll, only used by the consumer
+    private final SensorRecord polledRecord = new SensorRecord();
+
+    public SensorRingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *         the number of samples the ring can hold, rounded up to a power of two.
+     */
+    public SensorRingBuffer(int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        checkArgument(capacity <= 1 << 30, "capacity must be at most 2^30");
+        this.capacity = roundUpToPowerOfTwo(capacity);
+        this.mask = this.capacity - 1;
+        sensors = new Sensor[this.capacity];
+        sensorTypes = new int[this.capacity];
+        timestamps = new long[this.capacity];
+        offerTimes = new long[this.capacity];
+        valueCounts = new int[this.capacity];
+        values = new float[this.capacity * SensorRecord.MAX_VALUE_COUNT];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of samples that have been polled.
+     */
+    public long getDrainedCount() {
+        return consumerIndex.get();
+    }
+
+    /**
+     * @return the most samples that were waiting in the ring at once.
+     */
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * @return the longest time a sample waited in the ring, in nanoseconds.
+     */
+    public long getMaxDrainLatencyNanos() {
+        return maxDrainLatencyNanos.get();
+    }
+
+    /**
+     * @return the average time a sample waited in the ring, in nanoseconds.
+     */
+    public long getMeanDrainLatencyNanos() {
+        long drained = consumerIndex.get();
+        return drained == 0 ? 0 : totalDrainLatencyNanos.get() / drained;
+    }
+
+    /**
+     * @return the number of samples that have been offered to the ring, including those which were dropped.
+     */
+    public long getOfferedCount() {
+        return producerIndex.get() + overrunCount.get();
+    }
+
+    /**
+     * @return the number of samples that were dropped because the ring was full.
+     */
+    public long getOverrunCount() {
+        return overrunCount.get();
+    }
+
+    /**
+     * Copies the given event into the next free slot. Must only be called from the producer thread.
+     *
+     * @param event
+     *         the event to copy, which may be reused by SensorManager as soon as this method returns.
+     * @return true if the event was added, false if the ring was full and the event was dropped.
+     */
+    public boolean offer(@NonNull SensorEvent event) {
+        return offer(event.sensor, event.sensor.getType(), event.timestamp, event.values, event.values.length);
+    }
+
+    /**
+     * Copies the given sample into the next free slot. Must only be called from the producer thread.
+     *
+     * @return true if the sample was added, false if the ring was full and the sample was dropped.
+     */
+    public boolean offer(@Nullable Sensor sensor, int sensorType, long timestampNanos, @NonNull float[] values,
+            int valueCount) {
+        long producer = producerIndex.get();
+        long size = producer - consumerIndex.get();
+        if (size >= capacity) {
+            overrunCount.lazySet(overrunCount.get() + 1);
+            return false;
+        }
+
+        int slot = (int) (producer & mask);
+        int count = Math.min(valueCount, SensorRecord.MAX_VALUE_COUNT);
+        sensors[slot] = sensor;
+        sensorTypes[slot] = sensorType;
+        timestamps[slot] = timestampNanos;
+        valueCounts[slot] = count;
+        System.arraycopy(values, 0, this.values, slot * SensorRecord.MAX_VALUE_COUNT, count);
+        offerTimes[slot] = System.nanoTime();
+        // publishes the slot to the consumer
+        producerIndex.lazySet(producer + 1);
+
+        if (size + 1 > highWaterMark.get()) {
+            highWaterMark.lazySet(size + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the oldest sample from the ring. Must only be called from the consumer thread.
+     *
+     * @return a record holding the sample, which is only valid until the next call to poll, or null if the ring is
+     *         empty. The record must not be released.
+     */
+    @Nullable
+    public SensorRecord poll() {
+        long consumer = consumerIndex.get();
+        if (consumer >= producerIndex.get()) {
+            return null;
+        }
+
+        int slot = (int) (consumer & mask);
+        polledRecord.set(sensors[slot], sensorTypes[slot], timestamps[slot], values,
+                valueCounts[slot], slot * SensorRecord.MAX_VALUE_COUNT);
+        long latency = System.nanoTime() - offerTimes[slot];
+        totalDrainLatencyNanos.lazySet(totalDrainLatencyNanos.get() + latency);
+        if (latency > maxDrainLatencyNanos.get()) {
+            maxDrainLatencyNanos.lazySet(latency);
+        }
+        // frees the slot for the producer
+        consumerIndex.lazySet(consumer + 1);
+        return polledRecord;
+    }
+
+    /**
+     * @return the number of samples currently waiting in the ring.
+     */
+    public int size() {
+        return (int) (producerIndex.get() - consumerIndex.get());
+    }
+
+    @Override
+    public String toString() {
+        return "SensorRingBuffer{" +
+                "capacity=" + capacity +
+                ", offered=" + getOfferedCount() +
+                ", overruns=" + getOverrunCount() +
+                ", highWaterMark=" + getHighWaterMark() +
+                ", meanDrainLatencyNanos=" + getMeanDrainLatencyNanos() +
+                ", maxDrainLatencyNanos=" + getMaxDrainLatencyNanos() +
+                '}';
+    }
+
+    private static int roundUpToPowerOfTwo(int value) {
+        int highestOneBit = Integer.highestOneBit(value);
+        return highestOneBit == value ? value : highestOneBit << 1;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the data in a SensorEvent. SensorManager reuses SensorEvent instances between callbacks, so
+ * any event that crosses a thread boundary must be copied into a SensorSample before it leaves the sensor thread.
+ */
+public final class SensorSample {
+    @NonNull
+    public final Sensor sensor;
+
+    public final int sensorType;
+
+    // nanoseconds of uptime, as reported by SensorEvent.timestamp
+    public final long timestampNanos;
+
+    // copied from SensorEvent.values, must not be modified
+    @NonNull
+    public final float[] values;
+
+    @NonNull
+    public static SensorSample copyOf(@NonNull SensorEvent event) {
+        checkNotNull(event);
+        return new SensorSample(event.sensor, event.timestamp, event.values.clone());
+    }
+
+    private SensorSample(@NonNull Sensor sensor, long timestampNanos, @NonNull float[] values) {
+        this.sensor = sensor;
+        this.sensorType = sensor.getType();
+        this.timestampNanos = timestampNanos;
+        this.values = values;
+    }
+
+    @Override
+    public String toString() {
+        return "SensorSample{" +
+                "sensorType=" + sensorType +
+                ", timestampNanos=" + timestampNanos +
+                ", values=" + Arrays.toString(values) +
+                '}';
+    }
+}
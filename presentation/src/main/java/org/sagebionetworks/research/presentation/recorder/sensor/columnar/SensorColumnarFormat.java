@@ -0,0 +1,78 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.columnar;
+
+/**
+ * Constants describing the columnar sensor file format.
+ * <p>
+ * A file starts with {@link #MAGIC} and {@link #VERSION}, followed by a sequence of blocks. Each block starts with a
+ * one byte tag:
+ * <ul>
+ * <li>{@link #BLOCK_SENSOR}: describes a sensor, written before the first column block for that sensor type.
+ * int sensorType, int valueCount, UTF name, UTF vendor, int version, float maximumRange, float resolution,
+ * float power, int minDelay.</li>
+ * <li>{@link #BLOCK_REFERENCE}: the uptime reference taken from the first event of the recording.
+ * int sensorType, long timestampNanos, long uptimeZeroEpochSecond, int uptimeZeroNano.</li>
+ * <li>{@link #BLOCK_COLUMNS}: samples for a single sensor type. int sensorType, int valueCount, int count,
+ * long firstTimestampNanos, int[count] timestamp deltas in nanoseconds from the previous sample, then valueCount
+ * columns of float[count].</li>
+ * <li>{@link #BLOCK_PAUSE_MARKER}: the recorder was paused or resumed, see RecorderPauseMarker. Every sample before
+ * it has been written in an earlier block. boolean isPause, long uptimeNanos, long epochSecond, int nano. Since
+ * version 2.</li>
+ * </ul>
+ * All values are big-endian, as written by {@link java.io.DataOutputStream}. Blocks are only ever appended, so the
+ * readable prefix of a truncated file is still valid.
+ */
+public final class SensorColumnarFormat {
+    public static final String MIME_CONTENT_TYPE = "application/vnd.sagebionetworks.sensor-columnar";
+
+    public static final String FILE_EXTENSION = ".columnar";
+
+    // "SCOL"
+    public static final int MAGIC = 0x53434F4C;
+
+    public static final short VERSION = 2;
+
+    public static final byte BLOCK_SENSOR = 1;
+
+    public static final byte BLOCK_REFERENCE = 2;
+
+    public static final byte BLOCK_COLUMNS = 3;
+
+    public static final byte BLOCK_PAUSE_MARKER = 4;
+
+    public static final int DEFAULT_BLOCK_CAPACITY = 256;
+
+    private SensorColumnarFormat() {
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.columnar;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import android.hardware.Sensor;
+import androidx.annotation.NonNull;
+
+import com.google.gson.stream.JsonWriter;
+
+import org.sagebionetworks.research.presentation.recorder.RecorderPauseMarker;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.AccelerationEventPojo;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.GyroscopeEventPOJO;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.MagneticEventPojo;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.RotationEventPojo;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.SensorEventPOJO;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.UncalibratedEventPOJO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Instant;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads files written by {@link SensorColumnarWriter}, and transcodes them into the JSON array format written by the
+ * JSON motion recorder so the upload path can consume either.
+ * <p>
+ * Transcoded records are emitted in block order, so samples from different sensors are grouped into runs rather than
+ * interleaved by arrival time. Each record carries its own timestamp and sensorType, as it does today.
+ */
+public class SensorColumnarReader {
+    /**
+     * Receives the contents of a columnar file in the order they were written.
+     */
+    public interface Handler {
+        void onSensorDescription(@NonNull SensorDescription description) throws IOException;
+
+        void onReference(int sensorType, long timestampNanos, @NonNull Instant uptimeZero) throws IOException;
+
+        void onSample(int sensorType, long timestampNanos, @NonNull float[] values) throws IOException;
+
+        void onPauseMarker(@NonNull RecorderPauseMarker marker) throws IOException;
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SensorColumnarReader.class);
+
+    private static final double SECONDS_TO_NANOS = 1_000_000_000;
+
+    /**
+     * Reads every complete block in the given stream. A block that was truncated, e.g. because the recording process
+     * died, is ignored along with anything after it.
+     */
+    public static void read(@NonNull InputStream inputStream, @NonNull Handler handler) throws IOException {
+        checkNotNull(inputStream);
+        checkNotNull(handler);
+
+        DataInputStream in = new DataInputStream(inputStream);
+        int magic = in.readInt();
+        if (magic != SensorColumnarFormat.MAGIC) {
+            throw new IOException("Not a columnar sensor file, magic was " + Integer.toHexString(magic));
+        }
+        short version = in.readShort();
+        // later versions only add blocks, so earlier files are still read
+        if (version < 1 || version > SensorColumnarFormat.VERSION) {
+            throw new IOException("Unsupported columnar sensor file version " + version);
+        }
+
+        try {
+            while (true) {
+                int tag = in.read();
+                if (tag < 0) {
+                    return;
+                }
+                switch (tag) {
+                    case SensorColumnarFormat.BLOCK_SENSOR:
+                        handler.onSensorDescription(readSensorDescription(in));
+                        break;
+                    case SensorColumnarFormat.BLOCK_REFERENCE:
+                        readReference(in, handler);
+                        break;
+                    case SensorColumnarFormat.BLOCK_COLUMNS:
+                        readColumns(in, handler);
+                        break;
+                    case SensorColumnarFormat.BLOCK_PAUSE_MARKER:
+                        readPauseMarker(in, handler);
+                        break;
+                    default:
+                        throw new IOException("Unknown block tag " + tag);
+                }
+            }
+        } catch (EOFException e) {
+            LOGGER.warn("Columnar sensor file ended with a truncated block, ignoring it");
+        }
+    }
+
+    /**
+     * Transcodes a columnar file into a JSON array of sensor event objects.
+     */
+    public static void transcodeToJson(@NonNull InputStream inputStream, @NonNull Writer writer)
+            throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        // values padded for a short SensorEvent are NaN, which strict mode rejects
+        jsonWriter.setLenient(true);
+        // Gson omits null fields, e.g. sensorType for an unmapped sensor
+        jsonWriter.setSerializeNulls(false);
+        jsonWriter.beginArray();
+        read(inputStream, new JsonTranscodingHandler(jsonWriter));
+        jsonWriter.endArray();
+        jsonWriter.flush();
+    }
+
+    public static void transcodeToJson(@NonNull File columnarFile, @NonNull File jsonFile) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(columnarFile));
+             Writer writer = new BufferedWriter(
+                     new OutputStreamWriter(new FileOutputStream(jsonFile), Charset.forName("UTF-8")))) {
+            transcodeToJson(inputStream, writer);
+        }
+    }
+
+    private static void readColumns(DataInputStream in, Handler handler) throws IOException {
+        int sensorType = in.readInt();
+        int valueCount = in.readInt();
+        int count = in.readInt();
+        long timestampNanos = in.readLong();
+
+        int[] timestampDeltas = new int[count];
+        for (int i = 0; i < count; i++) {
+            timestampDeltas[i] = in.readInt();
+        }
+        float[][] columns = new float[valueCount][count];
+        for (float[] column : columns) {
+            for (int i = 0; i < count; i++) {
+                column[i] = in.readFloat();
+            }
+        }
+
+        float[] values = new float[valueCount];
+        for (int i = 0; i < count; i++) {
+            timestampNanos += timestampDeltas[i];
+            for (int v = 0; v < valueCount; v++) {
+                values[v] = columns[v][i];
+            }
+            handler.onSample(sensorType, timestampNanos, values);
+        }
+    }
+
+    private static void readPauseMarker(DataInputStream in, Handler handler) throws IOException {
+        boolean isPause = in.readBoolean();
+        long uptimeNanos = in.readLong();
+        long epochSecond = in.readLong();
+        int nano = in.readInt();
+        handler.onPauseMarker(new RecorderPauseMarker(isPause ? RecorderPauseMarker.PAUSE : RecorderPauseMarker.RESUME,
+                Instant.ofEpochSecond(epochSecond, nano), uptimeNanos));
+    }
+
+    private static void readReference(DataInputStream in, Handler handler) throws IOException {
+        int sensorType = in.readInt();
+        long timestampNanos = in.readLong();
+        long uptimeZeroEpochSecond = in.readLong();
+        int uptimeZeroNano = in.readInt();
+        handler.onReference(sensorType, timestampNanos, Instant.ofEpochSecond(uptimeZeroEpochSecond, uptimeZeroNano));
+    }
+
+    private static SensorDescription readSensorDescription(DataInputStream in) throws IOException {
+        int sensorType = in.readInt();
+        int valueCount = in.readInt();
+        String name = in.readUTF();
+        String vendor = in.readUTF();
+        int version = in.readInt();
+        float maximumRange = in.readFloat();
+        float resolution = in.readFloat();
+        float power = in.readFloat();
+        int minDelay = in.readInt();
+        return new SensorDescription(sensorType, valueCount, name, vendor, version, maximumRange, resolution, power,
+                minDelay);
+    }
+
+    /**
+     * Writes the same fields, with the same names and units, as Gson does for the DeviceMotionUtil POJOs.
+     */
+    private static class JsonTranscodingHandler implements Handler {
+        private final JsonWriter jsonWriter;
+
+        private final Map<Integer, SensorDescription> sensorDescriptions = new HashMap<>();
+
+        private double referenceUptime;
+
+        JsonTranscodingHandler(JsonWriter jsonWriter) {
+            this.jsonWriter = jsonWriter;
+        }
+
+        @Override
+        public void onReference(final int sensorType, final long timestampNanos, @NonNull final Instant uptimeZero)
+                throws IOException {
+            referenceUptime = timestampNanos / SECONDS_TO_NANOS;
+
+            // equivalent of SensorEventPOJO(SensorEvent), which logs full info about the first sensor
+            jsonWriter.beginObject();
+            SensorDescription description = sensorDescriptions.get(sensorType);
+            if (description != null) {
+                jsonWriter.name("sensor");
+                writeSensor(description);
+            }
+            jsonWriter.name("timestampDate").value(uptimeZero.toString());
+            writeBase(sensorType, 0, referenceUptime);
+            jsonWriter.endObject();
+        }
+
+        @Override
+        public void onPauseMarker(@NonNull final RecorderPauseMarker marker) throws IOException {
+            // the fields Gson writes for a RecorderPauseMarker
+            jsonWriter.beginObject();
+            jsonWriter.name("marker").value(marker.marker);
+            jsonWriter.name("timestampDate").value(marker.timestampDate.toString());
+            jsonWriter.name("uptime").value(marker.uptime);
+            jsonWriter.endObject();
+        }
+
+        @Override
+        public void onSample(final int sensorType, final long timestampNanos, @NonNull final float[] values)
+                throws IOException {
+            Class<? extends SensorEventPOJO> pojoClass = DeviceMotionUtil.SENSOR_TYPE_TO_EVENT_POJO.get(sensorType);
+            if (pojoClass == null) {
+                LOGGER.warn("Unable to transcode sensor type: {}", sensorType);
+                return;
+            }
+
+            double uptime = timestampNanos / SECONDS_TO_NANOS;
+            jsonWriter.beginObject();
+            if (pojoClass == AccelerationEventPojo.class) {
+                writeXyz(values, DeviceMotionUtil.GRAVITY_SI_CONVERSION, "g");
+            } else if (pojoClass == GyroscopeEventPOJO.class) {
+                writeXyz(values, 1, "rad/s");
+            } else if (pojoClass == MagneticEventPojo.class) {
+                writeXyz(values, 1, "uT");
+            } else if (pojoClass == RotationEventPojo.class) {
+                writeRotation(sensorType, values);
+            } else if (pojoClass == UncalibratedEventPOJO.class) {
+                writeUncalibrated(values);
+            }
+            writeBase(sensorType, uptime - referenceUptime, uptime);
+            jsonWriter.endObject();
+        }
+
+        @Override
+        public void onSensorDescription(@NonNull final SensorDescription description) {
+            sensorDescriptions.put(description.sensorType, description);
+        }
+
+        private void writeBase(int sensorType, double timestamp, double uptime) throws IOException {
+            jsonWriter.name("sensorType").value(DeviceMotionUtil.SENSOR_TYPE_TO_DATA_TYPE.get(sensorType));
+            jsonWriter.name("timestamp").value(timestamp);
+            jsonWriter.name("uptime").value(uptime);
+            jsonWriter.name("eventAccuracy").value(0);
+        }
+
+        private void writeRotation(int sensorType, float[] values) throws IOException {
+            String sensorAndroidType = null;
+            String referenceCoordinate = null;
+            if (Sensor.TYPE_ROTATION_VECTOR == sensorType) {
+                sensorAndroidType = "rotationVector";
+                referenceCoordinate = "East-Up-North";
+            } else if (Sensor.TYPE_GAME_ROTATION_VECTOR == sensorType) {
+                sensorAndroidType = "gameRotationVector";
+                referenceCoordinate = "zUp";
+            } else if (Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR == sensorType) {
+                sensorAndroidType = "geomagneticRotationVector";
+                referenceCoordinate = "East-Up-North";
+            }
+
+            jsonWriter.name("referenceCoordinate").value(referenceCoordinate);
+            jsonWriter.name("sensorAndroidType").value(sensorAndroidType);
+            jsonWriter.name("x").value(values[0]);
+            jsonWriter.name("y").value(values[1]);
+            jsonWriter.name("z").value(values[2]);
+            jsonWriter.name("w").value(values[3]);
+            jsonWriter.name("estimatedAccuracy").value(values.length > 4 ? values[4] : 0);
+        }
+
+        private void writeSensor(SensorDescription description) throws IOException {
+            // field names match Gson's reflective serialization of android.hardware.Sensor
+            jsonWriter.beginObject();
+            jsonWriter.name("mName").value(description.name);
+            jsonWriter.name("mVendor").value(description.vendor);
+            jsonWriter.name("mVersion").value(description.version);
+            jsonWriter.name("mType").value(description.sensorType);
+            jsonWriter.name("mMaxRange").value(description.maximumRange);
+            jsonWriter.name("mResolution").value(description.resolution);
+            jsonWriter.name("mPower").value(description.power);
+            jsonWriter.name("mMinDelay").value(description.minDelay);
+            jsonWriter.endObject();
+        }
+
+        private void writeUncalibrated(float[] values) throws IOException {
+            jsonWriter.name("xUncalibrated").value(values[0]);
+            jsonWriter.name("xBias").value(values[3]);
+            jsonWriter.name("yUncalibrated").value(values[1]);
+            jsonWriter.name("yBias").value(values[4]);
+            jsonWriter.name("zUncalibrated").value(values[2]);
+            jsonWriter.name("zBias").value(values[5]);
+        }
+
+        private void writeXyz(float[] values, float divisor, String unit) throws IOException {
+            jsonWriter.name("x").value(values[0] / divisor);
+            jsonWriter.name("y").value(values[1] / divisor);
+            jsonWriter.name("z").value(values[2] / divisor);
+            jsonWriter.name("unit").value(unit);
+        }
+    }
+}
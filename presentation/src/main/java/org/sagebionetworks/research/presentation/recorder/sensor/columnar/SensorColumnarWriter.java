@@ -0,0 +1,252 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.columnar;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import androidx.annotation.NonNull;
+
+import org.sagebionetworks.research.presentation.recorder.RecorderPauseMarker;
+import org.threeten.bp.Instant;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes sensor samples in the columnar format described by {@link SensorColumnarFormat}. Samples are buffered in
+ * per-sensor column blocks which are written out when they fill up, when a timestamp delta no longer fits in an int,
+ * or when the writer is flushed or closed.
+ * <p>
+ * This class is not thread safe, all calls are expected to come from the recorder's writer thread.
+ */
+public class SensorColumnarWriter implements Closeable {
+    private static class ColumnBlock {
+        final int sensorType;
+
+        final int valueCount;
+
+        final int[] timestampDeltas;
+
+        final float[][] columns;
+
+        int size;
+
+        long firstTimestampNanos;
+
+        long lastTimestampNanos;
+
+        ColumnBlock(int sensorType, int valueCount, int capacity) {
+            this.sensorType = sensorType;
+            this.valueCount = valueCount;
+            this.timestampDeltas = new int[capacity];
+            this.columns = new float[valueCount][capacity];
+        }
+
+        boolean canAppend(long timestampNanos) {
+            if (size == 0) {
+                return true;
+            }
+            long delta = timestampNanos - lastTimestampNanos;
+            return size < timestampDeltas.length && delta >= Integer.MIN_VALUE && delta <= Integer.MAX_VALUE;
+        }
+
+        void append(long timestampNanos, float[] values) {
+            if (size == 0) {
+                firstTimestampNanos = timestampNanos;
+                timestampDeltas[0] = 0;
+            } else {
+                timestampDeltas[size] = (int) (timestampNanos - lastTimestampNanos);
+            }
+            lastTimestampNanos = timestampNanos;
+
+            int copied = Math.min(valueCount, values.length);
+            for (int i = 0; i < copied; i++) {
+                columns[i][size] = values[i];
+            }
+            for (int i = copied; i < valueCount; i++) {
+                columns[i][size] = Float.NaN;
+            }
+            size++;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeByte(SensorColumnarFormat.BLOCK_COLUMNS);
+            out.writeInt(sensorType);
+            out.writeInt(valueCount);
+            out.writeInt(size);
+            out.writeLong(firstTimestampNanos);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(timestampDeltas[i]);
+            }
+            for (float[] column : columns) {
+                for (int i = 0; i < size; i++) {
+                    out.writeFloat(column[i]);
+                }
+            }
+            size = 0;
+        }
+    }
+
+    private final int blockCapacity;
+
+    private final Map<Integer, ColumnBlock> columnBlocks = new HashMap<>();
+
+    private final DataOutputStream outputStream;
+
+    private boolean hasReference;
+
+    public SensorColumnarWriter(@NonNull OutputStream outputStream) throws IOException {
+        this(outputStream, SensorColumnarFormat.DEFAULT_BLOCK_CAPACITY);
+    }
+
+    public SensorColumnarWriter(@NonNull OutputStream outputStream, int blockCapacity) throws IOException {
+        checkNotNull(outputStream);
+        checkArgument(blockCapacity > 0, "blockCapacity must be positive");
+
+        this.blockCapacity = blockCapacity;
+        this.outputStream = new DataOutputStream(outputStream);
+        this.outputStream.writeInt(SensorColumnarFormat.MAGIC);
+        this.outputStream.writeShort(SensorColumnarFormat.VERSION);
+    }
+
+    /**
+     * Appends a sample to the column block for its sensor type. The sensor must have been described with
+     * {@link #writeSensorDescription(SensorDescription)} first.
+     */
+    public void append(int sensorType, long timestampNanos, @NonNull float[] values) throws IOException {
+        ColumnBlock columnBlock = columnBlocks.get(sensorType);
+        checkState(columnBlock != null, "No description written for sensor type %s", sensorType);
+
+        if (!columnBlock.canAppend(timestampNanos)) {
+            columnBlock.writeTo(outputStream);
+        }
+        columnBlock.append(timestampNanos, values);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Writes out all partially filled column blocks.
+     */
+    public void flush() throws IOException {
+        for (ColumnBlock columnBlock : columnBlocks.values()) {
+            if (columnBlock.size > 0) {
+                columnBlock.writeTo(outputStream);
+            }
+        }
+        outputStream.flush();
+    }
+
+    public boolean hasReference() {
+        return hasReference;
+    }
+
+    public boolean hasSensorDescription(int sensorType) {
+        return columnBlocks.containsKey(sensorType);
+    }
+
+    /**
+     * Records a pause or resume of the recorder. The samples appended before it are written out first, so that the
+     * marker falls between them and the samples appended after it.
+     */
+    public void writePauseMarker(@NonNull RecorderPauseMarker marker) throws IOException {
+        checkNotNull(marker);
+        for (ColumnBlock columnBlock : columnBlocks.values()) {
+            if (columnBlock.size > 0) {
+                columnBlock.writeTo(outputStream);
+            }
+        }
+        outputStream.writeByte(SensorColumnarFormat.BLOCK_PAUSE_MARKER);
+        outputStream.writeBoolean(marker.isPause());
+        outputStream.writeLong(marker.getUptimeNanos());
+        outputStream.writeLong(marker.timestampDate.getEpochSecond());
+        outputStream.writeInt(marker.timestampDate.getNano());
+    }
+
+    /**
+     * Records the uptime reference for the recording. This must be called once, after the description of the first
+     * event's sensor has been written.
+     *
+     * @param sensorType
+     *         type of the sensor which produced the first event
+     * @param timestampNanos
+     *         uptime of the first event, in nanoseconds
+     * @param uptimeZero
+     *         instant of system uptime zero
+     */
+    public void writeReference(int sensorType, long timestampNanos, @NonNull Instant uptimeZero)
+            throws IOException {
+        checkState(!hasReference, "Reference has already been written");
+        checkState(hasSensorDescription(sensorType), "No description written for sensor type %s", sensorType);
+
+        outputStream.writeByte(SensorColumnarFormat.BLOCK_REFERENCE);
+        outputStream.writeInt(sensorType);
+        outputStream.writeLong(timestampNanos);
+        outputStream.writeLong(uptimeZero.getEpochSecond());
+        outputStream.writeInt(uptimeZero.getNano());
+        hasReference = true;
+    }
+
+    public void writeSensorDescription(@NonNull SensorDescription description) throws IOException {
+        checkNotNull(description);
+        checkState(!hasSensorDescription(description.sensorType), "Sensor type %s has already been described",
+                description.sensorType);
+
+        outputStream.writeByte(SensorColumnarFormat.BLOCK_SENSOR);
+        outputStream.writeInt(description.sensorType);
+        outputStream.writeInt(description.valueCount);
+        outputStream.writeUTF(description.name);
+        outputStream.writeUTF(description.vendor);
+        outputStream.writeInt(description.version);
+        outputStream.writeFloat(description.maximumRange);
+        outputStream.writeFloat(description.resolution);
+        outputStream.writeFloat(description.power);
+        outputStream.writeInt(description.minDelay);
+
+        columnBlocks.put(description.sensorType,
+                new ColumnBlock(description.sensorType, description.valueCount, blockCapacity));
+    }
+}
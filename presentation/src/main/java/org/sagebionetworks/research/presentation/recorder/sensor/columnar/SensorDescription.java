@@ -0,0 +1,86 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.columnar;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import android.hardware.Sensor;
+import androidx.annotation.NonNull;
+
+import com.google.common.base.Strings;
+
+/**
+ * The subset of android.hardware.Sensor that the columnar format records about each sensor.
+ */
+public final class SensorDescription {
+    public final int sensorType;
+
+    public final int valueCount;
+
+    @NonNull
+    public final String name;
+
+    @NonNull
+    public final String vendor;
+
+    public final int version;
+
+    public final float maximumRange;
+
+    public final float resolution;
+
+    public final float power;
+
+    public final int minDelay;
+
+    @NonNull
+    public static SensorDescription fromSensor(@NonNull Sensor sensor, int valueCount) {
+        checkNotNull(sensor);
+        return new SensorDescription(sensor.getType(), valueCount, Strings.nullToEmpty(sensor.getName()),
+                Strings.nullToEmpty(sensor.getVendor()), sensor.getVersion(), sensor.getMaximumRange(),
+                sensor.getResolution(), sensor.getPower(), sensor.getMinDelay());
+    }
+
+    public SensorDescription(int sensorType, int valueCount, @NonNull String name, @NonNull String vendor,
+            int version, float maximumRange, float resolution, float power, int minDelay) {
+        this.sensorType = sensorType;
+        this.valueCount = valueCount;
+        this.name = checkNotNull(name);
+        this.vendor = checkNotNull(vendor);
+        this.version = version;
+        this.maximumRange = maximumRange;
+        this.resolution = resolution;
+        this.power = power;
+        this.minDelay = minDelay;
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.feature;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import android.hardware.Sensor;
+import androidx.annotation.NonNull;
+
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.Flowable;
+
+/**
+ * Computes features of each sensor's samples over consecutive windows while they are recorded, so a recording can
+ * be summarized without keeping its samples. Each window is summarized by a {@link MotionFeatureSummary} with the
+ * mean, variance and RMS of each axis, the RMS jerk and step count of acceleration, and the power of the vector's
+ * magnitude within a frequency band, by default the 4 to 6 Hz band of rest tremor.
+ * <p>
+ * Memory use does not depend on the number of samples: statistics are updated per sample with Welford's method,
+ * and the band power is measured with a discrete Fourier transform that only evaluates the frequencies within the
+ * band, spaced by the inverse of the window length, summing each sample into them at its own timestamp.
+ * <p>
+ * An extractor is not thread safe, samples must be added serially, e.g. from a merged Flowable.
+ */
+public class MotionFeatureExtractor {
+    public static final long DEFAULT_WINDOW_NANOS = 10_000_000_000L;
+
+    public static final double TREMOR_BAND_LOW_HZ = 4;
+
+    public static final double TREMOR_BAND_HIGH_HZ = 6;
+
+    private static final double NANOS_TO_SECONDS = 1e-9;
+
+    // accelerometer magnitudes in g, a step is counted on rising above the peak after falling below the rest level
+    private static final double STEP_PEAK_G = 1.15;
+
+    private static final double STEP_REST_G = 1.05;
+
+    private static final long STEP_MIN_INTERVAL_NANOS = 250_000_000L;
+
+    private final double bandHighHz;
+
+    private final double bandLowHz;
+
+    // the frequencies evaluated within the band, spaced by the frequency resolution of a window
+    private final double[] bandFrequencies;
+
+    private final long windowNanos;
+
+    private final Map<Integer, Window> windows = new HashMap<>();
+
+    private boolean isStepArmed = true;
+
+    private long lastStepNanos = Long.MIN_VALUE;
+
+    /**
+     * Returns a Flowable of the window summaries of the given samples. The last, partial, window of each sensor is
+     * summarized when the samples complete.
+     *
+     * @param samples
+     *         the samples of all the sensors, delivered serially.
+     * @param windowNanos
+     *         the length of each window.
+     */
+    @NonNull
+    public static Flowable<MotionFeatureSummary> extract(@NonNull Flowable<SensorSample> samples, long windowNanos) {
+        checkNotNull(samples);
+        return Flowable.defer(() -> {
+            MotionFeatureExtractor extractor = new MotionFeatureExtractor(windowNanos);
+            return samples
+                    .concatMapIterable(sample -> extractor.add(sample.sensorType, sample.timestampNanos, sample.values))
+                    .concatWith(Flowable.defer(() -> Flowable.fromIterable(extractor.finish())));
+        });
+    }
+
+    public MotionFeatureExtractor(long windowNanos) {
+        this(windowNanos, TREMOR_BAND_LOW_HZ, TREMOR_BAND_HIGH_HZ);
+    }
+
+    public MotionFeatureExtractor(long windowNanos, double bandLowHz, double bandHighHz) {
+        checkArgument(windowNanos > 0, "windowNanos must be positive");
+        checkArgument(bandLowHz > 0 && bandHighHz >= bandLowHz, "invalid band %s to %s Hz", bandLowHz, bandHighHz);
+        this.windowNanos = windowNanos;
+        this.bandLowHz = bandLowHz;
+        this.bandHighHz = bandHighHz;
+
+        double resolutionHz = 1 / (windowNanos * NANOS_TO_SECONDS);
+        int firstBin = (int) Math.ceil(bandLowHz / resolutionHz);
+        int lastBin = (int) Math.floor(bandHighHz / resolutionHz);
+        bandFrequencies = new double[Math.max(0, lastBin - firstBin + 1)];
+        for (int i = 0; i < bandFrequencies.length; i++) {
+            bandFrequencies[i] = (firstBin + i) * resolutionHz;
+        }
+    }
+
+    /**
+     * Adds a sample and returns the summary of the window it completes, if any.
+     *
+     * @return the completed window summaries.
+     */
+    @NonNull
+    public List<MotionFeatureSummary> add(int sensorType, long timestampNanos, @NonNull float[] values) {
+        Window window = windows.get(sensorType);
+        if (window == null) {
+            window = new Window(sensorType);
+            window.reset(timestampNanos);
+            windows.put(sensorType, window);
+        } else if (window.count > 0 && timestampNanos <= window.lastNanos) {
+            // a duplicate or out of order sample
+            return Collections.emptyList();
+        }
+
+        List<MotionFeatureSummary> summaries = Collections.emptyList();
+        if (timestampNanos - window.startNanos >= windowNanos) {
+            summaries = Collections.singletonList(window.summarize());
+            window.reset(timestampNanos);
+        }
+        window.add(timestampNanos, values);
+        return summaries;
+    }
+
+    /**
+     * Summarizes the partial windows of all sensors.
+     *
+     * @return the summaries of the windows that contain samples.
+     */
+    @NonNull
+    public List<MotionFeatureSummary> finish() {
+        List<MotionFeatureSummary> summaries = new ArrayList<>();
+        for (Window window : windows.values()) {
+            if (window.count > 0) {
+                summaries.add(window.summarize());
+                window.reset(window.lastNanos);
+            }
+        }
+        return summaries;
+    }
+
+    private static boolean isAcceleration(int sensorType) {
+        return sensorType == Sensor.TYPE_ACCELEROMETER || sensorType == Sensor.TYPE_GRAVITY
+                || sensorType == Sensor.TYPE_LINEAR_ACCELERATION;
+    }
+
+    /**
+     * @return whether the given accelerometer magnitude in g completes a step.
+     */
+    private boolean detectStep(long timestampNanos, double magnitude) {
+        if (magnitude < STEP_REST_G) {
+            isStepArmed = true;
+            return false;
+        }
+        if (isStepArmed && magnitude > STEP_PEAK_G
+                && (lastStepNanos == Long.MIN_VALUE || timestampNanos - lastStepNanos >= STEP_MIN_INTERVAL_NANOS)) {
+            isStepArmed = false;
+            lastStepNanos = timestampNanos;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The running statistics of one sensor's current window.
+     */
+    private final class Window {
+        private static final int MAX_AXES = 3;
+
+        private final boolean isAcceleration;
+
+        private final String name;
+
+        private final double scale;
+
+        private final int sensorType;
+
+        private final double[] mean = new double[MAX_AXES];
+
+        private final double[] m2 = new double[MAX_AXES];
+
+        private final double[] sumSquares = new double[MAX_AXES];
+
+        private final double[] previous = new double[MAX_AXES];
+
+        private final double[] scaled = new double[MAX_AXES];
+
+        // the Fourier sums of the magnitude and of the unit signal at each band frequency, the latter removes the
+        // magnitude's mean once it is known
+        private final double[] bandCos = new double[bandFrequencies.length];
+
+        private final double[] bandSin = new double[bandFrequencies.length];
+
+        private final double[] unitCos = new double[bandFrequencies.length];
+
+        private final double[] unitSin = new double[bandFrequencies.length];
+
+        private int axes;
+
+        private int count;
+
+        private double jerkSumSquares;
+
+        private int jerkCount;
+
+        private long lastNanos;
+
+        private double magnitudeMean;
+
+        private double magnitudeM2;
+
+        private long startNanos;
+
+        private int stepCount;
+
+        Window(int sensorType) {
+            this.sensorType = sensorType;
+            this.isAcceleration = isAcceleration(sensorType);
+            this.scale = isAcceleration ? 1 / DeviceMotionUtil.GRAVITY_SI_CONVERSION : 1;
+            String name = DeviceMotionUtil.SENSOR_TYPE_TO_DATA_TYPE.get(sensorType);
+            this.name = name != null ? name : "sensor" + sensorType;
+        }
+
+        void add(long timestampNanos, @NonNull float[] values) {
+            axes = Math.min(MAX_AXES, values.length);
+            double magnitudeSquared = 0;
+            for (int i = 0; i < axes; i++) {
+                scaled[i] = values[i] * scale;
+                magnitudeSquared += scaled[i] * scaled[i];
+            }
+            double magnitude = Math.sqrt(magnitudeSquared);
+
+            count++;
+            for (int i = 0; i < axes; i++) {
+                double delta = scaled[i] - mean[i];
+                mean[i] += delta / count;
+                m2[i] += delta * (scaled[i] - mean[i]);
+                sumSquares[i] += scaled[i] * scaled[i];
+            }
+            double magnitudeDelta = magnitude - magnitudeMean;
+            magnitudeMean += magnitudeDelta / count;
+            magnitudeM2 += magnitudeDelta * (magnitude - magnitudeMean);
+
+            if (count > 1 && timestampNanos > lastNanos) {
+                double dt = (timestampNanos - lastNanos) * NANOS_TO_SECONDS;
+                double changeSquared = 0;
+                for (int i = 0; i < axes; i++) {
+                    double change = scaled[i] - previous[i];
+                    changeSquared += change * change;
+                }
+                jerkSumSquares += changeSquared / (dt * dt);
+                jerkCount++;
+            }
+            System.arraycopy(scaled, 0, previous, 0, axes);
+
+            double t = (timestampNanos - startNanos) * NANOS_TO_SECONDS;
+            for (int k = 0; k < bandFrequencies.length; k++) {
+                double phase = 2 * Math.PI * bandFrequencies[k] * t;
+                double cos = Math.cos(phase);
+                double sin = Math.sin(phase);
+                bandCos[k] += magnitude * cos;
+                bandSin[k] += magnitude * sin;
+                unitCos[k] += cos;
+                unitSin[k] += sin;
+            }
+
+            if (sensorType == Sensor.TYPE_ACCELEROMETER && detectStep(timestampNanos, magnitude)) {
+                stepCount++;
+            }
+            lastNanos = timestampNanos;
+        }
+
+        void reset(long startNanos) {
+            this.startNanos = startNanos;
+            count = 0;
+            jerkSumSquares = 0;
+            jerkCount = 0;
+            magnitudeMean = 0;
+            magnitudeM2 = 0;
+            stepCount = 0;
+            for (int i = 0; i < MAX_AXES; i++) {
+                mean[i] = 0;
+                m2[i] = 0;
+                sumSquares[i] = 0;
+            }
+            for (int k = 0; k < bandFrequencies.length; k++) {
+                bandCos[k] = 0;
+                bandSin[k] = 0;
+                unitCos[k] = 0;
+                unitSin[k] = 0;
+            }
+        }
+
+        @NonNull
+        MotionFeatureSummary summarize() {
+            double[] windowMean = new double[axes];
+            double[] variance = new double[axes];
+            double[] rms = new double[axes];
+            for (int i = 0; i < axes; i++) {
+                windowMean[i] = mean[i];
+                variance[i] = m2[i] / count;
+                rms[i] = Math.sqrt(sumSquares[i] / count);
+            }
+
+            // by Parseval's theorem, the one sided power at each frequency is 2|X|^2 / N^2
+            double bandPower = 0;
+            for (int k = 0; k < bandFrequencies.length; k++) {
+                double re = bandCos[k] - magnitudeMean * unitCos[k];
+                double im = bandSin[k] - magnitudeMean * unitSin[k];
+                bandPower += 2 * (re * re + im * im) / ((double) count * count);
+            }
+
+            return new MotionFeatureSummary(name, startNanos * NANOS_TO_SECONDS, lastNanos * NANOS_TO_SECONDS,
+                    count, windowMean, variance, rms,
+                    isAcceleration && jerkCount > 0 ? Math.sqrt(jerkSumSquares / jerkCount) : null,
+                    sensorType == Sensor.TYPE_ACCELEROMETER ? stepCount : null,
+                    bandLowHz, bandHighHz, bandPower, magnitudeM2 / count);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.feature;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * The features of one sensor over one window of a recording, as computed by a {@link MotionFeatureExtractor}.
+ * Values are in the units of the per-sensor JSON format, so acceleration is in g. Per axis values are ordered x, y,
+ * z. This class is serialized as is, its field names are part of the summary file format.
+ */
+public final class MotionFeatureSummary {
+    // the sensorType of the per-sensor JSON format, e.g. acceleration
+    @NonNull
+    public final String sensorType;
+
+    // uptime in seconds of the window's first and last samples
+    public final double startUptime;
+
+    public final double endUptime;
+
+    public final int sampleCount;
+
+    @NonNull
+    public final double[] mean;
+
+    @NonNull
+    public final double[] variance;
+
+    @NonNull
+    public final double[] rms;
+
+    // root mean square of the rate of change of the vector, in units per second. Only set for acceleration, where
+    // it is the jerk
+    @Nullable
+    public final Double jerkRms;
+
+    // steps detected in the window. Only set for the accelerometer
+    @Nullable
+    public final Integer stepCount;
+
+    // the band power is measured on the magnitude of the vector, with its mean removed
+    public final double bandLowHz;
+
+    public final double bandHighHz;
+
+    // mean square of the magnitude's components within the band
+    public final double bandPower;
+
+    // mean square of the magnitude's components at all frequencies, its variance
+    public final double totalPower;
+
+    MotionFeatureSummary(@NonNull String sensorType, double startUptime, double endUptime, int sampleCount,
+            @NonNull double[] mean, @NonNull double[] variance, @NonNull double[] rms, @Nullable Double jerkRms,
+            @Nullable Integer stepCount, double bandLowHz, double bandHighHz, double bandPower, double totalPower) {
+        this.sensorType = sensorType;
+        this.startUptime = startUptime;
+        this.endUptime = endUptime;
+        this.sampleCount = sampleCount;
+        this.mean = mean;
+        this.variance = variance;
+        this.rms = rms;
+        this.jerkRms = jerkRms;
+        this.stepCount = stepCount;
+        this.bandLowHz = bandLowHz;
+        this.bandHighHz = bandHighHz;
+        this.bandPower = bandPower;
+        this.totalPower = totalPower;
+    }
+
+    @Override
+    public String toString() {
+        return "MotionFeatureSummary{" +
+                "sensorType='" + sensorType + '\'' +
+                ", startUptime=" + startUptime +
+                ", endUptime=" + endUptime +
+                ", sampleCount=" + sampleCount +
+                ", mean=" + Arrays.toString(mean) +
+                ", variance=" + Arrays.toString(variance) +
+                ", rms=" + Arrays.toString(rms) +
+                ", jerkRms=" + jerkRms +
+                ", stepCount=" + stepCount +
+                ", bandPower=" + bandPower +
+                ", totalPower=" + totalPower +
+                '}';
+    }
+}
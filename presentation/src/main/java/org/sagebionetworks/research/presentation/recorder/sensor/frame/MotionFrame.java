@@ -0,0 +1,89 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.frame;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * The values of several sensors at a single point in time, as produced by a {@link MotionFrameAligner}. Each
+ * sensor's values have the same layout as the SensorEvent values of that sensor type.
+ */
+public final class MotionFrame {
+    // nanoseconds since the first frame of the recording
+    public final long elapsedNanos;
+
+    // nanoseconds of uptime, on the same clock as SensorEvent.timestamp
+    public final long uptimeNanos;
+
+    // shared between all frames of a recording, must not be modified
+    @NonNull
+    public final int[] sensorTypes;
+
+    // values[i] belongs to sensorTypes[i] and is null if that sensor has not reported yet, must not be modified
+    @NonNull
+    public final float[][] values;
+
+    MotionFrame(long uptimeNanos, long elapsedNanos, @NonNull int[] sensorTypes, @NonNull float[][] values) {
+        this.uptimeNanos = uptimeNanos;
+        this.elapsedNanos = elapsedNanos;
+        this.sensorTypes = sensorTypes;
+        this.values = values;
+    }
+
+    /**
+     * @return the values of the given sensor type in this frame, or null if the sensor is not part of the frame or
+     *         has not reported yet.
+     */
+    @Nullable
+    public float[] getValues(int sensorType) {
+        for (int i = 0; i < sensorTypes.length; i++) {
+            if (sensorTypes[i] == sensorType) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "MotionFrame{" +
+                "uptimeNanos=" + uptimeNanos +
+                ", elapsedNanos=" + elapsedNanos +
+                ", sensorTypes=" + Arrays.toString(sensorTypes) +
+                ", values=" + Arrays.deepToString(values) +
+                '}';
+    }
+}
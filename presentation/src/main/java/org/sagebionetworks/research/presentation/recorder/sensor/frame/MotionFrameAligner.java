@@ -0,0 +1,358 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.frame;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import android.hardware.Sensor;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import io.reactivex.Flowable;
+
+/**
+ * Resamples the streams of several sensors onto a common clock, producing one {@link MotionFrame} per tick with the
+ * values of every sensor at that tick. Values between two samples are linearly interpolated, except for rotation
+ * vectors, whose quaternions are spherically interpolated.
+ * <p>
+ * A tick is produced once every sensor has reported a sample at or after it. Sensors deliver their samples
+ * independently, so a sensor may lag behind the others; once the newest sample of any sensor is more than the max
+ * skew past a tick, the tick is produced anyway and lagging sensors hold their last value. The max skew must
+ * therefore exceed the longest time a sensor's samples are batched before being delivered.
+ * <p>
+ * An aligner is not thread safe, samples must be added serially, e.g. from a merged Flowable.
+ */
+public class MotionFrameAligner {
+    /**
+     * The max skew used when no sensor batches its samples.
+     */
+    public static final long DEFAULT_MAX_SKEW_NANOS = 250_000_000L;
+
+    private final long maxSkewNanos;
+
+    private final long periodNanos;
+
+    private final ArrayDeque<Sample>[] samples;
+
+    private final int[] sensorTypes;
+
+    private long firstTickNanos;
+
+    private boolean hasStarted;
+
+    private long newestTimestampNanos = Long.MIN_VALUE;
+
+    private long nextTickNanos;
+
+    private static final class Sample {
+        final long timestampNanos;
+
+        final float[] values;
+
+        Sample(long timestampNanos, @NonNull float[] values) {
+            this.timestampNanos = timestampNanos;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Returns a Flowable of the frames of the given samples. The remaining ticks are produced when the samples
+     * complete.
+     *
+     * @param samples
+     *         the samples of all the sensors, delivered serially.
+     * @param sensorTypes
+     *         the sensor types that make up each frame, samples of other sensor types are ignored.
+     * @param periodNanos
+     *         the time between ticks.
+     * @param maxSkewNanos
+     *         how far the newest sample may be past a tick before the tick is produced without waiting for lagging
+     *         sensors.
+     */
+    @NonNull
+    public static Flowable<MotionFrame> align(@NonNull Flowable<SensorSample> samples, @NonNull int[] sensorTypes,
+            long periodNanos, long maxSkewNanos) {
+        checkNotNull(samples);
+        return Flowable.defer(() -> {
+            MotionFrameAligner aligner = new MotionFrameAligner(sensorTypes, periodNanos, maxSkewNanos);
+            return samples
+                    .concatMapIterable(sample -> aligner.add(sample.sensorType, sample.timestampNanos, sample.values))
+                    .concatWith(Flowable.defer(() -> Flowable.fromIterable(aligner.finish())));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public MotionFrameAligner(@NonNull int[] sensorTypes, long periodNanos, long maxSkewNanos) {
+        checkNotNull(sensorTypes);
+        checkArgument(sensorTypes.length > 0, "sensorTypes must not be empty");
+        checkArgument(periodNanos > 0, "periodNanos must be positive");
+        checkArgument(maxSkewNanos >= 0, "maxSkewNanos must not be negative");
+        this.sensorTypes = sensorTypes.clone();
+        this.periodNanos = periodNanos;
+        this.maxSkewNanos = maxSkewNanos;
+        samples = new ArrayDeque[sensorTypes.length];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Adds a sample and returns the frames it completes, usually none or one.
+     *
+     * @param values
+     *         the sample's values, which are kept and must not be modified.
+     * @return the completed frames.
+     */
+    @NonNull
+    public List<MotionFrame> add(int sensorType, long timestampNanos, @NonNull float[] values) {
+        int index = indexOf(sensorType);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        ArrayDeque<Sample> sensorSamples = samples[index];
+        if (!sensorSamples.isEmpty() && timestampNanos <= sensorSamples.peekLast().timestampNanos) {
+            // a duplicate or out of order sample cannot be interpolated against
+            return Collections.emptyList();
+        }
+        sensorSamples.addLast(new Sample(timestampNanos, values));
+        newestTimestampNanos = Math.max(newestTimestampNanos, timestampNanos);
+        return drain(false);
+    }
+
+    /**
+     * Produces the frames for the remaining ticks up to the newest sample, holding the last value of sensors that
+     * have not reported that far.
+     *
+     * @return the remaining frames.
+     */
+    @NonNull
+    public List<MotionFrame> finish() {
+        return drain(true);
+    }
+
+    /**
+     * Spherically interpolates between two unit quaternions, given as x, y, z, w.
+     */
+    @VisibleForTesting
+    static void slerp(@NonNull double[] from, @NonNull double[] to, double fraction, @NonNull double[] result) {
+        double dot = from[0] * to[0] + from[1] * to[1] + from[2] * to[2] + from[3] * to[3];
+        // q and -q are the same rotation, take the shorter way around
+        double sign = 1;
+        if (dot < 0) {
+            dot = -dot;
+            sign = -1;
+        }
+        double fromWeight;
+        double toWeight;
+        if (dot > 0.9995) {
+            // nearly parallel, sin(theta) is too small to divide by
+            fromWeight = 1 - fraction;
+            toWeight = fraction;
+        } else {
+            double theta = Math.acos(dot);
+            double sinTheta = Math.sin(theta);
+            fromWeight = Math.sin((1 - fraction) * theta) / sinTheta;
+            toWeight = Math.sin(fraction * theta) / sinTheta;
+        }
+        double norm = 0;
+        for (int i = 0; i < 4; i++) {
+            result[i] = fromWeight * from[i] + sign * toWeight * to[i];
+            norm += result[i] * result[i];
+        }
+        norm = Math.sqrt(norm);
+        for (int i = 0; i < 4; i++) {
+            result[i] /= norm;
+        }
+    }
+
+    private static boolean isRotationVector(int sensorType) {
+        return sensorType == Sensor.TYPE_ROTATION_VECTOR || sensorType == Sensor.TYPE_GAME_ROTATION_VECTOR
+                || sensorType == Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR;
+    }
+
+    @NonNull
+    private static double[] toQuaternion(@NonNull float[] values) {
+        double x = values[0];
+        double y = values[1];
+        double z = values[2];
+        // the scalar component is optional, the vector is a unit quaternion with a non negative scalar
+        double w = values.length > 3 ? values[3] : Math.sqrt(Math.max(0, 1 - x * x - y * y - z * z));
+        return new double[]{x, y, z, w};
+    }
+
+    @NonNull
+    private MotionFrame createFrame(long tickNanos) {
+        float[][] frameValues = new float[sensorTypes.length][];
+        for (int i = 0; i < sensorTypes.length; i++) {
+            ArrayDeque<Sample> sensorSamples = samples[i];
+            Iterator<Sample> iterator = sensorSamples.iterator();
+            if (!iterator.hasNext()) {
+                continue;
+            }
+            Sample before = iterator.next();
+            if (before.timestampNanos >= tickNanos || !iterator.hasNext()) {
+                // nothing to interpolate against, hold the nearest value
+                frameValues[i] = before.values;
+                continue;
+            }
+            Sample after = iterator.next();
+            double fraction = (double) (tickNanos - before.timestampNanos)
+                    / (after.timestampNanos - before.timestampNanos);
+            frameValues[i] = interpolate(sensorTypes[i], before.values, after.values, fraction);
+        }
+        return new MotionFrame(tickNanos, tickNanos - firstTickNanos, sensorTypes, frameValues);
+    }
+
+    @NonNull
+    private List<MotionFrame> drain(boolean isFinishing) {
+        if (!hasStarted && !start(isFinishing)) {
+            return Collections.emptyList();
+        }
+        List<MotionFrame> frames = null;
+        while (isReady(nextTickNanos, isFinishing)) {
+            prune(nextTickNanos);
+            if (frames == null) {
+                frames = new ArrayList<>(1);
+            }
+            frames.add(createFrame(nextTickNanos));
+            nextTickNanos += periodNanos;
+        }
+        return frames == null ? Collections.emptyList() : frames;
+    }
+
+    private int indexOf(int sensorType) {
+        for (int i = 0; i < sensorTypes.length; i++) {
+            if (sensorTypes[i] == sensorType) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @NonNull
+    private float[] interpolate(int sensorType, @NonNull float[] before, @NonNull float[] after, double fraction) {
+        int length = Math.min(before.length, after.length);
+        float[] result = new float[length];
+        int first = 0;
+        if (isRotationVector(sensorType) && length >= 3) {
+            double[] quaternion = new double[4];
+            slerp(toQuaternion(before), toQuaternion(after), fraction, quaternion);
+            if (length == 3 && quaternion[3] < 0) {
+                // without a scalar component the sign of the quaternion is implied
+                for (int i = 0; i < 3; i++) {
+                    quaternion[i] = -quaternion[i];
+                }
+            }
+            first = Math.min(length, 4);
+            for (int i = 0; i < first; i++) {
+                result[i] = (float) quaternion[i];
+            }
+        }
+        // the remaining values, such as a rotation vector's accuracy, are interpolated linearly
+        for (int i = first; i < length; i++) {
+            result[i] = (float) (before[i] + (after[i] - before[i]) * fraction);
+        }
+        return result;
+    }
+
+    private boolean isReady(long tickNanos, boolean isFinishing) {
+        if (tickNanos > newestTimestampNanos) {
+            return false;
+        }
+        if (isFinishing || newestTimestampNanos - tickNanos > maxSkewNanos) {
+            return true;
+        }
+        for (ArrayDeque<Sample> sensorSamples : samples) {
+            if (sensorSamples.isEmpty() || sensorSamples.peekLast().timestampNanos < tickNanos) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops the samples that are no longer needed to interpolate the given tick or any later one.
+     */
+    private void prune(long tickNanos) {
+        for (ArrayDeque<Sample> sensorSamples : samples) {
+            while (sensorSamples.size() >= 2) {
+                Iterator<Sample> iterator = sensorSamples.iterator();
+                iterator.next();
+                if (iterator.next().timestampNanos > tickNanos) {
+                    break;
+                }
+                sensorSamples.pollFirst();
+            }
+        }
+    }
+
+    /**
+     * Picks the first tick once every sensor has reported, or once the max skew has passed without some of them.
+     */
+    private boolean start(boolean isFinishing) {
+        long earliestFirstNanos = Long.MAX_VALUE;
+        long latestFirstNanos = Long.MIN_VALUE;
+        boolean hasAllSensors = true;
+        for (ArrayDeque<Sample> sensorSamples : samples) {
+            if (sensorSamples.isEmpty()) {
+                hasAllSensors = false;
+                continue;
+            }
+            long firstNanos = sensorSamples.peekFirst().timestampNanos;
+            earliestFirstNanos = Math.min(earliestFirstNanos, firstNanos);
+            latestFirstNanos = Math.max(latestFirstNanos, firstNanos);
+        }
+        if (earliestFirstNanos == Long.MAX_VALUE) {
+            return false;
+        }
+        if (hasAllSensors) {
+            firstTickNanos = latestFirstNanos;
+        } else if (isFinishing || newestTimestampNanos - earliestFirstNanos > maxSkewNanos) {
+            firstTickNanos = earliestFirstNanos;
+        } else {
+            return false;
+        }
+        nextTickNanos = firstTickNanos;
+        hasStarted = true;
+        return true;
+    }
+}
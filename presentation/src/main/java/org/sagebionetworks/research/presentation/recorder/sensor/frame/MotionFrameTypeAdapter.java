@@ -0,0 +1,249 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.frame;
+
+import static org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.ACCURACY_KEY;
+import static org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.GRAVITY_SI_CONVERSION;
+import static org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.W_KEY;
+import static org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.X_BIAS_KEY;
+import static org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.X_KEY;
+import static org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.X_UNCALIBRATED_KEY;
+import static org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.Y_BIAS_KEY;
+import static org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.Y_KEY;
+import static org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.Y_UNCALIBRATED_KEY;
+import static org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.Z_BIAS_KEY;
+import static org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.Z_KEY;
+import static org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.Z_UNCALIBRATED_KEY;
+
+import android.hardware.Sensor;
+import androidx.annotation.NonNull;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.SensorEventPOJO;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link MotionFrame} as a single JSON object with one member per sensor, named like the sensorType of the
+ * per-sensor JSON format and holding the same fields and units, e.g.
+ * <pre>
+ * {"timestamp":0.01,"uptime":1234.56,"acceleration":{"x":0.0,"y":0.0,"z":-1.0},"rotationRate":{"x":0.1,...}}
+ * </pre>
+ * The first frame of a recording also contains the timestampDate of uptime zero. A frame that is read back only holds
+ * the sensors that had reported when it was written.
+ */
+public class MotionFrameTypeAdapter extends TypeAdapter<MotionFrame> {
+    private static final double SECONDS_TO_NANOS = 1_000_000_000d;
+
+    private static final String[] ROTATION_KEYS = {X_KEY, Y_KEY, Z_KEY, W_KEY, ACCURACY_KEY};
+
+    private static final String[] UNCALIBRATED_KEYS = {X_UNCALIBRATED_KEY, Y_UNCALIBRATED_KEY, Z_UNCALIBRATED_KEY,
+            X_BIAS_KEY, Y_BIAS_KEY, Z_BIAS_KEY};
+
+    private static final String[] VECTOR_KEYS = {X_KEY, Y_KEY, Z_KEY};
+
+    @Override
+    public MotionFrame read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        long elapsedNanos = 0;
+        long uptimeNanos = 0;
+        List<Integer> sensorTypes = new ArrayList<>();
+        List<float[]> values = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            switch (name) {
+                case "timestamp":
+                    elapsedNanos = Math.round(in.nextDouble() * SECONDS_TO_NANOS);
+                    break;
+                case "uptime":
+                    uptimeNanos = Math.round(in.nextDouble() * SECONDS_TO_NANOS);
+                    break;
+                case "timestampDate":
+                    in.skipValue();
+                    break;
+                default:
+                    int sensorType = getSensorType(name);
+                    sensorTypes.add(sensorType);
+                    values.add(readValues(in, sensorType));
+            }
+        }
+        in.endObject();
+
+        int[] frameSensorTypes = new int[sensorTypes.size()];
+        for (int i = 0; i < frameSensorTypes.length; i++) {
+            frameSensorTypes[i] = sensorTypes.get(i);
+        }
+        return new MotionFrame(uptimeNanos, elapsedNanos, frameSensorTypes,
+                values.toArray(new float[values.size()][]));
+    }
+
+    @Override
+    public void write(JsonWriter out, MotionFrame frame) throws IOException {
+        if (frame == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("timestamp").value(frame.elapsedNanos / SECONDS_TO_NANOS);
+        out.name("uptime").value(frame.uptimeNanos / SECONDS_TO_NANOS);
+        if (frame.elapsedNanos == 0) {
+            out.name("timestampDate").value(SensorEventPOJO.uptimeZero().toString());
+        }
+        for (int i = 0; i < frame.sensorTypes.length; i++) {
+            float[] values = frame.values[i];
+            if (values == null) {
+                continue;
+            }
+            int sensorType = frame.sensorTypes[i];
+            out.name(getName(sensorType));
+            writeValues(out, sensorType, values);
+        }
+        out.endObject();
+    }
+
+    @NonNull
+    private static String[] getKeys(int sensorType) {
+        switch (sensorType) {
+            case Sensor.TYPE_ROTATION_VECTOR:
+            case Sensor.TYPE_GAME_ROTATION_VECTOR:
+            case Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR:
+                return ROTATION_KEYS;
+            case Sensor.TYPE_ACCELEROMETER_UNCALIBRATED:
+            case Sensor.TYPE_GYROSCOPE_UNCALIBRATED:
+            case Sensor.TYPE_MAGNETIC_FIELD_UNCALIBRATED:
+                return UNCALIBRATED_KEYS;
+            default:
+                return VECTOR_KEYS;
+        }
+    }
+
+    @NonNull
+    private static String getName(int sensorType) {
+        // the per-sensor format calls every rotation vector attitude and tells them apart by sensorAndroidType
+        switch (sensorType) {
+            case Sensor.TYPE_GAME_ROTATION_VECTOR:
+                return "gameAttitude";
+            case Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR:
+                return "geomagneticAttitude";
+            default:
+                String name = DeviceMotionUtil.SENSOR_TYPE_TO_DATA_TYPE.get(sensorType);
+                return name != null ? name : "sensor" + sensorType;
+        }
+    }
+
+    /**
+     * @return the factor the sensor's values are multiplied by to convert them to the units of the per-sensor format.
+     */
+    private static double getScale(int sensorType) {
+        switch (sensorType) {
+            case Sensor.TYPE_ACCELEROMETER:
+            case Sensor.TYPE_GRAVITY:
+            case Sensor.TYPE_LINEAR_ACCELERATION:
+                // in units of g
+                return 1 / GRAVITY_SI_CONVERSION;
+            default:
+                return 1;
+        }
+    }
+
+    private static int getSensorType(@NonNull String name) {
+        switch (name) {
+            case "attitude":
+                return Sensor.TYPE_ROTATION_VECTOR;
+            case "gameAttitude":
+                return Sensor.TYPE_GAME_ROTATION_VECTOR;
+            case "geomagneticAttitude":
+                return Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR;
+            default:
+                for (Map.Entry<Integer, String> entry : DeviceMotionUtil.SENSOR_TYPE_TO_DATA_TYPE.entrySet()) {
+                    if (entry.getValue().equals(name)) {
+                        return entry.getKey();
+                    }
+                }
+                if (name.startsWith("sensor")) {
+                    try {
+                        return Integer.parseInt(name.substring("sensor".length()));
+                    } catch (NumberFormatException e) {
+                        // not one of our names
+                    }
+                }
+                throw new JsonParseException("Unknown sensor in motion frame: " + name);
+        }
+    }
+
+    @NonNull
+    private static float[] readValues(@NonNull JsonReader in, int sensorType) throws IOException {
+        String[] keys = getKeys(sensorType);
+        double scale = getScale(sensorType);
+        float[] values = new float[keys.length];
+        // rotation vectors may be written without their accuracy
+        int valueCount = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            int index = Arrays.asList(keys).indexOf(in.nextName());
+            if (index < 0) {
+                in.skipValue();
+                continue;
+            }
+            values[index] = (float) (in.nextDouble() / scale);
+            valueCount = Math.max(valueCount, index + 1);
+        }
+        in.endObject();
+        return valueCount == values.length ? values : Arrays.copyOf(values, valueCount);
+    }
+
+    private static void writeValues(@NonNull JsonWriter out, int sensorType, @NonNull float[] values)
+            throws IOException {
+        String[] keys = getKeys(sensorType);
+        double scale = getScale(sensorType);
+        out.beginObject();
+        for (int i = 0; i < keys.length && i < values.length; i++) {
+            out.name(keys[i]).value(values[i] * scale);
+        }
+        out.endObject();
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.json;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import android.hardware.Sensor;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.AccelerationEventPojo;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.GyroscopeEventPOJO;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.MagneticEventPojo;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.RotationEventPojo;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.SensorEventPOJO;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.UncalibratedEventPOJO;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorRecord;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes {@link SensorRecord}s and {@link SensorSample}s as JSON straight into a reusable byte buffer, without
+ * creating per-event objects.
+ * The output has the same fields as Gson's serialization of the DeviceMotionUtil POJOs. All constant text for a
+ * sensor type is encoded once, and numbers are formatted by hand: float values with the 9 significant digits needed
+ * to round trip a float, and times exactly from their nanosecond timestamps.
+ * <p>
+ * This class is not thread safe, all calls are expected to come from the recorder's writer thread.
+ */
+public class SensorRecordJsonEncoder implements Flushable {
+    /**
+     * The constant parts of a sensor type's JSON object. valuePrefixes[i] precedes value i and the suffix precedes
+     * the timestamp.
+     */
+    private static class RecordLayout {
+        final byte[][] valuePrefixes;
+
+        final int[] valueIndices;
+
+        final float divisor;
+
+        final byte[] suffix;
+
+        RecordLayout(String[] valuePrefixes, int[] valueIndices, float divisor, String suffix) {
+            this.valuePrefixes = new byte[valuePrefixes.length][];
+            for (int i = 0; i < valuePrefixes.length; i++) {
+                this.valuePrefixes[i] = valuePrefixes[i].getBytes(UTF_8);
+            }
+            this.valueIndices = valueIndices;
+            this.divisor = divisor;
+            this.suffix = suffix.getBytes(UTF_8);
+        }
+    }
+
+    public static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // large enough for any single record
+    private static final int MAX_RECORD_SIZE = 1024;
+
+    private static final int SIGNIFICANT_DIGITS = 9;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private static final double[] POWERS_OF_TEN = new double[19];
+
+    private static final byte[] UPTIME_KEY = ",\"uptime\":".getBytes(UTF_8);
+
+    private static final byte[] RECORD_END = ",\"eventAccuracy\":0}".getBytes(UTF_8);
+
+    private static final byte[] NULL = "null".getBytes(UTF_8);
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final byte[] buffer;
+
+    private final Map<Integer, RecordLayout> layouts = new HashMap<>();
+
+    private final OutputStream outputStream;
+
+    private int position;
+
+    public SensorRecordJsonEncoder(@NonNull OutputStream outputStream) {
+        this(outputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    public SensorRecordJsonEncoder(@NonNull OutputStream outputStream, int bufferSize) {
+        checkArgument(bufferSize >= MAX_RECORD_SIZE, "bufferSize must be at least %s", MAX_RECORD_SIZE);
+        this.outputStream = checkNotNull(outputStream);
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @return true if records of the given sensor type can be encoded.
+     */
+    public boolean canEncode(int sensorType) {
+        return getLayout(sensorType) != null;
+    }
+
+    /**
+     * Encodes a record as a JSON object.
+     *
+     * @param record
+     *         the record to encode, which must be of a type for which {@link #canEncode(int)} is true.
+     * @param referenceTimestampNanos
+     *         uptime of the first event in the recording, which the record's timestamp is relative to.
+     */
+    public void encode(@NonNull SensorRecord record, long referenceTimestampNanos) throws IOException {
+        encode(record.sensorType, record.timestampNanos, record.values, record.valueCount, referenceTimestampNanos);
+    }
+
+    /**
+     * Encodes a sample as a JSON object.
+     *
+     * @param sample
+     *         the sample to encode, which must be of a type for which {@link #canEncode(int)} is true.
+     * @param referenceTimestampNanos
+     *         uptime of the first event in the recording, which the sample's timestamp is relative to.
+     */
+    public void encode(@NonNull SensorSample sample, long referenceTimestampNanos) throws IOException {
+        encode(sample.sensorType, sample.timestampNanos, sample.values, sample.values.length,
+                referenceTimestampNanos);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (position > 0) {
+            outputStream.write(buffer, 0, position);
+            position = 0;
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * Writes pre-encoded text, e.g. delimiters or the output of the slow path for the first event.
+     */
+    public void write(@NonNull byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length) {
+            flush();
+            outputStream.write(bytes);
+            return;
+        }
+        ensureCapacity(bytes.length);
+        appendBytes(bytes);
+    }
+
+    @VisibleForTesting
+    void appendFloat(float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            // not representable in JSON
+            appendBytes(NULL);
+            return;
+        }
+        if (value == 0) {
+            buffer[position++] = '0';
+            buffer[position++] = '.';
+            buffer[position++] = '0';
+            return;
+        }
+        double magnitude = value;
+        if (magnitude < 0) {
+            buffer[position++] = '-';
+            magnitude = -magnitude;
+        }
+
+        int exponent = (int) Math.floor(Math.log10(magnitude));
+        int scale = SIGNIFICANT_DIGITS - 1 - exponent;
+        long digits = Math.round(scale(magnitude, scale));
+        if (digits >= (long) POWERS_OF_TEN[SIGNIFICANT_DIGITS]) {
+            // rounding carried into another digit, or log10 was off by one
+            digits = Math.round(digits / 10.0);
+            exponent++;
+        } else if (digits < (long) POWERS_OF_TEN[SIGNIFICANT_DIGITS - 1]) {
+            digits = Math.round(scale(magnitude, scale + 1));
+            exponent--;
+        }
+
+        int digitCount = SIGNIFICANT_DIGITS;
+        while (digitCount > 1 && digits % 10 == 0) {
+            digits /= 10;
+            digitCount--;
+        }
+
+        if (exponent >= -4 && exponent < SIGNIFICANT_DIGITS) {
+            int integerDigits = exponent + 1;
+            if (integerDigits <= 0) {
+                buffer[position++] = '0';
+                buffer[position++] = '.';
+                for (int i = 0; i < -integerDigits; i++) {
+                    buffer[position++] = '0';
+                }
+                appendDigits(digits, digitCount);
+            } else if (digitCount <= integerDigits) {
+                appendDigits(digits, digitCount);
+                for (int i = digitCount; i < integerDigits; i++) {
+                    buffer[position++] = '0';
+                }
+                buffer[position++] = '.';
+                buffer[position++] = '0';
+            } else {
+                long fractionScale = (long) POWERS_OF_TEN[digitCount - integerDigits];
+                appendDigits(digits / fractionScale, integerDigits);
+                buffer[position++] = '.';
+                appendDigits(digits % fractionScale, digitCount - integerDigits);
+            }
+        } else {
+            // scientific notation, as Double.toString would use
+            long fractionScale = (long) POWERS_OF_TEN[digitCount - 1];
+            appendDigits(digits / fractionScale, 1);
+            buffer[position++] = '.';
+            if (digitCount > 1) {
+                appendDigits(digits % fractionScale, digitCount - 1);
+            } else {
+                buffer[position++] = '0';
+            }
+            buffer[position++] = 'E';
+            if (exponent < 0) {
+                buffer[position++] = '-';
+                exponent = -exponent;
+            }
+            appendDigits(exponent, exponent >= 10 ? 2 : 1);
+        }
+    }
+
+    @VisibleForTesting
+    void appendNanosAsSeconds(long nanos) {
+        if (nanos < 0) {
+            buffer[position++] = '-';
+            nanos = -nanos;
+        }
+        long seconds = nanos / NANOS_PER_SECOND;
+        long fraction = nanos % NANOS_PER_SECOND;
+        appendDigits(seconds, digitCount(seconds));
+        buffer[position++] = '.';
+
+        int fractionDigits = 9;
+        while (fractionDigits > 1 && fraction % 10 == 0) {
+            fraction /= 10;
+            fractionDigits--;
+        }
+        appendDigits(fraction, fractionDigits);
+    }
+
+    @VisibleForTesting
+    int getPosition() {
+        return position;
+    }
+
+    @VisibleForTesting
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    private void encode(int sensorType, long timestampNanos, @NonNull float[] values, int valueCount,
+            long referenceTimestampNanos) throws IOException {
+        RecordLayout layout = getLayout(sensorType);
+        checkArgument(layout != null, "Unable to encode sensor type %s", sensorType);
+
+        ensureCapacity(MAX_RECORD_SIZE);
+        for (int i = 0; i < layout.valuePrefixes.length; i++) {
+            appendBytes(layout.valuePrefixes[i]);
+            int valueIndex = layout.valueIndices[i];
+            // e.g. estimatedAccuracy is not reported by every rotation vector
+            float value = valueIndex < valueCount ? values[valueIndex] : 0;
+            appendFloat(value / layout.divisor);
+        }
+        appendBytes(layout.suffix);
+        appendNanosAsSeconds(timestampNanos - referenceTimestampNanos);
+        appendBytes(UPTIME_KEY);
+        appendNanosAsSeconds(timestampNanos);
+        appendBytes(RECORD_END);
+    }
+
+    private void appendBytes(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    // writes exactly count digits, zero padded
+    private void appendDigits(long value, int count) {
+        for (int i = position + count - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += count;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length > buffer.length) {
+            outputStream.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    @Nullable
+    private RecordLayout getLayout(int sensorType) {
+        RecordLayout layout = layouts.get(sensorType);
+        if (layout == null && !layouts.containsKey(sensorType)) {
+            layout = createLayout(sensorType);
+            layouts.put(sensorType, layout);
+        }
+        return layout;
+    }
+
+    private static int digitCount(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    private static double powerOfTen(int exponent) {
+        return exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[exponent] : Math.pow(10, exponent);
+    }
+
+    // multiplies by 10^scale
+    private static double scale(double value, int scale) {
+        return scale >= 0 ? value * powerOfTen(scale) : value / powerOfTen(-scale);
+    }
+
+    @Nullable
+    private static RecordLayout createLayout(int sensorType) {
+        Class<? extends SensorEventPOJO> pojoClass = DeviceMotionUtil.SENSOR_TYPE_TO_EVENT_POJO.get(sensorType);
+        if (pojoClass == null) {
+            return null;
+        }
+
+        String dataType = DeviceMotionUtil.SENSOR_TYPE_TO_DATA_TYPE.get(sensorType);
+        // Gson omits the null sensorType of unmapped sensors
+        String suffix = (dataType == null ? "" : ",\"sensorType\":\"" + dataType + "\"") + ",\"timestamp\":";
+
+        if (pojoClass == AccelerationEventPojo.class) {
+            return xyzLayout(DeviceMotionUtil.GRAVITY_SI_CONVERSION, "g", suffix);
+        } else if (pojoClass == GyroscopeEventPOJO.class) {
+            return xyzLayout(1, "rad/s", suffix);
+        } else if (pojoClass == MagneticEventPojo.class) {
+            return xyzLayout(1, "uT", suffix);
+        } else if (pojoClass == RotationEventPojo.class) {
+            String rotationPrefix;
+            if (Sensor.TYPE_ROTATION_VECTOR == sensorType) {
+                rotationPrefix = "{\"referenceCoordinate\":\"East-Up-North\",\"sensorAndroidType\":\"rotationVector\",";
+            } else if (Sensor.TYPE_GAME_ROTATION_VECTOR == sensorType) {
+                rotationPrefix = "{\"referenceCoordinate\":\"zUp\",\"sensorAndroidType\":\"gameRotationVector\",";
+            } else if (Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR == sensorType) {
+                rotationPrefix = "{\"referenceCoordinate\":\"East-Up-North\","
+                        + "\"sensorAndroidType\":\"geomagneticRotationVector\",";
+            } else {
+                rotationPrefix = "{";
+            }
+            return new RecordLayout(
+                    new String[]{rotationPrefix + "\"x\":", ",\"y\":", ",\"z\":", ",\"w\":",
+                            ",\"estimatedAccuracy\":"},
+                    new int[]{0, 1, 2, 3, 4}, 1, suffix);
+        } else if (pojoClass == UncalibratedEventPOJO.class) {
+            return new RecordLayout(
+                    new String[]{"{\"xUncalibrated\":", ",\"xBias\":", ",\"yUncalibrated\":", ",\"yBias\":",
+                            ",\"zUncalibrated\":", ",\"zBias\":"},
+                    new int[]{0, 3, 1, 4, 2, 5}, 1, suffix);
+        }
+        return null;
+    }
+
+    private static RecordLayout xyzLayout(float divisor, String unit, String suffix) {
+        return new RecordLayout(new String[]{"{\"x\":", ",\"y\":", ",\"z\":"}, new int[]{0, 1, 2}, divisor,
+                ",\"unit\":\"" + unit + "\"" + suffix);
+    }
+}
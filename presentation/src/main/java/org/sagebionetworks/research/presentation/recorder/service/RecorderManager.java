@@ -47,27 +47,36 @@ import com.google.common.collect.Sets;
 
 import org.sagebionetworks.research.domain.async.AsyncActionConfiguration;
 import org.sagebionetworks.research.domain.async.RecorderConfiguration;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
 import org.sagebionetworks.research.domain.result.interfaces.Result;
+import org.sagebionetworks.research.domain.result.interfaces.TaskResult;
 import org.sagebionetworks.research.domain.step.interfaces.Step;
 import org.sagebionetworks.research.domain.task.Task;
 import org.sagebionetworks.research.domain.task.navigation.NavDirection;
+import org.sagebionetworks.research.domain.task.navigation.StepNavigator;
 import org.sagebionetworks.research.presentation.inject.RecorderConfigPresentationFactory;
 import org.sagebionetworks.research.presentation.perform_task.TaskResultManager;
 import org.sagebionetworks.research.presentation.perform_task.TaskResultManager.TaskResultManagerConnection;
 import org.sagebionetworks.research.presentation.recorder.Recorder;
 import org.sagebionetworks.research.presentation.recorder.RecorderConfigPresentation;
 import org.sagebionetworks.research.presentation.recorder.RestartableRecorderConfiguration;
+import org.sagebionetworks.research.presentation.recorder.SegmentedRecorder;
+import org.sagebionetworks.research.presentation.recorder.ShardedRecorder;
 import org.sagebionetworks.research.presentation.recorder.service.RecorderService.RecorderBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import io.reactivex.Maybe;
 import io.reactivex.Single;
+import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.CompositeDisposable;
 
 /**
@@ -75,13 +84,23 @@ import io.reactivex.disposables.CompositeDisposable;
  * <p>
  * RecorderManager creates a Task's recorders and makes the appropriate RecorderService calls to start, stop, and
  * cancel those recorders at the appropriate times.
+ * <p>
+ * After each step transition the manager looks one step ahead with the StepNavigator, and pre-warms the recorders
+ * that start on that step, so that their sources are delivering by the time the step is reached. The step ahead is
+ * predicted from the result so far, so a pre-warm that the user's answers make wrong is discarded on the next
+ * transition.
  */
 public class RecorderManager implements ServiceConnection {
     private static final Logger LOGGER = LoggerFactory.getLogger(RecorderManager.class);
     private final CompositeDisposable compositeDisposable;
     private final Context context;
     private final RecorderConfigPresentationFactory recorderConfigPresentationFactory;
+    // identifiers of the recorders that were pre-warmed for the step after the current one
+    private Set<String> prewarmedRecorderIds;
+
     private final Set<RecorderConfigPresentation> recorderConfigs;
+
+    private final StepNavigator stepNavigator;
     private final Task task;
     private final Single<TaskResultManagerConnection> taskResultManagerConnectionSingle;
     private final UUID taskRunUUID;
@@ -98,8 +117,11 @@ public class RecorderManager implements ServiceConnection {
     public RecorderManager(@NonNull Task task, @NonNull String taskIdentifier, @NonNull UUID taskRunUUID,
                            Context context,
                            @NonNull TaskResultManager taskResultManager,
-                           RecorderConfigPresentationFactory recorderConfigPresentationFactory) {
+                           RecorderConfigPresentationFactory recorderConfigPresentationFactory,
+                           @NonNull StepNavigator stepNavigator) {
         this.task = checkNotNull(task);
+        this.stepNavigator = checkNotNull(stepNavigator);
+        this.prewarmedRecorderIds = new HashSet<>();
         this.taskRunUUID = checkNotNull(taskRunUUID);
         this.context = checkNotNull(context);
 
@@ -157,7 +179,7 @@ public class RecorderManager implements ServiceConnection {
 
     /**
      * Starts, stops, and cancels the appropriate recorders in response to the step transition from previousStep to
-     * nextStep in navDirection.
+     * nextStep in navDirection, then pre-warms the recorders that start on the step after nextStep.
      *
      * @param previousStep The step that has just been transitioned away from, null indicates that nextStep is the first step.
      * @param nextStep     The step that has just been transition to, null indicates that previousStep is the last step.
@@ -220,8 +242,19 @@ public class RecorderManager implements ServiceConnection {
 
                 if (activeRecorder != null) {
                     // Only wait for results of recorders which were started
-                    taskResultManagerConnectionSingle.blockingGet()
-                            .addAsyncActionResult(activeRecorder.getResult());
+                    TaskResultManagerConnection taskResultManagerConnection =
+                            taskResultManagerConnectionSingle.blockingGet();
+                    taskResultManagerConnection.addAsyncActionResult(activeRecorder.getResult());
+                    if (activeRecorder instanceof SegmentedRecorder) {
+                        this.addSegmentResults(taskResultManagerConnection, (SegmentedRecorder) activeRecorder,
+                                config.getIdentifier());
+                    }
+                    if (activeRecorder instanceof ShardedRecorder) {
+                        // each shard's file is uploaded along with the manifest tying them together
+                        for (Maybe<FileResult> shardResult : ((ShardedRecorder) activeRecorder).getShardResults()) {
+                            taskResultManagerConnection.addAsyncActionResult(shardResult);
+                        }
+                    }
                     this.service.startRecorder(this.taskRunUUID, config.getIdentifier());
                     LOGGER.info("Starting recorder " + config.getIdentifier());
                 } else {
@@ -249,12 +282,82 @@ public class RecorderManager implements ServiceConnection {
                     }
                 }
             }
+
+            this.updatePrewarmedRecorders(nextStep);
         } else {
             LOGGER.warn("OnStepTransition was called but RecorderService was unbound.");
             // TODO: rkolmos 06/20/2018 handle the service being unbound
         }
     }
 
+    /**
+     * Adds each segment the recorder closes while recording to the task result as it is closed, so that segments can
+     * be processed before the recording ends. The last segment is added as the recorder's result.
+     */
+    private void addSegmentResults(@NonNull TaskResultManagerConnection taskResultManagerConnection,
+                                   @NonNull SegmentedRecorder recorder, @NonNull String identifier) {
+        this.compositeDisposable.add(recorder.getSegmentResults()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(segmentResult -> {
+                            LOGGER.info("Adding segment " + segmentResult.getIdentifier() + " of recorder "
+                                    + identifier);
+                            taskResultManagerConnection.addAsyncActionResult(Maybe.just(segmentResult));
+                        },
+                        t -> LOGGER.warn("Failed to add the segments of recorder " + identifier, t)));
+    }
+
+    /**
+     * Pre-warms the recorders that start on the step after the current step, and discards the pre-warming of the
+     * recorders that were pre-warmed for a step that is no longer one transition away.
+     *
+     * @param currentStep
+     *         the step that has just been transitioned to, null if the task is finished.
+     */
+    private void updatePrewarmedRecorders(@Nullable Step currentStep) {
+        // a recorder that was stopped is no longer active, and is re-created rather than pre-warmed if it restarts
+        Map<String, Recorder<? extends Result>> activeRecorders = this.getActiveRecorders();
+        List<RecorderConfigPresentation> unstartedConfigs = new ArrayList<>();
+        for (RecorderConfigPresentation config : this.recorderConfigs) {
+            Recorder<? extends Result> recorder = activeRecorders.get(config.getIdentifier());
+            if (config.getStartStepIdentifier() != null && recorder != null && !recorder.isRecording()) {
+                unstartedConfigs.add(config);
+            }
+        }
+        if (unstartedConfigs.isEmpty() && this.prewarmedRecorderIds.isEmpty()) {
+            // every recorder has started, so there is no need to look ahead on this or any later transition
+            return;
+        }
+
+        Set<String> shouldPrewarm = new HashSet<>();
+        if (currentStep != null && !unstartedConfigs.isEmpty()) {
+            TaskResult taskResult = taskResultManagerConnectionSingle.blockingGet().getLatestTaskResult();
+            Step aheadStep = this.stepNavigator.getNextStep(currentStep, taskResult).getStep();
+            if (aheadStep != null) {
+                for (RecorderConfigPresentation config : unstartedConfigs) {
+                    if (aheadStep.getIdentifier().equals(config.getStartStepIdentifier())) {
+                        shouldPrewarm.add(config.getIdentifier());
+                    }
+                }
+            }
+        }
+
+        for (String identifier : Sets.difference(this.prewarmedRecorderIds, shouldPrewarm)) {
+            Recorder<? extends Result> recorder = activeRecorders.get(identifier);
+            if (recorder != null && !recorder.isRecording()) {
+                LOGGER.info("Discarding pre-warmed recorder " + identifier);
+                recorder.discardPrewarm();
+            }
+        }
+        for (String identifier : shouldPrewarm) {
+            Recorder<? extends Result> recorder = activeRecorders.get(identifier);
+            if (recorder != null && !recorder.isRecording()) {
+                LOGGER.info("Pre-warming recorder " + identifier);
+                recorder.prewarm();
+            }
+        }
+        this.prewarmedRecorderIds = shouldPrewarm;
+    }
+
     /**
      * Validate the state of the recorder so we know it is ok to start it without having any restart complications.
      * @param recorder we will be starting
@@ -268,27 +371,21 @@ public class RecorderManager implements ServiceConnection {
             // A null active recorder here means that the recorder has already run and been completed
             if (config instanceof RestartableRecorderConfiguration) {
                 RestartableRecorderConfiguration restartableConfig = (RestartableRecorderConfiguration)config;
-                if (!restartableConfig.getShouldDeletePrevious()) {
-                    // To support Recorder restart with appending data functionality,
-                    // We will need to somehow pass in a flag to ReactiveFileResultRecorder to
-                    // signal it to open the outputFile for appending.
-                    throw new IllegalStateException("RecorderManager cannot restart this recorder " +
-                            "because getShouldDeletePrevious returns false and recorder appending is not supported yet.");
-                }
 
-                // At this point, we know that the dev has configured the recorder properly to restart
-                // and they are ok with the recorder file being replaced by the new one.
-                // In this case, let's re-create the recorder to allow it to restart appropriately.
+                // At this point, we know that the dev has configured the recorder properly to restart.
+                // The re-created recorder writes to the same file as the previous one. Depending on
+                // getShouldDeletePrevious it either replaces the file or appends a new segment to it.
                 try {
-                    LOGGER.info("Recreating restartable recorder " + config.getIdentifier());
+                    LOGGER.info("Recreating restartable recorder " + config.getIdentifier() + ", "
+                            + (restartableConfig.getShouldDeletePrevious() ? "replacing" : "appending to")
+                            + " its previous data file");
                     recorder = this.service.createRecorder(this.taskRunUUID, config);
                 } catch (IOException e) {
                     LOGGER.error("Encountered IOException while initializing recorder " + config.getIdentifier(), e);
                 }
             } else {
                 throw new IllegalStateException("RecorderManager cannot restart a recorder unless it\'s " +
-                        "configured as a RestartableRecorderConfiguration and specifies " +
-                        "it should delete the previous data file when restarting");
+                        "configured as a RestartableRecorderConfiguration");
             }
         }
         return recorder;
@@ -0,0 +1,201 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * An OutputStream that writes a file through memory-mapped regions instead of write calls. Writes are copied into
+ * the current region and the kernel writes the dirty pages back in the background. Whenever a region fills up, the
+ * file is grown by mapping the next region, which is twice the size of the previous one up to a limit. Each region is
+ * forced to the storage device when the stream moves past it, and closing the stream forces the last region and
+ * truncates the file to the bytes actually written.
+ * <p>
+ * Until the stream is closed the file is longer than its content, padded with zero bytes. Written data survives the
+ * process dying, as it is in the page cache, but a reader of an unclosed file must ignore the padding.
+ */
+public class MappedFileOutputStream extends OutputStream {
+    public static final int DEFAULT_INITIAL_REGION_SIZE = 256 * 1024;
+
+    public static final int DEFAULT_MAX_REGION_SIZE = 8 * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final int maxRegionSize;
+
+    private final RandomAccessFile randomAccessFile;
+
+    private MappedByteBuffer region;
+
+    private long regionStart;
+
+    private int regionCount;
+
+    private boolean isClosed;
+
+    private long closedLength;
+
+    public MappedFileOutputStream(@NonNull File outputFile) throws IOException {
+        this(outputFile, DEFAULT_INITIAL_REGION_SIZE, DEFAULT_MAX_REGION_SIZE);
+    }
+
+    /**
+     * Opens the given file, replacing its contents.
+     *
+     * @param initialRegionSize
+     *         the size of the first region, the file is preallocated to this size.
+     * @param maxRegionSize
+     *         the size regions stop doubling at.
+     */
+    public MappedFileOutputStream(@NonNull File outputFile, int initialRegionSize, int maxRegionSize)
+            throws IOException {
+        checkNotNull(outputFile);
+        checkArgument(initialRegionSize > 0, "initialRegionSize must be positive");
+        checkArgument(maxRegionSize >= initialRegionSize, "maxRegionSize must be at least initialRegionSize");
+        this.maxRegionSize = maxRegionSize;
+        randomAccessFile = new RandomAccessFile(outputFile, "rw");
+        try {
+            channel = randomAccessFile.getChannel();
+            channel.truncate(0);
+            mapRegion(0, initialRegionSize);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Forces the written bytes to the storage device, truncates the file to them and closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        closedLength = getLength();
+        isClosed = true;
+        try {
+            region.force();
+            // the mapping stays valid until it is garbage collected, it must not be written after this point
+            region = null;
+            channel.truncate(closedLength);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Does nothing, written bytes are already in the page cache and are written back by the kernel.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+    }
+
+    /**
+     * @return the number of bytes written.
+     */
+    public long getLength() {
+        return isClosed ? closedLength : regionStart + region.position();
+    }
+
+    /**
+     * @return the number of regions that have been mapped.
+     */
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkOpen();
+        if (!region.hasRemaining()) {
+            nextRegion();
+        }
+        region.put((byte) b);
+    }
+
+    @Override
+    public void write(@NonNull byte[] bytes, int offset, int length) throws IOException {
+        checkOpen();
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (length > 0) {
+            if (!region.hasRemaining()) {
+                nextRegion();
+            }
+            int count = Math.min(length, region.remaining());
+            region.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @VisibleForTesting
+    int getRegionSize() {
+        return region.capacity();
+    }
+
+    private void checkOpen() throws IOException {
+        if (isClosed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+
+    private void mapRegion(long start, int size) throws IOException {
+        // mapping past the end of the file grows it
+        region = channel.map(MapMode.READ_WRITE, start, size);
+        regionStart = start;
+        regionCount++;
+    }
+
+    private void nextRegion() throws IOException {
+        // close only forces the last region, so each region is forced once it is full
+        region.force();
+        int size = (int) Math.min((long) region.capacity() * 2, maxRegionSize);
+        mapRegion(regionStart + region.capacity(), size);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * The clock the recorders read the time since boot from, on the same timebase as the timestamps of sensor events and
+ * locations. It is SystemClock on a device, unit tests and benchmarks running on the JVM replace it, as SystemClock
+ * is not available there.
+ */
+public final class RecorderClock {
+    public interface ElapsedRealtime {
+        /**
+         * @return the nanoseconds since boot, including deep sleep.
+         */
+        long elapsedRealtimeNanos();
+    }
+
+    private static final ElapsedRealtime SYSTEM_CLOCK = SystemClock::elapsedRealtimeNanos;
+
+    private static volatile ElapsedRealtime elapsedRealtime = SYSTEM_CLOCK;
+
+    /**
+     * @return the nanoseconds since boot, like SystemClock.elapsedRealtimeNanos().
+     */
+    public static long elapsedRealtimeNanos() {
+        return elapsedRealtime.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Restores SystemClock as the recorders' clock.
+     */
+    @VisibleForTesting
+    public static void reset() {
+        elapsedRealtime = SYSTEM_CLOCK;
+    }
+
+    /**
+     * @param clock
+     *         the clock the recorders read instead of SystemClock.
+     */
+    @VisibleForTesting
+    public static void set(@NonNull ElapsedRealtime clock) {
+        elapsedRealtime = checkNotNull(clock);
+    }
+
+    private RecorderClock() {
+    }
+}
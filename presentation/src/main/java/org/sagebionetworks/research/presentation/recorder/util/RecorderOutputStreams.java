@@ -0,0 +1,136 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import androidx.annotation.NonNull;
+
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opens the output files of file recorders, compressing them on the fly if requested.
+ */
+public final class RecorderOutputStreams {
+    public static final String GZIP_FILE_EXTENSION = ".gz";
+
+    public static final String GZIP_MIME_CONTENT_TYPE = "application/gzip";
+
+    // size of the deflater's output buffer
+    private static final int GZIP_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * @return the extension to append to an output file's name, e.g. ".gz" for gzip.
+     */
+    @NonNull
+    public static String getFileExtension(@NonNull @RecorderOutputCompression String compression) {
+        return RecorderOutputCompression.GZIP.equals(compression) ? GZIP_FILE_EXTENSION : "";
+    }
+
+    /**
+     * Returns the file of a segment of a recorder's output, named after the output file with the segment number
+     * before its extensions, e.g. motion_002.json.gz for the second segment of motion.json.gz.
+     *
+     * @param outputFile
+     *         the recorder's output file.
+     * @param segmentNumber
+     *         the number of the segment, starting from 1.
+     * @return the segment's file, in the same directory as the output file.
+     */
+    @NonNull
+    public static File getSegmentFile(@NonNull File outputFile, int segmentNumber) {
+        String name = outputFile.getName();
+        int extensionStart = name.indexOf('.');
+        if (extensionStart < 0) {
+            extensionStart = name.length();
+        }
+        return new File(outputFile.getParentFile(), String.format(Locale.US, "%s_%03d%s",
+                name.substring(0, extensionStart), segmentNumber, name.substring(extensionStart)));
+    }
+
+    /**
+     * @param contentType
+     *         the content type of the uncompressed output.
+     * @return the content type to report in the recorder's FileResult.
+     */
+    @NonNull
+    public static String getMimeContentType(@NonNull String contentType,
+            @NonNull @RecorderOutputCompression String compression) {
+        return RecorderOutputCompression.GZIP.equals(compression) ? GZIP_MIME_CONTENT_TYPE : contentType;
+    }
+
+    /**
+     * Opens a stream that overwrites the given file. With gzip compression, every flush of the returned stream is a
+     * sync flush, after which everything written so far can be decompressed even if the stream is never closed.
+     */
+    @NonNull
+    public static OutputStream open(@NonNull File outputFile,
+            @NonNull @RecorderOutputCompression String compression) throws IOException {
+        return open(outputFile, compression, false);
+    }
+
+    /**
+     * Like {@link #open(File, String)}, but optionally writes the file through memory-mapped regions, see
+     * {@link MappedFileOutputStream}. The file is only trimmed to its content when the returned stream is closed.
+     *
+     * @param memoryMapped
+     *         true to write the file through memory-mapped regions, false to write it with write calls.
+     */
+    @NonNull
+    public static OutputStream open(@NonNull File outputFile,
+            @NonNull @RecorderOutputCompression String compression, boolean memoryMapped) throws IOException {
+        checkNotNull(outputFile);
+        OutputStream outputStream = memoryMapped
+                ? new MappedFileOutputStream(outputFile) : new FileOutputStream(outputFile);
+        if (RecorderOutputCompression.GZIP.equals(compression)) {
+            try {
+                return new GZIPOutputStream(outputStream, GZIP_BUFFER_SIZE, true);
+            } catch (IOException e) {
+                // the gzip header could not be written
+                outputStream.close();
+                throw e;
+            }
+        }
+        return outputStream;
+    }
+
+    private RecorderOutputStreams() {
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import org.threeten.bp.Instant;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A JSON array file that a restarted recorder continues instead of overwriting. Each run of a recorder writes one
+ * segment of the array. When a segment is finished, the array is closed and the segment's byte range and times are
+ * appended to a sidecar index next to the file, e.g. "motion.json.segments". Opening the file again removes the
+ * closing bracket so that the next segment continues the same array.
+ * <p>
+ * If the process died before a segment was finished, the file is cut back to the end of its last complete element,
+ * and the data that was kept is recorded in the index as a recovered segment without times.
+ * <p>
+ * The elements of every segment may be relative to a reference, such as the timestamp of the array's first element.
+ * The run that writes the first element records the reference in the index, see {@link #setReference(long)}, and
+ * later runs continue relative to it rather than starting a reference of their own.
+ */
+public class ResumableJsonArrayFile implements Closeable {
+    /**
+     * A contiguous run of elements in the array, written by a single run of a recorder.
+     */
+    public static final class Segment {
+        private final int index;
+
+        private final long startOffset;
+
+        private final long endOffset;
+
+        @Nullable
+        private final Instant startTime;
+
+        @Nullable
+        private final Instant endTime;
+
+        private final boolean recovered;
+
+        public Segment(int index, long startOffset, long endOffset, @Nullable Instant startTime,
+                @Nullable Instant endTime, boolean recovered) {
+            this.index = index;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.recovered = recovered;
+        }
+
+        /**
+         * @return the offset of the byte after the segment's last element, where the array was closed.
+         */
+        public long getEndOffset() {
+            return endOffset;
+        }
+
+        @Nullable
+        public Instant getEndTime() {
+            return endTime;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the offset of the segment's first byte, which is the delimiter before its first element if the
+         *         segment is not the first.
+         */
+        public long getStartOffset() {
+            return startOffset;
+        }
+
+        @Nullable
+        public Instant getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return true if the segment was kept from a run that never finished, in which case it has no times.
+         */
+        public boolean isRecovered() {
+            return recovered;
+        }
+
+        @Override
+        public String toString() {
+            return "Segment{" +
+                    "index=" + index +
+                    ", startOffset=" + startOffset +
+                    ", endOffset=" + endOffset +
+                    ", startTime=" + startTime +
+                    ", endTime=" + endTime +
+                    ", recovered=" + recovered +
+                    '}';
+        }
+    }
+
+    public static final String SEGMENT_INDEX_FILE_EXTENSION = ".segments";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte ARRAY_START = '[';
+
+    private static final byte ARRAY_END = ']';
+
+    private static final byte OBJECT_END = '}';
+
+    private static final int SCAN_BUFFER_SIZE = 4096;
+
+    private static final String KEY_INDEX = "index";
+
+    private static final String KEY_START_OFFSET = "startOffset";
+
+    private static final String KEY_END_OFFSET = "endOffset";
+
+    private static final String KEY_START_TIME = "startTime";
+
+    private static final String KEY_END_TIME = "endTime";
+
+    private static final String KEY_RECOVERED = "recovered";
+
+    private static final String KEY_REFERENCE = "reference";
+
+    private final File outputFile;
+
+    private final FileOutputStream outputStream;
+
+    private final List<Segment> previousSegments;
+
+    private final long segmentStartOffset;
+
+    private final File segmentIndexFile;
+
+    private final boolean hasElements;
+
+    private boolean isClosed;
+
+    @Nullable
+    private Long reference;
+
+    /**
+     * Opens the given file for writing the next segment of its array.
+     *
+     * @param outputFile
+     *         the file to write.
+     * @param resume
+     *         true to continue the array in the file if it has one, false to overwrite the file.
+     * @return the opened file, positioned after the last element of the array.
+     * @throws IOException
+     *         if the file could not be opened, or if it does not hold a JSON array.
+     */
+    @NonNull
+    public static ResumableJsonArrayFile open(@NonNull File outputFile, boolean resume) throws IOException {
+        checkNotNull(outputFile);
+        File segmentIndexFile = getSegmentIndexFile(outputFile);
+        if (!resume || outputFile.length() == 0) {
+            segmentIndexFile.delete();
+            FileOutputStream outputStream = new FileOutputStream(outputFile);
+            outputStream.write(ARRAY_START);
+            return new ResumableJsonArrayFile(outputFile, outputStream, segmentIndexFile,
+                    ImmutableList.<Segment>of(), 1, false, null);
+        }
+
+        List<Segment> segments = new ArrayList<>(readSegmentIndex(segmentIndexFile));
+        long committedOffset = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).getEndOffset();
+        long resumeOffset;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(outputFile, "rw")) {
+            resumeOffset = findResumeOffset(randomAccessFile, committedOffset);
+            randomAccessFile.setLength(resumeOffset);
+        }
+        if (resumeOffset > committedOffset) {
+            // left by a run that never finished, most likely because the process died
+            Segment recovered = new Segment(segments.size(), committedOffset, resumeOffset, null, null, true);
+            appendToSegmentIndex(segmentIndexFile, recovered);
+            segments.add(recovered);
+        }
+
+        boolean hasElements = resumeOffset > 1;
+        // a reference whose first element did not make it to disk is not the reference of the array
+        return new ResumableJsonArrayFile(outputFile, new FileOutputStream(outputFile, true), segmentIndexFile,
+                ImmutableList.copyOf(segments), resumeOffset, hasElements,
+                hasElements ? readReference(segmentIndexFile) : null);
+    }
+
+    @NonNull
+    public static File getSegmentIndexFile(@NonNull File outputFile) {
+        return new File(outputFile.getPath() + SEGMENT_INDEX_FILE_EXTENSION);
+    }
+
+    /**
+     * @return the segments of the file's index, or an empty list if the file has no index.
+     */
+    @NonNull
+    public static List<Segment> readSegmentIndex(@NonNull File segmentIndexFile) throws IOException {
+        ImmutableList.Builder<Segment> segments = ImmutableList.builder();
+        for (JsonObject entry : readIndexEntries(segmentIndexFile)) {
+            if (!entry.has(KEY_REFERENCE)) {
+                segments.add(parseSegment(entry));
+            }
+        }
+        return segments.build();
+    }
+
+    /**
+     * @return the reference recorded in the file's index, or null if there is none.
+     */
+    @Nullable
+    public static Long readReference(@NonNull File segmentIndexFile) throws IOException {
+        Long reference = null;
+        for (JsonObject entry : readIndexEntries(segmentIndexFile)) {
+            if (entry.has(KEY_REFERENCE)) {
+                // a later run that started the array again recorded its own reference
+                reference = entry.get(KEY_REFERENCE).getAsLong();
+            }
+        }
+        return reference;
+    }
+
+    private ResumableJsonArrayFile(@NonNull File outputFile, @NonNull FileOutputStream outputStream,
+            @NonNull File segmentIndexFile, @NonNull List<Segment> previousSegments, long segmentStartOffset,
+            boolean hasElements, @Nullable Long reference) {
+        this.outputFile = outputFile;
+        this.outputStream = outputStream;
+        this.segmentIndexFile = segmentIndexFile;
+        this.previousSegments = previousSegments;
+        this.segmentStartOffset = segmentStartOffset;
+        this.hasElements = hasElements;
+        this.reference = reference;
+    }
+
+    /**
+     * Closes the file, removing everything written since it was opened. If earlier segments were written, the
+     * array is closed after them, otherwise the file and its index are deleted.
+     */
+    public void abandon() throws IOException {
+        close();
+        if (segmentStartOffset <= 1) {
+            outputFile.delete();
+            segmentIndexFile.delete();
+            return;
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(outputFile, "rw")) {
+            randomAccessFile.setLength(segmentStartOffset);
+            randomAccessFile.seek(segmentStartOffset);
+            randomAccessFile.write(ARRAY_END);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!isClosed) {
+            isClosed = true;
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Closes the array and records the segment written since the file was opened in the index. Anything buffered
+     * on top of {@link #getOutputStream()} must be flushed first.
+     *
+     * @return the finished segment.
+     */
+    @NonNull
+    public Segment finish(@NonNull Instant startTime, @NonNull Instant endTime) throws IOException {
+        checkState(!isClosed, "File is closed");
+        long endOffset = outputStream.getChannel().position();
+        outputStream.write(ARRAY_END);
+        outputStream.flush();
+        // the index must never describe data that is not on disk
+        outputStream.getFD().sync();
+
+        Segment segment = new Segment(previousSegments.size(), segmentStartOffset, endOffset, startTime, endTime,
+                false);
+        appendToSegmentIndex(segmentIndexFile, segment);
+        return segment;
+    }
+
+    /**
+     * Records the reference the elements of this and every later segment are relative to. It is written to the
+     * index right away, so that it is kept with the first element even if this run does not finish. Only the run
+     * that writes the array's first element sets the reference.
+     */
+    public void setReference(long reference) throws IOException {
+        checkState(!isClosed, "File is closed");
+        checkState(!hasElements, "The reference is set with the array's first element");
+        StringWriter line = new StringWriter();
+        JsonWriter jsonWriter = new JsonWriter(line);
+        jsonWriter.beginObject().name(KEY_REFERENCE).value(reference).endObject();
+        jsonWriter.close();
+        appendToIndex(segmentIndexFile, line.toString());
+        this.reference = reference;
+    }
+
+    /**
+     * @return the start time of the earliest segment with a known start time, or null if there is none.
+     */
+    @Nullable
+    public Instant getFirstStartTime() {
+        for (Segment segment : previousSegments) {
+            if (segment.getStartTime() != null) {
+                return segment.getStartTime();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the reference the array's elements are relative to, or null if it has none yet.
+     */
+    @Nullable
+    public Long getReference() {
+        return reference;
+    }
+
+    /**
+     * @return the stream to write elements to, positioned after the array's last element.
+     */
+    @NonNull
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * @return the segments written before the file was opened.
+     */
+    @NonNull
+    public List<Segment> getPreviousSegments() {
+        return previousSegments;
+    }
+
+    /**
+     * @return true if the array already has elements, in which case the next element must be preceded by a
+     *         delimiter.
+     */
+    public boolean hasElements() {
+        return hasElements;
+    }
+
+    /**
+     * Finds where the next segment should start: the offset of the closing bracket if the array was closed,
+     * otherwise the offset after the last complete element, but never before the end of the last finished segment.
+     * The elements after the last finished segment are parsed forward from its end, so that the end of an element
+     * is told apart from the end of an object nested in an element that was cut short.
+     */
+    @VisibleForTesting
+    static long findResumeOffset(@NonNull RandomAccessFile file, long committedOffset) throws IOException {
+        file.seek(0);
+        if (file.length() == 0 || file.read() != ARRAY_START) {
+            throw new IOException("File does not hold a JSON array");
+        }
+
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        long resumeOffset = committedOffset;
+        // the depth of nesting within the array's elements, 0 between elements
+        int depth = 0;
+        boolean isInString = false;
+        boolean isEscaped = false;
+        // the offset after a number, true, false or null element, which is only complete once a delimiter follows
+        long literalEnd = -1;
+        file.seek(committedOffset);
+        long offset = committedOffset;
+        int length;
+        while ((length = file.read(buffer)) > 0) {
+            for (int i = 0; i < length; i++, offset++) {
+                byte b = buffer[i];
+                if (isInString) {
+                    if (isEscaped) {
+                        isEscaped = false;
+                    } else if (b == '\\') {
+                        isEscaped = true;
+                    } else if (b == '"') {
+                        isInString = false;
+                        if (depth == 0) {
+                            resumeOffset = offset + 1;
+                        }
+                    }
+                } else if (b == '"') {
+                    isInString = true;
+                } else if (b == '{' || b == ARRAY_START) {
+                    depth++;
+                } else if (b == OBJECT_END || b == ARRAY_END) {
+                    if (depth == 0) {
+                        // the array was closed
+                        return offset;
+                    }
+                    depth--;
+                    if (depth == 0) {
+                        resumeOffset = offset + 1;
+                    }
+                } else if (depth == 0) {
+                    if (b == ',') {
+                        if (literalEnd >= 0) {
+                            resumeOffset = literalEnd;
+                            literalEnd = -1;
+                        }
+                    } else if (!Character.isWhitespace(b)) {
+                        literalEnd = offset + 1;
+                    }
+                }
+            }
+        }
+        return resumeOffset;
+    }
+
+    private static void appendToSegmentIndex(@NonNull File segmentIndexFile, @NonNull Segment segment)
+            throws IOException {
+        StringWriter line = new StringWriter();
+        JsonWriter jsonWriter = new JsonWriter(line);
+        jsonWriter.beginObject()
+                .name(KEY_INDEX).value(segment.getIndex())
+                .name(KEY_START_OFFSET).value(segment.getStartOffset())
+                .name(KEY_END_OFFSET).value(segment.getEndOffset());
+        if (segment.getStartTime() != null) {
+            jsonWriter.name(KEY_START_TIME).value(segment.getStartTime().toString());
+        }
+        if (segment.getEndTime() != null) {
+            jsonWriter.name(KEY_END_TIME).value(segment.getEndTime().toString());
+        }
+        if (segment.isRecovered()) {
+            jsonWriter.name(KEY_RECOVERED).value(true);
+        }
+        jsonWriter.endObject();
+        jsonWriter.close();
+        appendToIndex(segmentIndexFile, line.toString());
+    }
+
+    private static void appendToIndex(@NonNull File segmentIndexFile, @NonNull String entry) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(segmentIndexFile, true);
+        try (Writer writer = new OutputStreamWriter(outputStream, UTF_8)) {
+            writer.write(entry);
+            writer.write('\n');
+            writer.flush();
+            outputStream.getFD().sync();
+        }
+    }
+
+    @NonNull
+    private static Segment parseSegment(@NonNull JsonObject jsonObject) {
+        return new Segment(
+                jsonObject.get(KEY_INDEX).getAsInt(),
+                jsonObject.get(KEY_START_OFFSET).getAsLong(),
+                jsonObject.get(KEY_END_OFFSET).getAsLong(),
+                jsonObject.has(KEY_START_TIME) ? Instant.parse(jsonObject.get(KEY_START_TIME).getAsString()) : null,
+                jsonObject.has(KEY_END_TIME) ? Instant.parse(jsonObject.get(KEY_END_TIME).getAsString()) : null,
+                jsonObject.has(KEY_RECOVERED) && jsonObject.get(KEY_RECOVERED).getAsBoolean());
+    }
+
+    /**
+     * @return the entries of the index up to the first line torn by the process dying, or an empty list if the file
+     *         has no index.
+     */
+    @NonNull
+    private static List<JsonObject> readIndexEntries(@NonNull File segmentIndexFile) throws IOException {
+        if (!segmentIndexFile.exists()) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<JsonObject> entries = ImmutableList.builder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(segmentIndexFile), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    JsonObject entry = new JsonParser().parse(line).getAsJsonObject();
+                    if (!entry.has(KEY_REFERENCE)) {
+                        // checks the segment is complete
+                        parseSegment(entry);
+                    }
+                    entries.add(entry);
+                } catch (RuntimeException e) {
+                    // a line torn by the process dying, the segment it describes was not finished
+                    break;
+                }
+            }
+        }
+        return entries.build();
+    }
+}
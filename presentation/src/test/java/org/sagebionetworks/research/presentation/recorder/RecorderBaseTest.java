@@ -0,0 +1,131 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.sagebionetworks.research.domain.result.interfaces.Result;
+
+import io.reactivex.Maybe;
+import io.reactivex.subjects.CompletableSubject;
+
+public class RecorderBaseTest {
+    @Test
+    public void testStop_waitsForStopBarrier() {
+        CompletableSubject stopBarrier = CompletableSubject.create();
+        CountingRecorder recorder = new CountingRecorder(stopBarrier);
+
+        recorder.start();
+        recorder.stop();
+        assertFalse(recorder.isRecording());
+        assertEquals(0, recorder.stopCount);
+
+        stopBarrier.onComplete();
+        assertEquals(1, recorder.stopCount);
+    }
+
+    @Test
+    public void testStop_stopsWhenStopBarrierFails() {
+        CompletableSubject stopBarrier = CompletableSubject.create();
+        CountingRecorder recorder = new CountingRecorder(stopBarrier);
+
+        recorder.start();
+        recorder.stop();
+        stopBarrier.onError(new IllegalStateException());
+        assertEquals(1, recorder.stopCount);
+    }
+
+    @Test
+    public void testCancel_doesNotWaitForStopBarrier() {
+        CompletableSubject stopBarrier = CompletableSubject.create();
+        CountingRecorder recorder = new CountingRecorder(stopBarrier);
+
+        recorder.start();
+        recorder.cancel();
+        assertEquals(1, recorder.cancelCount);
+        assertEquals(1, recorder.stopCount);
+        assertFalse(stopBarrier.hasObservers());
+    }
+
+    @Test
+    public void testCancel_cutsPendingStopShort() {
+        CompletableSubject stopBarrier = CompletableSubject.create();
+        CountingRecorder recorder = new CountingRecorder(stopBarrier);
+
+        recorder.start();
+        recorder.stop();
+        recorder.cancel();
+        assertEquals(1, recorder.stopCount);
+        assertFalse(stopBarrier.hasObservers());
+
+        // the barrier completing later doesn't stop the recorder again
+        stopBarrier.onComplete();
+        assertEquals(1, recorder.stopCount);
+    }
+
+    private static class CountingRecorder extends RecorderBase<Result> {
+        int cancelCount;
+
+        int stopCount;
+
+        CountingRecorder(@NonNull CompletableSubject stopBarrier) {
+            super("recorder");
+            setStopBarrier(stopBarrier);
+        }
+
+        @Override
+        public void cancelRecorder() {
+            cancelCount++;
+        }
+
+        @NonNull
+        @Override
+        public Maybe<Result> getResult() {
+            return Maybe.empty();
+        }
+
+        @Override
+        public void startRecorder() {
+            // no-op
+        }
+
+        @Override
+        public void stopRecorder() {
+            stopCount++;
+        }
+    }
+}
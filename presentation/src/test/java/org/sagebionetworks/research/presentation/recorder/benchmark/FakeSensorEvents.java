@@ -0,0 +1,145 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.benchmark;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import androidx.annotation.NonNull;
+
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Synthetic sensor streams for running the recorder pipeline on the JVM. Like SensorManager, each stream reuses a
+ * single SensorEvent, delivers it on its own thread at a fixed rate, and uses the same backpressure strategy as
+ * SensorSourceFactory, so a pipeline that falls behind drops samples just as it would on a device.
+ */
+public class FakeSensorEvents {
+    private FakeSensorEvents() {
+    }
+
+    /**
+     * @param sensorType
+     *         the type of the fake sensor, e.g. Sensor.TYPE_ACCELEROMETER.
+     * @param valueCount
+     *         the number of values in each event.
+     * @param frequency
+     *         the rate in Hz at which events are delivered.
+     * @param emittedCount
+     *         incremented for every event the stream delivers.
+     * @return a stream of events that runs until it is cancelled.
+     */
+    @NonNull
+    public static Flowable<SensorEvent> create(int sensorType, int valueCount, double frequency,
+            @NonNull AtomicLong emittedCount) {
+        return Flowable.<SensorEvent>create(emitter -> {
+            SensorEvent event = createSensorEvent(sensorType, valueCount);
+            long periodNanos = (long) (1_000_000_000L / frequency);
+            long nextNanos = System.nanoTime();
+            long sampleIndex = 0;
+            while (!emitter.isCancelled()) {
+                event.timestamp = nextNanos;
+                for (int i = 0; i < valueCount; i++) {
+                    event.values[i] = (float) Math.sin(sampleIndex * 0.01 + i);
+                }
+                emitter.onNext(event);
+                emittedCount.incrementAndGet();
+                sampleIndex++;
+
+                nextNanos += periodNanos;
+                long waitNanos = nextNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+            }
+        }, BackpressureStrategy.LATEST).subscribeOn(Schedulers.newThread());
+    }
+
+    /**
+     * Like {@link #create(int, int, double, AtomicLong)}, but copies each event into a SensorSample before emitting
+     * it, as SensorHub does for SensorSourceFactory.getSensorSamples.
+     */
+    @NonNull
+    public static Flowable<SensorSample> createSamples(int sensorType, int valueCount, double frequency,
+            @NonNull AtomicLong emittedCount) {
+        return Flowable.<SensorSample>create(emitter -> {
+            SensorEvent event = createSensorEvent(sensorType, valueCount);
+            long periodNanos = (long) (1_000_000_000L / frequency);
+            long nextNanos = System.nanoTime();
+            long sampleIndex = 0;
+            while (!emitter.isCancelled()) {
+                event.timestamp = nextNanos;
+                for (int i = 0; i < valueCount; i++) {
+                    event.values[i] = (float) Math.sin(sampleIndex * 0.01 + i);
+                }
+                emitter.onNext(SensorSample.copyOf(event));
+                emittedCount.incrementAndGet();
+                sampleIndex++;
+
+                nextNanos += periodNanos;
+                long waitNanos = nextNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+            }
+        }, BackpressureStrategy.LATEST).subscribeOn(Schedulers.newThread());
+    }
+
+    @NonNull
+    public static SensorEvent createSensorEvent(int sensorType, int valueCount) {
+        Sensor sensor = mock(Sensor.class);
+        when(sensor.getType()).thenReturn(sensorType);
+
+        // SensorEvent's constructor is hidden and its values are final, as they are only ever set by SensorManager
+        SensorEvent event = mock(SensorEvent.class);
+        event.sensor = sensor;
+        try {
+            Field values = SensorEvent.class.getField("values");
+            values.setAccessible(true);
+            values.set(event, new float[valueCount]);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create fake SensorEvent", e);
+        }
+        return event;
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.benchmark;
+
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.location.Location;
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
+import org.sagebionetworks.research.presentation.recorder.RecorderBase;
+import org.sagebionetworks.research.presentation.recorder.RecorderPauseMarker;
+import org.sagebionetworks.research.presentation.recorder.location.Path;
+import org.sagebionetworks.research.presentation.recorder.location.PathAccumulator;
+import org.sagebionetworks.research.presentation.recorder.reactive.BatchPolicy;
+import org.sagebionetworks.research.presentation.recorder.reactive.ReactiveFileResultRecorder;
+import org.sagebionetworks.research.presentation.recorder.reactive.ReactiveSensorColumnarRecorder;
+import org.sagebionetworks.research.presentation.recorder.reactive.ReactiveSensorJsonRecorder;
+import org.sagebionetworks.research.presentation.recorder.reactive.ReactiveSensorRingBufferRecorder;
+import org.sagebionetworks.research.presentation.recorder.reactive.SegmentPolicy;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil.SensorEventPOJO;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorRingBuffer;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+import org.sagebionetworks.research.presentation.recorder.sensor.columnar.SensorColumnarReader;
+import org.sagebionetworks.research.presentation.recorder.sensor.columnar.SensorDescription;
+import org.sagebionetworks.research.presentation.recorder.util.JvmRecorderClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Instant;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Flowable;
+
+/**
+ * Pushes synthetic sensor streams through the real recorder pipelines and reports, for each pipeline and sampling
+ * rate, the events recorded per second, the bytes written, the allocation rate and the percentage of samples that
+ * were dropped. Also measures PathAccumulator, which the distance recorder runs for every location.
+ * <p>
+ * This is skipped during normal test runs. To run it:
+ * <pre>
+ * ./gradlew :presentation:testDebugUnitTest --tests '*RecorderBenchmark' -DrecorderBenchmark=true
+ * </pre>
+ * Each run lasts recorderBenchmark.durationSeconds (default 5) and the results are also written to
+ * build/reports/recorder-benchmark.json so that they can be compared between commits.
+ */
+public class RecorderBenchmark {
+    /**
+     * Creates a recorder for one of the pipelines under test.
+     */
+    interface Pipeline {
+        /**
+         * @param sensorEvents
+         *         the sensors' events, which are reused between callbacks.
+         * @param sensorSamples
+         *         the same events copied on the sensor thread, as SensorSourceFactory.getSensorSamples delivers them.
+         *         Only one of the two streams is subscribed to.
+         */
+        RecorderBase<FileResult> create(@NonNull String identifier, @NonNull Flowable<SensorEvent> sensorEvents,
+                @NonNull Flowable<SensorSample> sensorSamples, @NonNull File outputFile);
+
+        /**
+         * @return the number of samples in the output file.
+         */
+        long countRecorded(@NonNull File outputFile) throws IOException;
+    }
+
+    static class Result {
+        String pipeline;
+
+        double frequency;
+
+        long emittedEvents;
+
+        long recordedEvents;
+
+        double eventsPerSecond;
+
+        long bytesWritten;
+
+        double allocatedBytesPerEvent;
+
+        double allocatedMegabytesPerSecond;
+
+        double droppedPercent;
+    }
+
+    private static final double[] FREQUENCIES = {50, 100, 200, 500};
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecorderBenchmark.class);
+
+    // a typical motion recorder configuration
+    private static final int[] SENSOR_TYPES = {Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_GYROSCOPE,
+            Sensor.TYPE_MAGNETIC_FIELD};
+
+    private static final int VALUE_COUNT = 3;
+
+    private static final long RESULT_TIMEOUT_SECONDS = 30;
+
+    private static final File REPORT_FILE = new File("build/reports/recorder-benchmark.json");
+
+    // the recorders' Gson, except that fake Sensors are written as their type, mocks cannot be serialized
+    private final Gson gson = new GsonBuilder()
+            .registerTypeHierarchyAdapter(Sensor.class,
+                    (JsonSerializer<Sensor>) (sensor, type, context) -> new JsonPrimitive(sensor.getType()))
+            .registerTypeAdapter(Instant.class,
+                    (JsonSerializer<Instant>) (instant, type, context) -> new JsonPrimitive(instant.toString()))
+            .create();
+
+    @Rule
+    public JvmRecorderClock recorderClock = new JvmRecorderClock();
+
+    @Test
+    public void benchmarkRecorders() throws Exception {
+        assumeTrue("Set -DrecorderBenchmark=true to run the recorder benchmark",
+                Boolean.getBoolean("recorderBenchmark"));
+        long durationMillis = TimeUnit.SECONDS.toMillis(Long.getLong("recorderBenchmark.durationSeconds", 5));
+
+        List<Result> results = new ArrayList<>();
+        for (Map.Entry<String, Pipeline> pipeline : createPipelines().entrySet()) {
+            for (double frequency : FREQUENCIES) {
+                Result result = run(pipeline.getKey(), pipeline.getValue(), frequency, durationMillis);
+                results.add(result);
+                print(result);
+            }
+        }
+        printPathAccumulator(benchmarkPathAccumulator(durationMillis));
+
+        REPORT_FILE.getParentFile().mkdirs();
+        try (Writer writer = new FileWriter(REPORT_FILE)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(results, writer);
+        }
+    }
+
+    @NonNull
+    private Map<String, Pipeline> createPipelines() {
+        Map<String, Pipeline> pipelines = new LinkedHashMap<>();
+        pipelines.put("pojo-json", new JsonPipeline() {
+            @Override
+            public RecorderBase<FileResult> create(@NonNull String identifier,
+                    @NonNull Flowable<SensorEvent> sensorEvents, @NonNull Flowable<SensorSample> sensorSamples,
+                    @NonNull File outputFile) {
+                return ReactiveFileResultRecorder.createJsonArrayLogger(identifier, toPojos(sensorEvents), gson,
+                        outputFile);
+            }
+        });
+        pipelines.put("json", new JsonPipeline() {
+            @Override
+            public RecorderBase<FileResult> create(@NonNull String identifier,
+                    @NonNull Flowable<SensorEvent> sensorEvents, @NonNull Flowable<SensorSample> sensorSamples,
+                    @NonNull File outputFile) {
+                return ReactiveSensorJsonRecorder.create(identifier, sensorSamples, gson, outputFile,
+                        BatchPolicy.NONE, RecorderOutputCompression.NONE, false, SegmentPolicy.NONE);
+            }
+        });
+        pipelines.put("json-batched", new JsonPipeline() {
+            @Override
+            public RecorderBase<FileResult> create(@NonNull String identifier,
+                    @NonNull Flowable<SensorEvent> sensorEvents, @NonNull Flowable<SensorSample> sensorSamples,
+                    @NonNull File outputFile) {
+                return ReactiveSensorJsonRecorder.create(identifier, sensorSamples, gson, outputFile,
+                        BatchPolicy.create(64, 250), RecorderOutputCompression.NONE, false, SegmentPolicy.NONE);
+            }
+        });
+        pipelines.put("json-mapped", new JsonPipeline() {
+            @Override
+            public RecorderBase<FileResult> create(@NonNull String identifier,
+                    @NonNull Flowable<SensorEvent> sensorEvents, @NonNull Flowable<SensorSample> sensorSamples,
+                    @NonNull File outputFile) {
+                ReactiveSensorJsonRecorder recorder = ReactiveSensorJsonRecorder.create(identifier, sensorSamples,
+                        gson, outputFile, BatchPolicy.NONE, RecorderOutputCompression.NONE, false,
+                        SegmentPolicy.NONE);
+                recorder.setMemoryMapped(true);
+                return recorder;
+            }
+        });
+        pipelines.put("json-ring-buffer", new JsonPipeline() {
+            @Override
+            public RecorderBase<FileResult> create(@NonNull String identifier,
+                    @NonNull Flowable<SensorEvent> sensorEvents, @NonNull Flowable<SensorSample> sensorSamples,
+                    @NonNull File outputFile) {
+                return new ReactiveSensorRingBufferRecorder(identifier, sensorEvents, gson, outputFile,
+                        new SensorRingBuffer());
+            }
+        });
+        pipelines.put("columnar", new Pipeline() {
+            @Override
+            public RecorderBase<FileResult> create(@NonNull String identifier,
+                    @NonNull Flowable<SensorEvent> sensorEvents, @NonNull Flowable<SensorSample> sensorSamples,
+                    @NonNull File outputFile) {
+                return new ReactiveSensorColumnarRecorder(identifier, sensorSamples, outputFile);
+            }
+
+            @Override
+            public long countRecorded(@NonNull File outputFile) throws IOException {
+                return countColumnarSamples(outputFile);
+            }
+        });
+        return pipelines;
+    }
+
+    @NonNull
+    private Result run(@NonNull String pipelineName, @NonNull Pipeline pipeline, double frequency,
+            long durationMillis) throws Exception {
+        File outputFile = File.createTempFile("recorderBenchmark", ".out");
+        AtomicLong emittedCount = new AtomicLong();
+        List<Flowable<SensorEvent>> sensorEvents = new ArrayList<>();
+        List<Flowable<SensorSample>> sensorSamples = new ArrayList<>();
+        for (int sensorType : SENSOR_TYPES) {
+            sensorEvents.add(FakeSensorEvents.create(sensorType, VALUE_COUNT, frequency, emittedCount));
+            sensorSamples.add(FakeSensorEvents.createSamples(sensorType, VALUE_COUNT, frequency, emittedCount));
+        }
+
+        RecorderBase<FileResult> recorder = pipeline.create(pipelineName, Flowable.merge(sensorEvents),
+                Flowable.merge(sensorSamples), outputFile);
+        long allocatedBefore = getAllocatedBytes();
+        long startNanos = System.nanoTime();
+        recorder.start();
+        Thread.sleep(durationMillis);
+        long allocatedAfter = getAllocatedBytes();
+        long emitted = emittedCount.get();
+        recorder.stop();
+        recorder.getResult().timeout(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS).blockingGet();
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        Result result = new Result();
+        result.pipeline = pipelineName;
+        result.frequency = frequency;
+        result.emittedEvents = emitted;
+        result.recordedEvents = pipeline.countRecorded(outputFile);
+        result.eventsPerSecond = result.recordedEvents / elapsedSeconds;
+        result.bytesWritten = outputFile.length();
+        result.allocatedBytesPerEvent = (double) (allocatedAfter - allocatedBefore) / Math.max(1, emitted);
+        result.allocatedMegabytesPerSecond = (allocatedAfter - allocatedBefore) / 1e6 / (durationMillis / 1e3);
+        result.droppedPercent = 100.0 * Math.max(0, emitted - result.recordedEvents) / Math.max(1, emitted);
+        outputFile.delete();
+        return result;
+    }
+
+    private double benchmarkPathAccumulator(long durationMillis) throws Exception {
+        List<Location> locations = new ArrayList<>();
+        // Location is not available on the JVM, so the fixes are mocks one second apart
+        for (int i = 0; i < 1000; i++) {
+            Location location = mock(Location.class);
+            when(location.getTime()).thenReturn(i * 1000L);
+            locations.add(location);
+        }
+        PathAccumulator pathAccumulator = new PathAccumulator();
+        long endNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long count = 0;
+        long startNanos = System.nanoTime();
+        Path path = Path.ZERO;
+        while (System.nanoTime() < endNanos) {
+            for (Location location : locations) {
+                path = pathAccumulator.apply(path, location);
+            }
+            count += locations.size();
+        }
+        return count / ((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    /**
+     * @return the bytes allocated so far by all live threads, which includes the sensor, computation and io threads
+     *         of a running recorder.
+     */
+    private static long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds());
+        return Arrays.stream(allocatedBytes).filter(bytes -> bytes > 0).sum();
+    }
+
+    private static long countColumnarSamples(@NonNull File file) throws IOException {
+        AtomicLong count = new AtomicLong();
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            SensorColumnarReader.read(inputStream, new SensorColumnarReader.Handler() {
+                @Override
+                public void onPauseMarker(@NonNull RecorderPauseMarker marker) {
+                }
+
+                @Override
+                public void onReference(int sensorType, long timestampNanos, @NonNull Instant uptimeZero) {
+                }
+
+                @Override
+                public void onSample(int sensorType, long timestampNanos, @NonNull float[] values) {
+                    count.incrementAndGet();
+                }
+
+                @Override
+                public void onSensorDescription(@NonNull SensorDescription description) {
+                }
+            });
+        }
+        return count.get();
+    }
+
+    private static void print(@NonNull Result result) {
+        LOGGER.info(String.format("%-18s %5.0f Hz  %9.0f events/s  %10d bytes  %7.1f B/event  %7.2f MB/s"
+                        + "  %6.2f%% dropped", result.pipeline, result.frequency, result.eventsPerSecond,
+                result.bytesWritten, result.allocatedBytesPerEvent, result.allocatedMegabytesPerSecond,
+                result.droppedPercent));
+    }
+
+    private static void printPathAccumulator(double locationsPerSecond) {
+        LOGGER.info(String.format("%-18s %9.0f locations/s", "path-accumulator", locationsPerSecond));
+    }
+
+    /**
+     * Maps events to DeviceMotionUtil POJOs the way the motion recorder did before it had its own writers.
+     */
+    @NonNull
+    private static Flowable<SensorEventPOJO> toPojos(@NonNull Flowable<SensorEvent> sensorEvents) {
+        AtomicReference<Double> firstEventUptimeReference = new AtomicReference<>();
+        return sensorEvents.map(e -> {
+            if (firstEventUptimeReference.get() == null) {
+                SensorEventPOJO first = new SensorEventPOJO(e);
+                firstEventUptimeReference.set(first.uptime);
+                return first;
+            }
+            return DeviceMotionUtil.SENSOR_TYPE_TO_FACTORY
+                    .get(e.sensor.getType())
+                    .apply(e, firstEventUptimeReference.get());
+        });
+    }
+
+    /**
+     * Counts the samples in a JSON array written by one of the motion recorders, whose first element describes the
+     * sensor rather than being a sample.
+     */
+    private abstract static class JsonPipeline implements Pipeline {
+        @Override
+        public long countRecorded(@NonNull File outputFile) throws IOException {
+            long count = 0;
+            try (Reader reader = new FileReader(outputFile)) {
+                JsonReader jsonReader = new JsonReader(reader);
+                jsonReader.beginArray();
+                while (jsonReader.hasNext()) {
+                    jsonReader.skipValue();
+                    count++;
+                }
+                jsonReader.endArray();
+            }
+            return Math.max(0, count - 1);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.benchmark;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.hardware.Sensor;
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
+import org.sagebionetworks.research.presentation.recorder.RecorderBase;
+import org.sagebionetworks.research.presentation.recorder.reactive.BatchPolicy;
+import org.sagebionetworks.research.presentation.recorder.reactive.ReactiveSensorColumnarRecorder;
+import org.sagebionetworks.research.presentation.recorder.reactive.ReactiveSensorJsonRecorder;
+import org.sagebionetworks.research.presentation.recorder.reactive.SegmentPolicy;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+import org.sagebionetworks.research.presentation.recorder.util.JvmRecorderClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Flowable;
+
+/**
+ * Records synthetic sensor streams for a long time and checks that the memory retained by the recorder pipelines
+ * does not grow with the length of the recording. The sensors run faster than the writers can keep up with, so the
+ * backpressure buffers between them stay full for the whole recording.
+ * <p>
+ * This is skipped during normal test runs. To run it:
+ * <pre>
+ * ./gradlew :presentation:testDebugUnitTest --tests '*RecorderMemoryTest' -DrecorderMemoryTest=true
+ * </pre>
+ * Each pipeline records for recorderMemoryTest.durationSeconds (default 60).
+ */
+public class RecorderMemoryTest {
+    // well past the rate any writer keeps up with
+    private static final double FREQUENCY = 20_000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecorderMemoryTest.class);
+
+    // retained heap may vary by this much between samples, e.g. with the size of the writer's buffers
+    private static final long MAX_HEAP_GROWTH_BYTES = 8 * 1024 * 1024;
+
+    private static final long RESULT_TIMEOUT_SECONDS = 30;
+
+    private static final int[] SENSOR_TYPES = {Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_GYROSCOPE,
+            Sensor.TYPE_MAGNETIC_FIELD};
+
+    private static final int VALUE_COUNT = 3;
+
+    // mocks cannot be serialized, so fake Sensors are written as their type
+    private final Gson gson = new GsonBuilder()
+            .registerTypeHierarchyAdapter(Sensor.class,
+                    (JsonSerializer<Sensor>) (sensor, type, context) -> new JsonPrimitive(sensor.getType()))
+            .registerTypeAdapter(Instant.class,
+                    (JsonSerializer<Instant>) (instant, type, context) -> new JsonPrimitive(instant.toString()))
+            .create();
+
+    @Rule
+    public JvmRecorderClock recorderClock = new JvmRecorderClock();
+
+    @Test
+    public void testColumnar_constantMemory() throws Exception {
+        assumeEnabled();
+        File outputFile = File.createTempFile("recorderMemoryTest", ".out");
+        runRecording(new ReactiveSensorColumnarRecorder("columnar", createSamples(), outputFile, BatchPolicy.NONE,
+                RecorderOutputCompression.GZIP), outputFile);
+    }
+
+    @Test
+    public void testJson_constantMemory() throws Exception {
+        assumeEnabled();
+        File outputFile = File.createTempFile("recorderMemoryTest", ".out");
+        runRecording(ReactiveSensorJsonRecorder.create("json", createSamples(), gson, outputFile,
+                BatchPolicy.NONE, RecorderOutputCompression.GZIP, false, SegmentPolicy.NONE), outputFile);
+    }
+
+    @Test
+    public void testJsonBatched_constantMemory() throws Exception {
+        assumeEnabled();
+        File outputFile = File.createTempFile("recorderMemoryTest", ".out");
+        runRecording(ReactiveSensorJsonRecorder.create("json-batched", createSamples(), gson, outputFile,
+                BatchPolicy.create(64, 250), RecorderOutputCompression.GZIP, false, SegmentPolicy.NONE), outputFile);
+    }
+
+    private static void assumeEnabled() {
+        assumeTrue("Set -DrecorderMemoryTest=true to run the recorder memory test",
+                Boolean.getBoolean("recorderMemoryTest"));
+    }
+
+    @NonNull
+    private static Flowable<SensorSample> createSamples() {
+        List<Flowable<SensorSample>> samples = new ArrayList<>();
+        for (int sensorType : SENSOR_TYPES) {
+            samples.add(FakeSensorEvents.createSamples(sensorType, VALUE_COUNT, FREQUENCY, new AtomicLong()));
+        }
+        return Flowable.merge(samples);
+    }
+
+    /**
+     * @return the heap in use once everything unreachable has been collected.
+     */
+    private static long getRetainedHeapBytes() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Records until the configured duration has passed, sampling the retained heap every second once the pipeline
+     * has warmed up, and checks that it never grows by more than {@link #MAX_HEAP_GROWTH_BYTES}.
+     */
+    private static void runRecording(@NonNull RecorderBase<FileResult> recorder, @NonNull File outputFile)
+            throws Exception {
+        long durationMillis = TimeUnit.SECONDS.toMillis(Long.getLong("recorderMemoryTest.durationSeconds", 60));
+        long warmUpMillis = durationMillis / 10;
+        try {
+            recorder.start();
+            Thread.sleep(warmUpMillis);
+            long baselineBytes = getRetainedHeapBytes();
+            long maxBytes = baselineBytes;
+            long baselineLength = outputFile.length();
+            for (long elapsedMillis = warmUpMillis; elapsedMillis < durationMillis; elapsedMillis += 1000) {
+                Thread.sleep(1000);
+                maxBytes = Math.max(maxBytes, getRetainedHeapBytes());
+            }
+            assertTrue("no samples were written after warm up", outputFile.length() > baselineLength);
+
+            recorder.stop();
+            recorder.getResult().timeout(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS).blockingGet();
+            LOGGER.info("{} retained {} bytes after warm up and at most {} bytes more while recording",
+                    recorder.getIdentifier(), baselineBytes, maxBytes - baselineBytes);
+            assertTrue("retained heap grew by " + (maxBytes - baselineBytes) + " bytes",
+                    maxBytes - baselineBytes < MAX_HEAP_GROWTH_BYTES);
+        } finally {
+            outputFile.delete();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.sagebionetworks.research.presentation.recorder.location.LocationPathSimplifier.Fix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LocationPathSimplifierTest {
+    private static final double METERS_TO_DEGREES = 1 / 111_195.0;
+
+    private static final long SECOND_NANOS = 1_000_000_000L;
+
+    @Test
+    public void testStraightWalk_keepsEnds() {
+        LocationPathSimplifier simplifier = new LocationPathSimplifier(0, 20, 3);
+        List<Fix> kept = new ArrayList<>();
+        for (int i = 0; i <= 60; i++) {
+            kept.addAll(simplifier.add(fix(1.5 * i, 0, 5, i)));
+        }
+        kept.addAll(simplifier.finish());
+
+        assertEquals(2, kept.size());
+        assertEquals(0, kept.get(0).elapsedRealtimeNanos);
+        assertEquals(60 * SECOND_NANOS, kept.get(1).elapsedRealtimeNanos);
+    }
+
+    @Test
+    public void testTurn_keepsCorner() {
+        LocationPathSimplifier simplifier = new LocationPathSimplifier(0, 20, 3);
+        List<Fix> kept = new ArrayList<>();
+        // north for 60 meters, then east for 60 meters
+        for (int i = 0; i <= 40; i++) {
+            kept.addAll(simplifier.add(fix(1.5 * Math.min(i, 20), 1.5 * Math.max(0, i - 20), 5, i)));
+        }
+        kept.addAll(simplifier.finish());
+
+        assertEquals(3, kept.size());
+        // smoothing lags the turn by a few fixes
+        long cornerSeconds = kept.get(1).elapsedRealtimeNanos / SECOND_NANOS;
+        assertTrue("corner at " + cornerSeconds, cornerSeconds >= 19 && cornerSeconds <= 24);
+    }
+
+    @Test
+    public void testOutliers_rejected() {
+        LocationPathSimplifier simplifier = new LocationPathSimplifier(0, 20, 0);
+        assertEquals(1, simplifier.add(fix(0, 0, 5, 0)).size());
+        // worse than the maximum accuracy
+        assertTrue(simplifier.add(fix(1, 0, 30, 1)).isEmpty());
+        // a kilometer away a second later
+        assertTrue(simplifier.add(fix(1000, 0, 5, 2)).isEmpty());
+        // sooner than the minimum time, here the same instant
+        assertEquals(1, simplifier.add(fix(2, 0, 5, 3)).size());
+        assertTrue(simplifier.add(fix(2, 0, 5, 3)).isEmpty());
+    }
+
+    @Test
+    public void testConsecutiveOutliers_restartPath() {
+        LocationPathSimplifier simplifier = new LocationPathSimplifier(0, 20, 0);
+        simplifier.add(fix(0, 0, 5, 0));
+        for (int i = 1; i < LocationPathSimplifier.MAX_CONSECUTIVE_OUTLIERS; i++) {
+            assertTrue(simplifier.add(fix(5000 + i, 0, 5, i)).isEmpty());
+        }
+        List<Fix> kept = simplifier.add(fix(5010, 0, 5, LocationPathSimplifier.MAX_CONSECUTIVE_OUTLIERS));
+        assertEquals(1, kept.size());
+        // not smoothed towards the position before the jump
+        assertEquals(5010 * METERS_TO_DEGREES, kept.get(0).latitude, 1e-9);
+    }
+
+    @Test
+    public void testWindow_bounded() {
+        LocationPathSimplifier simplifier = new LocationPathSimplifier(0, 20, 3);
+        int keptCount = 0;
+        // standing still, every fix is within the tolerance
+        for (int i = 0; i < 10 * LocationPathSimplifier.MAX_WINDOW_SIZE; i++) {
+            keptCount += simplifier.add(fix(0, 0, 5, i)).size();
+        }
+
+        assertEquals(10, keptCount);
+    }
+
+    private static Fix fix(double northMeters, double eastMeters, float accuracy, long seconds) {
+        return new Fix(northMeters * METERS_TO_DEGREES, eastMeters * METERS_TO_DEGREES, accuracy,
+                seconds * SECOND_NANOS, null);
+    }
+}
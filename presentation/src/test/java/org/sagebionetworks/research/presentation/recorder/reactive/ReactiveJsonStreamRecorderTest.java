@@ -0,0 +1,203 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.processors.PublishProcessor;
+
+public class ReactiveJsonStreamRecorderTest {
+    private static class Element {
+        final String name;
+
+        final int value;
+
+        Element(String name, int value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    private static final long RESULT_TIMEOUT_SECONDS = 10;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // flushes only when the buffer fills up, which these tests never do
+    private static final FlushPolicy NO_FLUSH = FlushPolicy.builder()
+            .setBufferSize(64 * 1024)
+            .setMaxUnflushedRecords(Integer.MAX_VALUE)
+            .setMaxFlushIntervalMillis(TimeUnit.HOURS.toMillis(1))
+            .build();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // the recorder writes compactly even if the Gson pretty prints
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private final PublishProcessor<Element> elements = PublishProcessor.create();
+
+    @Test
+    public void testStop_compactArray() throws Exception {
+        File outputFile = new File(temporaryFolder.getRoot(), "stream.json");
+        ReactiveJsonStreamRecorder<Element> recorder = new ReactiveJsonStreamRecorder<>("stream", elements, gson,
+                outputFile, NO_FLUSH);
+
+        recorder.start();
+        elements.onNext(new Element("a", 0));
+        elements.onNext(new Element("b", 1));
+        elements.onNext(new Element("c", 2));
+        recorder.stop();
+
+        FileResult result = recorder.getResult().timeout(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS).blockingGet();
+        assertEquals(outputFile.getPath(), result.getRelativePath());
+        assertEquals("[" + json("a", 0) + "," + json("b", 1) + "," + json("c", 2) + "]", read(outputFile));
+        assertElements(readArray(outputFile), "a", "b", "c");
+    }
+
+    @Test
+    public void testStop_noElements() throws Exception {
+        File outputFile = new File(temporaryFolder.getRoot(), "stream.json");
+        ReactiveJsonStreamRecorder<Element> recorder = new ReactiveJsonStreamRecorder<>("stream", elements, gson,
+                outputFile, NO_FLUSH);
+
+        recorder.start();
+        recorder.stop();
+
+        recorder.getResult().timeout(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS).blockingGet();
+        assertEquals("[]", read(outputFile));
+    }
+
+    @Test
+    public void testFlushPolicy_flushedAfterMaxUnflushedRecords() throws Exception {
+        File outputFile = new File(temporaryFolder.getRoot(), "stream.json");
+        ReactiveJsonStreamRecorder<Element> recorder = new ReactiveJsonStreamRecorder<>("stream", elements, gson,
+                outputFile, NO_FLUSH.toBuilder().setMaxUnflushedRecords(2).build());
+
+        recorder.start();
+        elements.onNext(new Element("a", 0));
+        elements.onNext(new Element("b", 1));
+        elements.onNext(new Element("c", 2));
+
+        // the third element waits in the buffer for a fourth one or the end of the recording
+        awaitNotEmpty(outputFile);
+        assertEquals("[" + json("a", 0) + "," + json("b", 1), read(outputFile));
+
+        recorder.stop();
+        recorder.getResult().timeout(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS).blockingGet();
+        assertElements(readArray(outputFile), "a", "b", "c");
+    }
+
+    @Test
+    public void testSegmentPolicy_rolledIntoCompleteArrays() throws Exception {
+        File outputFile = new File(temporaryFolder.getRoot(), "stream.json");
+        // segments are measured as they are flushed, so flushing every record rolls as soon as two records fill one
+        long maxSegmentBytes = ("[" + json("a", 0) + "," + json("b", 1)).length();
+        ReactiveJsonStreamRecorder<Element> recorder = new ReactiveJsonStreamRecorder<>("stream", elements, gson,
+                outputFile, NO_FLUSH.toBuilder().setMaxUnflushedRecords(1).build(), RecorderOutputCompression.NONE,
+                SegmentPolicy.create(maxSegmentBytes, 0));
+        TestObserver<FileResult> segmentResults = recorder.getSegmentResults().test();
+
+        recorder.start();
+        elements.onNext(new Element("a", 0));
+        elements.onNext(new Element("b", 1));
+        elements.onNext(new Element("c", 2));
+        recorder.stop();
+
+        FileResult result = recorder.getResult().timeout(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS).blockingGet();
+        segmentResults.awaitDone(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .assertComplete()
+                .assertValueCount(1);
+
+        FileResult firstSegment = segmentResults.values().get(0);
+        assertEquals("stream_001", firstSegment.getIdentifier());
+        assertElements(readArray(new File(firstSegment.getRelativePath())), "a", "b");
+        assertEquals("stream_002", result.getIdentifier());
+        assertElements(readArray(new File(result.getRelativePath())), "c");
+        // the recording is only written to the segment files
+        assertFalse(outputFile.exists());
+    }
+
+    private static void assertElements(@NonNull List<Element> elements, String... names) {
+        assertEquals(names.length, elements.size());
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(names[i], elements.get(i).name);
+        }
+    }
+
+    private static void awaitNotEmpty(@NonNull File file) throws InterruptedException {
+        long deadlineMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(RESULT_TIMEOUT_SECONDS);
+        while (file.length() == 0 && System.currentTimeMillis() < deadlineMillis) {
+            Thread.sleep(10);
+        }
+        assertTrue(file.length() > 0);
+    }
+
+    @NonNull
+    private static String json(String name, int value) {
+        return "{\"name\":\"" + name + "\",\"value\":" + value + "}";
+    }
+
+    @NonNull
+    private static String read(@NonNull File file) throws IOException {
+        return Files.asCharSource(file, UTF_8).read();
+    }
+
+    @NonNull
+    private List<Element> readArray(@NonNull File file) throws IOException {
+        return gson.fromJson(read(file), new TypeToken<List<Element>>() {
+        }.getType());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
+import org.sagebionetworks.research.presentation.recorder.benchmark.FakeSensorEvents;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+import org.sagebionetworks.research.presentation.recorder.util.JvmRecorderClock;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.processors.PublishProcessor;
+
+public class ReactiveSensorJsonRecorderTest {
+    private static final long RESULT_TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public JvmRecorderClock recorderClock = new JvmRecorderClock();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // mocks cannot be serialized, so fake Sensors are written as their type
+    private final Gson gson = new GsonBuilder()
+            .registerTypeHierarchyAdapter(Sensor.class,
+                    (JsonSerializer<Sensor>) (sensor, type, context) -> new JsonPrimitive(sensor.getType()))
+            .registerTypeAdapter(Instant.class,
+                    (JsonSerializer<Instant>) (instant, type, context) -> new JsonPrimitive(instant.toString()))
+            .create();
+
+    @Test
+    public void testCancel_beforeStart() {
+        File outputFile = new File(temporaryFolder.getRoot(), "motion.json");
+        ReactiveSensorJsonRecorder recorder = ReactiveSensorJsonRecorder.create("motion",
+                PublishProcessor.<SensorSample>create(), gson, outputFile, BatchPolicy.NONE,
+                RecorderOutputCompression.NONE, false, SegmentPolicy.NONE);
+
+        recorder.cancel();
+
+        recorder.getResult().test()
+                .awaitDone(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .assertComplete()
+                .assertNoValues();
+        assertFalse(outputFile.exists());
+    }
+
+    @Test
+    public void testMemoryMapped_trimmedToArray() throws Exception {
+        File outputFile = temporaryFolder.newFile("motion.json");
+        PublishProcessor<SensorSample> sensorSamples = PublishProcessor.create();
+        ReactiveSensorJsonRecorder recorder = ReactiveSensorJsonRecorder.create("motion", sensorSamples, gson,
+                outputFile, BatchPolicy.NONE, RecorderOutputCompression.NONE, false, SegmentPolicy.NONE);
+        recorder.setMemoryMapped(true);
+
+        record(recorder, sensorSamples, 1_000L, 2_000L);
+
+        // the file ends with the array, without the padding of the mapped region
+        JsonArray elements = readArray(outputFile);
+        assertEquals(3, elements.size());
+        assertEquals(1e-6, elements.get(2).getAsJsonObject().get("timestamp").getAsDouble(), 1e-9);
+    }
+
+    @Test
+    public void testResume_continuesFromFirstReference() throws Exception {
+        File outputFile = temporaryFolder.newFile("motion.json");
+
+        resume(outputFile, 1_000L, 2_000L);
+        // the second run is relative to the first run's reference event, which it does not write again
+        resume(outputFile, 5_000L);
+
+        JsonArray elements = readArray(outputFile);
+        assertEquals(4, elements.size());
+        assertTrue(elements.get(0).getAsJsonObject().has("sensor"));
+        for (int i = 1; i < elements.size(); i++) {
+            assertFalse(elements.get(i).getAsJsonObject().has("sensor"));
+        }
+        assertEquals(0, elements.get(1).getAsJsonObject().get("timestamp").getAsDouble(), 0);
+        assertEquals(1e-6, elements.get(2).getAsJsonObject().get("timestamp").getAsDouble(), 1e-9);
+        assertEquals(4e-6, elements.get(3).getAsJsonObject().get("timestamp").getAsDouble(), 1e-9);
+    }
+
+    private void resume(@NonNull File outputFile, long... timestampsNanos) {
+        PublishProcessor<SensorSample> sensorSamples = PublishProcessor.create();
+        record(ReactiveSensorJsonRecorder.create("motion", sensorSamples, gson, outputFile, BatchPolicy.NONE,
+                RecorderOutputCompression.NONE, true, SegmentPolicy.NONE), sensorSamples, timestampsNanos);
+    }
+
+    private static void record(@NonNull ReactiveSensorJsonRecorder recorder,
+            @NonNull PublishProcessor<SensorSample> sensorSamples, long... timestampsNanos) {
+        SensorEvent event = FakeSensorEvents.createSensorEvent(Sensor.TYPE_ACCELEROMETER, 3);
+
+        recorder.start();
+        for (long timestampNanos : timestampsNanos) {
+            event.timestamp = timestampNanos;
+            sensorSamples.onNext(SensorSample.copyOf(event));
+        }
+        recorder.stop();
+        recorder.getResult().timeout(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS).blockingGet();
+    }
+
+    @NonNull
+    private static JsonArray readArray(@NonNull File file) throws Exception {
+        try (Reader reader = new FileReader(file)) {
+            return new JsonParser().parse(reader).getAsJsonArray();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
+import org.sagebionetworks.research.presentation.recorder.RecorderPauseMarker;
+import org.sagebionetworks.research.presentation.recorder.benchmark.FakeSensorEvents;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorRingBuffer;
+import org.sagebionetworks.research.presentation.recorder.util.JvmRecorderClock;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.processors.PublishProcessor;
+
+public class ReactiveSensorRingBufferRecorderTest {
+    private static final long RESULT_TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public JvmRecorderClock recorderClock = new JvmRecorderClock();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // mocks cannot be serialized, so fake Sensors are written as their type
+    private final Gson gson = new GsonBuilder()
+            .registerTypeHierarchyAdapter(Sensor.class,
+                    (JsonSerializer<Sensor>) (sensor, type, context) -> new JsonPrimitive(sensor.getType()))
+            .registerTypeAdapter(Instant.class,
+                    (JsonSerializer<Instant>) (instant, type, context) -> new JsonPrimitive(instant.toString()))
+            .create();
+
+    @Test
+    public void testPauseResume_markersWrittenInOrder() throws Exception {
+        PublishProcessor<SensorEvent> sensorEvents = PublishProcessor.create();
+        File outputFile = temporaryFolder.newFile("ringBuffer.json");
+        ReactiveSensorRingBufferRecorder recorder = new ReactiveSensorRingBufferRecorder("ringBuffer",
+                sensorEvents, gson, outputFile, new SensorRingBuffer(16));
+        SensorEvent event = FakeSensorEvents.createSensorEvent(Sensor.TYPE_ACCELEROMETER, 3);
+
+        recorder.start();
+        sensorEvents.onNext(withTimestamp(event, 1_000L));
+        recorder.pause();
+        // pausing releases the sensors
+        assertFalse(sensorEvents.hasSubscribers());
+        recorder.resume();
+        assertTrue(sensorEvents.hasSubscribers());
+        // the markers are handed to the writer by the first event after the resume
+        sensorEvents.onNext(withTimestamp(event, 2_000L));
+        sensorEvents.onNext(withTimestamp(event, 3_000L));
+        recorder.pause();
+        recorder.stop();
+
+        FileResult result = recorder.getResult().timeout(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS).blockingGet();
+        assertEquals(outputFile.getPath(), result.getRelativePath());
+        JsonArray elements = readArray(outputFile);
+        // the reference event, then the samples with the markers between them, and the pause the recorder was
+        // stopped in at the end
+        assertEquals(7, elements.size());
+        assertEquals(0, elements.get(1).getAsJsonObject().get("timestamp").getAsDouble(), 0);
+        assertEquals(RecorderPauseMarker.PAUSE, elements.get(2).getAsJsonObject().get("marker").getAsString());
+        assertEquals(RecorderPauseMarker.RESUME, elements.get(3).getAsJsonObject().get("marker").getAsString());
+        assertEquals(1e-6, elements.get(4).getAsJsonObject().get("timestamp").getAsDouble(), 1e-9);
+        assertEquals(2e-6, elements.get(5).getAsJsonObject().get("timestamp").getAsDouble(), 1e-9);
+        assertEquals(RecorderPauseMarker.PAUSE, elements.get(6).getAsJsonObject().get("marker").getAsString());
+    }
+
+    @NonNull
+    private static JsonArray readArray(@NonNull File file) throws Exception {
+        try (Reader reader = new FileReader(file)) {
+            return new JsonParser().parse(reader).getAsJsonArray();
+        }
+    }
+
+    @NonNull
+    private static SensorEvent withTimestamp(@NonNull SensorEvent event, long timestampNanos) {
+        event.timestamp = timestampNanos;
+        return event;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
+import org.sagebionetworks.research.domain.result.interfaces.FileResult;
+import org.sagebionetworks.research.presentation.recorder.benchmark.FakeSensorEvents;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+import org.sagebionetworks.research.presentation.recorder.util.JvmRecorderClock;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.processors.PublishProcessor;
+
+public class ShardedSensorRecorderTest {
+    private static final long RESULT_TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public JvmRecorderClock recorderClock = new JvmRecorderClock();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // mocks cannot be serialized, so fake Sensors are written as their type
+    private final Gson gson = new GsonBuilder()
+            .registerTypeHierarchyAdapter(Sensor.class,
+                    (JsonSerializer<Sensor>) (sensor, type, context) -> new JsonPrimitive(sensor.getType()))
+            .registerTypeAdapter(Instant.class,
+                    (JsonSerializer<Instant>) (instant, type, context) -> new JsonPrimitive(instant.toString()))
+            .create();
+
+    private final Map<Integer, PublishProcessor<SensorSample>> sensorSamples = new LinkedHashMap<>();
+
+    private final Map<Integer, ReactiveSensorJsonRecorder> shards = new LinkedHashMap<>();
+
+    @Test
+    public void testStop_manifestListsShardsInOrder() throws Exception {
+        // the manifest follows the order of the shards, not of the sensor types
+        ShardedSensorRecorder recorder = createRecorder(Sensor.TYPE_GYROSCOPE, Sensor.TYPE_ACCELEROMETER);
+
+        recorder.start();
+        for (int sensorType : sensorSamples.keySet()) {
+            sensorSamples.get(sensorType).onNext(createSample(sensorType, 1_000L));
+        }
+        recorder.stop();
+
+        FileResult result = recorder.getResult().timeout(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS).blockingGet();
+        JsonObject manifest = readJson(new File(result.getRelativePath()));
+        assertEquals("motion", manifest.get("identifier").getAsString());
+        JsonArray manifestShards = manifest.getAsJsonArray("shards");
+        assertEquals(2, manifestShards.size());
+        assertShard(manifestShards.get(0).getAsJsonObject(), Sensor.TYPE_GYROSCOPE);
+        assertShard(manifestShards.get(1).getAsJsonObject(), Sensor.TYPE_ACCELEROMETER);
+        assertEquals(2, recorder.getShardResults().size());
+    }
+
+    @Test
+    public void testCancel_cancelledShardLeavesNoManifest() {
+        ShardedSensorRecorder recorder = createRecorder(Sensor.TYPE_GYROSCOPE, Sensor.TYPE_ACCELEROMETER);
+        File manifestFile = new File(temporaryFolder.getRoot(), "motion.json");
+
+        recorder.start();
+        shards.get(Sensor.TYPE_GYROSCOPE).cancel();
+        recorder.stop();
+
+        recorder.getResult().test()
+                .awaitDone(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .assertComplete()
+                .assertNoValues();
+        assertFalse(manifestFile.exists());
+    }
+
+    @Test
+    public void testPauseResume_fansOutToShards() {
+        ShardedSensorRecorder recorder = createRecorder(Sensor.TYPE_GYROSCOPE, Sensor.TYPE_ACCELEROMETER);
+
+        recorder.start();
+        recorder.pause();
+        assertTrue(recorder.isPaused());
+        for (int sensorType : shards.keySet()) {
+            assertTrue(shards.get(sensorType).isPaused());
+            // pausing releases the sensors
+            assertFalse(sensorSamples.get(sensorType).hasSubscribers());
+        }
+
+        recorder.resume();
+        assertFalse(recorder.isPaused());
+        for (int sensorType : shards.keySet()) {
+            assertFalse(shards.get(sensorType).isPaused());
+            assertTrue(sensorSamples.get(sensorType).hasSubscribers());
+        }
+        recorder.cancel();
+    }
+
+    private static void assertShard(@NonNull JsonObject manifestShard, int sensorType) {
+        String shardIdentifier = ShardedSensorRecorder.getShardIdentifier("motion", sensorType);
+        assertEquals(shardIdentifier, manifestShard.get("identifier").getAsString());
+        assertEquals(shardIdentifier + ".json", manifestShard.get("file").getAsString());
+        assertEquals(ReactiveFileResultRecorder.JSON_MIME_CONTENT_TYPE,
+                manifestShard.get("contentType").getAsString());
+        assertEquals(sensorType, manifestShard.get("sensorAndroidType").getAsInt());
+    }
+
+    @NonNull
+    private static SensorSample createSample(int sensorType, long timestampNanos) {
+        SensorEvent event = FakeSensorEvents.createSensorEvent(sensorType, 3);
+        event.timestamp = timestampNanos;
+        return SensorSample.copyOf(event);
+    }
+
+    @NonNull
+    private static JsonObject readJson(@NonNull File file) throws Exception {
+        try (Reader reader = new FileReader(file)) {
+            return new JsonParser().parse(reader).getAsJsonObject();
+        }
+    }
+
+    @NonNull
+    private ShardedSensorRecorder createRecorder(int... sensorTypes) {
+        for (int sensorType : sensorTypes) {
+            String shardIdentifier = ShardedSensorRecorder.getShardIdentifier("motion", sensorType);
+            PublishProcessor<SensorSample> shardSamples = PublishProcessor.create();
+            sensorSamples.put(sensorType, shardSamples);
+            shards.put(sensorType, ReactiveSensorJsonRecorder.create(shardIdentifier, shardSamples, gson,
+                    new File(temporaryFolder.getRoot(), shardIdentifier + ".json"), BatchPolicy.NONE,
+                    RecorderOutputCompression.NONE, false, SegmentPolicy.NONE));
+        }
+        return new ShardedSensorRecorder("motion", shards, gson, new File(temporaryFolder.getRoot(), "motion.json"));
+    }
+}
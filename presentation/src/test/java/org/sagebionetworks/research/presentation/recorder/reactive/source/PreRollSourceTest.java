@@ -0,0 +1,176 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.subscribers.TestSubscriber;
+
+public class PreRollSourceTest {
+    @Test
+    public void testTakeOver_trimmedToStart() {
+        PublishProcessor<Long> source = PublishProcessor.create();
+        PreRollSource<Long> preRollSource = new PreRollSource<>(source, timestamp -> timestamp, 100, 100);
+        preRollSource.warm();
+        for (long timestamp = 0; timestamp < 10; timestamp++) {
+            source.onNext(timestamp);
+        }
+
+        preRollSource.start(5);
+        TestSubscriber<Long> subscriber = preRollSource.getFlowable().test();
+        source.onNext(10L);
+        // delivered late from a FIFO, but taken before the start
+        source.onNext(4L);
+        source.onNext(11L);
+
+        subscriber.assertValues(5L, 6L, 7L, 8L, 9L, 10L, 11L);
+        // the warm subscription is the only one to the source
+        assertFalse(preRollSource.isWarm());
+        subscriber.cancel();
+        assertFalse(source.hasSubscribers());
+    }
+
+    @Test
+    public void testTakeOver_demandFollowsSubscriber() {
+        AtomicReference<FlowableEmitter<Long>> emitter = new AtomicReference<>();
+        Flowable<Long> source = Flowable.create(emitter::set, BackpressureStrategy.DROP);
+        PreRollSource<Long> preRollSource = new PreRollSource<>(source, timestamp -> timestamp, 100, 4);
+        preRollSource.warm();
+        for (long timestamp = 0; timestamp < 10; timestamp++) {
+            emitter.get().onNext(timestamp);
+        }
+        // the warm subscription only requests what the ring holds
+        assertEquals(4, emitter.get().requested());
+
+        preRollSource.start(7);
+        TestSubscriber<Long> subscriber = preRollSource.getFlowable().test(1);
+        subscriber.assertValues(7L);
+        for (long timestamp = 10; timestamp < 20; timestamp++) {
+            emitter.get().onNext(timestamp);
+        }
+        // the items beyond the ring and the subscriber's demand are left to the source's backpressure strategy
+        assertEquals(0, emitter.get().requested());
+
+        subscriber.requestMore(100);
+        subscriber.assertValues(7L, 8L, 9L, 10L, 11L, 12L, 13L, 14L);
+        emitter.get().onNext(20L);
+        emitter.get().onComplete();
+        subscriber.assertValues(7L, 8L, 9L, 10L, 11L, 12L, 13L, 14L, 20L);
+        subscriber.assertComplete();
+        assertFalse(preRollSource.isWarm());
+    }
+
+    @Test
+    public void testTakeOver_lateItemsTrimmedForOneWindow() {
+        PublishProcessor<Long> source = PublishProcessor.create();
+        PreRollSource<Long> preRollSource = new PreRollSource<>(source, timestamp -> timestamp, 10, 100);
+        preRollSource.warm();
+        source.onNext(9L);
+
+        preRollSource.start(10);
+        TestSubscriber<Long> subscriber = preRollSource.getFlowable().test();
+        source.onNext(8L);
+        source.onNext(20L);
+        // once an item taken a window after the start has arrived, items are no longer trimmed
+        source.onNext(7L);
+
+        subscriber.assertValues(20L, 7L);
+    }
+
+    @Test
+    public void testTakeOver_otherTimeBaseNotTrimmed() {
+        PublishProcessor<Long> source = PublishProcessor.create();
+        PreRollSource<Long> preRollSource = new PreRollSource<>(source, timestamp -> timestamp, 10, 100);
+        preRollSource.warm();
+        source.onNext(1L);
+        source.onNext(2L);
+
+        // the items are timestamped far behind the start, so they can't be compared with it
+        preRollSource.start(1000);
+        TestSubscriber<Long> subscriber = preRollSource.getFlowable().test();
+        source.onNext(3L);
+        source.onNext(4L);
+
+        subscriber.assertValues(3L, 4L);
+    }
+
+    @Test
+    public void testWarm_boundedByWindowAndSize() {
+        PublishProcessor<Long> source = PublishProcessor.create();
+        PreRollSource<Long> preRollSource = new PreRollSource<>(source, timestamp -> timestamp, 3, 100);
+        preRollSource.warm();
+        for (long timestamp = 0; timestamp < 10; timestamp++) {
+            source.onNext(timestamp);
+        }
+        preRollSource.start(0);
+        preRollSource.getFlowable().test().assertValues(6L, 7L, 8L, 9L);
+
+        preRollSource = new PreRollSource<>(source, timestamp -> timestamp, 100, 2);
+        preRollSource.warm();
+        for (long timestamp = 0; timestamp < 10; timestamp++) {
+            source.onNext(timestamp);
+        }
+        preRollSource.start(0);
+        preRollSource.getFlowable().test().assertValues(8L, 9L);
+    }
+
+    @Test
+    public void testDiscard_releasesSource() {
+        PublishProcessor<Long> source = PublishProcessor.create();
+        PreRollSource<Long> preRollSource = new PreRollSource<>(source, timestamp -> timestamp);
+        preRollSource.warm();
+        assertTrue(preRollSource.isWarm());
+        assertTrue(source.hasSubscribers());
+        source.onNext(1L);
+
+        preRollSource.discard();
+        assertFalse(preRollSource.isWarm());
+        assertFalse(source.hasSubscribers());
+
+        // without a warm subscription the source is subscribed to directly, and nothing is trimmed
+        preRollSource.start(2);
+        TestSubscriber<Long> subscriber = preRollSource.getFlowable().test();
+        source.onNext(0L);
+        subscriber.assertValues(0L);
+    }
+}
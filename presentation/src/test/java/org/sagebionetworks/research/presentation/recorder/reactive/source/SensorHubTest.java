@@ -0,0 +1,219 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.reactive.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import androidx.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sagebionetworks.research.presentation.recorder.benchmark.FakeSensorEvents;
+import org.sagebionetworks.research.presentation.recorder.reactive.source.SensorSourceFactory.SensorConfig;
+import org.sagebionetworks.research.presentation.recorder.reactive.source.SensorSourceFactory.SensorConfig.SensorConfigBuilder;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+import org.sagebionetworks.research.presentation.recorder.util.JvmRecorderClock;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subscribers.TestSubscriber;
+
+public class SensorHubTest {
+    private static final int SENSOR_TYPE = Sensor.TYPE_ACCELEROMETER;
+
+    @Mock
+    private Handler callbackHandler;
+
+    @Mock
+    private SensorHub.CallbackThreads callbackThreads;
+
+    @Mock
+    private Sensor sensor;
+
+    @Rule
+    public JvmRecorderClock recorderClock = new JvmRecorderClock();
+
+    private SensorHub sensorHub;
+
+    @Mock
+    private SensorManager sensorManager;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(sensor.getType()).thenReturn(SENSOR_TYPE);
+        when(sensorManager.getDefaultSensor(SENSOR_TYPE)).thenReturn(sensor);
+        when(sensorManager.registerListener(any(SensorEventListener.class), eq(sensor), anyInt(), anyInt(),
+                eq(callbackHandler))).thenReturn(true);
+        when(sensorManager.flush(any(SensorEventListener.class))).thenReturn(true);
+        when(callbackThreads.start(anyString())).thenReturn(callbackHandler);
+        sensorHub = new SensorHub(sensorManager, callbackThreads);
+    }
+
+    @Test
+    public void testObserveSamples_sharesOneRegistration() {
+        TestSubscriber<SensorSample> first = sensorHub.observeSamples(config(20_000, 0)).test();
+        // a different callback thread does not make it a different registration
+        TestSubscriber<SensorSample> second = sensorHub.observeSamples(
+                new SensorConfigBuilder(SENSOR_TYPE).setSamplingPeriodInUs(20_000)
+                        .setCallbackThreadName("OtherCallbacks").build()).test();
+
+        verify(sensorManager, times(1)).registerListener(any(SensorEventListener.class), eq(sensor), eq(20_000),
+                eq(0), eq(callbackHandler));
+        verify(callbackThreads, times(1)).start(anyString());
+        assertEquals(1, sensorHub.getRegistrationCount());
+
+        first.cancel();
+        verify(sensorManager, never()).unregisterListener(any(SensorEventListener.class));
+        second.cancel();
+        verify(sensorManager).unregisterListener(any(SensorEventListener.class));
+        verify(callbackThreads).quit(SensorConfig.DEFAULT_CALLBACK_THREAD_NAME);
+        assertEquals(0, sensorHub.getRegistrationCount());
+    }
+
+    @Test
+    public void testObserveSamples_decimatedForSlowerSubscribers() {
+        TestSubscriber<SensorSample> fast = sensorHub.observeSamples(config(5_000, 0)).test();
+        TestSubscriber<SensorSample> slow = sensorHub.observeSamples(config(10_000, 0)).test();
+        SensorEventListener2 listener = getListener();
+
+        for (long timestampNanos = 0; timestampNanos <= 20_000_000L; timestampNanos += 5_000_000L) {
+            listener.onSensorChanged(createSensorEvent(timestampNanos));
+        }
+
+        assertEquals(5_000, sensorHub.getRegisteredSamplingPeriodUs(SENSOR_TYPE));
+        fast.assertValueCount(5);
+        slow.assertValueCount(3);
+        assertEquals(0L, slow.values().get(0).timestampNanos);
+        assertEquals(10_000_000L, slow.values().get(1).timestampNanos);
+        assertEquals(20_000_000L, slow.values().get(2).timestampNanos);
+    }
+
+    @Test
+    public void testUpdateRegistration_fifoDeliveredBeforeReregistering() {
+        TestSubscriber<SensorSample> slow = sensorHub.observeSamples(config(20_000, 100_000)).test();
+        SensorEventListener2 listener = getListener();
+        TestSubscriber<SensorSample> fast = sensorHub.observeSamples(config(10_000, 100_000)).test();
+
+        // the sensor keeps its registration until the samples in its FIFO have been delivered
+        verify(sensorManager).flush(listener);
+        verify(sensorManager, never()).unregisterListener(any(SensorEventListener.class));
+        assertEquals(20_000, sensorHub.getRegisteredSamplingPeriodUs(SENSOR_TYPE));
+        listener.onSensorChanged(createSensorEvent(1_000_000L));
+        listener.onFlushCompleted(sensor);
+
+        InOrder inOrder = inOrder(sensorManager);
+        inOrder.verify(sensorManager).flush(listener);
+        inOrder.verify(sensorManager).unregisterListener(listener);
+        inOrder.verify(sensorManager).registerListener(listener, sensor, 10_000, 100_000, callbackHandler);
+        assertEquals(10_000, sensorHub.getRegisteredSamplingPeriodUs(SENSOR_TYPE));
+        slow.assertValueCount(1);
+        fast.assertValueCount(1);
+    }
+
+    @Test
+    public void testFlush_completedBySensor() {
+        SensorConfig config = config(20_000, 100_000);
+        sensorHub.observeSamples(config).test();
+        SensorEventListener2 listener = getListener();
+
+        TestObserver<Void> flush = sensorHub.flush(config).test();
+        sensorHub.observeSamples(config(10_000, 100_000)).test();
+        TestObserver<Void> laterFlush = sensorHub.flush(config).test();
+        flush.assertNotComplete();
+        listener.onFlushCompleted(sensor);
+        flush.assertComplete();
+
+        // the re-registration waited behind the first flush, the later flush is requested again from the new
+        // registration
+        listener.onFlushCompleted(sensor);
+        verify(sensorManager).registerListener(listener, sensor, 10_000, 100_000, callbackHandler);
+        verify(sensorManager, times(4)).flush(listener);
+        laterFlush.assertNotComplete();
+        listener.onFlushCompleted(sensor);
+        laterFlush.assertComplete();
+    }
+
+    @Test
+    public void testFlush_completesWithoutBatching() {
+        SensorConfig config = config(20_000, 0);
+        sensorHub.observeSamples(config).test();
+
+        sensorHub.flush(config).test().assertComplete();
+        verify(sensorManager, never()).flush(any(SensorEventListener.class));
+    }
+
+    @NonNull
+    private static SensorConfig config(int samplingPeriodUs, int maxReportLatencyUs) {
+        return new SensorConfigBuilder(SENSOR_TYPE).setSamplingPeriodInUs(samplingPeriodUs)
+                .setMaxReportLatencyUs(maxReportLatencyUs).setBackpressureStrategy(BackpressureStrategy.BUFFER)
+                .build();
+    }
+
+    @NonNull
+    private SensorEvent createSensorEvent(long timestampNanos) {
+        SensorEvent event = FakeSensorEvents.createSensorEvent(SENSOR_TYPE, 3);
+        event.sensor = sensor;
+        event.timestamp = timestampNanos;
+        return event;
+    }
+
+    @NonNull
+    private SensorEventListener2 getListener() {
+        ArgumentCaptor<SensorEventListener> listener = ArgumentCaptor.forClass(SensorEventListener.class);
+        verify(sensorManager, atLeastOnce()).registerListener(listener.capture(), eq(sensor), anyInt(), anyInt(),
+                eq(callbackHandler));
+        return (SensorEventListener2) listener.getValue();
+    }
+}
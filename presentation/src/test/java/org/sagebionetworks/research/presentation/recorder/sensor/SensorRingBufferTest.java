@@ -0,0 +1,128 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SensorRingBufferTest {
+    private static final int SENSOR_TYPE = 1;
+
+    @Test
+    public void testCapacity_roundsUpToPowerOfTwo() {
+        assertEquals(1, new SensorRingBuffer(1).getCapacity());
+        assertEquals(8, new SensorRingBuffer(5).getCapacity());
+        assertEquals(16, new SensorRingBuffer(16).getCapacity());
+    }
+
+    @Test
+    public void testOfferPoll_preservesSamples() {
+        SensorRingBuffer ringBuffer = new SensorRingBuffer(4);
+        assertTrue(ringBuffer.offer(null, SENSOR_TYPE, 10L, new float[]{1f, 2f, 3f}, 3));
+        assertTrue(ringBuffer.offer(null, SENSOR_TYPE + 1, 20L, new float[]{4f, 5f}, 2));
+
+        SensorRecord record = ringBuffer.poll();
+        assertEquals(SENSOR_TYPE, record.sensorType);
+        assertEquals(10L, record.timestampNanos);
+        assertEquals(3, record.valueCount);
+        assertEquals(3f, record.values[2], 0);
+
+        record = ringBuffer.poll();
+        assertEquals(SENSOR_TYPE + 1, record.sensorType);
+        assertEquals(20L, record.timestampNanos);
+        assertEquals(2, record.valueCount);
+        assertEquals(5f, record.values[1], 0);
+
+        assertNull(ringBuffer.poll());
+        assertEquals(2, ringBuffer.getDrainedCount());
+    }
+
+    @Test
+    public void testOffer_countsOverruns() {
+        SensorRingBuffer ringBuffer = new SensorRingBuffer(4);
+        float[] values = {0f};
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ringBuffer.offer(null, SENSOR_TYPE, i, values, 1));
+        }
+        assertFalse(ringBuffer.offer(null, SENSOR_TYPE, 4, values, 1));
+        assertFalse(ringBuffer.offer(null, SENSOR_TYPE, 5, values, 1));
+
+        assertEquals(2, ringBuffer.getOverrunCount());
+        assertEquals(6, ringBuffer.getOfferedCount());
+        assertEquals(4, ringBuffer.getHighWaterMark());
+
+        // the oldest samples are kept, the newest are dropped
+        assertEquals(0L, ringBuffer.poll().timestampNanos);
+        assertTrue(ringBuffer.offer(null, SENSOR_TYPE, 6, values, 1));
+        assertEquals(1L, ringBuffer.poll().timestampNanos);
+        assertEquals(4, ringBuffer.getHighWaterMark());
+    }
+
+    @Test
+    public void testOfferPoll_singleProducerSingleConsumer() throws InterruptedException {
+        final int sampleCount = 200_000;
+        final SensorRingBuffer ringBuffer = new SensorRingBuffer(64);
+        Thread producer = new Thread(() -> {
+            float[] values = new float[3];
+            for (int i = 0; i < sampleCount; i++) {
+                values[0] = i;
+                while (!ringBuffer.offer(null, SENSOR_TYPE, i, values, 3)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        long expected = 0;
+        while (expected < sampleCount) {
+            SensorRecord record = ringBuffer.poll();
+            if (record == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(expected, record.timestampNanos);
+            assertEquals((float) expected, record.values[0], 0);
+            expected++;
+        }
+        producer.join();
+
+        assertNull(ringBuffer.poll());
+        assertEquals(sampleCount, ringBuffer.getDrainedCount());
+        assertTrue(ringBuffer.getHighWaterMark() <= ringBuffer.getCapacity());
+        assertTrue(ringBuffer.getMaxDrainLatencyNanos() >= ringBuffer.getMeanDrainLatencyNanos());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.columnar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.hardware.Sensor;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+import org.sagebionetworks.research.presentation.recorder.RecorderPauseMarker;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil;
+import org.threeten.bp.Instant;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+public class SensorColumnarReaderTest {
+    private static final long FIRST_TIMESTAMP = 5_000_000_000L;
+
+    private static final long PERIOD = 10_000_000L;
+
+    @Test
+    public void testTranscodeToJson() throws IOException {
+        // small blocks so the samples span more than one column block
+        byte[] bytes = writeGyroscopeRecording(3, 2);
+
+        JsonArray records = transcode(bytes);
+        // first event is logged twice, once with the sensor description and once as a sample
+        assertEquals(4, records.size());
+
+        JsonObject header = records.get(0).getAsJsonObject();
+        assertTrue(header.has("sensor"));
+        assertTrue(header.has("timestampDate"));
+        assertEquals("gyro", header.getAsJsonObject("sensor").get("mName").getAsString());
+        assertEquals(0, header.get("timestamp").getAsDouble(), 0);
+        assertEquals(FIRST_TIMESTAMP / 1e9, header.get("uptime").getAsDouble(), 1e-9);
+
+        for (int i = 0; i < 3; i++) {
+            JsonObject sample = records.get(i + 1).getAsJsonObject();
+            assertFalse(sample.has("sensor"));
+            assertEquals(DeviceMotionUtil.SENSOR_TYPE_TO_DATA_TYPE.get(Sensor.TYPE_GYROSCOPE),
+                    sample.get("sensorType").getAsString());
+            assertEquals("rad/s", sample.get("unit").getAsString());
+            assertEquals(i * PERIOD / 1e9, sample.get("timestamp").getAsDouble(), 1e-9);
+            assertEquals(i, sample.get("x").getAsDouble(), 1e-6);
+            assertEquals(i + 0.5, sample.get("y").getAsDouble(), 1e-6);
+            assertEquals(-i, sample.get("z").getAsDouble(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testPauseMarkers_betweenSamples() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SensorColumnarWriter writer = new SensorColumnarWriter(outputStream);
+        writer.writeSensorDescription(
+                new SensorDescription(Sensor.TYPE_GYROSCOPE, 3, "gyro", "vendor", 1, 10, 0.01f, 0.5f, 5000));
+        writer.writeReference(Sensor.TYPE_GYROSCOPE, FIRST_TIMESTAMP, Instant.ofEpochSecond(1_500_000_000L));
+        writer.append(Sensor.TYPE_GYROSCOPE, FIRST_TIMESTAMP, new float[]{0, 0, 0});
+        writer.writePauseMarker(new RecorderPauseMarker(RecorderPauseMarker.PAUSE,
+                Instant.ofEpochSecond(1_500_000_006L), FIRST_TIMESTAMP + PERIOD));
+        writer.writePauseMarker(new RecorderPauseMarker(RecorderPauseMarker.RESUME,
+                Instant.ofEpochSecond(1_500_000_010L), FIRST_TIMESTAMP + 100 * PERIOD));
+        writer.append(Sensor.TYPE_GYROSCOPE, FIRST_TIMESTAMP + 101 * PERIOD, new float[]{1, 1, 1});
+        writer.close();
+
+        JsonArray records = transcode(outputStream.toByteArray());
+        assertEquals(5, records.size());
+        assertEquals(0, records.get(1).getAsJsonObject().get("timestamp").getAsDouble(), 0);
+        JsonObject pause = records.get(2).getAsJsonObject();
+        assertEquals(RecorderPauseMarker.PAUSE, pause.get("marker").getAsString());
+        assertEquals("2017-07-14T02:40:06Z", pause.get("timestampDate").getAsString());
+        assertEquals((FIRST_TIMESTAMP + PERIOD) / 1e9, pause.get("uptime").getAsDouble(), 1e-9);
+        assertEquals(RecorderPauseMarker.RESUME, records.get(3).getAsJsonObject().get("marker").getAsString());
+        assertEquals(101 * PERIOD / 1e9, records.get(4).getAsJsonObject().get("timestamp").getAsDouble(), 1e-9);
+    }
+
+    @Test
+    public void testTruncatedFileKeepsCompleteBlocks() throws IOException {
+        byte[] bytes = writeGyroscopeRecording(3, 2);
+
+        // cut into the last column block
+        JsonArray records = transcode(Arrays.copyOf(bytes, bytes.length - 4));
+        assertEquals(3, records.size());
+    }
+
+    private static JsonArray transcode(byte[] bytes) throws IOException {
+        StringWriter writer = new StringWriter();
+        SensorColumnarReader.transcodeToJson(new ByteArrayInputStream(bytes), writer);
+        return new JsonParser().parse(writer.toString()).getAsJsonArray();
+    }
+
+    private static byte[] writeGyroscopeRecording(int sampleCount, int blockCapacity) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SensorColumnarWriter writer = new SensorColumnarWriter(outputStream, blockCapacity);
+        writer.writeSensorDescription(
+                new SensorDescription(Sensor.TYPE_GYROSCOPE, 3, "gyro", "vendor", 1, 10, 0.01f, 0.5f, 5000));
+        writer.writeReference(Sensor.TYPE_GYROSCOPE, FIRST_TIMESTAMP, Instant.ofEpochSecond(1_500_000_000L));
+        for (int i = 0; i < sampleCount; i++) {
+            writer.append(Sensor.TYPE_GYROSCOPE, FIRST_TIMESTAMP + i * PERIOD, new float[]{i, i + 0.5f, -i});
+        }
+        writer.close();
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.hardware.Sensor;
+
+import org.junit.Test;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MotionFeatureExtractorTest {
+    private static final long PERIOD_NANOS = 10_000_000L;
+
+    private static final int SAMPLES_PER_WINDOW = 1000;
+
+    @Test
+    public void testWalking() {
+        // 2 steps per second, the vertical acceleration swinging 0.3g around gravity
+        MotionFeatureExtractor extractor = new MotionFeatureExtractor(SAMPLES_PER_WINDOW * PERIOD_NANOS);
+        List<MotionFeatureSummary> summaries = new ArrayList<>();
+        for (int i = 0; i <= SAMPLES_PER_WINDOW; i++) {
+            double t = i * PERIOD_NANOS * 1e-9;
+            float z = (float) ((1 + 0.3 * Math.sin(2 * Math.PI * 2 * t)) * DeviceMotionUtil.GRAVITY_SI_CONVERSION);
+            summaries.addAll(extractor.add(Sensor.TYPE_ACCELEROMETER, i * PERIOD_NANOS, new float[]{0, 0, z}));
+        }
+
+        assertEquals(1, summaries.size());
+        MotionFeatureSummary summary = summaries.get(0);
+        assertEquals("acceleration", summary.sensorType);
+        assertEquals(SAMPLES_PER_WINDOW, summary.sampleCount);
+        assertEquals(0, summary.startUptime, 1e-9);
+        assertEquals(9.99, summary.endUptime, 1e-9);
+        assertEquals(0, summary.mean[0], 1e-6);
+        assertEquals(1, summary.mean[2], 1e-3);
+        assertEquals(0.3 * 0.3 / 2, summary.variance[2], 1e-3);
+        assertEquals(Math.sqrt(1 + 0.3 * 0.3 / 2), summary.rms[2], 1e-3);
+        assertEquals(0.3 * 4 * Math.PI / Math.sqrt(2), summary.jerkRms, 0.01);
+        assertEquals(Integer.valueOf(20), summary.stepCount);
+        // the walking rhythm is outside the tremor band
+        assertTrue(summary.bandPower < 1e-4);
+        assertEquals(0.3 * 0.3 / 2, summary.totalPower, 1e-3);
+    }
+
+    @Test
+    public void testTremorBandPower() {
+        MotionFeatureExtractor extractor = new MotionFeatureExtractor(SAMPLES_PER_WINDOW * PERIOD_NANOS);
+        // a 5Hz rotation rate oscillation, with some jitter in the sample times
+        for (int i = 0; i < SAMPLES_PER_WINDOW; i++) {
+            long timestampNanos = i * PERIOD_NANOS + (i % 3) * 1_000_000L;
+            double t = timestampNanos * 1e-9;
+            float x = (float) (1 + 0.1 * Math.sin(2 * Math.PI * 5 * t));
+            assertTrue(extractor.add(Sensor.TYPE_GYROSCOPE, timestampNanos, new float[]{x, 0, 0}).isEmpty());
+        }
+        List<MotionFeatureSummary> summaries = extractor.finish();
+
+        assertEquals(1, summaries.size());
+        MotionFeatureSummary summary = summaries.get(0);
+        assertEquals("rotationRate", summary.sensorType);
+        assertEquals(MotionFeatureExtractor.TREMOR_BAND_LOW_HZ, summary.bandLowHz, 0);
+        assertEquals(MotionFeatureExtractor.TREMOR_BAND_HIGH_HZ, summary.bandHighHz, 0);
+        assertEquals(0.1 * 0.1 / 2, summary.totalPower, 1e-4);
+        assertEquals(summary.totalPower, summary.bandPower, 2e-4);
+        // only acceleration has jerk and steps
+        assertNull(summary.jerkRms);
+        assertNull(summary.stepCount);
+    }
+
+    @Test
+    public void testWindowsRollPerSensor() {
+        MotionFeatureExtractor extractor = new MotionFeatureExtractor(100 * PERIOD_NANOS);
+        List<MotionFeatureSummary> summaries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            summaries.addAll(extractor.add(Sensor.TYPE_GYROSCOPE, i * PERIOD_NANOS, new float[]{i, 0, 0}));
+            if (i % 2 == 0) {
+                summaries.addAll(extractor.add(Sensor.TYPE_MAGNETIC_FIELD, i * PERIOD_NANOS, new float[]{0, i, 0}));
+            }
+        }
+        summaries.addAll(extractor.finish());
+
+        assertEquals(20, summaries.size());
+        for (MotionFeatureSummary summary : summaries) {
+            assertEquals("rotationRate".equals(summary.sensorType) ? 100 : 50, summary.sampleCount);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.frame;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.hardware.Sensor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MotionFrameAlignerTest {
+    private static final long MILLIS = 1_000_000L;
+
+    private static final int[] SENSOR_TYPES = {Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_GYROSCOPE};
+
+    @Test
+    public void testLinearInterpolation() {
+        MotionFrameAligner aligner = new MotionFrameAligner(SENSOR_TYPES, 10 * MILLIS,
+                MotionFrameAligner.DEFAULT_MAX_SKEW_NANOS);
+        List<MotionFrame> frames = new ArrayList<>();
+        // the accelerometer samples every 4ms, the gyroscope every 5ms with an offset
+        for (int i = 0; i <= 25; i++) {
+            frames.addAll(aligner.add(Sensor.TYPE_ACCELEROMETER, 1000 * MILLIS + i * 4 * MILLIS,
+                    new float[]{i * 4, 0, 0}));
+        }
+        for (int i = 0; i <= 20; i++) {
+            frames.addAll(aligner.add(Sensor.TYPE_GYROSCOPE, 1001 * MILLIS + i * 5 * MILLIS,
+                    new float[]{0, i * 5 + 1, 0}));
+        }
+
+        // ticks start once both sensors have reported and stop at the oldest newest sample
+        assertEquals(10, frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            MotionFrame frame = frames.get(i);
+            long elapsedMillis = i * 10;
+            assertEquals(elapsedMillis * MILLIS, frame.elapsedNanos);
+            assertEquals((1001 + elapsedMillis) * MILLIS, frame.uptimeNanos);
+            // both ramps are the number of millis since 1000, so interpolation recovers the tick time
+            assertEquals(1 + elapsedMillis, frame.getValues(Sensor.TYPE_ACCELEROMETER)[0], 1e-4);
+            assertEquals(1 + elapsedMillis, frame.getValues(Sensor.TYPE_GYROSCOPE)[1], 1e-4);
+        }
+    }
+
+    @Test
+    public void testLaggingSensorHoldsAfterMaxSkew() {
+        MotionFrameAligner aligner = new MotionFrameAligner(SENSOR_TYPES, 10 * MILLIS, 50 * MILLIS);
+        List<MotionFrame> frames = new ArrayList<>();
+        assertTrue(aligner.add(Sensor.TYPE_GYROSCOPE, 0, new float[]{1, 1, 1}).isEmpty());
+        frames.addAll(aligner.add(Sensor.TYPE_ACCELEROMETER, 0, new float[]{0, 0, 0}));
+        assertEquals(1, frames.size());
+
+        // the gyroscope stops reporting, frames wait for it until the accelerometer is more than 50ms ahead
+        for (int i = 1; i <= 10; i++) {
+            frames.addAll(aligner.add(Sensor.TYPE_ACCELEROMETER, i * 10 * MILLIS, new float[]{i, 0, 0}));
+        }
+        assertEquals(5, frames.size());
+        for (MotionFrame frame : frames) {
+            assertArrayEquals(new float[]{1, 1, 1}, frame.getValues(Sensor.TYPE_GYROSCOPE), 0);
+        }
+
+        // finishing produces the ticks up to the newest sample
+        frames.addAll(aligner.finish());
+        assertEquals(11, frames.size());
+        assertEquals(10, frames.get(10).getValues(Sensor.TYPE_ACCELEROMETER)[0], 0);
+    }
+
+    @Test
+    public void testMissingSensor() {
+        MotionFrameAligner aligner = new MotionFrameAligner(SENSOR_TYPES, 10 * MILLIS, 50 * MILLIS);
+        List<MotionFrame> frames = new ArrayList<>();
+        for (int i = 0; i <= 10; i++) {
+            frames.addAll(aligner.add(Sensor.TYPE_ACCELEROMETER, i * 10 * MILLIS, new float[]{i, 0, 0}));
+        }
+        // ignored, not one of the aligned sensors
+        frames.addAll(aligner.add(Sensor.TYPE_MAGNETIC_FIELD, 100 * MILLIS, new float[]{1, 2, 3}));
+
+        assertEquals(5, frames.size());
+        assertNull(frames.get(0).getValues(Sensor.TYPE_GYROSCOPE));
+        assertNull(frames.get(0).getValues(Sensor.TYPE_MAGNETIC_FIELD));
+        assertEquals(0, frames.get(0).getValues(Sensor.TYPE_ACCELEROMETER)[0], 0);
+    }
+
+    @Test
+    public void testRotationVectorSlerp() {
+        int[] sensorTypes = {Sensor.TYPE_ROTATION_VECTOR};
+        MotionFrameAligner aligner = new MotionFrameAligner(sensorTypes, 5 * MILLIS, 0);
+        // identity, then a rotation of 90 degrees about z
+        float half = (float) Math.sqrt(0.5);
+        List<MotionFrame> frames = new ArrayList<>();
+        frames.addAll(aligner.add(Sensor.TYPE_ROTATION_VECTOR, 0, new float[]{0, 0, 0, 1, 0.1f}));
+        frames.addAll(aligner.add(Sensor.TYPE_ROTATION_VECTOR, 10 * MILLIS, new float[]{0, 0, half, half, 0.3f}));
+
+        assertEquals(3, frames.size());
+        float[] middle = frames.get(1).getValues(Sensor.TYPE_ROTATION_VECTOR);
+        // halfway is a rotation of 45 degrees, which linear interpolation of the components would not give
+        double angle = Math.PI / 8;
+        assertEquals(0, middle[0], 1e-6);
+        assertEquals(0, middle[1], 1e-6);
+        assertEquals(Math.sin(angle), middle[2], 1e-6);
+        assertEquals(Math.cos(angle), middle[3], 1e-6);
+        assertEquals(0.2, middle[4], 1e-6);
+    }
+
+    @Test
+    public void testSlerpTakesShortestPath() {
+        double[] from = {0, 0, 0, 1};
+        // the same rotation as {0, 0, sin(pi/8), cos(pi/8)}, with the opposite sign
+        double[] to = {0, 0, -Math.sin(Math.PI / 8), -Math.cos(Math.PI / 8)};
+        double[] result = new double[4];
+        MotionFrameAligner.slerp(from, to, 0.5, result);
+        assertEquals(Math.sin(Math.PI / 16), result[2], 1e-9);
+        assertEquals(Math.cos(Math.PI / 16), result[3], 1e-9);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.frame;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.hardware.Sensor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.sagebionetworks.research.presentation.recorder.util.JvmRecorderClock;
+
+import java.io.IOException;
+
+public class MotionFrameTypeAdapterTest {
+    @Rule
+    public JvmRecorderClock recorderClock = new JvmRecorderClock();
+
+    private final MotionFrameTypeAdapter adapter = new MotionFrameTypeAdapter();
+
+    @Test
+    public void testRead_roundTrip() throws IOException {
+        int[] sensorTypes = {Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_GYROSCOPE, Sensor.TYPE_GAME_ROTATION_VECTOR};
+        float[][] values = {{0f, 4.903325f, -9.80665f}, null, {0.1f, 0.2f, 0.3f, 0.9f}};
+        MotionFrame frame = new MotionFrame(1_234_567_890L, 10_000_000L, sensorTypes, values);
+
+        MotionFrame read = adapter.fromJson(adapter.toJson(frame));
+
+        assertEquals(frame.uptimeNanos, read.uptimeNanos);
+        assertEquals(frame.elapsedNanos, read.elapsedNanos);
+        // the gyroscope had not reported, so the frame does not hold it
+        assertArrayEquals(new int[]{Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_GAME_ROTATION_VECTOR}, read.sensorTypes);
+        assertArrayEquals(values[0], read.getValues(Sensor.TYPE_ACCELEROMETER), 1e-6f);
+        assertArrayEquals(values[2], read.getValues(Sensor.TYPE_GAME_ROTATION_VECTOR), 1e-6f);
+        assertNull(read.getValues(Sensor.TYPE_GYROSCOPE));
+    }
+
+    @Test
+    public void testRead_null() throws IOException {
+        assertNull(adapter.fromJson("null"));
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.sensor.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+import org.sagebionetworks.research.presentation.recorder.benchmark.FakeSensorEvents;
+import org.sagebionetworks.research.presentation.recorder.sensor.DeviceMotionUtil;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorRecord;
+import org.sagebionetworks.research.presentation.recorder.sensor.SensorSample;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+public class SensorRecordJsonEncoderTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testAppendFloat_roundTrips() {
+        SensorRecordJsonEncoder encoder = new SensorRecordJsonEncoder(new ByteArrayOutputStream());
+        Random random = new Random(42);
+        float[] specialValues = {0f, 1f, -1f, 0.1f, 1e-5f, 1.5e-7f, 123456.78f, 1e9f, Float.MAX_VALUE,
+                Float.MIN_VALUE, 0.99999994f};
+        for (float value : specialValues) {
+            assertEquals(value, Float.parseFloat(format(encoder, value)), 0);
+        }
+        for (int i = 0; i < 10000; i++) {
+            float value = (float) (random.nextGaussian() * 20);
+            assertEquals(value, Float.parseFloat(format(encoder, value)), 0);
+        }
+    }
+
+    @Test
+    public void testAppendNanosAsSeconds() {
+        SensorRecordJsonEncoder encoder = new SensorRecordJsonEncoder(new ByteArrayOutputStream());
+        assertEquals("0.0", formatNanos(encoder, 0));
+        assertEquals("0.01", formatNanos(encoder, 10_000_000L));
+        assertEquals("-1.5", formatNanos(encoder, -1_500_000_000L));
+        assertEquals("123456.789012345", formatNanos(encoder, 123_456_789_012_345L));
+    }
+
+    @Test
+    public void testEncode_acceleration() throws IOException {
+        SensorRecord record = new SensorRecord();
+        record.set(null, Sensor.TYPE_ACCELEROMETER, 2_010_000_000L, new float[]{9.80665f, 0, -4.903325f}, 3);
+
+        JsonObject json = encode(record, 2_000_000_000L);
+        assertEquals(DeviceMotionUtil.SENSOR_TYPE_TO_DATA_TYPE.get(Sensor.TYPE_ACCELEROMETER),
+                json.get("sensorType").getAsString());
+        assertEquals("g", json.get("unit").getAsString());
+        assertEquals(1, json.get("x").getAsDouble(), 1e-6);
+        assertEquals(0, json.get("y").getAsDouble(), 0);
+        assertEquals(-0.5, json.get("z").getAsDouble(), 1e-6);
+        assertEquals(0.01, json.get("timestamp").getAsDouble(), 1e-12);
+        assertEquals(2.01, json.get("uptime").getAsDouble(), 1e-12);
+        assertEquals(0, json.get("eventAccuracy").getAsInt());
+    }
+
+    @Test
+    public void testEncode_uncalibrated() throws IOException {
+        SensorRecord record = new SensorRecord();
+        record.set(null, Sensor.TYPE_GYROSCOPE_UNCALIBRATED, 0, new float[]{1, 2, 3, 4, 5, 6}, 6);
+
+        JsonObject json = encode(record, 0);
+        assertEquals(1, json.get("xUncalibrated").getAsDouble(), 0);
+        assertEquals(2, json.get("yUncalibrated").getAsDouble(), 0);
+        assertEquals(3, json.get("zUncalibrated").getAsDouble(), 0);
+        assertEquals(4, json.get("xBias").getAsDouble(), 0);
+        assertEquals(5, json.get("yBias").getAsDouble(), 0);
+        assertEquals(6, json.get("zBias").getAsDouble(), 0);
+        assertFalse(json.has("unit"));
+    }
+
+    @Test
+    public void testEncode_rotationWithoutAccuracy() throws IOException {
+        SensorRecord record = new SensorRecord();
+        record.set(null, Sensor.TYPE_ROTATION_VECTOR, 0, new float[]{0.5f, 0.5f, 0.5f, 0.5f}, 4);
+
+        JsonObject json = encode(record, 0);
+        assertEquals("rotationVector", json.get("sensorAndroidType").getAsString());
+        assertEquals(0.5, json.get("w").getAsDouble(), 0);
+        assertTrue(json.has("estimatedAccuracy"));
+    }
+
+    @Test
+    public void testEncode_sampleMatchesRecord() throws IOException {
+        SensorEvent event = FakeSensorEvents.createSensorEvent(Sensor.TYPE_GYROSCOPE, 3);
+        event.timestamp = 1_500_000_000L;
+        event.values[0] = 0.25f;
+        event.values[1] = -1;
+        event.values[2] = 3.5f;
+        SensorRecord record = new SensorRecord();
+        record.set(event.sensor, Sensor.TYPE_GYROSCOPE, event.timestamp, event.values, 3);
+
+        assertEquals(encode(record, 1_000_000_000L), encode(SensorSample.copyOf(event), 1_000_000_000L));
+    }
+
+    private static JsonObject encode(SensorRecord record, long referenceTimestampNanos) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SensorRecordJsonEncoder encoder = new SensorRecordJsonEncoder(outputStream);
+        encoder.encode(record, referenceTimestampNanos);
+        encoder.flush();
+        return new JsonParser().parse(new String(outputStream.toByteArray(), UTF_8)).getAsJsonObject();
+    }
+
+    private static JsonObject encode(SensorSample sample, long referenceTimestampNanos) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SensorRecordJsonEncoder encoder = new SensorRecordJsonEncoder(outputStream);
+        encoder.encode(sample, referenceTimestampNanos);
+        encoder.flush();
+        return new JsonParser().parse(new String(outputStream.toByteArray(), UTF_8)).getAsJsonObject();
+    }
+
+    private static String format(SensorRecordJsonEncoder encoder, float value) {
+        int start = encoder.getPosition();
+        encoder.appendFloat(value);
+        return new String(encoder.getBuffer(), start, encoder.getPosition() - start, UTF_8);
+    }
+
+    private static String formatNanos(SensorRecordJsonEncoder encoder, long nanos) {
+        int start = encoder.getPosition();
+        encoder.appendNanosAsSeconds(nanos);
+        return new String(encoder.getBuffer(), start, encoder.getPosition() - start, UTF_8);
+    }
+}
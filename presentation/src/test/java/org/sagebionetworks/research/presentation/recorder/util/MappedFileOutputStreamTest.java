@@ -0,0 +1,84 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class MappedFileOutputStreamTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWrite_growsRegions() throws IOException {
+        File outputFile = temporaryFolder.newFile("motion.json");
+        byte[] expected = new byte[1000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) i;
+        }
+
+        MappedFileOutputStream outputStream = new MappedFileOutputStream(outputFile, 16, 64);
+        outputStream.write(expected, 0, 10);
+        outputStream.write(expected[10]);
+        outputStream.write(expected, 11, expected.length - 11);
+        assertEquals(64, outputStream.getRegionSize());
+        // 16 + 32 + 64 * 15 bytes
+        assertEquals(17, outputStream.getRegionCount());
+        assertEquals(expected.length, outputStream.getLength());
+        outputStream.close();
+
+        assertArrayEquals(expected, Files.readAllBytes(outputFile.toPath()));
+    }
+
+    @Test
+    public void testClose_truncatesToWrittenLength() throws IOException {
+        File outputFile = temporaryFolder.newFile("motion.json");
+        Files.write(outputFile.toPath(), "an earlier, longer recording".getBytes(UTF_8));
+
+        MappedFileOutputStream outputStream = new MappedFileOutputStream(outputFile);
+        outputStream.write("[]".getBytes(UTF_8));
+        assertEquals(MappedFileOutputStream.DEFAULT_INITIAL_REGION_SIZE, outputFile.length());
+        outputStream.close();
+
+        assertEquals("[]", new String(Files.readAllBytes(outputFile.toPath()), UTF_8));
+    }
+}
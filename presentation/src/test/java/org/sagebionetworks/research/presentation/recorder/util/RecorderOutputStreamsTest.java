@@ -0,0 +1,112 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sagebionetworks.research.domain.async.RecorderOutputCompression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+public class RecorderOutputStreamsTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testGetMimeContentType() {
+        assertEquals("application/json",
+                RecorderOutputStreams.getMimeContentType("application/json", RecorderOutputCompression.NONE));
+        assertEquals(RecorderOutputStreams.GZIP_MIME_CONTENT_TYPE,
+                RecorderOutputStreams.getMimeContentType("application/json", RecorderOutputCompression.GZIP));
+    }
+
+    @Test
+    public void testGetSegmentFile() {
+        File directory = temporaryFolder.getRoot();
+        assertEquals(new File(directory, "motion_002.json.gz"),
+                RecorderOutputStreams.getSegmentFile(new File(directory, "motion.json.gz"), 2));
+        assertEquals(new File(directory, "motion_012"),
+                RecorderOutputStreams.getSegmentFile(new File(directory, "motion"), 12));
+    }
+
+    @Test
+    public void testOpenGzip_flushedPrefixIsReadable() throws IOException {
+        File outputFile = temporaryFolder.newFile("recorder.json.gz");
+        OutputStream outputStream = RecorderOutputStreams.open(outputFile, RecorderOutputCompression.GZIP);
+        outputStream.write("[{\"x\":1},".getBytes(UTF_8));
+        outputStream.flush();
+
+        // the stream is never closed, as if the app had been killed mid-recording
+        assertEquals("[{\"x\":1},", readPrefix(outputFile));
+
+        outputStream.write("{\"x\":2}]".getBytes(UTF_8));
+        outputStream.close();
+        assertEquals("[{\"x\":1},{\"x\":2}]", readPrefix(outputFile));
+    }
+
+    @Test
+    public void testOpenNone_writesUncompressed() throws IOException {
+        File outputFile = temporaryFolder.newFile("recorder.json");
+        try (OutputStream outputStream = RecorderOutputStreams.open(outputFile, RecorderOutputCompression.NONE)) {
+            outputStream.write("[]".getBytes(UTF_8));
+        }
+        assertEquals(2, outputFile.length());
+    }
+
+    /**
+     * Decompresses as much of the file as can be read, stopping without error at a missing gzip trailer.
+     */
+    private static String readPrefix(File file) throws IOException {
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (InputStream inputStream = new GZIPInputStream(new FileInputStream(file))) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                decompressed.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // expected when the trailer has not been written yet
+        }
+        return new String(decompressed.toByteArray(), UTF_8);
+    }
+}
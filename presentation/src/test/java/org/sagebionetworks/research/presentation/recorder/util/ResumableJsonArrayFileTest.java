@@ -0,0 +1,223 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright 2018  Sage Bionetworks. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1.  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2.  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3.  Neither the name of the copyright holder(s) nor the names of any contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission. No license is granted to the trademarks of
+ * the copyright holders even if such marks are included in this software.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sagebionetworks.research.presentation.recorder.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sagebionetworks.research.presentation.recorder.util.ResumableJsonArrayFile.Segment;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+public class ResumableJsonArrayFileTest {
+    private static final Instant START_TIME = Instant.ofEpochSecond(1_000);
+
+    private static final Instant END_TIME = Instant.ofEpochSecond(1_060);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testResume_continuesFinishedArray() throws IOException {
+        File outputFile = temporaryFolder.newFile("motion.json");
+        writeSegment(outputFile, "{\"x\":1},{\"x\":2}");
+        writeSegment(outputFile, "{\"x\":3}");
+
+        assertEquals("[{\"x\":1},{\"x\":2},{\"x\":3}]", read(outputFile));
+        List<Segment> segments = ResumableJsonArrayFile.readSegmentIndex(
+                ResumableJsonArrayFile.getSegmentIndexFile(outputFile));
+        assertEquals(2, segments.size());
+        assertEquals(1, segments.get(0).getStartOffset());
+        assertEquals(16, segments.get(0).getEndOffset());
+        assertEquals(16, segments.get(1).getStartOffset());
+        assertEquals(24, segments.get(1).getEndOffset());
+        assertEquals(START_TIME, segments.get(1).getStartTime());
+        assertEquals(END_TIME, segments.get(1).getEndTime());
+    }
+
+    @Test
+    public void testResume_recoversUnfinishedRun() throws IOException {
+        File outputFile = temporaryFolder.newFile("motion.json");
+        writeSegment(outputFile, "{\"x\":1}");
+        // a run that was killed part way through writing an element
+        try (OutputStream outputStream = new FileOutputStream(outputFile, true)) {
+            outputStream.write(",{\"x\":2},{\"x\"".getBytes(UTF_8));
+        }
+        // the closing bracket of the first run was overwritten by the second
+        rewrite(outputFile, read(outputFile).replace("}]", "}"));
+
+        ResumableJsonArrayFile file = ResumableJsonArrayFile.open(outputFile, true);
+        assertTrue(file.hasElements());
+        assertEquals(START_TIME, file.getFirstStartTime());
+        List<Segment> previousSegments = file.getPreviousSegments();
+        assertEquals(2, previousSegments.size());
+        assertTrue(previousSegments.get(1).isRecovered());
+        assertNull(previousSegments.get(1).getStartTime());
+        file.getOutputStream().write(",{\"x\":3}".getBytes(UTF_8));
+        file.finish(START_TIME, END_TIME);
+        file.close();
+
+        assertEquals("[{\"x\":1},{\"x\":2},{\"x\":3}]", read(outputFile));
+    }
+
+    @Test
+    public void testResume_dropsElementCutShortAfterNestedObject() throws IOException {
+        File outputFile = temporaryFolder.newFile("motion.json");
+        // the first element of a recording describes its sensor in a nested object
+        try (OutputStream outputStream = new FileOutputStream(outputFile)) {
+            outputStream.write("[{\"sensor\":{\"name\":\"}\"},\"x\":1},{\"sensor\":{\"name\":\"a\"},\"x\""
+                    .getBytes(UTF_8));
+        }
+
+        ResumableJsonArrayFile file = ResumableJsonArrayFile.open(outputFile, true);
+        file.getOutputStream().write(",{\"x\":2}".getBytes(UTF_8));
+        file.finish(START_TIME, END_TIME);
+        file.close();
+
+        assertEquals("[{\"sensor\":{\"name\":\"}\"},\"x\":1},{\"x\":2}]", read(outputFile));
+    }
+
+    @Test
+    public void testResume_keepsReferenceOfFirstElement() throws IOException {
+        File outputFile = temporaryFolder.newFile("motion.json");
+        ResumableJsonArrayFile file = ResumableJsonArrayFile.open(outputFile, true);
+        assertNull(file.getReference());
+        file.setReference(1_000L);
+        file.getOutputStream().write("{\"x\":1}".getBytes(UTF_8));
+        // a run that was killed without finishing keeps its reference with its elements
+        file.close();
+
+        file = ResumableJsonArrayFile.open(outputFile, true);
+        assertTrue(file.hasElements());
+        assertEquals(Long.valueOf(1_000L), file.getReference());
+        file.getOutputStream().write(",{\"x\":2}".getBytes(UTF_8));
+        file.finish(START_TIME, END_TIME);
+        file.close();
+
+        assertEquals(Long.valueOf(1_000L),
+                ResumableJsonArrayFile.readReference(ResumableJsonArrayFile.getSegmentIndexFile(outputFile)));
+        assertEquals(2, ResumableJsonArrayFile.readSegmentIndex(
+                ResumableJsonArrayFile.getSegmentIndexFile(outputFile)).size());
+        assertEquals("[{\"x\":1},{\"x\":2}]", read(outputFile));
+    }
+
+    @Test
+    public void testResume_dropsReferenceWithoutElements() throws IOException {
+        File outputFile = temporaryFolder.newFile("motion.json");
+        ResumableJsonArrayFile file = ResumableJsonArrayFile.open(outputFile, true);
+        file.setReference(1_000L);
+        // killed before its first element reached the file
+        file.close();
+
+        file = ResumableJsonArrayFile.open(outputFile, true);
+        assertFalse(file.hasElements());
+        assertNull(file.getReference());
+        file.setReference(2_000L);
+        file.getOutputStream().write("{\"x\":1}".getBytes(UTF_8));
+        file.finish(START_TIME, END_TIME);
+        file.close();
+
+        file = ResumableJsonArrayFile.open(outputFile, true);
+        assertEquals(Long.valueOf(2_000L), file.getReference());
+        file.close();
+    }
+
+    @Test
+    public void testAbandon_keepsEarlierRuns() throws IOException {
+        File outputFile = temporaryFolder.newFile("motion.json");
+        writeSegment(outputFile, "{\"x\":1}");
+
+        ResumableJsonArrayFile file = ResumableJsonArrayFile.open(outputFile, true);
+        file.getOutputStream().write(",{\"x\":2}".getBytes(UTF_8));
+        file.abandon();
+
+        assertEquals("[{\"x\":1}]", read(outputFile));
+    }
+
+    @Test
+    public void testAbandon_deletesFirstRun() throws IOException {
+        File outputFile = temporaryFolder.newFile("motion.json");
+
+        ResumableJsonArrayFile file = ResumableJsonArrayFile.open(outputFile, true);
+        assertFalse(file.hasElements());
+        file.getOutputStream().write("{\"x\":1}".getBytes(UTF_8));
+        file.abandon();
+
+        assertFalse(outputFile.exists());
+        assertFalse(ResumableJsonArrayFile.getSegmentIndexFile(outputFile).exists());
+    }
+
+    @Test
+    public void testOpen_withoutResumeOverwrites() throws IOException {
+        File outputFile = temporaryFolder.newFile("motion.json");
+        writeSegment(outputFile, "{\"x\":1}");
+
+        ResumableJsonArrayFile file = ResumableJsonArrayFile.open(outputFile, false);
+        assertFalse(file.hasElements());
+        assertTrue(file.getPreviousSegments().isEmpty());
+        file.finish(START_TIME, END_TIME);
+        file.close();
+
+        assertEquals("[]", read(outputFile));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), UTF_8);
+    }
+
+    private static void rewrite(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(UTF_8));
+    }
+
+    private static void writeSegment(File outputFile, String elements) throws IOException {
+        ResumableJsonArrayFile file = ResumableJsonArrayFile.open(outputFile, true);
+        if (file.hasElements()) {
+            file.getOutputStream().write(',');
+        }
+        file.getOutputStream().write(elements.getBytes(UTF_8));
+        file.finish(START_TIME, END_TIME);
+        file.close();
+    }
+}